@@ -0,0 +1,302 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A* search over the drone's moves: from each position one move along each heading of its LngLatHandlingImpl, under the same
+ * rules as the greedy planner (never into a no-fly zone, never back into the central area once out of it),
+ * until a position is close to the destination. Every move costs one.
+ *
+ * Positions reached by different sequences of moves almost never coincide exactly, so positions within a quarter
+ * of a step (one move, unless striding) of each other count as one node, represented by the position reached in the fewest moves and, of those,
+ * the one the heuristic puts nearest the destination.
+ * Moves are counted whole (steps, when striding), so the heuristic is rounded up, which keeps it a lower bound. With a fixed set of headings
+ * very many paths have the same number of moves, so of the nodes with the same estimate, the one the unrounded
+ * heuristic puts nearest the destination is expanded first.
+ * A search can also take strides of several moves along one heading, every position on the way kept to the same
+ * rules, which finds a rough route over a coarser lattice quickly.
+ * A search is single threaded; DronePathPlanner owns one.
+ */
+final class AStarSearch {
+    static final int MAX_EXPANSIONS = 1_000_000; // The search gives up after expanding this many nodes of one move.
+    private static final double NODE_SIZE = SystemConstants.DRONE_MOVE_DISTANCE / 4; // Positions closer count as one node.
+    private static final double ROUNDING = 1e-9; // Allowance for rounding errors before the heuristic is rounded up.
+
+    private final NamedRegion[] noFlyZones;
+    private final NamedRegion centralArea;
+    private final LngLatHandlingImpl lngLatHandler;
+    private final PolygonBatchKernel polygonKernel = PolygonBatchKernel.best();
+    private final int stride; // Moves along one heading taken as one step.
+    private final int maxExpansions; // MAX_EXPANSIONS, less for longer strides, which cover more area per node.
+    private int nodesExpanded; // Nodes expanded by the last search.
+
+    /**
+     * Estimate of the moves still needed from a position, which should never be more than the real number.
+     */
+    interface Heuristic {
+        /**
+         * @param lng Longitude of the position.
+         * @param lat Latitude of the position.
+         * @return The estimated number of moves until the drone is close to the destination.
+         */
+        double movesToGoal(double lng, double lat);
+    }
+
+    /**
+     * The part of the area a search may move in.
+     */
+    interface Bounds {
+        /**
+         * @param lng Longitude of the position.
+         * @param lat Latitude of the position.
+         * @return Whether the drone may move to the position.
+         */
+        boolean contains(double lng, double lat);
+    }
+
+    // A position reached by the search
+    private static final class Node {
+        final LngLat position;
+        final Node parent; // Node the move came from; null for the start.
+        final double angle; // Angle of the move from the parent.
+        final int moves; // Moves from the start.
+        final double remaining; // The heuristic.
+        final double estimate; // Moves from the start plus the heuristic rounded up to whole steps.
+
+        Node(LngLat position, Node parent, double angle, int moves, double remaining, int stride) {
+            this.position = position;
+            this.parent = parent;
+            this.angle = angle;
+            this.moves = moves;
+            this.remaining = remaining;
+            this.estimate = moves + stride * Math.ceil(remaining / stride - ROUNDING);
+        }
+    }
+
+    /**
+     * Constructor for AStarSearch class.
+     * @param noFlyZones Array of no-fly zones to avoid.
+     * @param centralArea The central area the drone may not re-enter.
+     * @param lngLatHandler Handler whose prepared regions are used for the point tests.
+     */
+    AStarSearch(NamedRegion[] noFlyZones, NamedRegion centralArea, LngLatHandlingImpl lngLatHandler) {
+        this(noFlyZones, centralArea, lngLatHandler, 1);
+    }
+
+    /**
+     * Constructor for AStarSearch class, for a search over a coarser lattice. A path then ends once within
+     * stride times the closeness distance of the destination.
+     * @param noFlyZones Array of no-fly zones to avoid.
+     * @param centralArea The central area the drone may not re-enter.
+     * @param lngLatHandler Handler whose prepared regions are used for the point tests.
+     * @param stride Moves along one heading taken as one step, at least 1.
+     */
+    AStarSearch(NamedRegion[] noFlyZones, NamedRegion centralArea, LngLatHandlingImpl lngLatHandler, int stride) {
+        if (stride < 1) {
+            throw new IllegalArgumentException("Planner error: a stride must be at least one move, not " + stride);
+        }
+        this.noFlyZones = noFlyZones;
+        this.centralArea = centralArea;
+        this.lngLatHandler = lngLatHandler;
+        this.stride = stride;
+        this.maxExpansions = MAX_EXPANSIONS / (stride * stride);
+    }
+
+    /**
+     * The heuristic that ignores the no-fly zones: the fewest moves that could cover the straight line,
+     * less the closeness allowed at the end.
+     * @param end The destination.
+     * @return The heuristic.
+     */
+    static Heuristic straightLine(LngLat end) {
+        return straightLine(end, SystemConstants.DRONE_IS_CLOSE_DISTANCE);
+    }
+
+    /**
+     * The straight-line heuristic for a search that ends within a given distance of the destination.
+     * @param end The destination.
+     * @param closeDistance How near the destination the path may end.
+     * @return The heuristic.
+     */
+    static Heuristic straightLine(LngLat end, double closeDistance) {
+        return straightLine(end, closeDistance, HeadingTable.DEFAULT);
+    }
+
+    /**
+     * The straight-line heuristic for a search over another set of headings.
+     * @param end The destination.
+     * @param closeDistance How near the destination the path may end.
+     * @param headings The headings the search moves along.
+     * @return The heuristic.
+     */
+    static Heuristic straightLine(LngLat end, double closeDistance, HeadingTable headings) {
+        double closeMoves = closeDistance / SystemConstants.DRONE_MOVE_DISTANCE
+                / headings.halfSpacingCosine(); // Most moves a close position can take
+        return (lng, lat) -> Math.max(0, headings.movesAlong(end.lng() - lng, end.lat() - lat) - closeMoves);
+    }
+
+    /**
+     * The fewest moves along the drone's 16 headings that cover a displacement when nothing is in the way
+     * (see HeadingTable.movesAlong).
+     * @param lngDistance Longitude part of the displacement.
+     * @param latDistance Latitude part of the displacement.
+     * @return The number of moves.
+     */
+    static double movesAlong(double lngDistance, double latDistance) {
+        return HeadingTable.DEFAULT.movesAlong(lngDistance, latDistance);
+    }
+
+    /**
+     * Searches for the path with the fewest moves.
+     * @param start The starting point of the path.
+     * @param end The destination point of the path.
+     * @param orderNo The order number associated with the movement.
+     * @param heuristic Estimate of the moves still needed.
+     * @return The moves from the start until close to the end, followed by a hover.
+     * @throws IllegalStateException If no path is found within MAX_EXPANSIONS expanded nodes.
+     */
+    List<DroneMovement> search(LngLat start, LngLat end, String orderNo, Heuristic heuristic) {
+        return search(start, end, orderNo, heuristic, null);
+    }
+
+    /**
+     * Searches for the path with the fewest moves that stays within bounds.
+     * @param start The starting point of the path.
+     * @param end The destination point of the path.
+     * @param orderNo The order number associated with the movement.
+     * @param heuristic Estimate of the moves still needed.
+     * @param within Where every move must end; null for anywhere.
+     * @return The moves from the start until close to the end, followed by a hover.
+     * @throws IllegalStateException If there is no such path, or none is found within MAX_EXPANSIONS expanded nodes.
+     */
+    List<DroneMovement> search(LngLat start, LngLat end, String orderNo, Heuristic heuristic, Bounds within) {
+        double[] angles = lngLatHandler.getHeadings().angles;
+        int count = angles.length * stride; // Every position of every step, step by step
+        LngLat[] candidates = new LngLat[count];
+        double[] candidateLng = new double[count];
+        double[] candidateLat = new double[count];
+        boolean[] blocked = new boolean[count];
+        double goalDistance = stride * SystemConstants.DRONE_IS_CLOSE_DISTANCE;
+
+        // Fewest moves first; of equal estimates, the node nearest the destination
+        PriorityQueue<Node> open = new PriorityQueue<>(Comparator.comparingDouble((Node node) -> node.estimate)
+                .thenComparingDouble(node -> node.remaining));
+        HashMap<Long, Node> nodes = new HashMap<>(); // The position representing each node
+        Node first = new Node(start, null, 999, 0, heuristic.movesToGoal(start.lng(), start.lat()), stride);
+        open.add(first);
+        nodes.put(nodeKey(start, start), first);
+        nodesExpanded = 0;
+
+        while (!open.isEmpty()) {
+            Node node = open.poll();
+            if (nodes.get(nodeKey(start, node.position)) != node) {
+                continue; // A better position has taken its place since it was queued
+            }
+            if (lngLatHandler.distanceTo(node.position, end) <= goalDistance) {
+                return path(node, orderNo);
+            }
+            if (++nodesExpanded > maxExpansions) {
+                break;
+            }
+
+            for (int i = 0; i < angles.length; i++) {
+                LngLat position = node.position;
+                for (int c = i * stride; c < (i + 1) * stride; c++) {
+                    position = lngLatHandler.nextPosition(position, angles[i]);
+                    candidates[c] = position;
+                    candidateLng[c] = position.lng();
+                    candidateLat[c] = position.lat();
+                    blocked[c] = false;
+                }
+            }
+            for (NamedRegion noFlyZone : noFlyZones) {
+                polygonKernel.markInside(lngLatHandler.prepared(noFlyZone), candidateLng, candidateLat, count, blocked);
+            }
+            boolean currentlyInCentral = lngLatHandler.isInCentralArea(node.position, centralArea);
+
+            int moves = node.moves + stride;
+            for (int i = 0; i < angles.length; i++) {
+                int last = (i + 1) * stride - 1; // Where the step ends
+                if (!isValidStep(i * stride, last, currentlyInCentral, candidates, blocked, within)) {
+                    continue;
+                }
+                double remaining = heuristic.movesToGoal(candidateLng[last], candidateLat[last]);
+                long key = nodeKey(start, candidates[last]);
+                Node known = nodes.get(key);
+                if (known != null && (known.moves < moves || (known.moves == moves && known.remaining <= remaining))) {
+                    continue;
+                }
+                Node next = new Node(candidates[last], node, angles[i], moves, remaining, stride);
+                nodes.put(key, next);
+                open.add(next);
+            }
+        }
+        if (open.isEmpty()) {
+            throw new IllegalStateException("No path from " + start + " to " + end + (within == null ? "" : " within its bounds"));
+        }
+        throw new IllegalStateException("No path from " + start + " to " + end + " within " + maxExpansions + " expanded nodes");
+    }
+
+    // Whether every position of a step, from candidate first to last, is out of the no-fly zones, within bounds,
+    // and not back in the central area after leaving it
+    private boolean isValidStep(int first, int last, boolean currentlyInCentral, LngLat[] candidates, boolean[] blocked,
+                                Bounds within) {
+        boolean inCentral = currentlyInCentral;
+        for (int c = first; c <= last; c++) {
+            if (blocked[c] || (within != null && !within.contains(candidates[c].lng(), candidates[c].lat()))) {
+                return false;
+            }
+            if (!inCentral) {
+                if (lngLatHandler.isInCentralArea(candidates[c], centralArea)) {
+                    return false;
+                }
+            } else if (c < last) {
+                inCentral = lngLatHandler.isInCentralArea(candidates[c], centralArea);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of nodes whose moves the last search evaluated.
+     */
+    int getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    // The node a position belongs to, as its offset from the start in node sizes
+    private long nodeKey(LngLat start, LngLat position) {
+        long lngStep = Math.round((position.lng() - start.lng()) / (NODE_SIZE * stride));
+        long latStep = Math.round((position.lat() - start.lat()) / (NODE_SIZE * stride));
+        return (lngStep << 32) ^ (latStep & 0xFFFFFFFFL);
+    }
+
+    // The moves that led to a node, each step replayed move by move, followed by a hover there
+    private List<DroneMovement> path(Node last, String orderNo) {
+        List<Node> steps = new ArrayList<>();
+        for (Node node = last; node.parent != null; node = node.parent) {
+            steps.add(node);
+        }
+        Collections.reverse(steps);
+        List<DroneMovement> path = new ArrayList<>();
+        for (Node step : steps) {
+            LngLat position = step.parent.position;
+            for (int move = 0; move < stride; move++) {
+                LngLat next = lngLatHandler.nextPosition(position, step.angle);
+                path.add(new DroneMovement(position, step.angle, next, orderNo));
+                position = next;
+            }
+        }
+        path.add(new DroneMovement(last.position, 999, last.position, orderNo));
+        return path;
+    }
+}
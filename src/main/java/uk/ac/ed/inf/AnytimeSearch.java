@@ -0,0 +1,329 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Anytime search for one path, in the manner of ARA*: weighted A* over the same moves and nodes as AStarSearch,
+ * run again and again with less and less weight on the straight-line heuristic, each run reusing the nodes
+ * the earlier ones reached. A heavily weighted run finds some path quickly; each lighter one improves it,
+ * and the last, unweighted, finds the path with the fewest moves.
+ *
+ * The search can be stopped at a deadline and resumed later, possibly on another thread, so it owns its
+ * LngLatHandlingImpl; it must not be used by two threads at once. After any run, the best path found is at most
+ * getBound() times as long as the shortest. A path found some other way can be given as the first best path,
+ * which spares the first runs all the nodes that could only lead to longer ones.
+ */
+final class AnytimeSearch {
+    static final double[] INFLATIONS = {3, 2, 1.5, 1.25, 1.1, 1}; // Weight on the heuristic of each run, ending unweighted.
+    private static final double NODE_SIZE = SystemConstants.DRONE_MOVE_DISTANCE / 4; // Positions closer count as one node.
+    private static final double ROUNDING = 1e-9; // Allowance for rounding errors before the heuristic is rounded up.
+
+    private final NamedRegion[] noFlyZones;
+    private final NamedRegion centralArea;
+    private final LngLatHandlingImpl lngLatHandler;
+    private final PolygonBatchKernel polygonKernel = PolygonBatchKernel.best();
+    private final LngLat start;
+    private final LngLat end;
+    private final AStarSearch.Heuristic heuristic;
+
+    private final HashMap<Long, Node> nodes = new HashMap<>(); // The position representing each node
+    private final HashSet<Long> closed = new HashSet<>(); // Nodes expanded by the current run
+    private final List<Node> inconsistent = new ArrayList<>(); // Nodes improved after this run expanded them
+    private PriorityQueue<Node> open;
+    private int run; // Index of the current run in INFLATIONS; INFLATIONS.length once the last has finished.
+    private Node best; // The node close to the destination reached in the fewest moves, or null.
+    private List<DroneMovement> seed; // The path given as the first best one, used unless best is set.
+    private int bestMoves = Integer.MAX_VALUE; // Moves of the best path so far, the hover excluded.
+    private double bound = Double.POSITIVE_INFINITY; // How many times the shortest path the best one may be.
+    private int nodesExpanded; // Nodes expanded by all runs so far.
+    private boolean gaveUp; // Whether the runs stopped at AStarSearch.MAX_EXPANSIONS with a path, which is kept.
+
+    // A position reached by the search
+    private static final class Node {
+        final LngLat position;
+        final Node parent; // Node the move came from; null for the start.
+        final double angle; // Angle of the move from the parent.
+        final int moves; // Moves from the start.
+        final double remaining; // The heuristic.
+        double estimate; // Moves from the start plus the weighted heuristic, rounded up to whole moves.
+
+        Node(LngLat position, Node parent, double angle, int moves, double remaining) {
+            this.position = position;
+            this.parent = parent;
+            this.angle = angle;
+            this.moves = moves;
+            this.remaining = remaining;
+        }
+
+        void weigh(double inflation) {
+            estimate = moves + Math.ceil(inflation * remaining - ROUNDING);
+        }
+    }
+
+    /**
+     * Constructor for AnytimeSearch class, over the drone's 16 headings; no nodes are expanded until improve is called.
+     * @param noFlyZones Array of no-fly zones to avoid.
+     * @param centralArea The central area the drone may not re-enter.
+     * @param start The starting point of the path.
+     * @param end The destination point of the path.
+     */
+    AnytimeSearch(NamedRegion[] noFlyZones, NamedRegion centralArea, LngLat start, LngLat end) {
+        this(noFlyZones, centralArea, start, end, HeadingTable.DEFAULT);
+    }
+
+    /**
+     * Constructor for AnytimeSearch class, over another set of headings.
+     * @param noFlyZones Array of no-fly zones to avoid.
+     * @param centralArea The central area the drone may not re-enter.
+     * @param start The starting point of the path.
+     * @param end The destination point of the path.
+     * @param headings The headings the moves may take.
+     */
+    AnytimeSearch(NamedRegion[] noFlyZones, NamedRegion centralArea, LngLat start, LngLat end, HeadingTable headings) {
+        this.noFlyZones = noFlyZones;
+        this.centralArea = centralArea;
+        this.start = start;
+        this.end = end;
+        this.lngLatHandler = new LngLatHandlingImpl(headings);
+        this.heuristic = AStarSearch.straightLine(end, SystemConstants.DRONE_IS_CLOSE_DISTANCE, headings);
+        this.open = newOpenSet();
+        Node first = new Node(start, null, 999, 0, heuristic.movesToGoal(start.lng(), start.lat()));
+        first.weigh(INFLATIONS[0]);
+        nodes.put(nodeKey(first.position), first);
+        if (lngLatHandler.isCloseTo(start, end)) {
+            best = first;
+            bestMoves = 0;
+            bound = 1;
+            run = INFLATIONS.length;
+        } else {
+            open.add(first);
+        }
+    }
+
+    /**
+     * Takes a path found some other way as the best so far, if it is shorter; to be called before improve.
+     * @param path Moves from the start until close to the end, each along one of the search's headings and
+     *             keeping to the rules, followed by a hover.
+     */
+    void seed(List<DroneMovement> path) {
+        if (path.size() - 1 < bestMoves) {
+            seed = path;
+            best = null;
+            bestMoves = path.size() - 1;
+        }
+    }
+
+    /**
+     * Runs the search until the deadline or until the shortest path is found, whichever comes first.
+     * Until some path is found the deadline is ignored, so on return there always is one.
+     * @param deadline The System.nanoTime by which to stop.
+     * @return True once the shortest path has been found.
+     * @throws IllegalStateException If there is no path, or none is found within AStarSearch.MAX_EXPANSIONS expanded nodes.
+     */
+    boolean improve(long deadline) {
+        if (gaveUp) {
+            return false;
+        }
+        while (run < INFLATIONS.length) {
+            if (!runUntil(deadline)) {
+                updateBound(run == 0 ? Double.POSITIVE_INFINITY : INFLATIONS[run - 1]);
+                return false;
+            }
+            updateBound(INFLATIONS[run]);
+            if (++run < INFLATIONS.length) {
+                reweigh(INFLATIONS[run]);
+            }
+        }
+        bound = 1;
+        return true;
+    }
+
+    // Expands nodes by the current weight until the best path is no longer than any open estimate;
+    // false if the deadline came first (never before a path has been found)
+    private boolean runUntil(long deadline) {
+        double[] angles = lngLatHandler.getHeadings().angles;
+        LngLat[] candidates = new LngLat[angles.length];
+        double[] candidateLng = new double[angles.length];
+        double[] candidateLat = new double[angles.length];
+        boolean[] blocked = new boolean[angles.length];
+
+        while (!open.isEmpty()) {
+            Node node = open.peek();
+            if (bestMoves <= node.estimate) {
+                return true; // No open node could lead to a shorter path at this weight
+            }
+            if (hasPath() && System.nanoTime() >= deadline) {
+                return false;
+            }
+            open.poll();
+            long nodeKey = nodeKey(node.position);
+            if (nodes.get(nodeKey) != node || !closed.add(nodeKey)) {
+                continue; // A better position has taken its place since it was queued, or it has been expanded
+            }
+            if (++nodesExpanded > AStarSearch.MAX_EXPANSIONS) {
+                if (hasPath()) {
+                    gaveUp = true; // Keep what has been found, and stop improving it
+                    return false;
+                }
+                throw new IllegalStateException("No path from " + start + " to " + end + " within "
+                        + AStarSearch.MAX_EXPANSIONS + " expanded nodes");
+            }
+
+            for (int i = 0; i < angles.length; i++) {
+                candidates[i] = lngLatHandler.nextPosition(node.position, angles[i]);
+                candidateLng[i] = candidates[i].lng();
+                candidateLat[i] = candidates[i].lat();
+                blocked[i] = false;
+            }
+            for (NamedRegion noFlyZone : noFlyZones) {
+                polygonKernel.markInside(lngLatHandler.prepared(noFlyZone), candidateLng, candidateLat, angles.length, blocked);
+            }
+            boolean currentlyInCentral = lngLatHandler.isInCentralArea(node.position, centralArea);
+
+            int moves = node.moves + 1;
+            for (int i = 0; i < angles.length; i++) {
+                if (blocked[i] || (!currentlyInCentral && lngLatHandler.isInCentralArea(candidates[i], centralArea))) {
+                    continue;
+                }
+                double remaining = heuristic.movesToGoal(candidateLng[i], candidateLat[i]);
+                long key = nodeKey(candidates[i]);
+                Node known = nodes.get(key);
+                if (known != null && (known.moves < moves || (known.moves == moves && known.remaining <= remaining))) {
+                    continue;
+                }
+                Node next = new Node(candidates[i], node, angles[i], moves, remaining);
+                next.weigh(INFLATIONS[run]);
+                nodes.put(key, next);
+                if (lngLatHandler.isCloseTo(next.position, end)) {
+                    // The goal test is on reaching a node, so the first path is known as soon as possible
+                    if (moves < bestMoves) {
+                        best = next;
+                        bestMoves = moves;
+                    }
+                } else if (closed.contains(key)) {
+                    inconsistent.add(next);
+                } else {
+                    open.add(next);
+                }
+            }
+        }
+        if (!hasPath()) {
+            throw new IllegalStateException("No path from " + start + " to " + end);
+        }
+        return true;
+    }
+
+    private boolean hasPath() {
+        return bestMoves < Integer.MAX_VALUE;
+    }
+
+    // Starts the next run: the open and inconsistent nodes, weighed again, are all open, and none expanded
+    private void reweigh(double inflation) {
+        PriorityQueue<Node> reweighed = newOpenSet();
+        for (List<Node> queued : List.of(new ArrayList<>(open), inconsistent)) {
+            for (Node node : queued) {
+                if (nodes.get(nodeKey(node.position)) == node) {
+                    node.weigh(inflation);
+                    reweighed.add(node);
+                }
+            }
+        }
+        open = reweighed;
+        inconsistent.clear();
+        closed.clear();
+    }
+
+    // The bound of the best path: no more than the weight of the last finished run, and no more than its
+    // moves over the lowest unweighted estimate of any node still to be expanded
+    private void updateBound(double inflation) {
+        if (!hasPath()) {
+            return;
+        }
+        double lowest = bestMoves;
+        for (List<Node> queued : List.of(new ArrayList<>(open), inconsistent)) {
+            for (Node node : queued) {
+                if (nodes.get(nodeKey(node.position)) == node) {
+                    lowest = Math.min(lowest, node.moves + Math.ceil(node.remaining - ROUNDING));
+                }
+            }
+        }
+        bound = Math.max(1, Math.min(inflation, bestMoves / Math.max(lowest, 1)));
+    }
+
+    /**
+     * @return How many times the moves of the shortest path the best path found may have at most;
+     * 1 once it is the shortest, infinite before any path is found.
+     */
+    double getBound() {
+        return bound;
+    }
+
+    /**
+     * @return Whether the shortest path has been found.
+     */
+    boolean isFinished() {
+        return run >= INFLATIONS.length;
+    }
+
+    /**
+     * @return The number of moves of the best path found, without the hover; -1 before any is found.
+     */
+    int getBestMoves() {
+        return hasPath() ? bestMoves : -1;
+    }
+
+    /**
+     * @return The number of nodes whose moves all runs so far evaluated.
+     */
+    int getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    /**
+     * The best path found.
+     * @param orderNo The order number associated with the movement.
+     * @return The moves from the start until close to the end, followed by a hover.
+     * @throws IllegalStateException If no path has been found yet.
+     */
+    List<DroneMovement> path(String orderNo) {
+        if (!hasPath()) {
+            throw new IllegalStateException("No path from " + start + " to " + end + " found yet");
+        }
+        List<DroneMovement> path = new ArrayList<>();
+        if (best == null) {
+            for (DroneMovement movement : seed) {
+                path.add(new DroneMovement(movement.getStart(), movement.getAngle(), movement.getEnd(), orderNo));
+            }
+            return path;
+        }
+        for (Node node = best; node.parent != null; node = node.parent) {
+            path.add(new DroneMovement(node.parent.position, node.angle, node.position, orderNo));
+        }
+        Collections.reverse(path);
+        path.add(new DroneMovement(best.position, 999, best.position, orderNo));
+        return path;
+    }
+
+    // Lowest estimate first; of equal estimates, the node nearest the destination
+    private static PriorityQueue<Node> newOpenSet() {
+        return new PriorityQueue<>(Comparator.comparingDouble((Node node) -> node.estimate)
+                .thenComparingDouble(node -> node.remaining));
+    }
+
+    // The node a position belongs to, as its offset from the start in node sizes
+    private long nodeKey(LngLat position) {
+        long lngStep = Math.round((position.lng() - start.lng()) / NODE_SIZE);
+        long latStep = Math.round((position.lat() - start.lat()) / NODE_SIZE);
+        return (lngStep << 32) ^ (latStep & 0xFFFFFFFFL);
+    }
+}
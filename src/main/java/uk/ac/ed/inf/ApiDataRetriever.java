@@ -2,21 +2,26 @@ package uk.ac.ed.inf;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.Timer;
 import uk.ac.ed.inf.ilp.data.NamedRegion;
 import uk.ac.ed.inf.ilp.data.Restaurant;
 import uk.ac.ed.inf.ilp.data.Order;
 
 //import java.awt.*;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Singleton class that handles the retrieval of data from a RESTful API.
@@ -25,12 +30,21 @@ import java.util.List;
  */
 public class ApiDataRetriever {
 
+    /**
+     * Receives orders one at a time while they are being streamed from the API.
+     */
+    public interface OrderSink {
+        void accept(Order order) throws InterruptedException;
+    }
+
     // Singleton instance to ensure only one instance of the HttpClient and ObjectMapper.
     private static ApiDataRetriever instance;
     // HttpClient to send requests to the API.
     private final HttpClient client;
     // ObjectMapper to map JSON response to Java objects.
     private final ObjectMapper objectMapper;
+    // The pizzadronz.fetch timer of each endpoint, looked up once rather than on every request.
+    private final Map<String, Timer> fetchTimers = new HashMap<>();
 
     // Private constructor to initialize the HttpClient and ObjectMapper.
     private ApiDataRetriever() {
@@ -42,6 +56,10 @@ public class ApiDataRetriever {
         // Add these two lines:
         objectMapper.configure(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_AS_NULL, true);
         objectMapper.configure(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES, false);
+
+        for (String endpoint : new String[]{"health", "restaurants", "orders", "centralArea", "noFlyZones"}) {
+            fetchTimers.put(endpoint, DeliveryMetrics.fetch(endpoint));
+        }
     }
 
 
@@ -54,9 +72,12 @@ public class ApiDataRetriever {
     }
 
     // Helper method to send a GET request to the specified URI and return the response body as a String.
-    private String sendRequest(String uri) throws IOException, InterruptedException {
+    // The time the request takes is recorded against the endpoint's pizzadronz.fetch timer.
+    private String sendRequest(String uri, String endpoint) throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder().uri(URI.create(uri)).build();
+        long start = System.nanoTime();
         HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        fetchTimers.get(endpoint).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
 
         if (response.statusCode() != 200) {
@@ -65,11 +86,26 @@ public class ApiDataRetriever {
         return response.body();
     }
 
+    // Helper method to send a GET request to the specified URI and return the response body as a stream.
+    // Only the time until the response starts is recorded, since the body is read at the caller's pace.
+    private InputStream sendStreamingRequest(String uri, String endpoint) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(uri)).build();
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        fetchTimers.get(endpoint).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Failed to fetch data: HTTP " + response.statusCode() + " for URI " + uri);
+        }
+        return response.body();
+    }
+
 
     // Checks if the API service is available and responsive.
     public boolean serviceAlive(String url) throws IOException, InterruptedException {
         String urlString = url + "/actuator/health/livenessState";
-        String response = sendRequest(urlString);
+        String response = sendRequest(urlString, "health");
 
         // Since the body is {"status":"UP"}, parse that JSON:
         Map<String, String> map = objectMapper.readValue(response, new TypeReference<Map<String, String>>() {});
@@ -83,42 +119,45 @@ public class ApiDataRetriever {
     // Retrieves the list of restaurants from the API.
     public Restaurant[] fetchRestaurants(String url) throws IOException, InterruptedException {
         String urlString = url + "/restaurants";
-        String response = sendRequest(urlString);
+        String response = sendRequest(urlString, "restaurants");
         return objectMapper.readValue(response, Restaurant[].class);
     }
 
     // Fetches the orders for a specific date from the API.
     public Order[] fetchOrders(String url, String date) throws IOException, InterruptedException {
-        // 1. Fetch ALL orders
-        String urlString = url + "/orders";
-        String response = sendRequest(urlString);
-        Order[] allOrders = objectMapper.readValue(response, Order[].class);
-
-        // 2. Filter in-memory by the date field
         List<Order> filtered = new ArrayList<>();
-        for (Order o : allOrders) {
-            // If your Order class has getOrderDate() returning a LocalDate
-            // and you want it to match the input date (e.g. "2025-01-23" as a string),
-            // do something like this:
-            if (o.getOrderDate() != null && o.getOrderDate().toString().equals(date)) {
-                filtered.add(o);
+        streamOrders(url, date, filtered::add);
+        return filtered.toArray(new Order[0]);
+    }
+
+    // Streams the orders for a specific date from the API, handing each one to the sink as soon as it is parsed.
+    public void streamOrders(String url, String date, OrderSink sink) throws IOException, InterruptedException {
+        // 1. Stream ALL orders
+        String urlString = url + "/orders";
+        try (InputStream body = sendStreamingRequest(urlString, "orders");
+             MappingIterator<Order> allOrders = objectMapper.readerFor(Order.class).readValues(body)) {
+            // 2. Filter by the date field while parsing
+            while (allOrders.hasNextValue()) {
+                Order o = allOrders.nextValue();
+                if (o.getOrderDate() != null && o.getOrderDate().toString().equals(date)) {
+                    sink.accept(o);
+                }
             }
         }
-        return filtered.toArray(new Order[0]);
     }
 
 
     // Obtains the central area coordinates from the API.
     public NamedRegion fetchCentralArea(String url) throws IOException, InterruptedException {
         String urlString = url + "/centralArea";
-        String response = sendRequest(urlString);
+        String response = sendRequest(urlString, "centralArea");
         return objectMapper.readValue(response, NamedRegion.class);
     }
 
     // Gets the no-fly zones from the API.
     public NamedRegion[] fetchNoFlyZones(String url) throws IOException, InterruptedException {
         String urlString = url + "/noFlyZones";
-        String response = sendRequest(urlString);
+        String response = sendRequest(urlString, "noFlyZones");
         return objectMapper.readValue(response, NamedRegion[].class);
     }
 }
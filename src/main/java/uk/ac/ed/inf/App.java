@@ -1,15 +1,14 @@
 package uk.ac.ed.inf;
 
-import uk.ac.ed.inf.ilp.constant.OrderStatus;
-import uk.ac.ed.inf.ilp.data.NamedRegion;
-import uk.ac.ed.inf.ilp.data.Order;
-import uk.ac.ed.inf.ilp.data.Restaurant;
-
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 /**
  * The main class of the drone delivery service application.
@@ -17,14 +16,74 @@ import java.util.List;
  * Has:
  *  - public static void main(...) for normal usage
  *  - public static void runEverything(...) for JUnit test usage
+ *
+ * "java -jar ... --serve API_URL [--server.port=...]" starts the long-running planning service instead
+ * (see PlanningServiceApplication), which keeps data and caches warm between dates.
+ *
+ * "java -jar ... --dump-cds ARCHIVE DATE API_URL" does a normal run of the date in a child JVM that records
+ * every class it loads into an AppCDS archive, the child getting the same JVM options as this one; later runs
+ * started with those options and -XX:SharedArchiveFile=ARCHIVE map those classes in instead of loading them
+ * from the jars, which cuts the startup time.
+ *
+ * Optional behaviour is switched on with system properties:
+ *  - pizzadronz.geojson.featurePerOrder=true writes one GeoJSON feature per order
+ *  - pizzadronz.flightpath.binary=true also writes the flightpath in the compact binary format
+ *  - pizzadronz.fullRun=true validates and plans every order again instead of reusing the last run of the date
+ *  - pizzadronz.outputs=deliveries,flightpath,geojson,binary,metrics chooses the result files (default: the first
+ *    three); libraries needed only by files that are not chosen are never loaded. metrics writes the meters listed
+ *    in DeliveryMetrics to resultfiles/metrics-DATE.prom, in the Prometheus text format
+ *  - pizzadronz.report=true prints a report of the run to stdout: how many orders were reused from the last run
+ *    of the date, how often each validation rule ran and rejected, and how long each part of the run took
+ *  - pizzadronz.planner=greedy|astar|alt|hpa|corridor|anytime chooses how paths are searched for (see PlannerMode; default greedy)
+ *  - pizzadronz.planner.budgetMs=50 is the time the anytime planner may spend on a path before using the best so far
+ *  - pizzadronz.planner.headings=16 is the number of headings a move may take: 8 plans faster, 32 flies shorter paths
+ *  - pizzadronz.geometry.store=DIR keeps the structures built from the no-fly zones in DIR (see GeometryStore), so runs
+ *    with the same zones as an earlier one read them instead of building them
+ *
+ * For per-order detail, start the JVM with -XX:StartFlightRecording=filename=run.jfr (or attach with
+ * "jcmd PID JFR.start"): every order then gets an OrderValidationEvent and an OrderPlanningEvent, and every
+ * path request a RouteSearchEvent, which JDK Mission Control or "jfr print --categories PizzaDronz run.jfr" show.
+ *
+ * Starting the JVM with --add-modules jdk.incubator.vector lets the path planner test its candidate moves against
+ * the no-fly zones with SIMD instructions (see PolygonBatchKernel); the flight paths are the same either way.
  */
 public class App {
 
+    // System property that switches the GeoJSON output to one feature per order.
+    static final String GEOJSON_FEATURE_PER_ORDER = "pizzadronz.geojson.featurePerOrder";
+    // System property that adds a binary flightpath file next to the JSON one.
+    static final String FLIGHTPATH_BINARY = "pizzadronz.flightpath.binary";
+    // First argument that starts the planning service instead of a single run.
+    static final String SERVE = "--serve";
+    // System property that ignores the saved state of earlier runs of the same date.
+    static final String FULL_RUN = "pizzadronz.fullRun";
+    // System property listing the result files to write.
+    static final String OUTPUTS = "pizzadronz.outputs";
+    // System property that prints a report of the run.
+    static final String REPORT = "pizzadronz.report";
+    // First argument that records an AppCDS archive from a normal run.
+    static final String DUMP_CDS = "--dump-cds";
+
     /**
      * Normal entry point when running "java -jar".
      * Wraps runEverything(...) so on exception we do System.exit(1).
      */
     public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(SERVE)) {
+            if (args.length < 2 || !args[1].matches("https://.*")) {
+                System.err.println("Argument error: " + SERVE + " requires an API URL beginning with 'https://'");
+                System.exit(1);
+            }
+            PlanningServiceApplication.start(args[1], Arrays.copyOfRange(args, 2, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals(DUMP_CDS)) {
+            if (args.length != 4) {
+                System.err.println("Argument error: " + DUMP_CDS + " requires an archive file, a date and an API URL");
+                System.exit(1);
+            }
+            System.exit(dumpCdsArchive(args[1], Arrays.copyOfRange(args, 2, args.length)));
+        }
         try {
             runEverything(args);
         } catch (Exception e) {
@@ -38,6 +97,7 @@ public class App {
      * and verify outputs without killing the JVM with System.exit.
      */
     public static void runEverything(String[] args) throws IOException, InterruptedException {
+        long entered = System.nanoTime();
         // 1) Check argument count
         if (args.length != 2) {
             throw new IllegalArgumentException("Argument error: Two arguments required - date and API URL");
@@ -54,63 +114,92 @@ public class App {
             throw new IllegalArgumentException("URL error: URL must begin with 'https://'");
         }
 
+        Set<ResultFile> outputs = ResultFile.parse(System.getProperty(OUTPUTS, "deliveries,flightpath,geojson"));
+        if (Boolean.getBoolean(FLIGHTPATH_BINARY)) {
+            outputs.add(ResultFile.BINARY);
+        }
+
+        // Without the metrics file the meters go to the empty global registry, which ignores them
+        if (!outputs.remove(ResultFile.METRICS)) {
+            runPipeline(date, url, outputs, entered);
+            return;
+        }
+        try (PrometheusMetricsFile metrics = PrometheusMetricsFile.start()) {
+            runPipeline(date, url, outputs, entered);
+            File outputDir = new File("resultfiles");
+            outputDir.mkdirs();
+            metrics.write(new File(outputDir, ResultFile.METRICS.fileName(date)));
+        }
+    }
+
+    // Checks the server and runs the pipeline, then reports what happened
+    private static void runPipeline(String date, String url, Set<ResultFile> outputs, long entered)
+            throws IOException, InterruptedException {
         // 4) Check server health
         boolean serviceUp = ApiDataRetriever.getInstance().serviceAlive(url);
         if (!serviceUp) {
             throw new IllegalStateException("Service error: Service is not responding");
         }
-
-        // 5) Fetch data
-        Restaurant[] restaurants = ApiDataRetriever.getInstance().fetchRestaurants(url);
-        Order[] orders = ApiDataRetriever.getInstance().fetchOrders(url, date);
-        NamedRegion centralArea = ApiDataRetriever.getInstance().fetchCentralArea(url);
-        NamedRegion[] noFlyZones = ApiDataRetriever.getInstance().fetchNoFlyZones(url);
-
-        // 6) Validate & process orders
-        List<Order> validOrders = validateOrders(orders, restaurants);
-
-        RouteOptimizer optimizer = new RouteOptimizer(noFlyZones, centralArea, restaurants, validOrders);
-        List<DroneMovement> paths = optimizer.optimizeRoutes();
-
-        // 7) Output
-        String year = date.substring(0,4);
-        String month = date.substring(5,7);
-        String day = date.substring(8,10);
-
-        new File("resultfiles").mkdirs();
-
-        writeDeliveryJson(orders, year, month, day);
-        writeFlightpathJson(paths, year, month, day);
-        writeGeoJson(paths, year, month, day);
-    }
-
-    private static List<Order> validateOrders(Order[] orders, Restaurant[] restaurants) {
-        OrderValidationImpl validator = new OrderValidationImpl();
-        List<Order> valid = new ArrayList<>();
-        for (Order o : orders) {
-            Order checked = validator.validateOrder(o, restaurants);
-            if (checked.getOrderStatus() != OrderStatus.INVALID) {
-                valid.add(o);
-            }
+        long healthChecked = System.nanoTime();
+
+        // 5) Fetch, validate, plan and write as one pipeline, so the stages overlap;
+        //    orders unchanged since the last run of the date are not validated or planned again
+        DeliveryPipeline pipeline = new DeliveryPipeline(url, date, new File("resultfiles"), outputs,
+                Boolean.getBoolean(GEOJSON_FEATURE_PER_ORDER), !Boolean.getBoolean(FULL_RUN));
+        pipeline.run();
+        long finished = System.nanoTime();
+
+        if (Boolean.getBoolean(REPORT)) {
+            System.out.println("Orders reused from the previous run: " + pipeline.getReusedOrderCount());
+            System.out.println(pipeline.getValidationEngine().formatReport());
+            System.out.println(formatTimings(entered, healthChecked, finished));
         }
-        return valid;
     }
 
-    private static void writeDeliveryJson(Order[] orders, String y, String m, String d) throws IOException {
-        try (FileWriter fw = new FileWriter("resultfiles/deliveries-" + y + "-" + m + "-" + d + ".json")) {
-            fw.write(OrderDeliveryJsonFormatter.formatDeliveriesToJson(orders));
+    // Formats how long the JVM took to reach the application, and how long each part of the run took
+    private static String formatTimings(long entered, long healthChecked, long finished) {
+        StringBuilder timings = new StringBuilder("Timings:");
+        Instant jvmStart = ProcessHandle.current().info().startInstant().orElse(null);
+        if (jvmStart != null) {
+            // The process start time is only known to the millisecond, so go back from now rather than forward
+            long sinceStart = System.currentTimeMillis() - jvmStart.toEpochMilli();
+            long sinceEntered = (System.nanoTime() - entered) / 1_000_000;
+            timings.append(String.format(" JVM start to main %d ms,", sinceStart - sinceEntered));
         }
+        timings.append(String.format(" health check %d ms, pipeline %d ms, total in main %d ms",
+                (healthChecked - entered) / 1_000_000, (finished - healthChecked) / 1_000_000, (finished - entered) / 1_000_000));
+        return timings.toString();
     }
 
-    private static void writeFlightpathJson(List<DroneMovement> paths, String y, String m, String d) throws IOException {
-        try (FileWriter fw = new FileWriter("resultfiles/flightpath-" + y + "-" + m + "-" + d + ".json")) {
-            fw.write(DroneFlightpathJsonFormatter.formatFlightpathsToJson(paths));
+    // Does a normal run in a child JVM that writes the classes it loaded to an AppCDS archive when it exits.
+    // The child gets this JVM's options, so the archive matches the classes a run with those options loads.
+    // Returns the child's exit code.
+    private static int dumpCdsArchive(String archive, String[] runArgs) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-XX:ArchiveClassesAtExit=" + archive);
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // Another archive would clash with the one being written, and a debugger with this JVM's port
+            if (!option.startsWith("-XX:ArchiveClassesAtExit") && !option.startsWith("-XX:SharedArchiveFile")
+                    && !option.startsWith("-Xshare") && !option.startsWith("-agentlib:jdwp")) {
+                command.add(option);
+            }
         }
-    }
-
-    private static void writeGeoJson(List<DroneMovement> paths, String y, String m, String d) throws IOException {
-        try (FileWriter fw = new FileWriter("resultfiles/drone-" + y + "-" + m + "-" + d + ".geojson")) {
-            fw.write(DronePathGeoJsonFormatter.formatPathToGeoJson(paths));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("pizzadronz.")) {
+                command.add("-D" + name + "=" + System.getProperty(name)); // Record the same outputs as will be used
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(App.class.getName());
+        command.addAll(Arrays.asList(runArgs));
+
+        int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+        if (exitCode == 0) {
+            System.out.println("AppCDS archive written to " + archive + ". Use it with the same JVM options and: java -XX:SharedArchiveFile="
+                    + archive + " -jar <jar> DATE API_URL");
         }
+        return exitCode;
     }
 }
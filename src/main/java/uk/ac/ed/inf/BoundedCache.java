@@ -0,0 +1,43 @@
+package uk.ac.ed.inf;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A small thread-safe cache of structures built from the reference data, such as prepared regions.
+ *
+ * The reference data comes and goes with the runs, so the cache keeps no usage order: it is simply emptied
+ * when it is full, which keeps only recent entries. A value is built once per key while it is cached, even
+ * when several threads ask for the same key at once; the others wait for it instead of building their own.
+ * @param <K> The key, compared with equals.
+ * @param <V> The structure built for a key.
+ */
+public final class BoundedCache<K, V> {
+    private final int maxSize; // The cache is emptied when it would grow past this.
+    private final ConcurrentHashMap<K, V> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for BoundedCache.
+     * @param maxSize The most entries kept at once.
+     */
+    public BoundedCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the value cached for a key, building and caching it if there is none.
+     * @param key The key.
+     * @param build Builds the value of a key. It must not use this cache itself.
+     * @return The cached or newly built value.
+     */
+    public V get(K key, Function<? super K, ? extends V> build) {
+        V value = entries.get(key);
+        if (value != null) {
+            return value;
+        }
+        if (entries.size() >= maxSize) {
+            entries.clear();
+        }
+        return entries.computeIfAbsent(key, build);
+    }
+}
@@ -0,0 +1,83 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+/**
+ * An axis-aligned box of longitudes and latitudes, boundary included.
+ */
+final class BoundingBox implements AStarSearch.Bounds {
+    final double minLng;
+    final double minLat;
+    final double maxLng;
+    final double maxLat;
+
+    /**
+     * Constructor for BoundingBox class.
+     * @param minLng Western edge.
+     * @param minLat Southern edge.
+     * @param maxLng Eastern edge.
+     * @param maxLat Northern edge.
+     */
+    BoundingBox(double minLng, double minLat, double maxLng, double maxLat) {
+        this.minLng = minLng;
+        this.minLat = minLat;
+        this.maxLng = maxLng;
+        this.maxLat = maxLat;
+    }
+
+    /**
+     * @param points The points, at least one.
+     * @return The smallest box holding every point.
+     */
+    static BoundingBox of(LngLat[] points) {
+        double minLng = Double.POSITIVE_INFINITY, maxLng = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (LngLat point : points) {
+            minLng = Math.min(minLng, point.lng());
+            maxLng = Math.max(maxLng, point.lng());
+            minLat = Math.min(minLat, point.lat());
+            maxLat = Math.max(maxLat, point.lat());
+        }
+        return new BoundingBox(minLng, minLat, maxLng, maxLat);
+    }
+
+    /**
+     * @param lng Longitude of a position.
+     * @param lat Latitude of a position.
+     * @return Whether the position lies in the box.
+     */
+    @Override
+    public boolean contains(double lng, double lat) {
+        return lng >= minLng && lng <= maxLng && lat >= minLat && lat <= maxLat;
+    }
+
+    /**
+     * @param other Another box.
+     * @return Whether the boxes share any point, boundaries included.
+     */
+    boolean intersects(BoundingBox other) {
+        return minLng <= other.maxLng && other.minLng <= maxLng && minLat <= other.maxLat && other.minLat <= maxLat;
+    }
+
+    /**
+     * @param other Another box.
+     * @return The smallest box holding both.
+     */
+    BoundingBox union(BoundingBox other) {
+        return new BoundingBox(Math.min(minLng, other.minLng), Math.min(minLat, other.minLat),
+                Math.max(maxLng, other.maxLng), Math.max(maxLat, other.maxLat));
+    }
+
+    /**
+     * @param margin Distance, in degrees, to move every edge outwards.
+     * @return The enlarged box.
+     */
+    BoundingBox expandedBy(double margin) {
+        return new BoundingBox(minLng - margin, minLat - margin, maxLng + margin, maxLat + margin);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + minLng + ", " + minLat + " .. " + maxLng + ", " + maxLat + "]";
+    }
+}
@@ -0,0 +1,112 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The positions near a path, for searching the drone's moves only around a route already found on a coarser
+ * lattice. The corridor is held as the cells, one move wide, within a number of cells of a position on the path,
+ * each labelled with the furthest position along the path it is near.
+ */
+final class Corridor implements AStarSearch.Bounds {
+    private static final double CELL_SIZE = SystemConstants.DRONE_MOVE_DISTANCE; // A cell is one move wide.
+    private static final double PATH_WEIGHT = 2; // Inflation of the estimate, so the search keeps moving along.
+
+    private final List<LngLat> positions = new ArrayList<>(); // The positions along the path, from its start.
+    private final HashMap<Long, Integer> progress = new HashMap<>(); // Furthest position near each cell.
+    private final int halfWidth; // Cells either side of the path.
+
+    /**
+     * Constructor for Corridor class.
+     * @param path The moves to keep near, each no longer than a cell.
+     * @param halfWidth How many cells either side of the path the corridor reaches.
+     */
+    Corridor(List<DroneMovement> path, int halfWidth) {
+        this.halfWidth = halfWidth;
+        for (DroneMovement movement : path) {
+            if (movement.getAngle() != 999) {
+                positions.add(movement.getStart());
+            }
+        }
+        if (!path.isEmpty()) {
+            positions.add(path.get(path.size() - 1).getEnd());
+        }
+        for (int i = 0; i < positions.size(); i++) {
+            addAround(i);
+        }
+    }
+
+    /**
+     * @param lng Longitude of a position.
+     * @param lat Latitude of a position.
+     * @return Whether the position lies in the corridor.
+     */
+    @Override
+    public boolean contains(double lng, double lat) {
+        return progress.containsKey(key(lng, lat));
+    }
+
+    /**
+     * The estimate of the moves to the destination by way of the path: to the best position on it nearby, then
+     * along it, then on to the destination, inflated by PATH_WEIGHT. It follows the path round the no-fly zones
+     * where the straight line does not, and the inflation makes the search press on rather than try every equally
+     * short way, so only a little of the corridor is explored; it is not a lower bound, so the moves found can be
+     * a few more than the shortest in the corridor.
+     * @param end The destination, near the end of the path.
+     * @param headings The headings the drone may take.
+     * @return The heuristic.
+     */
+    AStarSearch.Heuristic towards(LngLat end, HeadingTable headings) {
+        AStarSearch.Heuristic straightLine =
+                AStarSearch.straightLine(end, SystemConstants.DRONE_IS_CLOSE_DISTANCE, headings);
+        LngLat last = positions.get(positions.size() - 1);
+        double fromLast = straightLine.movesToGoal(last.lng(), last.lat());
+        return (lng, lat) -> {
+            double estimate = straightLine.movesToGoal(lng, lat);
+            Integer index = progress.get(key(lng, lat));
+            if (index != null) {
+                // The best position to rejoin the path at is among those the cell is near
+                double byPath = Double.POSITIVE_INFINITY;
+                for (int i = Math.max(0, index - 2 * halfWidth); i <= index; i++) {
+                    LngLat via = positions.get(i);
+                    byPath = Math.min(byPath, headings.movesAlong(via.lng() - lng, via.lat() - lat) + (positions.size() - 1 - i));
+                }
+                estimate = Math.max(estimate, byPath + fromLast);
+            }
+            return PATH_WEIGHT * estimate;
+        };
+    }
+
+    /**
+     * @return The number of cells in the corridor, one move square each.
+     */
+    int size() {
+        return progress.size();
+    }
+
+    // Adds the cells within a disc round a position on the path; positions are added in order, so later ones win
+    private void addAround(int index) {
+        LngLat position = positions.get(index);
+        long column = (long) Math.floor(position.lng() / CELL_SIZE);
+        long row = (long) Math.floor(position.lat() / CELL_SIZE);
+        for (int rowOffset = -halfWidth; rowOffset <= halfWidth; rowOffset++) {
+            for (int columnOffset = -halfWidth; columnOffset <= halfWidth; columnOffset++) {
+                if (rowOffset * rowOffset + columnOffset * columnOffset <= halfWidth * halfWidth) {
+                    progress.put(key(column + columnOffset, row + rowOffset), index);
+                }
+            }
+        }
+    }
+
+    private static long key(double lng, double lat) {
+        return key((long) Math.floor(lng / CELL_SIZE), (long) Math.floor(lat / CELL_SIZE));
+    }
+
+    private static long key(long column, long row) {
+        return (column << 32) ^ (row & 0xFFFFFFFFL);
+    }
+}
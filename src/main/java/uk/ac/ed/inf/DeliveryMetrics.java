@@ -0,0 +1,145 @@
+package uk.ac.ed.inf;
+
+import io.micrometer.core.instrument.*;
+
+import java.util.Locale;
+
+/**
+ * The Micrometer meters of a run, all registered in Metrics.globalRegistry.
+ *
+ * In service mode Spring Boot adds its registries to the global one, so the meters appear under
+ * /actuator/metrics and /actuator/prometheus. A CLI run that selects the metrics result file collects them with
+ * PrometheusMetricsFile; other CLI runs add no registry, so their samples are dropped.
+ *
+ * Meters:
+ *  - pizzadronz.fetch (timer, tag endpoint): time until the API answers each request
+ *  - pizzadronz.validation.rule (timer, tag rule): time spent in each validation rule
+ *  - pizzadronz.planning.order (timer): time to plan the route of one order
+ *  - pizzadronz.planning.unreachable (counter): valid orders left undelivered as no path reaches their restaurant
+ *  - pizzadronz.planner.cache (counter, tag result=hit|miss): route cache lookups
+ *  - pizzadronz.planner.cache.invalidated (counter): cached routes dropped because a no-fly zone changed near them
+ *  - pizzadronz.geometry.store (counter, tag result=hit|miss): zone structures read from, or built for, the GeometryStore
+ *  - pizzadronz.planner.expanded (summary, tag planner): nodes expanded per path searched
+ *  - pizzadronz.planner.search (timer, tag planner): time spent per path searched
+ *  - pizzadronz.planner.bound (summary): suboptimality bound of each path the anytime planner returns
+ *  - pizzadronz.route.moves (summary): moves flown per delivered order
+ *  - pizzadronz.output.write (timer, tag file): time spent writing each result file
+ *  - pizzadronz.output.bytes (summary, tag file): size of each result file written
+ */
+public final class DeliveryMetrics {
+
+    private DeliveryMetrics() {
+    }
+
+    /**
+     * @param endpoint The API endpoint, such as "orders".
+     * @return The timer for requests to that endpoint.
+     */
+    public static Timer fetch(String endpoint) {
+        return Timer.builder("pizzadronz.fetch").description("Time until the data API answers a request")
+                .tag("endpoint", endpoint).register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @param rule The validation rule.
+     * @return The timer for checks of that rule.
+     */
+    public static Timer validationRule(OrderValidationRule rule) {
+        return Timer.builder("pizzadronz.validation.rule").description("Time spent checking a validation rule")
+                .tag("rule", rule.name()).register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @return The timer for planning the route of one order.
+     */
+    public static Timer planningPerOrder() {
+        return Timer.builder("pizzadronz.planning.order").description("Time to plan the route of one order")
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @return The counter of valid orders whose restaurant no path can reach.
+     */
+    public static Counter unreachableOrders() {
+        return Counter.builder("pizzadronz.planning.unreachable")
+                .description("Valid orders left undelivered as no path reaches their restaurant").register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @param hit True for the counter of cache hits, false for misses.
+     * @return The counter of route cache lookups with that result.
+     */
+    public static Counter plannerCache(boolean hit) {
+        return Counter.builder("pizzadronz.planner.cache").description("Route cache lookups")
+                .tag("result", hit ? "hit" : "miss").register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @param hit True for the counter of structures read from the store, false for those that had to be built.
+     * @return The counter of GeometryStore lookups with that result.
+     */
+    public static Counter geometryStore(boolean hit) {
+        return Counter.builder("pizzadronz.geometry.store").description("Zone structures read from the geometry store or built")
+                .tag("result", hit ? "hit" : "miss").register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @return The counter of cached routes dropped because a no-fly zone changed near them.
+     */
+    public static Counter routesInvalidated() {
+        return Counter.builder("pizzadronz.planner.cache.invalidated")
+                .description("Cached routes dropped because a no-fly zone changed near them").register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @param mode The mode of the planner.
+     * @return The distribution of the nodes that planner expands per path searched.
+     */
+    public static DistributionSummary nodesExpanded(PlannerMode mode) {
+        return DistributionSummary.builder("pizzadronz.planner.expanded").description("Nodes expanded per path searched")
+                .tag("planner", mode.name().toLowerCase(Locale.ROOT)).register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @param mode The mode of the planner.
+     * @return The timer for that planner's path searches.
+     */
+    public static Timer searchTime(PlannerMode mode) {
+        return Timer.builder("pizzadronz.planner.search").description("Time spent per path searched")
+                .tag("planner", mode.name().toLowerCase(Locale.ROOT)).register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @return The distribution of how many times the shortest path's moves each anytime path may have at most.
+     */
+    public static DistributionSummary suboptimalityBound() {
+        return DistributionSummary.builder("pizzadronz.planner.bound")
+                .description("Suboptimality bound of each path the anytime planner returns").register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @return The distribution of moves flown per delivered order.
+     */
+    public static DistributionSummary movesPerOrder() {
+        return DistributionSummary.builder("pizzadronz.route.moves").description("Moves flown per delivered order")
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @param file The result file.
+     * @return The timer for writing that file.
+     */
+    public static Timer outputWrite(ResultFile file) {
+        return Timer.builder("pizzadronz.output.write").description("Time spent writing a result file")
+                .tag("file", file.name().toLowerCase(Locale.ROOT)).register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @param file The result file.
+     * @return The distribution of the sizes that file was written with.
+     */
+    public static DistributionSummary outputBytes(ResultFile file) {
+        return DistributionSummary.builder("pizzadronz.output.bytes").description("Size of a result file written")
+                .baseUnit("bytes").tag("file", file.name().toLowerCase(Locale.ROOT)).register(Metrics.globalRegistry);
+    }
+}
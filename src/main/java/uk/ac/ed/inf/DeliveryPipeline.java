@@ -0,0 +1,424 @@
+package uk.ac.ed.inf;
+
+import io.micrometer.core.instrument.Timer;
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Order;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.FilterOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Runs a whole day of deliveries as a staged pipeline instead of strict phases.
+ *
+ * Four stages run on their own threads and hand work over through bounded queues:
+ *  1) fetch    - streams the day's orders from the API while they are being parsed
+ *  2) validate - validates the orders that have arrived so far, in parallel, with OrderValidationEngine
+ *  3) plan     - plans the route of each valid order as soon as it has been validated
+ *  4) write    - appends each order and its route to the output files as soon as it is planned
+ * A full queue blocks the stage feeding it, so a slow stage holds back the faster ones before it.
+ *
+ * Orders pass through every stage in their original order, so the output files are exactly
+ * what the phased run produced.
+ *
+ * Runs are incremental: DeliveryStateStore remembers what the last run of the date produced, and orders
+ * that are unchanged since then skip validation and planning, with their routes taken from the previous
+ * flightpath file. The outputs are still written in full, so they are the same as a run from scratch.
+ *
+ * Only the selected ResultFiles are written, and the writers of the others are never loaded.
+ */
+public class DeliveryPipeline {
+    static final int QUEUE_CAPACITY = 256; // Maximum number of items waiting between two stages.
+
+    // Marks the end of the order stream in the order queues.
+    private static final Order END_OF_ORDERS = new Order();
+    // Marks the end of the order stream in the planning and write queues.
+    private static final PlannedOrder END_OF_ROUTES = new PlannedOrder(END_OF_ORDERS, null, List.of());
+
+    private final String url; // Base URL of the REST API.
+    private final String date; // Date to process, as YYYY-MM-DD.
+    private final File outputDir; // Directory the result files are written to.
+    private final Set<ResultFile> outputs; // The result files to write.
+    private final boolean featurePerOrder; // True to write one GeoJSON feature per order.
+    private final boolean incremental; // True to reuse what the previous run of the date produced.
+
+    private final OrderValidationEngine validationEngine = new OrderValidationEngine();
+    private final DeliveryStateStore stateStore;
+    private volatile String environmentFingerprint; // Set by the validate stage before it passes on any order.
+    private volatile int reusedOrders; // Orders taken from the previous run instead of being processed again.
+
+    private final BlockingQueue<Order> toValidate = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<PlannedOrder> toPlan = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<PlannedOrder> toWrite = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * An order together with its fingerprint and the route flown for it
+     * (empty for orders that are not delivered, null while the route still has to be planned).
+     */
+    private static final class PlannedOrder {
+        private final Order order;
+        private final String fingerprint;
+        private final List<DroneMovement> route;
+
+        private PlannedOrder(Order order, String fingerprint, List<DroneMovement> route) {
+            this.order = order;
+            this.fingerprint = fingerprint;
+            this.route = route;
+        }
+    }
+
+    /**
+     * Constructor for DeliveryPipeline.
+     * @param url Base URL of the REST API.
+     * @param date Date to process, as YYYY-MM-DD.
+     * @param outputDir Directory the result files are written to.
+     * @param featurePerOrder True to write one GeoJSON feature per order.
+     * @param writeBinary True to also write the binary flightpath file.
+     */
+    public DeliveryPipeline(String url, String date, File outputDir, boolean featurePerOrder, boolean writeBinary) {
+        this(url, date, outputDir, featurePerOrder, writeBinary, true);
+    }
+
+    /**
+     * Constructor for DeliveryPipeline.
+     * @param url Base URL of the REST API.
+     * @param date Date to process, as YYYY-MM-DD.
+     * @param outputDir Directory the result files are written to.
+     * @param featurePerOrder True to write one GeoJSON feature per order.
+     * @param writeBinary True to also write the binary flightpath file.
+     * @param incremental True to reuse what the previous run of the date produced, false to process every order again.
+     */
+    public DeliveryPipeline(String url, String date, File outputDir, boolean featurePerOrder, boolean writeBinary,
+                            boolean incremental) {
+        this(url, date, outputDir, withBinary(writeBinary), featurePerOrder, incremental);
+    }
+
+    /**
+     * Constructor for DeliveryPipeline.
+     * @param url Base URL of the REST API.
+     * @param date Date to process, as YYYY-MM-DD.
+     * @param outputDir Directory the result files are written to.
+     * @param outputs The result files to write. Routes can only be reused by later runs if FLIGHTPATH is written.
+     * @param featurePerOrder True to write one GeoJSON feature per order.
+     * @param incremental True to reuse what the previous run of the date produced, false to process every order again.
+     */
+    public DeliveryPipeline(String url, String date, File outputDir, Set<ResultFile> outputs, boolean featurePerOrder,
+                            boolean incremental) {
+        this.url = url;
+        this.date = date;
+        this.outputDir = outputDir;
+        this.outputs = EnumSet.noneOf(ResultFile.class);
+        this.outputs.addAll(outputs);
+        this.outputs.remove(ResultFile.METRICS); // Written by App once the run is over
+        this.featurePerOrder = featurePerOrder;
+        // The state refers to routes by their place in the flightpath file
+        this.incremental = incremental && outputs.contains(ResultFile.FLIGHTPATH);
+        this.stateStore = new DeliveryStateStore(outputDir, date);
+    }
+
+    // The default result files, plus the binary flightpath if asked for
+    private static Set<ResultFile> withBinary(boolean writeBinary) {
+        Set<ResultFile> outputs = EnumSet.copyOf(ResultFile.DEFAULT);
+        if (writeBinary) {
+            outputs.add(ResultFile.BINARY);
+        }
+        return outputs;
+    }
+
+    /**
+     * Runs the pipeline to completion and writes the selected result files.
+     * If any stage fails, the other stages are stopped and the failure is rethrown.
+     * @throws IOException If fetching data or writing a result file fails.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public void run() throws IOException, InterruptedException {
+        ApiDataRetriever retriever = ApiDataRetriever.getInstance();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            // Reference data is small, so it is fetched alongside the order stream
+            Future<Restaurant[]> restaurants = executor.submit(() -> retriever.fetchRestaurants(url));
+            Future<NamedRegion> centralArea = executor.submit(() -> retriever.fetchCentralArea(url));
+            Future<NamedRegion[]> noFlyZones = executor.submit(() -> retriever.fetchNoFlyZones(url));
+
+            CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+            stages.submit(() -> fetch(retriever));
+            stages.submit(() -> validate(restaurants, centralArea, noFlyZones));
+            stages.submit(() -> plan(restaurants, centralArea, noFlyZones));
+            stages.submit(this::write);
+
+            // Wait for every stage; the first failure stops the rest
+            for (int i = 0; i < 4; i++) {
+                try {
+                    stages.take().get();
+                } catch (ExecutionException e) {
+                    throw rethrow(e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the engine that validated the orders, for its per-rule statistics.
+     * @return The validation engine used by this pipeline.
+     */
+    public OrderValidationEngine getValidationEngine() {
+        return validationEngine;
+    }
+
+    /**
+     * Returns how many orders were taken unchanged from the previous run of the date.
+     * @return The number of orders that were neither validated nor planned again.
+     */
+    public int getReusedOrderCount() {
+        return reusedOrders;
+    }
+
+    // Stage 1: streams the day's orders into the validation queue.
+    private Void fetch(ApiDataRetriever retriever) throws IOException, InterruptedException {
+        retriever.streamOrders(url, date, toValidate::put);
+        toValidate.put(END_OF_ORDERS);
+        return null;
+    }
+
+    // Stage 2: validates whatever orders are waiting as one parallel batch, then passes all of them on in order.
+    // Orders that are unchanged since the previous run take its result and route instead.
+    private Void validate(Future<Restaurant[]> restaurants, Future<NamedRegion> centralArea,
+                          Future<NamedRegion[]> noFlyZones) throws Exception {
+        Restaurant[] definedRestaurants = restaurants.get();
+        environmentFingerprint = DeliveryStateStore.environmentFingerprint(definedRestaurants, centralArea.get(),
+                noFlyZones.get(), PlannerMode.configured(), DronePathPlanner.configuredBudgetMillis(),
+                DronePathPlanner.configuredHeadings());
+        Map<String, DeliveryStateStore.Entry> previousRun = incremental ? stateStore.load(environmentFingerprint) : Map.of();
+
+        List<Order> batch = new ArrayList<>();
+        List<Order> changed = new ArrayList<>();
+        List<PlannedOrder> passOn = new ArrayList<>();
+        boolean endOfOrders = false;
+        while (!endOfOrders) {
+            batch.add(toValidate.take());
+            toValidate.drainTo(batch, QUEUE_CAPACITY);
+            endOfOrders = batch.get(batch.size() - 1) == END_OF_ORDERS;
+            if (endOfOrders) {
+                batch.remove(batch.size() - 1);
+            }
+
+            for (Order order : batch) {
+                String fingerprint = DeliveryStateStore.orderFingerprint(order);
+                DeliveryStateStore.Entry previous = previousRun.get(order.getOrderNo());
+                if (previous != null && previous.getFingerprint().equals(fingerprint)) {
+                    order.setOrderStatus(previous.getOrderStatus());
+                    order.setOrderValidationCode(previous.getOrderValidationCode());
+                    passOn.add(new PlannedOrder(order, fingerprint, previous.getRoute()));
+                    reusedOrders++;
+                } else {
+                    changed.add(order);
+                    passOn.add(new PlannedOrder(order, fingerprint, null));
+                }
+            }
+            validationEngine.validateOrders(changed.toArray(new Order[0]), definedRestaurants);
+            for (PlannedOrder planned : passOn) {
+                toPlan.put(planned);
+            }
+            batch.clear();
+            changed.clear();
+            passOn.clear();
+        }
+        toPlan.put(END_OF_ROUTES);
+        return null;
+    }
+
+    // Stage 3: plans a route for each valid order that has none yet; invalid orders pass through with no route.
+    private Void plan(Future<Restaurant[]> restaurants, Future<NamedRegion> centralArea,
+                      Future<NamedRegion[]> noFlyZones) throws Exception {
+        RouteOptimizer optimizer = new RouteOptimizer(noFlyZones.get(), centralArea.get(), restaurants.get());
+        for (PlannedOrder planned = toPlan.take(); planned != END_OF_ROUTES; planned = toPlan.take()) {
+            if (planned.route == null) {
+                Order order = planned.order;
+                List<DroneMovement> route = order.getOrderStatus() == OrderStatus.INVALID
+                        ? List.of()
+                        : optimizer.optimizeRoute(order);
+                planned = new PlannedOrder(order, planned.fingerprint, route);
+            }
+            toWrite.put(planned);
+        }
+        toWrite.put(END_OF_ROUTES);
+        return null;
+    }
+
+    // Stage 4: appends each order and its route to the selected result files.
+    // The state of the run is saved last, once every result file is complete.
+    private Void write() throws IOException, InterruptedException {
+        // The previous run's files are read before the first order is passed on, so only open them after that
+        PlannedOrder planned = toWrite.take();
+        outputDir.mkdirs();
+        stateStore.clear(); // The outputs are about to change, so the old state no longer describes them
+        List<DeliveryStateStore.Entry> state = new ArrayList<>();
+        // Writers of files that were not selected stay null, so their classes and libraries are never loaded
+        try (OrderDeliveryJsonWriter deliveries = outputs.contains(ResultFile.DELIVERIES)
+                     ? new OrderDeliveryJsonWriter(openWriter(ResultFile.DELIVERIES)) : null;
+             DroneFlightpathJsonWriter flightpath = outputs.contains(ResultFile.FLIGHTPATH)
+                     ? new DroneFlightpathJsonWriter(openWriter(ResultFile.FLIGHTPATH)) : null;
+             DronePathGeoJsonWriter geoJson = outputs.contains(ResultFile.GEOJSON)
+                     ? new DronePathGeoJsonWriter(openWriter(ResultFile.GEOJSON), featurePerOrder) : null;
+             DroneFlightpathBinaryWriter binary = outputs.contains(ResultFile.BINARY)
+                     ? new DroneFlightpathBinaryWriter(openStream(ResultFile.BINARY),
+                             DroneFlightpathBinaryFormatter.headingsFor(DronePathPlanner.configuredHeadings())) : null) {
+            for (; planned != END_OF_ROUTES; planned = toWrite.take()) {
+                if (deliveries != null) {
+                    deliveries.write(planned.order);
+                }
+                for (DroneMovement movement : planned.route) {
+                    if (flightpath != null) {
+                        flightpath.write(movement);
+                    }
+                    if (geoJson != null) {
+                        geoJson.write(movement);
+                    }
+                    if (binary != null) {
+                        binary.write(movement);
+                    }
+                }
+                state.add(new DeliveryStateStore.Entry(planned.order.getOrderNo(), planned.fingerprint,
+                        planned.order.getOrderStatus(), planned.order.getOrderValidationCode(), planned.route));
+            }
+        }
+        for (ResultFile file : outputs) {
+            DeliveryMetrics.outputBytes(file).record(new File(outputDir, file.fileName(date)).length());
+        }
+        if (outputs.contains(ResultFile.FLIGHTPATH)) {
+            stateStore.save(environmentFingerprint, state);
+        }
+        return null;
+    }
+
+    // Opens a buffered writer for a result file, timed by the file's pizzadronz.output.write meter.
+    private Writer openWriter(ResultFile file) throws IOException {
+        return new TimedWriter(new BufferedWriter(new FileWriter(new File(outputDir, file.fileName(date)))),
+                DeliveryMetrics.outputWrite(file));
+    }
+
+    // Opens a file stream for a result file, timed by the file's pizzadronz.output.write meter.
+    private OutputStream openStream(ResultFile file) throws IOException {
+        return new TimedOutputStream(new FileOutputStream(new File(outputDir, file.fileName(date))),
+                DeliveryMetrics.outputWrite(file));
+    }
+
+    /**
+     * Adds up the time spent in the writer it wraps, including the final flush, and records it on close.
+     */
+    private static final class TimedWriter extends FilterWriter {
+        private final Timer timer;
+        private long nanos; // Time spent in the wrapped writer so far.
+
+        private TimedWriter(Writer out, Timer timer) {
+            super(out);
+            this.timer = timer;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            long start = System.nanoTime();
+            out.write(c);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void write(char[] chars, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(chars, off, len);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(str, off, len);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            try {
+                out.close();
+            } finally {
+                timer.record(nanos + System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * The same as TimedWriter for a byte stream. The binary writer buffers on top of it,
+     * so only the time spent passing whole buffers to the file is counted.
+     */
+    private static final class TimedOutputStream extends FilterOutputStream {
+        private final Timer timer;
+        private long nanos; // Time spent in the wrapped stream so far.
+
+        private TimedOutputStream(OutputStream out, Timer timer) {
+            super(out);
+            this.timer = timer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(bytes, off, len);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            try {
+                out.close();
+            } finally {
+                timer.record(nanos + System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    // Unwraps a stage failure so callers see the original exception.
+    private static IOException rethrow(ExecutionException e) throws InterruptedException {
+        Throwable cause = e.getCause();
+        while (cause instanceof ExecutionException && cause.getCause() != null) {
+            cause = cause.getCause(); // A stage that waited on a failed fetch
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+}
@@ -0,0 +1,305 @@
+package uk.ac.ed.inf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.data.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.DayOfWeek;
+import java.util.*;
+
+/**
+ * Remembers what a run produced for each order of a date, so that running the same date again
+ * only has to validate and plan the orders that are new or have changed.
+ *
+ * The state is kept in state-DATE.json next to the result files. For every order it records a fingerprint
+ * of the order as received from the API, the validation result, and where the order's route starts in
+ * flightpath-DATE.json and how many moves it has. The routes themselves are not copied: they are read back
+ * from the previous flightpath file. The state also records a fingerprint of the restaurants, central area,
+ * no-fly zones, planner mode (with its budget in the anytime mode) and number of headings; if any of those change,
+ * nothing from the previous run is reused.
+ */
+public class DeliveryStateStore {
+    private static final int VERSION = 1; // Format version of the state file.
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File stateFile; // The state file for the date.
+    private final File flightpathFile; // The flightpath file the route references point into.
+
+    /**
+     * What an earlier run produced for one order.
+     */
+    public static final class Entry {
+        private final String orderNo;
+        private final String fingerprint;
+        private final OrderStatus orderStatus;
+        private final OrderValidationCode orderValidationCode;
+        private final List<DroneMovement> route;
+
+        /**
+         * Constructor for Entry.
+         * @param orderNo The order number.
+         * @param fingerprint The fingerprint of the order as it was received.
+         * @param orderStatus The status the order ended with.
+         * @param orderValidationCode The validation code the order ended with.
+         * @param route The moves flown for the order, empty if it was not delivered.
+         */
+        public Entry(String orderNo, String fingerprint, OrderStatus orderStatus,
+                     OrderValidationCode orderValidationCode, List<DroneMovement> route) {
+            this.orderNo = orderNo;
+            this.fingerprint = fingerprint;
+            this.orderStatus = orderStatus;
+            this.orderValidationCode = orderValidationCode;
+            this.route = route;
+        }
+
+        public String getOrderNo() {
+            return orderNo;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public OrderStatus getOrderStatus() {
+            return orderStatus;
+        }
+
+        public OrderValidationCode getOrderValidationCode() {
+            return orderValidationCode;
+        }
+
+        public List<DroneMovement> getRoute() {
+            return route;
+        }
+    }
+
+    /**
+     * Constructor for DeliveryStateStore.
+     * @param outputDir Directory the result files and the state file are written to.
+     * @param date The date the state is for, as YYYY-MM-DD.
+     */
+    public DeliveryStateStore(File outputDir, String date) {
+        this.stateFile = new File(outputDir, "state-" + date + ".json");
+        this.flightpathFile = new File(outputDir, "flightpath-" + date + ".json");
+    }
+
+    /**
+     * Loads what the previous run of the date produced.
+     * Nothing is returned if there was no previous run, if the reference data has changed since,
+     * or if the state or flightpath file is missing, unreadable or does not match the other.
+     * @param environmentFingerprint Fingerprint of the current reference data, from environmentFingerprint.
+     * @return The previous entries by order number; empty if nothing can be reused.
+     */
+    public Map<String, Entry> load(String environmentFingerprint) {
+        if (!stateFile.isFile() || !flightpathFile.isFile()) {
+            return Map.of();
+        }
+        try {
+            JsonNode state = MAPPER.readTree(stateFile);
+            if (state.path("version").asInt() != VERSION
+                    || !environmentFingerprint.equals(state.path("environment").asText())) {
+                return Map.of();
+            }
+            List<DroneMovement> moves = readFlightpath();
+            if (moves.size() != state.path("moveCount").asInt(-1)) {
+                return Map.of();
+            }
+
+            Map<String, Entry> entries = new HashMap<>();
+            for (JsonNode order : state.path("orders")) {
+                String orderNo = order.path("orderNo").asText();
+                int firstMove = order.path("firstMove").asInt();
+                int moveCount = order.path("moveCount").asInt();
+                if (firstMove < 0 || moveCount < 0 || firstMove + moveCount > moves.size()) {
+                    return Map.of();
+                }
+                List<DroneMovement> route = moves.subList(firstMove, firstMove + moveCount);
+                for (DroneMovement movement : route) {
+                    if (!orderNo.equals(movement.getOrderNo())) {
+                        return Map.of(); // The flightpath was not written by the run that wrote the state
+                    }
+                }
+                entries.put(orderNo, new Entry(orderNo, order.path("fingerprint").asText(),
+                        OrderStatus.valueOf(order.path("orderStatus").asText()),
+                        OrderValidationCode.valueOf(order.path("orderValidationCode").asText()),
+                        List.copyOf(route)));
+            }
+            return entries;
+        } catch (IOException | IllegalArgumentException e) {
+            // A damaged state only means the date is processed from scratch
+            return Map.of();
+        }
+    }
+
+    /**
+     * Removes the state of the previous run, so that a run that fails half way leaves no stale state behind.
+     * @throws IOException If the state file exists but cannot be deleted.
+     */
+    public void clear() throws IOException {
+        Files.deleteIfExists(stateFile.toPath());
+    }
+
+    /**
+     * Saves the state of a finished run. Must be called after the flightpath file has been written,
+     * with the entries in the order their routes appear in it.
+     * @param environmentFingerprint Fingerprint of the reference data the run used.
+     * @param entries What the run produced for each order, in output order.
+     * @throws IOException If the state file cannot be written.
+     */
+    public void save(String environmentFingerprint, List<Entry> entries) throws IOException {
+        ObjectNode state = MAPPER.createObjectNode();
+        state.put("version", VERSION);
+        state.put("environment", environmentFingerprint);
+        ArrayNode orders = state.putArray("orders");
+        int moveCount = 0;
+        for (Entry entry : entries) {
+            ObjectNode order = orders.addObject();
+            order.put("orderNo", entry.getOrderNo());
+            order.put("fingerprint", entry.getFingerprint());
+            order.put("orderStatus", entry.getOrderStatus().toString());
+            order.put("orderValidationCode", entry.getOrderValidationCode().toString());
+            order.put("firstMove", moveCount);
+            order.put("moveCount", entry.getRoute().size());
+            moveCount += entry.getRoute().size();
+        }
+        state.put("moveCount", moveCount);
+
+        // Written next to the state file and then moved over it, so a reader never sees half a file
+        File temporary = new File(stateFile.getPath() + ".tmp");
+        MAPPER.writeValue(temporary, state);
+        Files.move(temporary.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Fingerprints an order as received from the API, before it is validated.
+     * @param order The order to fingerprint.
+     * @return A hex SHA-256 of everything in the order that validation and planning depend on.
+     */
+    public static String orderFingerprint(Order order) {
+        return fingerprint(out -> {
+            writeString(out, order.getOrderNo());
+            writeString(out, String.valueOf(order.getOrderDate()));
+            out.writeInt(order.getPriceTotalInPence());
+            Pizza[] pizzas = order.getPizzasInOrder();
+            out.writeInt(pizzas == null ? -1 : pizzas.length);
+            if (pizzas != null) {
+                for (Pizza pizza : pizzas) {
+                    writeString(out, pizza.name());
+                    out.writeInt(pizza.priceInPence());
+                }
+            }
+            CreditCardInformation card = order.getCreditCardInformation();
+            out.writeBoolean(card != null);
+            if (card != null) {
+                writeString(out, card.getCreditCardNumber());
+                writeString(out, card.getCreditCardExpiry());
+                writeString(out, card.getCvv());
+            }
+        });
+    }
+
+    /**
+     * Fingerprints the reference data a run depends on, and the planner its routes were planned with.
+     * @param restaurants The restaurants orders can be placed with.
+     * @param centralArea The central area.
+     * @param noFlyZones The no-fly zones.
+     * @param mode The planner mode.
+     * @param budgetMillis The time budget of the anytime mode; only part of the fingerprint in that mode.
+     * @param headings The number of headings a move may take.
+     * @return A hex SHA-256 that changes whenever any of them changes.
+     */
+    public static String environmentFingerprint(Restaurant[] restaurants, NamedRegion centralArea, NamedRegion[] noFlyZones,
+                                                PlannerMode mode, long budgetMillis, int headings) {
+        return fingerprint(out -> {
+            writeString(out, mode.name());
+            if (mode == PlannerMode.ANYTIME) {
+                out.writeLong(budgetMillis); // A different budget can stop at different paths
+            }
+            out.writeInt(headings);
+            out.writeInt(restaurants.length);
+            for (Restaurant restaurant : restaurants) {
+                writeString(out, restaurant.name());
+                writeLngLat(out, restaurant.location());
+                out.writeInt(restaurant.openingDays().length);
+                for (DayOfWeek day : restaurant.openingDays()) {
+                    out.writeInt(day.getValue());
+                }
+                out.writeInt(restaurant.menu().length);
+                for (Pizza pizza : restaurant.menu()) {
+                    writeString(out, pizza.name());
+                    out.writeInt(pizza.priceInPence());
+                }
+            }
+            writeRegion(out, centralArea);
+            out.writeInt(noFlyZones.length);
+            for (NamedRegion zone : noFlyZones) {
+                writeRegion(out, zone);
+            }
+        });
+    }
+
+    // Reads the moves back from the previous flightpath file
+    private List<DroneMovement> readFlightpath() throws IOException {
+        List<DroneMovement> moves = new ArrayList<>();
+        for (JsonNode move : MAPPER.readTree(flightpathFile)) {
+            moves.add(new DroneMovement(
+                    new LngLat(move.path("fromLongitude").asDouble(), move.path("fromLatitude").asDouble()),
+                    move.path("angle").asDouble(),
+                    new LngLat(move.path("toLongitude").asDouble(), move.path("toLatitude").asDouble()),
+                    move.path("orderNo").isNull() ? null : move.path("orderNo").asText()));
+        }
+        return moves;
+    }
+
+    // Something that writes the fields to be fingerprinted
+    private interface FingerprintSource {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    // Runs the source through SHA-256 and returns the digest as hex
+    private static String fingerprint(FingerprintSource source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+                source.writeTo(out);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("Could not fingerprint data", e); // SHA-256 is always available
+        }
+    }
+
+    // Writes a string so that null and "" give different fingerprints
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static void writeLngLat(DataOutputStream out, LngLat point) throws IOException {
+        out.writeDouble(point.lng());
+        out.writeDouble(point.lat());
+    }
+
+    private static void writeRegion(DataOutputStream out, NamedRegion region) throws IOException {
+        writeString(out, region.name());
+        out.writeInt(region.vertices().length);
+        for (LngLat vertex : region.vertices()) {
+            writeLngLat(out, vertex);
+        }
+    }
+}
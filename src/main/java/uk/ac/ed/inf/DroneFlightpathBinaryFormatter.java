@@ -0,0 +1,150 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class to write drone flight paths in a compact binary format, and to read them back.
+ *
+ * Every move has a fixed length and one of a fixed set of headings, so a move only needs one byte.
+ * Layout (big-endian, as written by DataOutputStream):
+ *  - header: magic "PDFP", format version, number of headings (16, or 32 if the moves need them), checkpoint interval
+ *  - one record per move: a heading byte (or the hover byte, the number of headings), optionally preceded by
+ *    an order switch or a full-precision checkpoint of the move's start
+ *  - an end record followed by the number of moves
+ *
+ * An order switch is followed by the order's index in the dictionary of order numbers plus one, 0 standing for a
+ * move without an order number; an order number not seen before gets the next index and follows it in full.
+ * The dictionary is thus built as the moves are written, so a flightpath can be written while it is planned
+ * (see DroneFlightpathBinaryWriter).
+ *
+ * Coordinates are rebuilt by replaying the headings from the last checkpoint. The first move, and every
+ * CHECKPOINT_INTERVAL-th one after it, is preceded by a checkpoint, as is any move whose replayed position would
+ * drift more than POSITION_TOLERANCE degrees from the real one, so decoded coordinates stay within that tolerance.
+ */
+public class DroneFlightpathBinaryFormatter {
+    static final int MAGIC = 0x50444650; // "PDFP"
+    static final int VERSION = 1;
+    static final int HEADINGS = 16; // Number of compass headings a move can take, unless a move needs 32.
+    static final int FINE_HEADINGS = 32; // Number of compass headings of a planner set to 32.
+    static final int CHECKPOINT_INTERVAL = 256; // Maximum number of moves between two checkpoints.
+    static final double POSITION_TOLERANCE = 1e-12; // Maximum drift, in degrees, before a checkpoint is forced.
+    static final double HOVER_ANGLE = 999; // Angle used by DroneMovement for hovering.
+
+    static final int ORDER_SWITCH = 0x80; // Record byte announcing a new order (followed by its index plus one).
+    static final int CHECKPOINT = 0x81; // Record byte announcing a full-precision position.
+    static final int END = 0x82; // Record byte ending the moves (followed by their number).
+
+    /**
+     * Writes a list of drone movements in the binary flightpath format.
+     * @param movements List of drone movements to be written. Consecutive moves are expected to be connected.
+     * @param out The stream to write to. It is closed once the flightpath is complete.
+     * @throws IOException If writing to the stream fails.
+     * @throws IllegalArgumentException If a move uses an angle that is not one of the headings.
+     */
+    public static void writeFlightpathsToBinary(List<DroneMovement> movements, OutputStream out) throws IOException {
+        HeadingTable headings = HeadingTable.of(HEADINGS);
+        for (DroneMovement movement : movements) {
+            if (movement.getAngle() != HOVER_ANGLE && headings.indexOf(movement.getAngle()) < 0) {
+                headings = HeadingTable.of(FINE_HEADINGS);
+                break;
+            }
+        }
+        try (DroneFlightpathBinaryWriter writer = new DroneFlightpathBinaryWriter(out, headings)) {
+            for (DroneMovement movement : movements) {
+                writer.write(movement);
+            }
+        }
+    }
+
+    /**
+     * The headings a file must be written with for the moves of a planner; 8 headings are a subset of the 16.
+     * @param plannerHeadings The number of headings the planner's moves take.
+     * @return The heading table to write with.
+     */
+    static HeadingTable headingsFor(int plannerHeadings) {
+        return HeadingTable.of(plannerHeadings > HEADINGS ? FINE_HEADINGS : HEADINGS);
+    }
+
+    /**
+     * Reads drone movements back from the binary flightpath format.
+     * @param in The stream to read from. It is not closed.
+     * @return The list of drone movements, in the order they were written.
+     * @throws IOException If the stream cannot be read or is not in the binary flightpath format.
+     */
+    public static List<DroneMovement> readFlightpathsFromBinary(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a binary flightpath file");
+        }
+        int version = data.readUnsignedByte();
+        int headingCount = data.readUnsignedByte();
+        if (version != VERSION || (headingCount != HEADINGS && headingCount != FINE_HEADINGS)) {
+            throw new IOException("Unsupported binary flightpath: version " + version + ", " + headingCount + " headings");
+        }
+        HeadingTable headings = HeadingTable.of(headingCount);
+        data.readUnsignedShort(); // Checkpoint interval, only needed by the writer.
+
+        List<String> dictionary = new ArrayList<>();
+        List<DroneMovement> movements = new ArrayList<>();
+        String orderNo = null;
+        double lng = 0;
+        double lat = 0;
+        LngLat position = null; // Set by the checkpoint before the first move.
+        while (true) {
+            int record = data.readUnsignedByte();
+            if (record == END) {
+                if (data.readInt() != movements.size()) {
+                    throw new IOException("Corrupt binary flightpath: wrong number of moves");
+                }
+                break;
+            } else if (record == ORDER_SWITCH) {
+                int index = readVarInt(data) - 1;
+                if (index == dictionary.size()) {
+                    dictionary.add(data.readUTF());
+                } else if (index > dictionary.size()) {
+                    throw new IOException("Corrupt binary flightpath: unknown order index " + index);
+                }
+                orderNo = index < 0 ? null : dictionary.get(index);
+            } else if (record == CHECKPOINT) {
+                lng = data.readDouble();
+                lat = data.readDouble();
+                position = new LngLat(lng, lat);
+            } else if (position == null) {
+                throw new IOException("Corrupt binary flightpath: move before the first checkpoint");
+            } else if (record == headings.count) {
+                movements.add(new DroneMovement(position, HOVER_ANGLE, position, orderNo));
+            } else if (record < headings.count) {
+                lng += headings.lngStep(record);
+                lat += headings.latStep(record);
+                LngLat next = new LngLat(lng, lat);
+                movements.add(new DroneMovement(position, headings.angles[record], next, orderNo));
+                position = next;
+            } else {
+                throw new IOException("Corrupt binary flightpath: unexpected record " + record);
+            }
+        }
+        return movements;
+    }
+
+    // Reads an unsigned LEB128 integer, as DroneFlightpathBinaryWriter writes them.
+    private static int readVarInt(DataInputStream data) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
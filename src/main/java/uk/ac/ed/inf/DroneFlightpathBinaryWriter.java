@@ -0,0 +1,131 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Streaming writer for the binary flightpath format (see DroneFlightpathBinaryFormatter).
+ * Movements are written to the underlying stream as they arrive, and order numbers join the dictionary the first
+ * time they are seen, so memory use grows with the number of orders, not with the path length.
+ */
+public class DroneFlightpathBinaryWriter implements Closeable {
+    private final DataOutputStream data; // Buffered binary stream on top of the output.
+    private final HeadingTable headings; // The headings moves may take; the record after the last is a hover.
+    private final Map<String, Integer> dictionary = new HashMap<>(); // Index of each order number written so far.
+    private boolean orderKnown = false; // False until the first move has set the current order.
+    private String currentOrderNo; // Order number of the moves currently being written.
+    private double lng = Double.NaN; // Replayed position; NaN so that the first move gets a checkpoint.
+    private double lat = Double.NaN;
+    private int movesSinceCheckpoint = 0;
+    private int moveCount = 0;
+
+    /**
+     * Writes the header of a new flightpath of moves on the drone's 16 headings to the given stream.
+     * @param out The stream to write to. It is closed when this writer is closed.
+     * @throws IOException If writing to the stream fails.
+     */
+    public DroneFlightpathBinaryWriter(OutputStream out) throws IOException {
+        this(out, HeadingTable.DEFAULT);
+    }
+
+    /**
+     * Writes the header of a new flightpath to the given stream.
+     * @param out The stream to write to. It is closed when this writer is closed.
+     * @param headings The headings the moves take: 16, or 32 (see DroneFlightpathBinaryFormatter.headingsFor).
+     * @throws IOException If writing to the stream fails.
+     */
+    DroneFlightpathBinaryWriter(OutputStream out, HeadingTable headings) throws IOException {
+        this.data = new DataOutputStream(new BufferedOutputStream(out));
+        this.headings = headings;
+        data.writeInt(DroneFlightpathBinaryFormatter.MAGIC);
+        data.writeByte(DroneFlightpathBinaryFormatter.VERSION);
+        data.writeByte(headings.count);
+        data.writeShort(DroneFlightpathBinaryFormatter.CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Appends one movement to the flightpath. Consecutive moves are expected to be connected.
+     * @param movement The movement to append.
+     * @throws IOException If writing to the stream fails.
+     * @throws IllegalArgumentException If the move uses an angle that is not one of the headings.
+     */
+    public void write(DroneMovement movement) throws IOException {
+        int heading = headingOf(movement.getAngle());
+        String orderNo = movement.getOrderNo();
+        if (!orderKnown || !Objects.equals(orderNo, currentOrderNo)) {
+            data.writeByte(DroneFlightpathBinaryFormatter.ORDER_SWITCH);
+            if (orderNo == null) {
+                writeVarInt(0);
+            } else if (dictionary.containsKey(orderNo)) {
+                writeVarInt(dictionary.get(orderNo) + 1);
+            } else {
+                dictionary.put(orderNo, dictionary.size());
+                writeVarInt(dictionary.size());
+                data.writeUTF(orderNo);
+            }
+            currentOrderNo = orderNo;
+            orderKnown = true;
+        }
+
+        // Re-anchor on the real position periodically, or as soon as the replayed one has drifted
+        LngLat start = movement.getStart();
+        if (movesSinceCheckpoint >= DroneFlightpathBinaryFormatter.CHECKPOINT_INTERVAL
+                || !(Math.abs(start.lng() - lng) <= DroneFlightpathBinaryFormatter.POSITION_TOLERANCE)
+                || !(Math.abs(start.lat() - lat) <= DroneFlightpathBinaryFormatter.POSITION_TOLERANCE)) {
+            data.writeByte(DroneFlightpathBinaryFormatter.CHECKPOINT);
+            data.writeDouble(start.lng());
+            data.writeDouble(start.lat());
+            lng = start.lng();
+            lat = start.lat();
+            movesSinceCheckpoint = 0;
+        }
+
+        data.writeByte(heading);
+        if (heading != headings.count) {
+            lng += headings.lngStep(heading);
+            lat += headings.latStep(heading);
+        }
+        movesSinceCheckpoint++;
+        moveCount++;
+    }
+
+    /**
+     * Ends the flightpath and closes the underlying stream.
+     * @throws IOException If writing to the stream fails.
+     */
+    @Override
+    public void close() throws IOException {
+        data.writeByte(DroneFlightpathBinaryFormatter.END);
+        data.writeInt(moveCount);
+        data.close();
+    }
+
+    // Maps a move angle to its heading index, or to the hover record.
+    private int headingOf(double angle) {
+        if (angle == DroneFlightpathBinaryFormatter.HOVER_ANGLE) {
+            return headings.count;
+        }
+        int heading = headings.indexOf(angle);
+        if (heading < 0 || heading >= headings.count) {
+            throw new IllegalArgumentException("Angle " + angle + " is not one of the " + headings.count + " drone headings");
+        }
+        return heading;
+    }
+
+    // Writes an unsigned LEB128 integer, so small dictionary indexes take a single byte.
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data.writeByte(value);
+    }
+}
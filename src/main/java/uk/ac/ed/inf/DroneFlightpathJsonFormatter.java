@@ -1,7 +1,8 @@
 package uk.ac.ed.inf;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 /**
@@ -15,17 +16,14 @@ public class DroneFlightpathJsonFormatter {
      * @return A JSON string representing the flight paths of the drone.
      */
     public static String formatFlightpathsToJson(List<DroneMovement> movements) {
-        JSONArray flightPathJsonArray = new JSONArray();
-        for (DroneMovement movement : movements) {
-            JSONObject flightPathJson = new JSONObject();
-            flightPathJson.put("orderNo", movement.getOrderNo());
-            flightPathJson.put("fromLongitude", movement.getStart().lng());
-            flightPathJson.put("fromLatitude", movement.getStart().lat());
-            flightPathJson.put("angle", movement.getAngle());
-            flightPathJson.put("toLongitude", movement.getEnd().lng());
-            flightPathJson.put("toLatitude", movement.getEnd().lat());
-            flightPathJsonArray.put(flightPathJson);
+        StringWriter out = new StringWriter();
+        try (DroneFlightpathJsonWriter writer = new DroneFlightpathJsonWriter(out)) {
+            for (DroneMovement movement : movements) {
+                writer.write(movement);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringWriter never actually fails.
         }
-        return flightPathJsonArray.toString();
+        return out.toString();
     }
 }
@@ -0,0 +1,65 @@
+package uk.ac.ed.inf;
+
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streaming writer for the flightpath JSON array.
+ * Each movement is written as soon as it arrives, so the array is never held in memory.
+ */
+public class DroneFlightpathJsonWriter implements Closeable {
+    private final Writer out; // The writer the JSON array is sent to.
+    private boolean first = true; // True until the first movement has been written.
+
+    /**
+     * Starts a new flightpath JSON array on the given writer.
+     * @param out The writer to send the JSON to. It is closed when this writer is closed.
+     * @throws IOException If writing to the output fails.
+     */
+    public DroneFlightpathJsonWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write('[');
+    }
+
+    /**
+     * Appends one movement to the array.
+     * @param movement The movement to append.
+     * @throws IOException If writing to the output fails.
+     */
+    public void write(DroneMovement movement) throws IOException {
+        if (!first) {
+            out.write(',');
+        }
+        first = false;
+        out.write(toJson(movement).toString());
+    }
+
+    /**
+     * Builds the JSON object for one movement, as it appears in the flightpath array.
+     * @param movement The movement to convert.
+     * @return The movement as a JSON object.
+     */
+    static JSONObject toJson(DroneMovement movement) {
+        JSONObject flightPathJson = new JSONObject();
+        flightPathJson.put("orderNo", movement.getOrderNo());
+        flightPathJson.put("fromLongitude", movement.getStart().lng());
+        flightPathJson.put("fromLatitude", movement.getStart().lat());
+        flightPathJson.put("angle", movement.getAngle());
+        flightPathJson.put("toLongitude", movement.getEnd().lng());
+        flightPathJson.put("toLatitude", movement.getEnd().lat());
+        return flightPathJson;
+    }
+
+    /**
+     * Closes the JSON array and the underlying writer.
+     * @throws IOException If writing to the output fails.
+     */
+    @Override
+    public void close() throws IOException {
+        out.write(']');
+        out.close();
+    }
+}
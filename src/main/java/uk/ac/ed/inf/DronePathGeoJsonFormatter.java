@@ -1,7 +1,9 @@
 package uk.ac.ed.inf;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
 
 /**
@@ -15,33 +17,37 @@ public class DronePathGeoJsonFormatter {
      * @return A GeoJSON string representing the flight path of the drone.
      */
     public static String formatPathToGeoJson(List<DroneMovement> movements) {
-        JsonObject featureCollection = new JsonObject();
-        featureCollection.addProperty("type", "FeatureCollection");
-
-        JsonArray features = new JsonArray();
-        JsonObject feature = new JsonObject();
-        feature.addProperty("type", "Feature");
-
-        // Empty properties object
-        JsonObject properties = new JsonObject();
-        feature.add("properties", properties);
-
-        JsonObject geometry = new JsonObject();
-        geometry.addProperty("type", "LineString");
-        JsonArray coordinates = new JsonArray();
+        return formatPathToGeoJson(movements, false);
+    }
 
-        for (DroneMovement movement : movements) {
-            JsonArray point = new JsonArray();
-            point.add(movement.getStart().lng());
-            point.add(movement.getStart().lat());
-            coordinates.add(point);
+    /**
+     * Converts a list of drone movements into a GeoJSON string, optionally with one feature per order.
+     * @param movements List of drone movements to be formatted.
+     * @param featurePerOrder True to write one LineString feature per order, false for a single feature.
+     * @return A GeoJSON string representing the flight path of the drone.
+     */
+    public static String formatPathToGeoJson(List<DroneMovement> movements, boolean featurePerOrder) {
+        StringWriter out = new StringWriter();
+        try {
+            writePathToGeoJson(movements, out, featurePerOrder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringWriter never actually fails.
         }
+        return out.toString();
+    }
 
-        geometry.add("coordinates", coordinates);
-        feature.add("geometry", geometry);
-        features.add(feature);
-        featureCollection.add("features", features);
-
-        return featureCollection.toString();
+    /**
+     * Streams a list of drone movements as GeoJSON straight to a writer, without building the document in memory.
+     * @param movements List of drone movements to be formatted.
+     * @param out The writer to send the GeoJSON to. It is closed once the document is complete.
+     * @param featurePerOrder True to write one LineString feature per order, false for a single feature.
+     * @throws IOException If writing to the output fails.
+     */
+    public static void writePathToGeoJson(List<DroneMovement> movements, Writer out, boolean featurePerOrder) throws IOException {
+        try (DronePathGeoJsonWriter writer = new DronePathGeoJsonWriter(out, featurePerOrder)) {
+            for (DroneMovement movement : movements) {
+                writer.write(movement);
+            }
+        }
     }
 }
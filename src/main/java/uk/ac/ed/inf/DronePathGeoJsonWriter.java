@@ -0,0 +1,109 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.stream.JsonWriter;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Objects;
+
+/**
+ * Streaming writer that turns drone movements into a GeoJSON FeatureCollection.
+ * Movements are written to the underlying writer as they arrive, so memory use does not grow with the path length.
+ *
+ * Two layouts are supported:
+ *  - a single LineString feature for the whole day (the classic drone-YYYY-MM-DD.geojson layout)
+ *  - one LineString feature per order, with the order number in the feature properties
+ */
+public class DronePathGeoJsonWriter implements Closeable {
+    private final JsonWriter json; // Gson streaming writer on top of the output.
+    private final boolean featurePerOrder; // True if each order gets its own feature.
+    private boolean featureOpen = false; // True while a feature's coordinate array is open.
+    private String currentOrderNo; // Order number of the feature currently being written.
+    private LngLat lastEnd; // End point of the last movement written.
+
+    /**
+     * Starts a new FeatureCollection on the given writer.
+     * @param out The writer to send the GeoJSON to. It is closed when this writer is closed.
+     * @param featurePerOrder True to write one feature per order, false for a single feature.
+     * @throws IOException If writing to the output fails.
+     */
+    public DronePathGeoJsonWriter(Writer out, boolean featurePerOrder) throws IOException {
+        this.json = new JsonWriter(out);
+        this.featurePerOrder = featurePerOrder;
+        json.beginObject();
+        json.name("type").value("FeatureCollection");
+        json.name("features").beginArray();
+    }
+
+    /**
+     * Appends one movement to the path.
+     * In per-order mode a new feature is started whenever the order number changes.
+     * @param movement The movement to append.
+     * @throws IOException If writing to the output fails.
+     */
+    public void write(DroneMovement movement) throws IOException {
+        if (featurePerOrder && featureOpen && !Objects.equals(currentOrderNo, movement.getOrderNo())) {
+            endFeature();
+        }
+        if (!featureOpen) {
+            beginFeature(movement.getOrderNo());
+        }
+        writePoint(movement.getStart());
+        lastEnd = movement.getEnd();
+    }
+
+    /**
+     * Finishes the FeatureCollection and closes the underlying writer.
+     * @throws IOException If writing to the output fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!featureOpen && !featurePerOrder) {
+            beginFeature(null); // An empty day still produces one (empty) LineString.
+        }
+        if (featureOpen) {
+            endFeature();
+        }
+        json.endArray();
+        json.endObject();
+        json.close();
+    }
+
+    // Opens a feature and its coordinate array.
+    private void beginFeature(String orderNo) throws IOException {
+        json.beginObject();
+        json.name("type").value("Feature");
+        json.name("properties").beginObject();
+        if (featurePerOrder) {
+            json.name("orderNo").value(orderNo);
+        }
+        json.endObject();
+        json.name("geometry").beginObject();
+        json.name("type").value("LineString");
+        json.name("coordinates").beginArray();
+        featureOpen = true;
+        currentOrderNo = orderNo;
+    }
+
+    // Closes the current feature. Per-order features end where the drone finished the order.
+    private void endFeature() throws IOException {
+        if (featurePerOrder && lastEnd != null) {
+            writePoint(lastEnd);
+        }
+        json.endArray();
+        json.endObject();
+        json.endObject();
+        featureOpen = false;
+        lastEnd = null;
+    }
+
+    // Writes a single [lng, lat] coordinate pair.
+    private void writePoint(LngLat point) throws IOException {
+        json.beginArray();
+        json.value(point.lng());
+        json.value(point.lat());
+        json.endArray();
+    }
+}
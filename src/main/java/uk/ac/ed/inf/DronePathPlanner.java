@@ -1,30 +1,346 @@
 package uk.ac.ed.inf;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
 import uk.ac.ed.inf.ilp.data.LngLat;
 import uk.ac.ed.inf.ilp.data.NamedRegion;
 import java.util.ArrayList;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class responsible for planning the flight path of a drone.
  * This includes calculating paths while avoiding no-fly zones and ensuring the drone remains within a central area.
+ * How a path is searched for depends on the PlannerMode.
+ *
+ * In the anytime mode each path search stops at a budget, set in milliseconds by the pizzadronz.planner.budgetMs
+ * system property, with the best path found by then; if that may not be the shortest, the search goes on
+ * in the background and a shorter path replaces the cached round trip, so later orders to the same place fly it.
+ *
+ * The moves may take 8, 16 or 32 headings, set by the pizzadronz.planner.headings system property (default 16,
+ * the drone's rules): 8 plans faster for paths a few moves longer, 32 plans slower for shorter paths. Every mode's
+ * guidance counts the moves left on the same headings as the moves searched.
+ *
+ * In a long-running process the no-fly zones can be replaced with updateNoFlyZones. Every cached round trip
+ * keeps the box round its positions, so only the routes near a zone that was added, moved or removed are dropped;
+ * the others stay cached.
  */
 public class DronePathPlanner {
+    /** System property with the time in milliseconds the anytime mode may spend on a path before using the best so far. */
+    public static final String BUDGET_PROPERTY = "pizzadronz.planner.budgetMs";
+    private static final long DEFAULT_BUDGET_MS = 50;
+    /** System property with the number of headings a move may take: 8, 16 or 32. */
+    public static final String HEADINGS_PROPERTY = "pizzadronz.planner.headings";
+    private static final int COARSE_STRIDE = 4; // Moves a step of the corridor mode's coarse search.
+    private static final int CORRIDOR_HALF_WIDTH = 6; // Moves either side of the coarse route the fine search may use.
+
     private final NamedRegion centralArea; // The central area within which the drone must operate.
-    private final NamedRegion[] noFlyZones; // Array of regions where the drone is not allowed to fly.
-    private final HashMap<String, List<DroneMovement>> cachedPaths = new HashMap<>(); // Cache to store computed paths for efficiency.
-    private final LngLatHandlingImpl lngLatHandler = new LngLatHandlingImpl(); // Handler for operations related to longitude and latitude.
+    private NamedRegion[] noFlyZones; // Array of regions where the drone is not allowed to fly.
+    // Cache to store computed paths for efficiency; concurrent, as the anytime mode improves paths in the background.
+    // Locked while the zones change, so a path improved for the old zones never replaces a cached one.
+    private final Map<String, CachedRoute> cachedPaths = new ConcurrentHashMap<>();
+    private final LngLatHandlingImpl lngLatHandler; // Handler for operations related to longitude and latitude.
+    private final PolygonBatchKernel polygonKernel = PolygonBatchKernel.best(); // Tests the candidate moves against the no-fly zones.
+    private final Counter cacheHits = DeliveryMetrics.plannerCache(true); // Paths served from the cache.
+    private final Counter cacheMisses = DeliveryMetrics.plannerCache(false); // Paths that had to be calculated.
+    private final Counter routesInvalidated = DeliveryMetrics.routesInvalidated(); // Routes dropped on zone updates.
+    private final PlannerMode mode; // How paths are searched for.
+    private final HeadingTable headings; // The headings a move may take.
+    private AStarSearch search; // Searches for the A* modes.
+    private AStarSearch coarseSearch; // Searches the coarse lattice for the corridor mode.
+    private final long budgetNanos; // Time the anytime mode may spend on a path in the foreground.
+    private final DistributionSummary nodesExpanded; // Nodes expanded per path searched.
+    private final Timer searchTime; // Time spent per path searched.
+    private final DistributionSummary suboptimality; // Bound of each anytime path when returned; null in other modes.
+    private int searchExpanded; // Nodes expanded by the last search of the A* modes.
+    private int lastNodesExpanded; // Nodes expanded by the last path searched.
+    private double lastBound; // Suboptimality bound of the last path searched; 0 if its mode gives none.
+    private long lastSearchNanos; // Time spent on the last path searched.
+    private AnytimeSearch unfinished; // The anytime search of the last path, if it may still improve it.
+    private FreeSpaceLabels labels; // Which parts of the area are joined, looked up on first use.
+    private int zoneVersion; // Number of times the no-fly zones have changed; guarded by cachedPaths.
+
+    // A cached round trip, with the box round every position it passes
+    private static final class CachedRoute {
+        private final List<DroneMovement> path;
+        private final BoundingBox box;
+
+        private CachedRoute(List<DroneMovement> path) {
+            LngLat[] positions = new LngLat[path.size() + 1];
+            positions[0] = path.get(0).getStart();
+            for (int i = 0; i < path.size(); i++) {
+                positions[i + 1] = path.get(i).getEnd();
+            }
+            this.path = path;
+            this.box = BoundingBox.of(positions);
+        }
+    }
+
+    // The single background thread that goes on improving anytime paths, started on first use
+    private static final class Improver {
+        private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "route-improver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
     /**
-     * Constructor for DronePathPlanner class.
+     * Constructor for DronePathPlanner class, searching in the mode set by the pizzadronz.planner system property.
      * @param noFlyZones Array of no-fly zones to avoid during path planning.
      * @param centralArea The central operational area for the drone.
      */
     public DronePathPlanner(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        this(noFlyZones, centralArea, PlannerMode.configured());
+    }
+
+    /**
+     * Constructor for DronePathPlanner class.
+     * @param noFlyZones Array of no-fly zones to avoid during path planning.
+     * @param centralArea The central operational area for the drone.
+     * @param mode How paths are searched for.
+     */
+    public DronePathPlanner(NamedRegion[] noFlyZones, NamedRegion centralArea, PlannerMode mode) {
+        this(noFlyZones, centralArea, mode, configuredBudgetMillis());
+    }
+
+    /**
+     * @return The budget of the anytime mode set by the pizzadronz.planner.budgetMs system property, in milliseconds.
+     */
+    public static long configuredBudgetMillis() {
+        return Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET_MS);
+    }
+
+    /**
+     * Constructor for DronePathPlanner class, with the budget of the anytime mode.
+     * @param noFlyZones Array of no-fly zones to avoid during path planning.
+     * @param centralArea The central operational area for the drone.
+     * @param mode How paths are searched for.
+     * @param budgetMillis Time in milliseconds the anytime mode may spend on a path before using the best so far.
+     */
+    public DronePathPlanner(NamedRegion[] noFlyZones, NamedRegion centralArea, PlannerMode mode, long budgetMillis) {
+        this(noFlyZones, centralArea, mode, budgetMillis, configuredHeadings());
+    }
+
+    /**
+     * @return The number of headings set by the pizzadronz.planner.headings system property, or 16.
+     */
+    public static int configuredHeadings() {
+        return Integer.getInteger(HEADINGS_PROPERTY, HeadingTable.DEFAULT.count);
+    }
+
+    /**
+     * Constructor for DronePathPlanner class, with the budget of the anytime mode and the number of headings.
+     * @param noFlyZones Array of no-fly zones to avoid during path planning.
+     * @param centralArea The central operational area for the drone.
+     * @param mode How paths are searched for.
+     * @param budgetMillis Time in milliseconds the anytime mode may spend on a path before using the best so far.
+     * @param headings Number of headings a move may take: 8, 16 or 32.
+     */
+    public DronePathPlanner(NamedRegion[] noFlyZones, NamedRegion centralArea, PlannerMode mode, long budgetMillis, int headings) {
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("Planner error: a planning budget cannot be negative, not " + budgetMillis + " ms");
+        }
         this.noFlyZones = noFlyZones;
         this.centralArea = centralArea;
+        this.mode = mode;
+        this.headings = HeadingTable.of(headings);
+        this.lngLatHandler = new LngLatHandlingImpl(this.headings);
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.search = new AStarSearch(noFlyZones, centralArea, lngLatHandler);
+        this.coarseSearch = new AStarSearch(noFlyZones, centralArea, lngLatHandler, COARSE_STRIDE);
+        this.nodesExpanded = DeliveryMetrics.nodesExpanded(mode);
+        this.searchTime = DeliveryMetrics.searchTime(mode);
+        this.suboptimality = (mode == PlannerMode.ANYTIME) ? DeliveryMetrics.suboptimalityBound() : null;
+    }
+
+    /**
+     * Searches for a path in the planner's mode.
+     * @param start The starting point of the path.
+     * @param end The destination point of the path.
+     * @param orderNo The order number associated with the movement, for tracking purposes.
+     * @return A list of drone movements forming a path from the start to the end location, ending with a hover.
+     */
+    private List<DroneMovement> searchPath(LngLat start, LngLat end, String orderNo) {
+        List<DroneMovement> path;
+        switch (mode) {
+            case ASTAR:
+                path = search.search(start, end, orderNo, straightLine(end));
+                break;
+            case ALT:
+                LandmarkHeuristic landmarks = LandmarkHeuristic.forRegions(noFlyZones, centralArea);
+                path = search.search(start, end, orderNo, landmarks.towards(end, headings));
+                break;
+            case HPA:
+                return hierarchicalPath(start, end, orderNo);
+            case CORRIDOR:
+                return corridorPath(start, end, orderNo);
+            case ANYTIME:
+                return anytimePath(start, end, orderNo);
+            default:
+                return calculatePath(start, end, orderNo);
+        }
+        searchExpanded = search.getNodesExpanded();
+        return path;
+    }
+
+    /**
+     * Searches the moves one sector at a time, through the sectors the SectorGraph picks; if a sector's search
+     * fails, for instance because the central area rule blocks the way the graph took, falls back to one A* search
+     * over the whole area.
+     * @param start The starting point of the path.
+     * @param end The destination point of the path.
+     * @param orderNo The order number associated with the movement, for tracking purposes.
+     * @return A list of drone movements forming a path from the start to the end location, ending with a hover.
+     */
+    private List<DroneMovement> hierarchicalPath(LngLat start, LngLat end, String orderNo) {
+        SectorGraph graph = SectorGraph.forRegions(noFlyZones, centralArea);
+        List<LngLat> entries = graph.route(start, end, headings);
+        searchExpanded = 0;
+        if (entries != null) {
+            List<LngLat> targets = new ArrayList<>(entries);
+            targets.add(end);
+            List<DroneMovement> path = new ArrayList<>();
+            LngLat position = start;
+            try {
+                for (LngLat target : targets) {
+                    // The sector the leg starts in and the one it ends in, with room for the moves round their edges
+                    BoundingBox within = graph.sectorBox(position).union(graph.sectorBox(target))
+                            .expandedBy(2 * SystemConstants.DRONE_MOVE_DISTANCE);
+                    List<DroneMovement> leg = search.search(position, target, orderNo, straightLine(target), within);
+                    searchExpanded += search.getNodesExpanded();
+                    leg.remove(leg.size() - 1); // The hover, wanted only at the destination
+                    path.addAll(leg);
+                    position = leg.isEmpty() ? position : leg.get(leg.size() - 1).getEnd();
+                }
+                path.add(new DroneMovement(position, 999, position, orderNo));
+                return path;
+            } catch (IllegalStateException e) {
+                // The sectors chosen cannot be flown through; search everywhere instead
+                searchExpanded += search.getNodesExpanded();
+            }
+        }
+        List<DroneMovement> path = search.search(start, end, orderNo, straightLine(end));
+        searchExpanded += search.getNodesExpanded();
+        return path;
+    }
+
+    /**
+     * Searches a coarse lattice of COARSE_STRIDE moves a step, then single moves only in a corridor round the coarse
+     * route, guided along it; if either fails, for instance through a gap too narrow for the coarse steps, falls back to one A*
+     * search over the whole area.
+     * @param start The starting point of the path.
+     * @param end The destination point of the path.
+     * @param orderNo The order number associated with the movement, for tracking purposes.
+     * @return A list of drone movements forming a path from the start to the end location, ending with a hover.
+     */
+    private List<DroneMovement> corridorPath(LngLat start, LngLat end, String orderNo) {
+        List<DroneMovement> coarse = null;
+        try {
+            coarse = coarseSearch.search(start, end, orderNo,
+                    AStarSearch.straightLine(end, COARSE_STRIDE * SystemConstants.DRONE_IS_CLOSE_DISTANCE, headings));
+        } catch (IllegalStateException e) {
+            // No coarse route; search everywhere instead
+        }
+        searchExpanded = coarseSearch.getNodesExpanded();
+        if (coarse != null) {
+            try {
+                Corridor corridor = new Corridor(coarse, CORRIDOR_HALF_WIDTH);
+                List<DroneMovement> path = search.search(start, end, orderNo, corridor.towards(end, headings), corridor);
+                searchExpanded += search.getNodesExpanded();
+                return path;
+            } catch (IllegalStateException e) {
+                // The corridor cannot be flown through; search everywhere instead
+                searchExpanded += search.getNodesExpanded();
+            }
+        }
+        List<DroneMovement> path = search.search(start, end, orderNo, straightLine(end));
+        searchExpanded += search.getNodesExpanded();
+        return path;
+    }
+
+    /**
+     * Searches with decreasing weight on the heuristic until the budget runs out, and takes the best path by then,
+     * at least the first one found. A first path comes from the coarse lattice, which behind a wall finds one
+     * much sooner than any weighted search over single moves; its last few moves are searched over single moves,
+     * as a coarse path ends only near the destination. If the best path may not be the shortest, the search is left
+     * in unfinished for findTotalPath to hand to the background thread once the round trip is cached.
+     * @param start The starting point of the path.
+     * @param end The destination point of the path.
+     * @param orderNo The order number associated with the movement, for tracking purposes.
+     * @return A list of drone movements forming a path from the start to the end location, ending with a hover.
+     */
+    private List<DroneMovement> anytimePath(LngLat start, LngLat end, String orderNo) {
+        long deadline = System.nanoTime() + budgetNanos;
+        AnytimeSearch anytime = new AnytimeSearch(noFlyZones, centralArea, start, end, headings);
+        List<DroneMovement> coarse = null;
+        try {
+            coarse = coarseSearch.search(start, end, orderNo,
+                    AStarSearch.straightLine(end, COARSE_STRIDE * SystemConstants.DRONE_IS_CLOSE_DISTANCE, headings));
+        } catch (IllegalStateException e) {
+            // No coarse path; the anytime search finds the first one itself
+        }
+        searchExpanded = coarseSearch.getNodesExpanded();
+        if (coarse != null) {
+            try {
+                coarse.remove(coarse.size() - 1); // The hover, wanted only at the destination
+                LngLat reached = coarse.isEmpty() ? start : coarse.get(coarse.size() - 1).getEnd();
+                coarse.addAll(search.search(reached, end, orderNo, straightLine(end)));
+                anytime.seed(coarse);
+            } catch (IllegalStateException e) {
+                // The last moves cannot be flown; the anytime search finds the first path itself
+            }
+            searchExpanded += search.getNodesExpanded();
+        }
+        boolean finished = anytime.improve(deadline);
+        searchExpanded += anytime.getNodesExpanded();
+        lastBound = anytime.getBound();
+        unfinished = finished ? null : anytime;
+        return anytime.path(orderNo);
+    }
+
+    /**
+     * The straight-line heuristic over the planner's headings.
+     * @param end The destination.
+     * @return The heuristic.
+     */
+    private AStarSearch.Heuristic straightLine(LngLat end) {
+        return AStarSearch.straightLine(end, SystemConstants.DRONE_IS_CLOSE_DISTANCE, headings);
+    }
+
+    /**
+     * Lets the background thread finish an anytime search, then puts the round trip of the shorter path it found,
+     * if any, in place of the cached one, unless that has been replaced meanwhile.
+     * @param key The cache key of the round trip.
+     * @param cached The round trip cached from the search's path when it stopped.
+     * @param anytime The search, no longer used by this thread.
+     */
+    private void improveInBackground(String key, CachedRoute cached, AnytimeSearch anytime) {
+        int moves = anytime.getBestMoves();
+        String orderNo = cached.path.get(0).getOrderNo();
+        int version = zoneVersion;
+        Improver.EXECUTOR.execute(() -> {
+            anytime.improve(Long.MAX_VALUE);
+            if (anytime.getBestMoves() < moves) {
+                List<DroneMovement> improved = anytime.path(orderNo);
+                improved.addAll(reversePath(improved));
+                synchronized (cachedPaths) {
+                    if (zoneVersion == version) { // Otherwise the path was searched for zones no longer flown round
+                        cachedPaths.replace(key, cached, new CachedRoute(improved));
+                    }
+                }
+            }
+        });
     }
 
     /**
@@ -39,24 +355,40 @@ public class DronePathPlanner {
         List<DroneMovement> path = new ArrayList<>(); // List to store the path as a sequence of movements.
         LngLat currentPosition = start; // Current position of the drone, starting at the start location.
 
-        // Defines possible angles for drone movement.
-        double[] angles = {0, 22.5, 45, 67.5, 90, 112.5, 135, 157.5, 180, 202.5, 225, 247.5, 270, 292.5, 315, 337.5};
+        double[] angles = headings.angles; // Possible angles for drone movement.
+
+        LngLat[] candidates = new LngLat[angles.length]; // Next position for each angle.
+        double[] candidateLng = new double[angles.length];
+        double[] candidateLat = new double[angles.length];
+        boolean[] blocked = new boolean[angles.length]; // Whether each candidate lies in a no-fly zone.
 
         // Continuously calculate the next move until the drone is close to the destination.
         while (!lngLatHandler.isCloseTo(currentPosition, end)) {
             double closestDistance = Double.MAX_VALUE; // Initialize closest distance to a large value.
             double chosenAngle = 0; // Angle for the next move.
 
+            // Test all candidate moves against each no-fly zone in one batch.
+            for (int i = 0; i < angles.length; i++) {
+                candidates[i] = lngLatHandler.nextPosition(currentPosition, angles[i]);
+                candidateLng[i] = candidates[i].lng();
+                candidateLat[i] = candidates[i].lat();
+                blocked[i] = false;
+            }
+            for (NamedRegion noFlyZone : noFlyZones) {
+                polygonKernel.markInside(lngLatHandler.prepared(noFlyZone), candidateLng, candidateLat, angles.length, blocked);
+            }
+            boolean currentlyInCentral = lngLatHandler.isInCentralArea(currentPosition, centralArea);
+
             // Evaluate each possible angle to determine the best next move.
-            for (double angle : angles) {
-                LngLat nextPosition = lngLatHandler.nextPosition(currentPosition, angle); // Calculate next position for the given angle.
+            for (int i = 0; i < angles.length; i++) {
+                LngLat nextPosition = candidates[i];
                 // Check if the next position is valid and has not been previously visited.
-                if (!previousPositions.contains(nextPosition) && isValidMove(currentPosition, nextPosition)) {
+                if (!blocked[i] && !previousPositions.contains(nextPosition) && isValidMove(currentlyInCentral, nextPosition)) {
                     double distance = lngLatHandler.distanceTo(nextPosition, end); // Calculate distance to the end location.
                     // Update the closest distance and chosen angle if this move is better.
                     if (distance < closestDistance) {
                         closestDistance = distance;
-                        chosenAngle = angle;
+                        chosenAngle = angles[i];
                     }
                 }
             }
@@ -76,20 +408,30 @@ public class DronePathPlanner {
     }
 
     /**
-     * Checks if a proposed move from a current position to a next position is valid considering no-fly zones and central area constraints.
-     * @param currentPos The current position of the drone.
-     * @param nextPos The proposed next position of the drone.
+     * Checks if a proposed move out of a no-fly zone free position is valid considering the central area constraint.
+     * @param currentlyInCentral Whether the current position of the drone is in the central area.
+     * @param nextPos The proposed next position of the drone, already known to be outside every no-fly zone.
      * @return True if the move is valid, otherwise False.
      */
-    private boolean isValidMove(LngLat currentPos, LngLat nextPos) {
-        boolean currentlyInCentral = lngLatHandler.isInCentralArea(currentPos, centralArea); // Check if the current position is in the central area.
-        boolean nextInCentral = lngLatHandler.isInCentralArea(nextPos, centralArea); // Check if the next position is in the central area.
-        for (NamedRegion noFlyZone : noFlyZones) {
-            if (lngLatHandler.isInRegion(nextPos, noFlyZone)) {
-                return false; // Move is invalid if the next position is in a no-fly zone.
-            }
+    private boolean isValidMove(boolean currentlyInCentral, LngLat nextPos) {
+        // Move is valid if it either stays in the central area or does not re-enter it.
+        return currentlyInCentral || !lngLatHandler.isInCentralArea(nextPos, centralArea);
+    }
+
+    /**
+     * Checks, in constant time and before any search, whether a path from a start to an end location could exist;
+     * if not, the end is walled off by the no-fly zones, or by the central area rule, and findTotalPath would fail.
+     * A true answer does not make the greedy mode terminate: it can still circle forever in front of a concave
+     * zone on the way to an end that is reachable.
+     * @param start The starting point of the path.
+     * @param end The destination point of the path.
+     * @return False if no path can reach the end; true if one might.
+     */
+    public boolean canReach(LngLat start, LngLat end) {
+        if (labels == null) {
+            labels = FreeSpaceLabels.forRegions(noFlyZones, centralArea);
         }
-        return currentlyInCentral || !nextInCentral; // Move is valid if it either stays in the central area or does not re-enter it.
+        return labels.canReach(start, end);
     }
 
     /**
@@ -99,21 +441,174 @@ public class DronePathPlanner {
      * @param end The destination point of the path.
      * @param orderNo The order number associated with the movement.
      * @return A list of drone movements forming a complete round trip path.
+     * @throws IllegalStateException If no path can reach the end (see canReach).
      */
     public List<DroneMovement> findTotalPath(LngLat start, LngLat end, String orderNo) {
+        RouteSearchEvent event = RouteSearchEvent.start();
         String key = "KEY:" + start.lng() + start.lat() + end.lng() + end.lat(); // Cache key based on start and end coordinates.
-        if (cachedPaths.containsKey(key)) {
-            return copyCachedPath(cachedPaths.get(key), orderNo); // Use cached path if available.
+        CachedRoute cached = cachedPaths.get(key);
+        if (cached != null) {
+            cacheHits.increment();
+            List<DroneMovement> path = copyCachedPath(cached.path, orderNo); // Use cached path if available.
+            RouteSearchEvent.commit(event, orderNo, mode, true, 0, 0, path.size());
+            return path;
         } else {
+            cacheMisses.increment();
+            if (!canReach(start, end)) {
+                RouteSearchEvent.commit(event, orderNo, mode, false, 0, 0, 0);
+                throw new IllegalStateException("Planner error: " + end + " cannot be reached from " + start
+                        + ", it is walled off by the no-fly zones or the central area");
+            }
             // Calculate new path if not cached.
-            List<DroneMovement> pathToDestination = calculatePath(start, end, orderNo);
+            long started = System.nanoTime();
+            lastBound = 0;
+            List<DroneMovement> pathToDestination = searchPath(start, end, orderNo);
+            lastSearchNanos = System.nanoTime() - started;
+            searchTime.record(lastSearchNanos, TimeUnit.NANOSECONDS);
+            if (suboptimality != null) {
+                suboptimality.record(lastBound);
+            }
+            // The greedy planner expands one position per move; the last move is the hover
+            int expanded = (mode == PlannerMode.GREEDY) ? pathToDestination.size() - 1 : searchExpanded;
+            nodesExpanded.record(expanded);
+            lastNodesExpanded = expanded;
             List<DroneMovement> returnPath = reversePath(pathToDestination); // Calculate the return path.
             pathToDestination.addAll(returnPath); // Combine paths for the complete round trip.
-            cachedPaths.put(key, pathToDestination); // Cache the new path.
+            CachedRoute route = new CachedRoute(pathToDestination);
+            cachedPaths.put(key, route); // Cache the new path.
+            if (unfinished != null) {
+                improveInBackground(key, route, unfinished);
+                unfinished = null;
+            }
+            RouteSearchEvent.commit(event, orderNo, mode, false, expanded, lastBound, pathToDestination.size());
             return pathToDestination;
         }
     }
 
+    /**
+     * Replaces the no-fly zones, dropping only the cached routes the change could affect: those that pass through
+     * or over a zone that is new or has new vertices, and those whose box meets a zone that is gone or has moved,
+     * since a shorter path round it may now exist. Zones are matched by name and vertices, so zones fetched again
+     * unchanged keep every route, and the preprocessed geometry, as it was.
+     * @param updated The new no-fly zones.
+     * @return The number of cached routes dropped.
+     */
+    public int updateNoFlyZones(NamedRegion[] updated) {
+        List<NamedRegion> added = zonesMissingFrom(updated, noFlyZones);
+        List<NamedRegion> removed = zonesMissingFrom(noFlyZones, updated);
+        if (added.isEmpty() && removed.isEmpty()) {
+            return 0;
+        }
+        List<BoundingBox> removedBoxes = new ArrayList<>();
+        for (NamedRegion zone : removed) {
+            removedBoxes.add(BoundingBox.of(zone.vertices()));
+        }
+        int invalidated = 0;
+        synchronized (cachedPaths) {
+            noFlyZones = updated;
+            zoneVersion++;
+            search = new AStarSearch(updated, centralArea, lngLatHandler);
+            coarseSearch = new AStarSearch(updated, centralArea, lngLatHandler, COARSE_STRIDE);
+            labels = null;
+            for (Iterator<CachedRoute> routes = cachedPaths.values().iterator(); routes.hasNext(); ) {
+                CachedRoute route = routes.next();
+                if (entersAny(route, added) || meetsAny(route, removedBoxes)) {
+                    routes.remove();
+                    invalidated++;
+                }
+            }
+        }
+        routesInvalidated.increment(invalidated);
+        return invalidated;
+    }
+
+    /**
+     * @param zones Some no-fly zones.
+     * @param others Other no-fly zones.
+     * @return The zones with no zone of the same name and vertices among the others.
+     */
+    private static List<NamedRegion> zonesMissingFrom(NamedRegion[] zones, NamedRegion[] others) {
+        List<NamedRegion> missing = new ArrayList<>();
+        for (NamedRegion zone : zones) {
+            boolean found = false;
+            for (NamedRegion other : others) {
+                if (Objects.equals(zone.name(), other.name()) && Arrays.equals(zone.vertices(), other.vertices())) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                missing.add(zone);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Checks whether a route ends a move in, or flies across, any of the zones; the boxes are compared first,
+     * so routes far from every zone are never looked at move by move.
+     * @param route A cached round trip.
+     * @param zones The zones.
+     * @return True if some move of the route meets some zone.
+     */
+    private boolean entersAny(CachedRoute route, List<NamedRegion> zones) {
+        for (NamedRegion zone : zones) {
+            if (!route.box.intersects(BoundingBox.of(zone.vertices()))) {
+                continue;
+            }
+            for (DroneMovement move : route.path) {
+                if (lngLatHandler.isInRegion(move.getEnd(), zone)
+                        || GeometryHelper.doesSegmentCrossPolygon(zone.vertices(), move.getStart(), move.getEnd())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param route A cached round trip.
+     * @param boxes Boxes round zones.
+     * @return True if the route's box meets any of them.
+     */
+    private static boolean meetsAny(CachedRoute route, List<BoundingBox> boxes) {
+        for (BoundingBox box : boxes) {
+            if (route.box.intersects(box)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of round trips in the cache.
+     */
+    int getCachedRouteCount() {
+        return cachedPaths.size();
+    }
+
+    /**
+     * @return The number of nodes expanded by the last path searched for (cache hits excluded).
+     */
+    int getLastNodesExpanded() {
+        return lastNodesExpanded;
+    }
+
+    /**
+     * @return How many times the moves of the shortest path the last path searched for may have at most,
+     * as the anytime mode knew when it returned it; 0 in the other modes.
+     */
+    double getLastBound() {
+        return lastBound;
+    }
+
+    /**
+     * @return The time in nanoseconds spent on the last path searched for, background improvement excluded.
+     */
+    long getLastSearchNanos() {
+        return lastSearchNanos;
+    }
+
     /**
      * Copies a path from the cache, updating the order number for each movement.
      * This allows reusing paths for different orders.
@@ -0,0 +1,347 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A grid of cells one move wide over the no-fly zones and the central area, recording which cells are free to fly
+ * through, for the planners that reason about the area as a whole before searching the drone's moves.
+ *
+ * A cell is free unless its centre lies in a no-fly zone. Cells are joined to their 16 neighbours along the
+ * directions (0, 1), (1, 1) and (1, 2) and their reflections, each step costing the fewest moves that cover it
+ * (AStarSearch.movesAlong), so distances on the grid follow the drone's headings; a step may not pass a blocked
+ * cell, so thin zones are not jumped. As the grid's directions are not quite the drone's, grid distances can be
+ * up to GRID_STRETCH times the moves they stand for.
+ *
+ * A grid is never changed once built, so one is shared by every planner with the same zones (forRegions),
+ * and kept in the GeometryStore, if there is one, for later runs.
+ */
+final class FreeSpaceGrid {
+    static final double CELL_SIZE = SystemConstants.DRONE_MOVE_DISTANCE; // A cell is one move wide.
+    static final double GRID_STRETCH = 1.025; // Grid distances are at most 2.4% longer than the moves'.
+    private static final int MIN_MARGIN_CELLS = 60; // Cells added round the regions on every side, at least.
+    // The 16 neighbours of a cell, as (lng, lat) steps
+    static final int[][] NEIGHBOURS = {
+            {1, 0}, {2, 1}, {1, 1}, {1, 2}, {0, 1}, {-1, 2}, {-1, 1}, {-2, 1},
+            {-1, 0}, {-2, -1}, {-1, -1}, {-1, -2}, {0, -1}, {1, -2}, {1, -1}, {2, -1}};
+    private static final float[] NEIGHBOUR_MOVES = neighbourMoves(); // Cost of the step to each neighbour.
+
+    // Grids already built, by zone set; regions are never changed after they are loaded
+    private static final BoundedCache<List<NamedRegion>, FreeSpaceGrid> CACHE = new BoundedCache<>(16);
+
+    private final double originLng; // South-west corner of the grid.
+    private final double originLat;
+    private final int columns;
+    private final int rows;
+    private final boolean[] free; // Whether each cell, row by row, is outside every no-fly zone.
+
+    /**
+     * Builds the grid.
+     * @param noFlyZones The no-fly zones.
+     * @param centralArea The central area, which the grid covers too.
+     */
+    FreeSpaceGrid(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        double minLng = Double.POSITIVE_INFINITY, maxLng = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (NamedRegion region : regions(noFlyZones, centralArea)) {
+            for (LngLat vertex : region.vertices()) {
+                minLng = Math.min(minLng, vertex.lng());
+                maxLng = Math.max(maxLng, vertex.lng());
+                minLat = Math.min(minLat, vertex.lat());
+                maxLat = Math.max(maxLat, vertex.lat());
+            }
+        }
+        // The restaurants lie round the regions, not in them: add half the regions' extent on every side
+        int margin = Math.max(MIN_MARGIN_CELLS, (int) Math.ceil(Math.max(maxLng - minLng, maxLat - minLat) / 2 / CELL_SIZE));
+        originLng = minLng - margin * CELL_SIZE;
+        originLat = minLat - margin * CELL_SIZE;
+        columns = (int) Math.ceil((maxLng - minLng) / CELL_SIZE) + 2 * margin + 1;
+        rows = (int) Math.ceil((maxLat - minLat) / CELL_SIZE) + 2 * margin + 1;
+
+        free = new boolean[columns * rows];
+        Arrays.fill(free, true);
+        for (NamedRegion zone : noFlyZones) {
+            blockCells(zone);
+        }
+    }
+
+    // A grid read back from the GeometryStore
+    private FreeSpaceGrid(double originLng, double originLat, int columns, int rows, boolean[] free) {
+        this.originLng = originLng;
+        this.originLat = originLat;
+        this.columns = columns;
+        this.rows = rows;
+        this.free = free;
+    }
+
+    /**
+     * Returns the grid for a set of no-fly zones, building it on first use.
+     * @param noFlyZones The no-fly zones.
+     * @param centralArea The central area.
+     * @return The grid.
+     */
+    static FreeSpaceGrid forRegions(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        List<NamedRegion> key = regions(noFlyZones, centralArea);
+        return CACHE.get(key, zones -> GeometryStore.loadOrBuild(noFlyZones, centralArea, "grid", FreeSpaceGrid::read,
+                () -> new FreeSpaceGrid(noFlyZones, centralArea), FreeSpaceGrid::write));
+    }
+
+    /**
+     * The key the structures built for a set of regions are cached under.
+     * @param noFlyZones The no-fly zones.
+     * @param centralArea The central area.
+     * @return The no-fly zones followed by the central area.
+     */
+    static List<NamedRegion> regions(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        NamedRegion[] regions = Arrays.copyOf(noFlyZones, noFlyZones.length + 1);
+        regions[noFlyZones.length] = centralArea;
+        return List.of(regions);
+    }
+
+    // Writes the grid for the GeometryStore
+    private static void write(FreeSpaceGrid grid, DataOutputStream out) throws IOException {
+        out.writeDouble(grid.originLng);
+        out.writeDouble(grid.originLat);
+        out.writeInt(grid.columns);
+        out.writeInt(grid.rows);
+        GeometryStore.writeBits(grid.free, out);
+    }
+
+    // Reads back a grid written by write
+    private static FreeSpaceGrid read(ByteBuffer in) {
+        double originLng = in.getDouble();
+        double originLat = in.getDouble();
+        int columns = in.getInt();
+        int rows = in.getInt();
+        boolean[] free = GeometryStore.readBits(in);
+        if (columns <= 0 || rows <= 0 || free.length != columns * rows) {
+            throw new IllegalStateException("Grid of " + free.length + " cells is not " + columns + " by " + rows);
+        }
+        return new FreeSpaceGrid(originLng, originLat, columns, rows, free);
+    }
+
+    int getColumns() {
+        return columns;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * @param cell Index of a cell.
+     * @return Whether the cell is outside every no-fly zone.
+     */
+    boolean isFree(int cell) {
+        return free[cell];
+    }
+
+    /**
+     * @param lng Longitude of a position.
+     * @param lat Latitude of a position.
+     * @return Index of the cell containing the position; -1 outside the grid.
+     */
+    int cell(double lng, double lat) {
+        int column = (int) Math.floor((lng - originLng) / CELL_SIZE);
+        int row = (int) Math.floor((lat - originLat) / CELL_SIZE);
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return -1;
+        }
+        return row * columns + column;
+    }
+
+    /**
+     * @param cell Index of a cell.
+     * @return The centre of the cell.
+     */
+    LngLat centre(int cell) {
+        return new LngLat(originLng + (cell % columns + 0.5) * CELL_SIZE, originLat + (cell / columns + 0.5) * CELL_SIZE);
+    }
+
+    /**
+     * @param cell Index of a cell.
+     * @return The free cell closest to it; -1 if every cell is blocked.
+     */
+    int nearestFreeCell(int cell) {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int other = 0; other < free.length; other++) {
+            if (free[other]) {
+                double columnDistance = other % columns - cell % columns;
+                double rowDistance = other / columns - cell / columns;
+                double distance = columnDistance * columnDistance + rowDistance * rowDistance;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = other;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Dijkstra over the free cells of the whole grid.
+     * @param source Index of the cell to measure from.
+     * @return Moves from the source to each cell; infinite if unreachable.
+     */
+    float[] distancesFrom(int source) {
+        return distancesWithin(source, 0, 0, columns - 1, rows - 1);
+    }
+
+    /**
+     * Dijkstra over the free cells of a block of the grid, never leaving it.
+     * @param source Index of the cell to measure from, inside the block.
+     * @param fromColumn First column of the block.
+     * @param fromRow First row of the block.
+     * @param toColumn Last column of the block.
+     * @param toRow Last row of the block.
+     * @return Moves from the source to each cell of the block, row by row; infinite if unreachable.
+     */
+    float[] distancesWithin(int source, int fromColumn, int fromRow, int toColumn, int toRow) {
+        int width = toColumn - fromColumn + 1;
+        float[] distances = new float[width * (toRow - fromRow + 1)];
+        Arrays.fill(distances, Float.POSITIVE_INFINITY);
+        distances[(source / columns - fromRow) * width + source % columns - fromColumn] = 0;
+        CellQueue queue = new CellQueue();
+        queue.add(0, source);
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int cell = CellQueue.index(entry);
+            float distance = CellQueue.distance(entry);
+            int column = cell % columns;
+            int row = cell / columns;
+            if (distance > distances[(row - fromRow) * width + column - fromColumn]) {
+                continue; // Already reached by a shorter way
+            }
+            for (int n = 0; n < NEIGHBOURS.length; n++) {
+                int[] step = NEIGHBOURS[n];
+                int nextColumn = column + step[0];
+                int nextRow = row + step[1];
+                if (nextColumn < fromColumn || nextColumn > toColumn || nextRow < fromRow || nextRow > toRow) {
+                    continue;
+                }
+                int next = nextRow * columns + nextColumn;
+                int local = (nextRow - fromRow) * width + nextColumn - fromColumn;
+                float nextDistance = distance + NEIGHBOUR_MOVES[n];
+                if (free[next] && nextDistance < distances[local] && passes(column, row, step)) {
+                    distances[local] = nextDistance;
+                    queue.add(nextDistance, next);
+                }
+            }
+        }
+        return distances;
+    }
+
+    // Marks the cells whose centre lies in the zone
+    private void blockCells(NamedRegion zone) {
+        PreparedPolygon polygon = new PreparedPolygon(zone.vertices());
+        double minLng = Double.POSITIVE_INFINITY, maxLng = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (LngLat vertex : zone.vertices()) {
+            minLng = Math.min(minLng, vertex.lng());
+            maxLng = Math.max(maxLng, vertex.lng());
+            minLat = Math.min(minLat, vertex.lat());
+            maxLat = Math.max(maxLat, vertex.lat());
+        }
+        int fromColumn = Math.max(0, (int) Math.floor((minLng - originLng) / CELL_SIZE));
+        int toColumn = Math.min(columns - 1, (int) Math.floor((maxLng - originLng) / CELL_SIZE));
+        int fromRow = Math.max(0, (int) Math.floor((minLat - originLat) / CELL_SIZE));
+        int toRow = Math.min(rows - 1, (int) Math.floor((maxLat - originLat) / CELL_SIZE));
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                int cell = row * columns + column;
+                if (free[cell] && polygon.contains(centre(cell))) {
+                    free[cell] = false;
+                }
+            }
+        }
+    }
+
+    // Whether the cells a step cuts through, besides its ends, are free: both side cells of a diagonal step, and
+    // the two cells beside a knight's step
+    private boolean passes(int column, int row, int[] step) {
+        int stepLng = Integer.signum(step[0]);
+        int stepLat = Integer.signum(step[1]);
+        if (stepLng == 0 || stepLat == 0) {
+            return true;
+        }
+        if (Math.abs(step[0]) == Math.abs(step[1])) {
+            return free[row * columns + column + stepLng] && free[(row + stepLat) * columns + column];
+        }
+        if (Math.abs(step[0]) == 2) {
+            return free[row * columns + column + stepLng] && free[(row + stepLat) * columns + column + stepLng];
+        }
+        return free[(row + stepLat) * columns + column] && free[(row + stepLat) * columns + column + stepLng];
+    }
+
+    private static float[] neighbourMoves() {
+        float[] moves = new float[NEIGHBOURS.length];
+        for (int n = 0; n < NEIGHBOURS.length; n++) {
+            moves[n] = (float) AStarSearch.movesAlong(NEIGHBOURS[n][0] * CELL_SIZE, NEIGHBOURS[n][1] * CELL_SIZE);
+        }
+        return moves;
+    }
+
+    /**
+     * Binary min-heap of indexes (of cells, or of any other nodes) by distance, packed into longs: the distance's
+     * bits (which order like the distance, as it is never negative) above the index.
+     */
+    static final class CellQueue {
+        private long[] heap = new long[1024];
+        private int size;
+
+        void add(float distance, int index) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            long entry = ((long) Float.floatToIntBits(distance) << 32) | index;
+            int position = size++;
+            while (position > 0 && heap[(position - 1) / 2] > entry) {
+                heap[position] = heap[(position - 1) / 2];
+                position = (position - 1) / 2;
+            }
+            heap[position] = entry;
+        }
+
+        /**
+         * @return The entry with the smallest distance, removed; read it with index and distance.
+         */
+        long poll() {
+            long first = heap[0];
+            long last = heap[--size];
+            int position = 0;
+            while (2 * position + 1 < size) {
+                int child = 2 * position + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= last) {
+                    break;
+                }
+                heap[position] = heap[child];
+                position = child;
+            }
+            heap[position] = last;
+            return first;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        static int index(long entry) {
+            return (int) entry;
+        }
+
+        static float distance(long entry) {
+            return Float.intBitsToFloat((int) (entry >>> 32));
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The connected parts of the free space, labelled on the cells of the FreeSpaceGrid, so that whether the drone
+ * can get from one position to close to another is known before any search, in constant time.
+ *
+ * The drone's rules only look at where each move ends, so a move may cross a zone thinner than a move, and
+ * a move (one cell wide) always ends in the cell it starts in or one of its 8 neighbours. A cell counts as blocked
+ * only if the no-fly zones cover all of it: it lies wholly inside one, or, where zones meet, each of its quarters
+ * is covered in turn, down to pieces a sixty-fourth of a move wide, which count as covered if their centre is.
+ * A cell the central area's boundary crosses counts as both in and out of it. The labels therefore join every two
+ * cells some path of moves could join, and perhaps some more: canReach may say yes to a destination no search
+ * can reach, but never no to one it can, unless the only way is through a gap between zones narrower than
+ * a thirty-second of a move.
+ *
+ * The central area rule makes reaching one-way: the drone may leave the central area but not go back in
+ * on the way to the destination. The cells in the central area and those out of it are labelled separately, and
+ * each part in it records the parts out of it its moves lead into. The way back is the way out reversed,
+ * so it needs no check of its own.
+ *
+ * The labels are never changed once built, so they are shared by every planner with the same zones (forRegions),
+ * and kept in the GeometryStore, if there is one, for later runs.
+ */
+final class FreeSpaceLabels {
+    private static final double EDGE_MARGIN = FreeSpaceGrid.CELL_SIZE * 1e-6; // Cells this near an edge count as crossed.
+    private static final byte OUTSIDE = 0; // A cell wholly outside a region.
+    private static final byte CROSSED = 1; // A cell the region's boundary crosses or touches.
+    private static final byte INSIDE = 2; // A cell wholly inside a region.
+    private static final int NO_LABEL = -1;
+    private static final int MAX_DEPTH = 6; // Halvings of a cell before its pieces are judged by their centres.
+
+    // Labels already built, by zone set; regions are never changed after they are loaded
+    private static final BoundedCache<List<NamedRegion>, FreeSpaceLabels> CACHE = new BoundedCache<>(16);
+
+    private final FreeSpaceGrid grid;
+    private final PreparedPolygon central; // The central area, for the exact test of a path's start.
+    private final int[] insideLabels; // Label of the part of the central area each cell may be in; NO_LABEL if none.
+    private final int[] outsideLabels; // Label of the part out of the central area each cell may be in; NO_LABEL if none.
+    private final BitSet[] exits; // For each part in the central area, the parts out of it its moves lead into.
+    private final int outsideCount;
+
+    /**
+     * Labels the free space.
+     * @param noFlyZones The no-fly zones.
+     * @param centralArea The central area.
+     */
+    FreeSpaceLabels(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        grid = FreeSpaceGrid.forRegions(noFlyZones, centralArea);
+        central = new PreparedPolygon(centralArea.vertices());
+        int cells = grid.getColumns() * grid.getRows();
+
+        boolean[] blocked = blockedCells(noFlyZones);
+        byte[] inCentral = new byte[cells];
+        int[] centralBlock = block(BoundingBox.of(centralArea.vertices()));
+        byte[] centralClasses = classify(centralArea.vertices(), centralBlock);
+        int blockColumns = centralBlock[2] - centralBlock[0] + 1;
+        for (int row = centralBlock[1]; row <= centralBlock[3]; row++) {
+            for (int column = centralBlock[0]; column <= centralBlock[2]; column++) {
+                inCentral[row * grid.getColumns() + column] =
+                        centralClasses[(row - centralBlock[1]) * blockColumns + column - centralBlock[0]];
+            }
+        }
+        insideLabels = new int[cells];
+        outsideLabels = new int[cells];
+        Arrays.fill(insideLabels, NO_LABEL);
+        Arrays.fill(outsideLabels, NO_LABEL);
+        int insideCount = 0;
+        int outsideParts = 0;
+        int[] queue = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            if (!blocked[cell] && inCentral[cell] != OUTSIDE && insideLabels[cell] == NO_LABEL) {
+                label(cell, insideCount++, insideLabels, blocked, inCentral, OUTSIDE, queue);
+            }
+            if (!blocked[cell] && inCentral[cell] != INSIDE && outsideLabels[cell] == NO_LABEL) {
+                label(cell, outsideParts++, outsideLabels, blocked, inCentral, INSIDE, queue);
+            }
+        }
+        outsideCount = outsideParts;
+
+        exits = new BitSet[insideCount];
+        for (int label = 0; label < insideCount; label++) {
+            exits[label] = new BitSet(outsideCount);
+        }
+        int columns = grid.getColumns();
+        for (int cell = 0; cell < cells; cell++) {
+            if (insideLabels[cell] == NO_LABEL) {
+                continue;
+            }
+            int column = cell % columns;
+            int row = cell / columns;
+            for (int next : neighbourhood(column, row)) {
+                if (next >= 0 && outsideLabels[next] != NO_LABEL) {
+                    exits[insideLabels[cell]].set(outsideLabels[next]);
+                }
+            }
+        }
+    }
+
+    // Labels read back from the GeometryStore
+    private FreeSpaceLabels(FreeSpaceGrid grid, NamedRegion centralArea, int[] insideLabels, int[] outsideLabels,
+                            BitSet[] exits, int outsideCount) {
+        this.grid = grid;
+        this.central = new PreparedPolygon(centralArea.vertices());
+        this.insideLabels = insideLabels;
+        this.outsideLabels = outsideLabels;
+        this.exits = exits;
+        this.outsideCount = outsideCount;
+    }
+
+    /**
+     * Returns the labels for a set of no-fly zones, building them on first use.
+     * @param noFlyZones The no-fly zones.
+     * @param centralArea The central area.
+     * @return The labels.
+     */
+    static FreeSpaceLabels forRegions(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        List<NamedRegion> key = FreeSpaceGrid.regions(noFlyZones, centralArea);
+        return CACHE.get(key, zones -> {
+            FreeSpaceGrid grid = FreeSpaceGrid.forRegions(noFlyZones, centralArea);
+            return GeometryStore.loadOrBuild(noFlyZones, centralArea, "labels", in -> read(in, grid, centralArea),
+                    () -> new FreeSpaceLabels(noFlyZones, centralArea), FreeSpaceLabels::write);
+        });
+    }
+
+    /**
+     * Whether the drone might get from a position to close to another under the rules; if not, no search can.
+     * @param from Where the drone starts.
+     * @param to The destination.
+     * @return False only if no path of moves can reach the destination.
+     */
+    boolean canReach(LngLat from, LngLat to) {
+        boolean fromCentral = central.contains(from);
+        int fromCell = grid.cell(from.lng(), from.lat());
+        int[] fromLabels = fromCentral ? insideLabels : outsideLabels;
+        int label = fromCell < 0 ? outsideLabels[0] : fromLabels[fromCell]; // The grid's edge is open on every side
+        if (label == NO_LABEL) {
+            return true; // Starting in a zone, which the search has to leave first; not for the labels to judge
+        }
+        // The path ends within a move of the destination, so in its cell or a neighbouring one
+        int toCell = grid.cell(to.lng(), to.lat());
+        if (toCell < 0) {
+            return fromCentral ? exits[label].get(outsideLabels[0]) : label == outsideLabels[0];
+        }
+        int columns = grid.getColumns();
+        for (int cell : neighbourhood(toCell % columns, toCell / columns)) {
+            int outside = cell < 0 ? outsideLabels[0] : outsideLabels[cell];
+            if (fromCentral) {
+                if ((cell >= 0 && insideLabels[cell] == label) || (outside != NO_LABEL && exits[label].get(outside))) {
+                    return true;
+                }
+            } else if (outside == label) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Writes the labels for the GeometryStore; the grid is stored on its own
+    private static void write(FreeSpaceLabels labels, DataOutputStream out) throws IOException {
+        out.writeInt(labels.outsideCount);
+        GeometryStore.writeInts(labels.insideLabels, out);
+        GeometryStore.writeInts(labels.outsideLabels, out);
+        out.writeInt(labels.exits.length);
+        for (BitSet exit : labels.exits) {
+            GeometryStore.writeLongs(exit.toLongArray(), out);
+        }
+    }
+
+    // Reads back labels written by write, for the grid built from the same geometry
+    private static FreeSpaceLabels read(ByteBuffer in, FreeSpaceGrid grid, NamedRegion centralArea) {
+        int outsideCount = in.getInt();
+        int[] insideLabels = GeometryStore.readInts(in);
+        int[] outsideLabels = GeometryStore.readInts(in);
+        int cells = grid.getColumns() * grid.getRows();
+        if (insideLabels.length != cells || outsideLabels.length != cells) {
+            throw new IllegalStateException("Labels do not fit a grid of " + cells + " cells");
+        }
+        BitSet[] exits = new BitSet[GeometryStore.readCount(in, Integer.BYTES)];
+        for (int label = 0; label < exits.length; label++) {
+            exits[label] = BitSet.valueOf(GeometryStore.readLongs(in));
+        }
+        return new FreeSpaceLabels(grid, centralArea, insideLabels, outsideLabels, exits, outsideCount);
+    }
+
+    /**
+     * @return The number of parts of the free space out of the central area that no moves join.
+     */
+    int getOutsideCount() {
+        return outsideCount;
+    }
+
+    // Gives every cell joined to the first the same label, over cells not blocked and not wholly on the other side
+    // of the central area's boundary
+    private void label(int first, int label, int[] labels, boolean[] blocked, byte[] inCentral, byte excluded, int[] queue) {
+        int columns = grid.getColumns();
+        int head = 0;
+        int tail = 0;
+        labels[first] = label;
+        queue[tail++] = first;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int next : neighbourhood(cell % columns, cell / columns)) {
+                if (next >= 0 && !blocked[next] && inCentral[next] != excluded && labels[next] == NO_LABEL) {
+                    labels[next] = label;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    // The cell and its 8 neighbours; -1 for those off the grid
+    private int[] neighbourhood(int column, int row) {
+        int[] cells = new int[9];
+        int n = 0;
+        for (int rowStep = -1; rowStep <= 1; rowStep++) {
+            for (int columnStep = -1; columnStep <= 1; columnStep++) {
+                int nextColumn = column + columnStep;
+                int nextRow = row + rowStep;
+                boolean onGrid = nextColumn >= 0 && nextColumn < grid.getColumns() && nextRow >= 0 && nextRow < grid.getRows();
+                cells[n++] = onGrid ? nextRow * grid.getColumns() + nextColumn : -1;
+            }
+        }
+        return cells;
+    }
+
+    // The cells the no-fly zones cover: those wholly inside one, then, of those zone boundaries cross,
+    // the ones whose pieces are all covered
+    private boolean[] blockedCells(NamedRegion[] noFlyZones) {
+        int columns = grid.getColumns();
+        boolean[] blocked = new boolean[columns * grid.getRows()];
+        boolean[] crossed = new boolean[blocked.length];
+        PreparedPolygon[] polygons = new PreparedPolygon[noFlyZones.length];
+        BoundingBox[] boxes = new BoundingBox[noFlyZones.length];
+        for (int z = 0; z < noFlyZones.length; z++) {
+            polygons[z] = new PreparedPolygon(noFlyZones[z].vertices());
+            boxes[z] = BoundingBox.of(noFlyZones[z].vertices());
+            int[] block = block(boxes[z]);
+            byte[] classes = classify(noFlyZones[z].vertices(), block);
+            int blockColumns = block[2] - block[0] + 1;
+            for (int row = block[1]; row <= block[3]; row++) {
+                for (int column = block[0]; column <= block[2]; column++) {
+                    byte cellClass = classes[(row - block[1]) * blockColumns + column - block[0]];
+                    blocked[row * columns + column] |= cellClass == INSIDE;
+                    crossed[row * columns + column] |= cellClass == CROSSED;
+                }
+            }
+        }
+
+        double half = FreeSpaceGrid.CELL_SIZE / 2;
+        List<Integer> near = new ArrayList<>();
+        for (int cell = 0; cell < blocked.length; cell++) {
+            if (!crossed[cell] || blocked[cell]) {
+                continue;
+            }
+            LngLat centre = grid.centre(cell);
+            BoundingBox box = new BoundingBox(centre.lng() - half, centre.lat() - half, centre.lng() + half, centre.lat() + half);
+            near.clear();
+            for (int z = 0; z < noFlyZones.length; z++) {
+                if (box.intersects(boxes[z])) {
+                    near.add(z);
+                }
+            }
+            blocked[cell] = covered(box.minLng, box.minLat, FreeSpaceGrid.CELL_SIZE, 0, near, noFlyZones, polygons);
+        }
+        return blocked;
+    }
+
+    // Whether the zones near a square cover it: it is wholly inside one of them, or each of its quarters is covered
+    private static boolean covered(double minLng, double minLat, double size, int depth, List<Integer> near,
+                                   NamedRegion[] noFlyZones, PreparedPolygon[] polygons) {
+        double centreLng = minLng + size / 2;
+        double centreLat = minLat + size / 2;
+        if (depth == MAX_DEPTH) {
+            for (int z : near) {
+                if (polygons[z].contains(centreLng, centreLat)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        boolean anyCrosses = false;
+        for (int z : near) {
+            if (!crosses(noFlyZones[z].vertices(), minLng, minLat, minLng + size, minLat + size)) {
+                if (polygons[z].contains(centreLng, centreLat)) {
+                    return true;
+                }
+            } else {
+                anyCrosses = true;
+            }
+        }
+        if (!anyCrosses) {
+            return false; // Wholly outside every zone
+        }
+        double half = size / 2;
+        return covered(minLng, minLat, half, depth + 1, near, noFlyZones, polygons)
+                && covered(minLng + half, minLat, half, depth + 1, near, noFlyZones, polygons)
+                && covered(minLng, minLat + half, half, depth + 1, near, noFlyZones, polygons)
+                && covered(minLng + half, minLat + half, half, depth + 1, near, noFlyZones, polygons);
+    }
+
+    // Whether each cell of a block lies wholly outside a region, wholly inside it, or is crossed by its boundary,
+    // row by row
+    private byte[] classify(LngLat[] vertices, int[] block) {
+        int blockColumns = block[2] - block[0] + 1;
+        byte[] classes = new byte[blockColumns * (block[3] - block[1] + 1)];
+        double half = FreeSpaceGrid.CELL_SIZE / 2;
+        for (int i = 0; i < vertices.length; i++) {
+            LngLat from = vertices[i];
+            LngLat to = vertices[(i + 1) % vertices.length];
+            int[] edgeBlock = block(new BoundingBox(Math.min(from.lng(), to.lng()), Math.min(from.lat(), to.lat()),
+                    Math.max(from.lng(), to.lng()), Math.max(from.lat(), to.lat())));
+            for (int row = edgeBlock[1]; row <= edgeBlock[3]; row++) {
+                for (int column = edgeBlock[0]; column <= edgeBlock[2]; column++) {
+                    LngLat centre = grid.centre(row * grid.getColumns() + column);
+                    if (crosses(from, to, centre.lng() - half, centre.lat() - half, centre.lng() + half, centre.lat() + half)) {
+                        classes[(row - block[1]) * blockColumns + column - block[0]] = CROSSED;
+                    }
+                }
+            }
+        }
+        // A cell the boundary misses is all on one side of it, the side its centre is on
+        PreparedPolygon polygon = new PreparedPolygon(vertices);
+        for (int row = block[1]; row <= block[3]; row++) {
+            for (int column = block[0]; column <= block[2]; column++) {
+                int local = (row - block[1]) * blockColumns + column - block[0];
+                if (classes[local] == OUTSIDE && polygon.contains(grid.centre(row * grid.getColumns() + column))) {
+                    classes[local] = INSIDE;
+                }
+            }
+        }
+        return classes;
+    }
+
+    // The first and last column and row of the cells round a box; the regions lie well inside the grid,
+    // whose margin is many cells wide, so these are all on it
+    private int[] block(BoundingBox box) {
+        int first = grid.cell(box.minLng, box.minLat);
+        int last = grid.cell(box.maxLng, box.maxLat);
+        int columns = grid.getColumns();
+        return new int[]{first % columns - 1, first / columns - 1, last % columns + 1, last / columns + 1};
+    }
+
+    // Whether any edge of a polygon meets a box
+    private static boolean crosses(LngLat[] vertices, double minLng, double minLat, double maxLng, double maxLat) {
+        for (int i = 0; i < vertices.length; i++) {
+            if (crosses(vertices[i], vertices[(i + 1) % vertices.length], minLng, minLat, maxLng, maxLat)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether a segment meets a box, grown by EDGE_MARGIN, by clipping the segment to the box's sides
+    private static boolean crosses(LngLat from, LngLat to, double minLng, double minLat, double maxLng, double maxLat) {
+        double lngStep = to.lng() - from.lng();
+        double latStep = to.lat() - from.lat();
+        double[] clip = {0, 1};
+        return clip(-lngStep, from.lng() - (minLng - EDGE_MARGIN), clip)
+                && clip(lngStep, (maxLng + EDGE_MARGIN) - from.lng(), clip)
+                && clip(-latStep, from.lat() - (minLat - EDGE_MARGIN), clip)
+                && clip(latStep, (maxLat + EDGE_MARGIN) - from.lat(), clip);
+    }
+
+    // Liang-Barsky: narrows the part [clip[0], clip[1]] of the segment to where direction * t <= distance
+    private static boolean clip(double direction, double distance, double[] clip) {
+        if (direction == 0) {
+            return distance >= 0;
+        }
+        double t = distance / direction;
+        if (direction < 0) {
+            clip[0] = Math.max(clip[0], t);
+        } else {
+            clip[1] = Math.min(clip[1], t);
+        }
+        return clip[0] <= clip[1];
+    }
+}
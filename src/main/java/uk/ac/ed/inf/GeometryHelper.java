@@ -68,6 +68,24 @@ public class GeometryHelper {
         return false;
     }
 
+    /**
+     * Checks if a line segment crosses or touches any edge of a polygon.
+     * @param polygonVertices Array of points that form the polygon vertices.
+     * @param from The first point of the segment.
+     * @param to The second point of the segment.
+     * @return True if the segment meets the polygon's boundary, false otherwise.
+     */
+    public static boolean doesSegmentCrossPolygon(LngLat[] polygonVertices, LngLat from, LngLat to) {
+        GeometryHelper segment = new GeometryHelper(from, to);
+        for (int i = 0; i < polygonVertices.length; i++) {
+            GeometryHelper edge = new GeometryHelper(polygonVertices[i], polygonVertices[(i + 1) % polygonVertices.length]);
+            if (doLinesIntersect(segment, edge)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Determines if a point lies inside a polygon using ray casting algorithm.
      * @param polygonVertices Array of points that form the polygon vertices.
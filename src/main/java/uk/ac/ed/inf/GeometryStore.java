@@ -0,0 +1,343 @@
+package uk.ac.ed.inf;
+
+import io.micrometer.core.instrument.Counter;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A local store of the structures built from the no-fly zones and the central area (the FreeSpaceGrid, the
+ * FreeSpaceLabels and the LandmarkHeuristic), so that a run whose geometry has not changed since an earlier one
+ * maps them in from disk instead of building them again.
+ *
+ * The store is content addressed: each structure is kept in a file named after the SHA-256 of the geometry it
+ * was built from, followed by its kind, such as 3f2a...e1.labels. The geometry is canonicalised before it is
+ * hashed, so zones fetched in another order, renamed, or with their ring closed by repeating the first vertex,
+ * find the same files; any moved vertex gives a new hash. Files are never changed once written, so old ones can
+ * simply be deleted.
+ *
+ * A file holds a small header (magic, layout version) followed by the structure's arrays, big-endian, with
+ * boolean cells packed 64 to a long. It is written next to its final name and then moved there, so a reader
+ * never sees half a file, and it is memory-mapped to be read. A file that is missing, from another layout
+ * version or cut short is ignored, and the structure built and written again.
+ *
+ * The store is switched on by naming its directory in the pizzadronz.geometry.store system property.
+ */
+final class GeometryStore {
+    /** System property with the directory of the store; unset, every structure is built in memory. */
+    static final String PROPERTY = "pizzadronz.geometry.store";
+    private static final int MAGIC = 0x50444753; // "PDGS"
+    private static final int VERSION = 1; // Layout version; the hash covers it too, so a new layout never reads old files.
+
+    private final File directory;
+    private final Counter hits = DeliveryMetrics.geometryStore(true); // Structures read from the store.
+    private final Counter misses = DeliveryMetrics.geometryStore(false); // Structures that had to be built.
+
+    /**
+     * Writes a structure's arrays.
+     * @param <T> The type of the structure.
+     */
+    interface Encoder<T> {
+        /**
+         * @param artefact The structure.
+         * @param out The stream to write it to, after the header.
+         * @throws IOException If writing fails.
+         */
+        void write(T artefact, DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads a structure back from what its Encoder wrote.
+     * @param <T> The type of the structure.
+     */
+    interface Decoder<T> {
+        /**
+         * @param in The mapped file, positioned after the header.
+         * @return The structure.
+         * @throws BufferUnderflowException If the file is cut short.
+         * @throws IllegalStateException If the file does not fit the geometry.
+         */
+        T read(ByteBuffer in);
+    }
+
+    /**
+     * Constructor for GeometryStore class.
+     * @param directory The directory the files are kept in; created on the first write.
+     */
+    GeometryStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return The store named by the pizzadronz.geometry.store system property, or null if it is not set.
+     */
+    static GeometryStore configured() {
+        String directory = System.getProperty(PROPERTY);
+        return directory == null || directory.isBlank() ? null : new GeometryStore(new File(directory));
+    }
+
+    /**
+     * Reads a structure from the configured store, or builds it and adds it there; without a store, just builds it.
+     * @param noFlyZones The no-fly zones the structure is built from.
+     * @param centralArea The central area the structure is built from.
+     * @param kind The kind of structure, used as the file extension.
+     * @param decoder Reads the structure back.
+     * @param builder Builds the structure from the geometry.
+     * @param encoder Writes the structure.
+     * @param <T> The type of the structure.
+     * @return The structure.
+     */
+    static <T> T loadOrBuild(NamedRegion[] noFlyZones, NamedRegion centralArea, String kind,
+                             Decoder<T> decoder, Supplier<T> builder, Encoder<T> encoder) {
+        GeometryStore store = configured();
+        if (store == null) {
+            return builder.get();
+        }
+        return store.loadOrBuild(key(noFlyZones, centralArea), kind, decoder, builder, encoder);
+    }
+
+    /**
+     * Reads a structure from the store, or builds it and adds it. A failure to write is not an error:
+     * the structure is still returned, and built again next time.
+     * @param key The hash of the geometry, from key.
+     * @param kind The kind of structure, used as the file extension.
+     * @param decoder Reads the structure back.
+     * @param builder Builds the structure from the geometry.
+     * @param encoder Writes the structure.
+     * @param <T> The type of the structure.
+     * @return The structure.
+     */
+    <T> T loadOrBuild(String key, String kind, Decoder<T> decoder, Supplier<T> builder, Encoder<T> encoder) {
+        File file = new File(directory, key + "." + kind);
+        T artefact = read(file, decoder);
+        if (artefact != null) {
+            hits.increment();
+            return artefact;
+        }
+        misses.increment();
+        artefact = builder.get();
+        try {
+            write(file, artefact, encoder);
+        } catch (IOException e) {
+            // A read-only or full disk only costs the next run the building
+        }
+        return artefact;
+    }
+
+    /**
+     * The address of the structures built from some geometry: a hex SHA-256 of the central area and the no-fly
+     * zones, each as its vertices without a repeated closing vertex, the zones sorted, names left out.
+     * @param noFlyZones The no-fly zones.
+     * @param centralArea The central area.
+     * @return The hash.
+     */
+    static String key(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        List<byte[]> zones = new ArrayList<>();
+        for (NamedRegion zone : noFlyZones) {
+            zones.add(canonical(zone.vertices()));
+        }
+        zones.sort(Arrays::compare);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+                out.writeInt(VERSION);
+                out.write(canonical(centralArea.vertices()));
+                out.writeInt(zones.size());
+                for (byte[] zone : zones) {
+                    out.write(zone);
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("Could not hash the geometry", e); // SHA-256 is always available
+        }
+    }
+
+    // The vertices as bytes: their count, then each longitude and latitude, the ring left open and -0.0 made 0.0
+    private static byte[] canonical(LngLat[] vertices) {
+        int count = vertices.length;
+        while (count > 1 && vertices[count - 1].equals(vertices[0])) {
+            count--;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES + count * 2 * Double.BYTES);
+        bytes.putInt(count);
+        for (int i = 0; i < count; i++) {
+            bytes.putDouble(vertices[i].lng() + 0.0);
+            bytes.putDouble(vertices[i].lat() + 0.0);
+        }
+        return bytes.array();
+    }
+
+    // The structure in a file, or null if the file is missing, from another layout or cut short
+    private static <T> T read(File file, Decoder<T> decoder) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 2 * Integer.BYTES || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            return decoder.read(in);
+        } catch (IOException | BufferUnderflowException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    // Writes the structure next to the file, then moves it into place
+    private <T> void write(File file, T artefact, Encoder<T> encoder) throws IOException {
+        Files.createDirectories(directory.toPath());
+        File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                encoder.write(artefact, out);
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Writes boolean cells packed 64 to a long, preceded by their count.
+     * @param cells The cells.
+     * @param out The stream.
+     * @throws IOException If writing fails.
+     */
+    static void writeBits(boolean[] cells, DataOutputStream out) throws IOException {
+        out.writeInt(cells.length);
+        for (int word = 0; word < cells.length; word += 64) {
+            long bits = 0;
+            for (int bit = 0; bit < 64 && word + bit < cells.length; bit++) {
+                if (cells[word + bit]) {
+                    bits |= 1L << bit;
+                }
+            }
+            out.writeLong(bits);
+        }
+    }
+
+    /**
+     * @param in The mapped file.
+     * @return The boolean cells writeBits wrote.
+     */
+    static boolean[] readBits(ByteBuffer in) {
+        boolean[] cells = new boolean[readCount(in, Long.BYTES / 64.0)];
+        for (int word = 0; word < cells.length; word += 64) {
+            long bits = in.getLong();
+            for (int bit = 0; bit < 64 && word + bit < cells.length; bit++) {
+                cells[word + bit] = (bits & (1L << bit)) != 0;
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Writes ints, preceded by their count.
+     * @param values The ints.
+     * @param out The stream.
+     * @throws IOException If writing fails.
+     */
+    static void writeInts(int[] values, DataOutputStream out) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * @param in The mapped file.
+     * @return The ints writeInts wrote, copied out in bulk.
+     */
+    static int[] readInts(ByteBuffer in) {
+        int[] values = new int[readCount(in, Integer.BYTES)];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Writes floats, preceded by their count.
+     * @param values The floats.
+     * @param out The stream.
+     * @throws IOException If writing fails.
+     */
+    static void writeFloats(float[] values, DataOutputStream out) throws IOException {
+        out.writeInt(values.length);
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+
+    /**
+     * @param in The mapped file.
+     * @return The floats writeFloats wrote, copied out in bulk.
+     */
+    static float[] readFloats(ByteBuffer in) {
+        float[] values = new float[readCount(in, Float.BYTES)];
+        in.asFloatBuffer().get(values);
+        in.position(in.position() + values.length * Float.BYTES);
+        return values;
+    }
+
+    /**
+     * Writes longs, preceded by their count.
+     * @param values The longs.
+     * @param out The stream.
+     * @throws IOException If writing fails.
+     */
+    static void writeLongs(long[] values, DataOutputStream out) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    /**
+     * @param in The mapped file.
+     * @return The longs writeLongs wrote, copied out in bulk.
+     */
+    static long[] readLongs(ByteBuffer in) {
+        long[] values = new long[readCount(in, Long.BYTES)];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + values.length * Long.BYTES);
+        return values;
+    }
+
+    /**
+     * Reads the count of an array, checking that the rest of the file could hold that many values.
+     * @param in The mapped file.
+     * @param bytesEach The fewest bytes each value takes.
+     * @return The count.
+     * @throws IllegalStateException If the file is too short for the count.
+     */
+    static int readCount(ByteBuffer in, double bytesEach) {
+        int count = in.getInt();
+        if (count < 0 || count * bytesEach > in.remaining()) {
+            throw new IllegalStateException("Geometry store file cut short");
+        }
+        return count;
+    }
+}
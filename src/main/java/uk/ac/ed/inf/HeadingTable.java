@@ -0,0 +1,120 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+
+/**
+ * The headings a drone move may take, evenly spaced round the compass from east, with the longitude and latitude
+ * offset of one move along each worked out once, so a move is two additions instead of a cosine and a sine.
+ * The offsets are those nextPosition always computed, to the last bit.
+ *
+ * Fewer headings give the searches fewer moves to try from each position, so they plan faster, but a path
+ * must zigzag more to follow a direction between two headings; more headings give straighter, shorter paths
+ * for more work per position.
+ */
+final class HeadingTable {
+    private static final HeadingTable[] TABLES = {new HeadingTable(8), new HeadingTable(16), new HeadingTable(32)};
+    /** The 16 headings of the drone's rules, 22.5 degrees apart. */
+    static final HeadingTable DEFAULT = of(16);
+
+    final int count; // Number of headings.
+    final double spacing; // Degrees between neighbouring headings.
+    final double[] angles; // Angle of each heading, in degrees.
+    private final double[] lngSteps; // Longitude offset of a move along each heading; the last is for 360 degrees.
+    private final double[] latSteps; // Latitude offset of a move along each heading; the last is for 360 degrees.
+
+    private HeadingTable(int count) {
+        this.count = count;
+        this.spacing = 360.0 / count;
+        this.angles = new double[count];
+        this.lngSteps = new double[count + 1];
+        this.latSteps = new double[count + 1];
+        for (int i = 0; i <= count; i++) {
+            double angle = i * spacing;
+            double radianAngle = Math.toRadians(angle);
+            lngSteps[i] = SystemConstants.DRONE_MOVE_DISTANCE * Math.cos(radianAngle);
+            latSteps[i] = SystemConstants.DRONE_MOVE_DISTANCE * Math.sin(radianAngle);
+            if (i < count) {
+                angles[i] = angle;
+            }
+        }
+    }
+
+    /**
+     * @param count Number of headings: 8, 16 or 32.
+     * @return The table of that many headings.
+     * @throws IllegalArgumentException If the number is not supported.
+     */
+    static HeadingTable of(int count) {
+        for (HeadingTable table : TABLES) {
+            if (table.count == count) {
+                return table;
+            }
+        }
+        throw new IllegalArgumentException("Planner error: a drone can have 8, 16 or 32 headings, not " + count);
+    }
+
+    /**
+     * @param angle An angle in degrees.
+     * @return The index of the heading at that angle, count for 360 degrees, or -1 if it is not a heading.
+     */
+    int indexOf(double angle) {
+        if (angle < 0 || angle > 360) {
+            return -1;
+        }
+        double index = angle / spacing;
+        return index == Math.rint(index) ? (int) index : -1;
+    }
+
+    /**
+     * @param index Index of a heading, as given by indexOf.
+     * @return The longitude offset of one move along it.
+     */
+    double lngStep(int index) {
+        return lngSteps[index];
+    }
+
+    /**
+     * @param index Index of a heading, as given by indexOf.
+     * @return The latitude offset of one move along it.
+     */
+    double latStep(int index) {
+        return latSteps[index];
+    }
+
+    /**
+     * @return The cosine of half the spacing; a displacement halfway between two headings takes its length
+     * over this in moves, the most of any direction.
+     */
+    double halfSpacingCosine() {
+        return Math.cos(Math.PI / count);
+    }
+
+    /**
+     * A factor turning a count of moves on another table into one that is never more than the moves this table
+     * needs for the same displacement. When every heading of this table is also one of the other's, this table
+     * never needs fewer moves, and the factor is one; otherwise the other table may need up to its length over
+     * halfSpacingCosine in moves and this table no fewer than its length.
+     * @param other The table the moves were counted on.
+     * @return The factor.
+     */
+    double boundFrom(HeadingTable other) {
+        return other.count % count == 0 ? 1 : other.halfSpacingCosine();
+    }
+
+    /**
+     * The fewest moves, counting fractions of a move, that cover a displacement when nothing is in the way.
+     * Unless the displacement lies along one of the headings this is more than its length: it is the length
+     * of the two moves either side of it that add up to it.
+     * @param lngDistance Longitude part of the displacement.
+     * @param latDistance Latitude part of the displacement.
+     * @return The number of moves.
+     */
+    double movesAlong(double lngDistance, double latDistance) {
+        double length = Math.sqrt(lngDistance * lngDistance + latDistance * latDistance);
+        if (length == 0) return 0;
+        double step = 2 * Math.PI / count; // Angle between neighbouring headings
+        double angle = Math.atan2(latDistance, lngDistance);
+        double offset = angle - Math.floor(angle / step) * step; // Angle past the heading just below
+        return length * (Math.sin(step - offset) + Math.sin(offset)) / Math.sin(step) / SystemConstants.DRONE_MOVE_DISTANCE;
+    }
+}
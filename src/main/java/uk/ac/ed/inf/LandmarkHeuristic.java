@@ -0,0 +1,172 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Landmark (ALT) heuristic for AStarSearch, which unlike the straight line knows that the drone has to go round
+ * the no-fly zones.
+ *
+ * A few landmarks are picked far apart on the zones' FreeSpaceGrid, and the distance from each landmark to every
+ * cell is computed once. By the triangle inequality, the distance from a position to the destination is at least
+ * the difference of their distances from any landmark. As the grid's directions are not quite the drone's, that
+ * difference is scaled down by FreeSpaceGrid.GRID_STRETCH, and a little slack is taken off for the grid's
+ * coarseness; the largest result is the estimate. Outside the grid it is the straight-line distance.
+The grid's distances are counted in moves along the 16 headings of the drone's rules, so when the drone has other
+headings they are scaled by HeadingTable.boundFrom as well.
+ *
+ * The grid follows the cells, not the moves, so the estimate is a very good but not a guaranteed lower bound:
+ * paths found with it can be a move or two longer than the shortest.
+ *
+ * The landmark distances take by far the longest of the zone structures to build, so they are kept in the
+ * GeometryStore, if there is one, for later runs.
+ */
+final class LandmarkHeuristic {
+    static final int DEFAULT_LANDMARKS = 8;
+    private static final double SLACK = 2.5; // Moves taken off every estimate: both ends may be off their cell centres.
+
+    // Heuristics already built, by zone set; regions are never changed after they are loaded
+    private static final BoundedCache<List<NamedRegion>, LandmarkHeuristic> CACHE = new BoundedCache<>(16);
+
+    private final FreeSpaceGrid grid;
+    private final int[] landmarks; // Cell of each landmark.
+    private final float[][] landmarkDistances; // Moves from each landmark to each cell; infinite if unreachable.
+
+    /**
+     * Builds the landmark distances.
+     * @param noFlyZones The no-fly zones.
+     * @param centralArea The central area, which the grid covers too.
+     * @param landmarkCount Number of landmarks; more give better estimates but cost more to build and evaluate.
+     */
+    LandmarkHeuristic(NamedRegion[] noFlyZones, NamedRegion centralArea, int landmarkCount) {
+        grid = FreeSpaceGrid.forRegions(noFlyZones, centralArea);
+        landmarks = new int[landmarkCount];
+        landmarkDistances = new float[landmarkCount][];
+        chooseLandmarks();
+    }
+
+    // A heuristic read back from the GeometryStore
+    private LandmarkHeuristic(FreeSpaceGrid grid, int[] landmarks, float[][] landmarkDistances) {
+        this.grid = grid;
+        this.landmarks = landmarks;
+        this.landmarkDistances = landmarkDistances;
+    }
+
+    /**
+     * Returns the heuristic for a set of no-fly zones, building it on first use.
+     * @param noFlyZones The no-fly zones.
+     * @param centralArea The central area.
+     * @return The heuristic with DEFAULT_LANDMARKS landmarks.
+     */
+    static LandmarkHeuristic forRegions(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        List<NamedRegion> key = FreeSpaceGrid.regions(noFlyZones, centralArea);
+        return CACHE.get(key, zones -> {
+            FreeSpaceGrid grid = FreeSpaceGrid.forRegions(noFlyZones, centralArea);
+            return GeometryStore.loadOrBuild(noFlyZones, centralArea, "landmarks", in -> read(in, grid),
+                    () -> new LandmarkHeuristic(noFlyZones, centralArea, DEFAULT_LANDMARKS), LandmarkHeuristic::write);
+        });
+    }
+
+    /**
+     * The estimate of the moves from any position to one destination.
+     * @param end The destination.
+     * @param headings The headings the drone may take.
+     * @return The heuristic, never below the straight-line one.
+     */
+    AStarSearch.Heuristic towards(LngLat end, HeadingTable headings) {
+        AStarSearch.Heuristic straightLine =
+                AStarSearch.straightLine(end, SystemConstants.DRONE_IS_CLOSE_DISTANCE, headings);
+        double scale = headings.boundFrom(HeadingTable.DEFAULT) / FreeSpaceGrid.GRID_STRETCH;
+        int endCell = grid.cell(end.lng(), end.lat());
+        if (endCell < 0) {
+            return straightLine;
+        }
+        float[] endDistances = new float[landmarks.length];
+        for (int i = 0; i < landmarks.length; i++) {
+            endDistances[i] = landmarkDistances[i][endCell];
+        }
+        return (lng, lat) -> {
+            double estimate = straightLine.movesToGoal(lng, lat);
+            int cell = grid.cell(lng, lat);
+            if (cell < 0) {
+                return estimate;
+            }
+            double landmarkEstimate = 0;
+            for (int i = 0; i < endDistances.length; i++) {
+                float difference = Math.abs(endDistances[i] - landmarkDistances[i][cell]);
+                if (difference != Float.POSITIVE_INFINITY && !Float.isNaN(difference)) { // Both reachable
+                    landmarkEstimate = Math.max(landmarkEstimate, difference);
+                }
+            }
+            return Math.max(estimate, landmarkEstimate * scale - SLACK);
+        };
+    }
+
+    /**
+     * @return The landmarks, as the centres of their cells.
+     */
+    LngLat[] getLandmarks() {
+        LngLat[] positions = new LngLat[landmarks.length];
+        for (int i = 0; i < landmarks.length; i++) {
+            positions[i] = grid.centre(landmarks[i]);
+        }
+        return positions;
+    }
+
+    // Writes the landmarks and their distances for the GeometryStore; the grid is stored on its own
+    private static void write(LandmarkHeuristic heuristic, DataOutputStream out) throws IOException {
+        GeometryStore.writeInts(heuristic.landmarks, out);
+        for (float[] distances : heuristic.landmarkDistances) {
+            GeometryStore.writeFloats(distances, out);
+        }
+    }
+
+    // Reads back DEFAULT_LANDMARKS landmarks written by write, for the grid built from the same geometry
+    private static LandmarkHeuristic read(ByteBuffer in, FreeSpaceGrid grid) {
+        int[] landmarks = GeometryStore.readInts(in);
+        if (landmarks.length != DEFAULT_LANDMARKS) {
+            throw new IllegalStateException(landmarks.length + " landmarks stored, not " + DEFAULT_LANDMARKS);
+        }
+        float[][] landmarkDistances = new float[landmarks.length][];
+        for (int i = 0; i < landmarks.length; i++) {
+            landmarkDistances[i] = GeometryStore.readFloats(in);
+            if (landmarkDistances[i].length != grid.getColumns() * grid.getRows()) {
+                throw new IllegalStateException("Landmark distances do not fit the grid");
+            }
+        }
+        return new LandmarkHeuristic(grid, landmarks, landmarkDistances);
+    }
+
+    // Farthest-point selection: each landmark is the cell farthest from the ones already chosen, starting with the
+    // cell farthest from the middle of the grid, so the landmarks end up round the edge, where they bound best
+    private void chooseLandmarks() {
+        int middle = grid.nearestFreeCell(grid.getRows() / 2 * grid.getColumns() + grid.getColumns() / 2);
+        if (middle < 0) {
+            throw new IllegalStateException("The no-fly zones cover the whole grid");
+        }
+        float[] fromChosen = grid.distancesFrom(middle);
+        for (int i = 0; i < landmarks.length; i++) {
+            int farthest = middle;
+            for (int cell = 0; cell < fromChosen.length; cell++) {
+                if (fromChosen[cell] != Float.POSITIVE_INFINITY && fromChosen[cell] > fromChosen[farthest]) {
+                    farthest = cell;
+                }
+            }
+            landmarks[i] = farthest;
+            landmarkDistances[i] = grid.distancesFrom(farthest);
+            if (i == 0) {
+                fromChosen = landmarkDistances[0].clone();
+            } else {
+                for (int cell = 0; cell < fromChosen.length; cell++) {
+                    fromChosen[cell] = Math.min(fromChosen[cell], landmarkDistances[i][cell]);
+                }
+            }
+        }
+    }
+}
@@ -9,6 +9,32 @@ import uk.ac.ed.inf.ilp.constant.SystemConstants;
  * Implementation of the LngLatHandling interface, providing methods to handle Longitude and Latitude calculations.
  */
 public class LngLatHandlingImpl implements LngLatHandling {
+    // Regions prepared for point tests. NamedRegion is a record, so regions are equal only if they hold
+    // the very same vertices array; regions are never changed after they are loaded.
+    private final BoundedCache<NamedRegion, PreparedPolygon> preparedRegions = new BoundedCache<>(1024);
+    private final HeadingTable headings; // The headings nextPosition accepts, with the offsets of a move along each.
+
+    /**
+     * Constructor for LngLatHandlingImpl class, with the drone's 16 headings.
+     */
+    public LngLatHandlingImpl() {
+        this(HeadingTable.DEFAULT);
+    }
+
+    /**
+     * Constructor for LngLatHandlingImpl class, with another set of headings.
+     * @param headings The headings nextPosition accepts.
+     */
+    LngLatHandlingImpl(HeadingTable headings) {
+        this.headings = headings;
+    }
+
+    /**
+     * @return The headings nextPosition accepts.
+     */
+    HeadingTable getHeadings() {
+        return headings;
+    }
 
     /**
      * Calculates the Euclidean distance between two positions.
@@ -42,28 +68,37 @@ public class LngLatHandlingImpl implements LngLatHandling {
      */
     @Override
     public boolean isInRegion(LngLat position, NamedRegion region) {
-        LngLat[] vertices = region.vertices();
-        int numberOfVertices = vertices.length;
-        return GeometryHelper.isPointInsidePolygon(vertices, numberOfVertices, position);
+        return prepared(region).contains(position);
+    }
+
+    /**
+     * Returns the region prepared for point tests, preparing it on first use.
+     * @param region The region.
+     * @return A PreparedPolygon that gives the same answers as GeometryHelper.isPointInsidePolygon for the region.
+     */
+    PreparedPolygon prepared(NamedRegion region) {
+        return preparedRegions.get(region, key -> new PreparedPolygon(key.vertices()));
     }
 
     /**
      * Calculates the next position based on a starting position and an angle of movement.
      * @param startPosition The starting position (LngLat object).
-     * @param angle The angle of movement in degrees.
+     * @param angle The angle of movement in degrees, one of the headings or 999 to hover.
      * @return The new position (LngLat object) after moving in the specified direction.
+     * @throws IllegalArgumentException If the angle is not one of the headings.
      */
     @Override
     public LngLat nextPosition(LngLat startPosition, double angle) {
         if (angle == 999) {
             return startPosition;
         }
-        if (angle < 0 || angle > 360 || angle % 22.5 != 0) {
-            throw new IllegalArgumentException("Angle must be between 0 and 360 and a multiple of 22.5");
+        int heading = headings.indexOf(angle);
+        if (heading < 0) {
+            throw new IllegalArgumentException("Angle must be between 0 and 360 and a multiple of " + headings.spacing);
         }
-        double radianAngle = Math.toRadians(angle);
-        double newLongitude = startPosition.lng() + SystemConstants.DRONE_MOVE_DISTANCE * Math.cos(radianAngle);
-        double newLatitude = startPosition.lat() + SystemConstants.DRONE_MOVE_DISTANCE * Math.sin(radianAngle);
+        // The offsets are precomputed per heading
+        double newLongitude = startPosition.lng() + headings.lngStep(heading);
+        double newLatitude = startPosition.lat() + headings.latStep(heading);
         return new LngLat(newLongitude, newLatitude);
     }
 }
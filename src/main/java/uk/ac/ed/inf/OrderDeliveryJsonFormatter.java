@@ -1,9 +1,11 @@
 package uk.ac.ed.inf;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 import uk.ac.ed.inf.ilp.data.Order;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
 /**
  * Class to format delivery information into a JSON structure.
  */
@@ -15,15 +17,14 @@ public class OrderDeliveryJsonFormatter {
      * @return A JSON string representing the delivery details of the orders.
      */
     public static String formatDeliveriesToJson(Order[] orders) {
-        JSONArray deliveriesJsonArray = new JSONArray();
-        for (Order order : orders) {
-            JSONObject deliveryJson = new JSONObject();
-            deliveryJson.put("orderNo", order.getOrderNo());
-            deliveryJson.put("orderStatus", order.getOrderStatus().toString());
-            deliveryJson.put("orderValidationCode", order.getOrderValidationCode().toString());
-            deliveryJson.put("costInPence", order.getPriceTotalInPence());
-            deliveriesJsonArray.put(deliveryJson);
+        StringWriter out = new StringWriter();
+        try (OrderDeliveryJsonWriter writer = new OrderDeliveryJsonWriter(out)) {
+            for (Order order : orders) {
+                writer.write(order);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringWriter never actually fails.
         }
-        return deliveriesJsonArray.toString();
+        return out.toString();
     }
 }
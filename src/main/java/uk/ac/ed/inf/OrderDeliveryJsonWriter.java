@@ -0,0 +1,55 @@
+package uk.ac.ed.inf;
+
+import org.json.JSONObject;
+import uk.ac.ed.inf.ilp.data.Order;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streaming writer for the deliveries JSON array.
+ * Each order is written as soon as its outcome is known, so the array is never held in memory.
+ */
+public class OrderDeliveryJsonWriter implements Closeable {
+    private final Writer out; // The writer the JSON array is sent to.
+    private boolean first = true; // True until the first order has been written.
+
+    /**
+     * Starts a new deliveries JSON array on the given writer.
+     * @param out The writer to send the JSON to. It is closed when this writer is closed.
+     * @throws IOException If writing to the output fails.
+     */
+    public OrderDeliveryJsonWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write('[');
+    }
+
+    /**
+     * Appends the delivery details of one order to the array.
+     * @param order The order to append.
+     * @throws IOException If writing to the output fails.
+     */
+    public void write(Order order) throws IOException {
+        if (!first) {
+            out.write(',');
+        }
+        first = false;
+        JSONObject deliveryJson = new JSONObject();
+        deliveryJson.put("orderNo", order.getOrderNo());
+        deliveryJson.put("orderStatus", order.getOrderStatus().toString());
+        deliveryJson.put("orderValidationCode", order.getOrderValidationCode().toString());
+        deliveryJson.put("costInPence", order.getPriceTotalInPence());
+        out.write(deliveryJson.toString());
+    }
+
+    /**
+     * Closes the JSON array and the underlying writer.
+     * @throws IOException If writing to the output fails.
+     */
+    @Override
+    public void close() throws IOException {
+        out.write(']');
+        out.close();
+    }
+}
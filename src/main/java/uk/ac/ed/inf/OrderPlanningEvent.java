@@ -0,0 +1,66 @@
+package uk.ac.ed.inf;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder event for planning the route of one order, emitted by RouteOptimizer.optimizeRoute.
+ * Its duration is the time the order took to plan; the RouteSearchEvent of the order's path
+ * is recorded inside it on the same thread.
+ */
+@Name("uk.ac.ed.inf.OrderPlanning")
+@Label("Order Planning")
+@Category({"PizzaDronz", "Planning"})
+@Description("Planning of the delivery route of one order")
+@StackTrace(false)
+final class OrderPlanningEvent extends Event {
+
+    @Label("Order Number")
+    String orderNo;
+
+    @Label("Restaurant")
+    String restaurant;
+
+    @Label("Reachable")
+    @Description("Whether any path could reach the restaurant; if not, none was searched for and the order is not delivered")
+    boolean reachable;
+
+    @Label("Moves")
+    @Description("Moves in the round trip, hovers included")
+    int moves;
+
+    // Looked up on first use, which only happens once Flight Recorder is running
+    private static final class Type {
+        private static final EventType EVENT_TYPE = EventType.getEventType(OrderPlanningEvent.class);
+    }
+
+    /**
+     * Begins an event for an order about to be planned.
+     * @return The event; null if no running recording has the event enabled.
+     */
+    static OrderPlanningEvent start() {
+        if (!FlightRecorder.isInitialized() || !Type.EVENT_TYPE.isEnabled()) {
+            return null;
+        }
+        OrderPlanningEvent event = new OrderPlanningEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event of a planned order and commits it if a recording has the event enabled.
+     * @param event The event from start, or null.
+     * @param orderNo The order number.
+     * @param restaurant The name of the restaurant the drone flew to.
+     * @param reachable Whether any path could reach the restaurant.
+     * @param moves Moves in the round trip; 0 if not reachable.
+     */
+    static void commit(OrderPlanningEvent event, String orderNo, String restaurant, boolean reachable, int moves) {
+        if (event != null && event.shouldCommit()) {
+            event.orderNo = orderNo;
+            event.restaurant = restaurant;
+            event.reachable = reachable;
+            event.moves = moves;
+            event.commit();
+        }
+    }
+}
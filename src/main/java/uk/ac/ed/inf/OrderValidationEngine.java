@@ -0,0 +1,218 @@
+package uk.ac.ed.inf;
+
+import io.micrometer.core.instrument.Timer;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.data.Order;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Batch order validation that runs in parallel and learns which rules to try first.
+ *
+ * The engine records, per OrderValidationRule, how long it takes and how often it rejects an order.
+ * Every REORDER_INTERVAL orders it re-sorts the rules so that cheap rules which reject often run first,
+ * which lets most invalid orders be rejected after a single check.
+ *
+ * The validation codes are always the same as OrderValidationImpl.validateOrder gives: when a rule rejects
+ * an order, the rules that come before it in the fixed order and have not run yet are checked as well,
+ * and the first failure in the fixed order is the one reported.
+ */
+public class OrderValidationEngine {
+    static final int REORDER_INTERVAL = 256; // Number of orders validated between two re-orderings of the rules.
+
+    private static final OrderValidationRule[] RULES = OrderValidationRule.values(); // Rules in their fixed order.
+
+    private final OrderValidationImpl validator = new OrderValidationImpl();
+    private final LongAdder[] evaluations = newCounters(); // Times each rule was checked.
+    private final LongAdder[] rejections = newCounters(); // Times each rule rejected an order.
+    private final LongAdder[] nanos = newCounters(); // Total time spent in each rule.
+    private final Timer[] ruleTimers = newRuleTimers(); // The same times, as pizzadronz.validation.rule meters.
+    private final AtomicLong validatedOrders = new AtomicLong(); // Orders validated so far.
+    private volatile OrderValidationRule[] ruleOrder = RULES.clone(); // Order the rules are currently tried in.
+
+    /**
+     * Time and rejection figures for one validation rule.
+     */
+    public static final class RuleStatistics {
+        private final OrderValidationRule rule;
+        private final long evaluations;
+        private final long rejections;
+        private final long nanos;
+
+        RuleStatistics(OrderValidationRule rule, long evaluations, long rejections, long nanos) {
+            this.rule = rule;
+            this.evaluations = evaluations;
+            this.rejections = rejections;
+            this.nanos = nanos;
+        }
+
+        public OrderValidationRule getRule() {
+            return rule;
+        }
+
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        public long getRejections() {
+            return rejections;
+        }
+
+        public long getTotalNanos() {
+            return nanos;
+        }
+    }
+
+    /**
+     * Validates a batch of orders in parallel. Each order's status and validation code are updated in place.
+     * @param orders The orders to validate.
+     * @param definedRestaurants The restaurants orders can be placed with.
+     * @return The same array of orders, now validated.
+     */
+    public Order[] validateOrders(Order[] orders, Restaurant[] definedRestaurants) {
+        Arrays.stream(orders).parallel().forEach(order -> validateOrder(order, definedRestaurants));
+        return orders;
+    }
+
+    /**
+     * Validates a single order, trying the rules in the currently learned order.
+     * @param order The order to validate. Its status and validation code are updated in place.
+     * @param definedRestaurants The restaurants orders can be placed with.
+     * @return The same order, now validated.
+     */
+    public Order validateOrder(Order order, Restaurant[] definedRestaurants) {
+        OrderValidationEvent event = OrderValidationEvent.start();
+        OrderValidationRule[] rules = ruleOrder;
+        int checked = 0; // Bit set of the rules that have already run for this order.
+
+        for (OrderValidationRule rule : rules) {
+            OrderValidationCode code;
+            try {
+                code = timedCheck(rule, order, definedRestaurants);
+            } catch (RuntimeException e) {
+                // validateOrder would only have got this far if every earlier rule passed
+                OrderValidationCode earlier = firstEarlierFailure(rule, checked, order, definedRestaurants);
+                if (earlier == null) {
+                    throw e;
+                }
+                return finish(OrderValidationImpl.markInvalid(order, earlier), event);
+            }
+            checked |= 1 << rule.ordinal();
+
+            if (code != OrderValidationCode.NO_ERROR) {
+                OrderValidationCode earlier = firstEarlierFailure(rule, checked, order, definedRestaurants);
+                return finish(OrderValidationImpl.markInvalid(order, earlier == null ? code : earlier), event);
+            }
+        }
+        return finish(OrderValidationImpl.markValid(order), event);
+    }
+
+    /**
+     * Returns the per-rule figures collected so far, in the order the rules are currently tried.
+     * @return One RuleStatistics per validation rule.
+     */
+    public List<RuleStatistics> getRuleStatistics() {
+        List<RuleStatistics> statistics = new ArrayList<>();
+        for (OrderValidationRule rule : ruleOrder) {
+            int i = rule.ordinal();
+            statistics.add(new RuleStatistics(rule, evaluations[i].sum(), rejections[i].sum(), nanos[i].sum()));
+        }
+        return statistics;
+    }
+
+    /**
+     * Formats the per-rule figures as a small table, one line per rule.
+     * @return A human readable report of time spent and rejections per rule.
+     */
+    public String formatReport() {
+        StringBuilder report = new StringBuilder("Validation rules (in current order):");
+        for (RuleStatistics rule : getRuleStatistics()) {
+            report.append(String.format("%n  %-12s %8d checks %8d rejections %10.3f ms",
+                    rule.getRule(), rule.getEvaluations(), rule.getRejections(), rule.getTotalNanos() / 1e6));
+        }
+        return report.toString();
+    }
+
+    // Runs one rule and records its time and outcome.
+    private OrderValidationCode timedCheck(OrderValidationRule rule, Order order, Restaurant[] definedRestaurants) {
+        int i = rule.ordinal();
+        long start = System.nanoTime();
+        try {
+            OrderValidationCode code = validator.checkRule(rule, order, definedRestaurants);
+            if (code != OrderValidationCode.NO_ERROR) {
+                rejections[i].increment();
+            }
+            return code;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            nanos[i].add(elapsed);
+            evaluations[i].increment();
+            ruleTimers[i].record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Checks the rules that come before the given one in the fixed order and have not run yet.
+    // Returns the first failure among them, or null if they all pass.
+    private OrderValidationCode firstEarlierFailure(OrderValidationRule failed, int checked, Order order,
+                                                    Restaurant[] definedRestaurants) {
+        for (int i = 0; i < failed.ordinal(); i++) {
+            if ((checked & (1 << i)) == 0) {
+                OrderValidationCode code = timedCheck(RULES[i], order, definedRestaurants);
+                if (code != OrderValidationCode.NO_ERROR) {
+                    return code;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Counts the order, commits its flight recorder event and, every REORDER_INTERVAL orders, re-sorts the rules.
+    private Order finish(Order order, OrderValidationEvent event) {
+        OrderValidationEvent.commit(event, order);
+        if (validatedOrders.incrementAndGet() % REORDER_INTERVAL == 0) {
+            reorderRules();
+        }
+        return order;
+    }
+
+    // Sorts the rules by rejections per nanosecond spent, highest first, so cheap and selective rules run early.
+    private void reorderRules() {
+        double[] score = new double[RULES.length];
+        for (OrderValidationRule rule : RULES) {
+            int i = rule.ordinal();
+            long checks = evaluations[i].sum();
+            double rejectRate = checks == 0 ? 0 : (double) rejections[i].sum() / checks;
+            double averageNanos = checks == 0 ? 1 : Math.max(1.0, (double) nanos[i].sum() / checks);
+            score[i] = rejectRate / averageNanos;
+        }
+        OrderValidationRule[] sorted = RULES.clone();
+        // Stable sort: rules that never reject keep their fixed order at the end
+        Arrays.sort(sorted, Comparator.comparingDouble((OrderValidationRule rule) -> score[rule.ordinal()]).reversed());
+        ruleOrder = sorted;
+    }
+
+    // Looks up the timer of each rule
+    private static Timer[] newRuleTimers() {
+        Timer[] timers = new Timer[RULES.length];
+        for (OrderValidationRule rule : RULES) {
+            timers[rule.ordinal()] = DeliveryMetrics.validationRule(rule);
+        }
+        return timers;
+    }
+
+    // Creates one counter per rule
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[RULES.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
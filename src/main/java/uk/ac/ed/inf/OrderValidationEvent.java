@@ -0,0 +1,56 @@
+package uk.ac.ed.inf;
+
+import jdk.jfr.*;
+import uk.ac.ed.inf.ilp.data.Order;
+
+/**
+ * Java Flight Recorder event for validating one order, emitted by OrderValidationImpl and OrderValidationEngine.
+ * Its duration is the time the order took to validate.
+ */
+@Name("uk.ac.ed.inf.OrderValidation")
+@Label("Order Validation")
+@Category({"PizzaDronz", "Validation"})
+@Description("Validation of one order")
+@StackTrace(false)
+final class OrderValidationEvent extends Event {
+
+    @Label("Order Number")
+    String orderNo;
+
+    @Label("Validation Code")
+    String validationCode;
+
+    // Looked up on first use, which only happens once Flight Recorder is running
+    private static final class Type {
+        private static final EventType EVENT_TYPE = EventType.getEventType(OrderValidationEvent.class);
+    }
+
+    /**
+     * Begins an event for an order about to be validated.
+     * @return The event; null if no running recording has the event enabled, so that untraced runs
+     *         do not even allocate it.
+     */
+    static OrderValidationEvent start() {
+        if (!FlightRecorder.isInitialized() || !Type.EVENT_TYPE.isEnabled()) {
+            return null;
+        }
+        OrderValidationEvent event = new OrderValidationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event of a validated order and commits it if a recording has the event enabled.
+     * @param event The event from start, or null.
+     * @param order The order, now validated.
+     * @return The same order.
+     */
+    static Order commit(OrderValidationEvent event, Order order) {
+        if (event != null && event.shouldCommit()) {
+            event.orderNo = order.getOrderNo();
+            event.validationCode = String.valueOf(order.getOrderValidationCode());
+            event.commit();
+        }
+        return order;
+    }
+}
@@ -16,19 +16,107 @@ import java.time.DayOfWeek;
 /**
  * Implementation class for validating orders.
  * It checks order details against restaurant availability, credit card validity, and other criteria.
+ * Each check is one OrderValidationRule, so callers such as OrderValidationEngine can also run them one by one.
  */
 public class OrderValidationImpl implements OrderValidation {
 
+    private static final OrderValidationRule[] RULES = OrderValidationRule.values(); // Rules in their fixed order.
+
     @Override
     public Order validateOrder(Order orderToValidate, Restaurant[] definedRestaurants) {
+        OrderValidationEvent event = OrderValidationEvent.start();
+        for (OrderValidationRule rule : RULES) {
+            OrderValidationCode code = checkRule(rule, orderToValidate, definedRestaurants);
+            if (code != OrderValidationCode.NO_ERROR) {
+                return OrderValidationEvent.commit(event, markInvalid(orderToValidate, code));
+            }
+        }
+        //if everything is ok
+        return OrderValidationEvent.commit(event, markValid(orderToValidate));
+    }
+
+    /**
+     * Runs a single validation rule against an order, without changing the order.
+     * @param rule The rule to check.
+     * @param order The order to check.
+     * @param definedRestaurants The restaurants orders can be placed with.
+     * @return NO_ERROR if the order passes the rule, otherwise the validation code for the failure.
+     */
+    OrderValidationCode checkRule(OrderValidationRule rule, Order order, Restaurant[] definedRestaurants) {
+        switch (rule) {
+            case PIZZAS:
+                return checkPizzas(order, definedRestaurants);
+            case OPENING_DAY:
+                return checkOpeningDay(order, definedRestaurants);
+            case CARD_NUMBER:
+                return checkCardNumber(order.getCreditCardInformation());
+            case CVV:
+                return checkCvv(order.getCreditCardInformation());
+            case EXPIRY_DATE:
+                return checkExpiryDate(order.getCreditCardInformation(), order.getOrderDate());
+            case TOTAL:
+                return checkTotal(order);
+            default:
+                throw new IllegalArgumentException("Unknown validation rule: " + rule);
+        }
+    }
+
+    // Marks an order as invalid with the given code
+    static Order markInvalid(Order order, OrderValidationCode code) {
+        order.setOrderStatus(OrderStatus.INVALID);
+        order.setOrderValidationCode(code);
+        return order;
+    }
 
-        HashMap<String, String> restaurantPerPizza = new HashMap<>();  // creating a hashmap to store the restaurant name for each pizza
+    // Marks an order as valid and waiting for delivery
+    static Order markValid(Order order) {
+        order.setOrderStatus(OrderStatus.VALID_BUT_NOT_DELIVERED);
+        order.setOrderValidationCode(OrderValidationCode.NO_ERROR);
+        return order;
+    }
 
-        for (Restaurant restaurant : definedRestaurants) {
-            for (Pizza pizza : restaurant.menu()) {
-                restaurantPerPizza.put(pizza.name(), restaurant.name());   // adding the restaurant name for each pizza
+    /**
+     * Lookup tables built once per restaurant array, so validating an order needs no allocation.
+     * For each pizza name it keeps the restaurant that serves it (later restaurants win, as before)
+     * and the days that restaurant is open, as a bitmask with bit (dayOfWeek - 1) set per open day.
+     */
+    private static final class RestaurantIndex {
+        private final Restaurant[] restaurants; // The array the index was built from.
+        private final HashMap<String, String> restaurantPerPizza = new HashMap<>(); // Pizza name to restaurant name.
+        private final HashMap<String, Integer> openingDays = new HashMap<>(); // Restaurant name to opening-day bitmask.
+
+        private RestaurantIndex(Restaurant[] restaurants) {
+            this.restaurants = restaurants;
+            for (Restaurant restaurant : restaurants) {
+                for (Pizza pizza : restaurant.menu()) {
+                    restaurantPerPizza.put(pizza.name(), restaurant.name());   // adding the restaurant name for each pizza
+                }
+                int mask = 0;
+                for (DayOfWeek dayOfWeek : restaurant.openingDays()) {
+                    mask |= 1 << (dayOfWeek.getValue() - 1);
+                }
+                // If several restaurants share a name, the order is only open on days they are all open
+                openingDays.merge(restaurant.name(), mask, (a, b) -> a & b);
             }
         }
+    }
+
+    // Index of the restaurant array last validated against; rebuilt when a different array is passed in.
+    private volatile RestaurantIndex restaurantIndex;
+
+    // Returns the index for the given restaurants, reusing the last one if it was built from the same array
+    private RestaurantIndex indexFor(Restaurant[] definedRestaurants) {
+        RestaurantIndex index = restaurantIndex;
+        if (index == null || index.restaurants != definedRestaurants) {
+            index = new RestaurantIndex(definedRestaurants);
+            restaurantIndex = index;
+        }
+        return index;
+    }
+
+    // Checks that every pizza is defined, that they all come from one restaurant, and that there are not too many
+    private OrderValidationCode checkPizzas(Order orderToValidate, Restaurant[] definedRestaurants) {
+        HashMap<String, String> restaurantPerPizza = indexFor(definedRestaurants).restaurantPerPizza;
 
         String orderRestaurantName = null;
         int pizzaCount = 0;   // counter for the number of pizzas in the order
@@ -38,74 +126,74 @@ public class OrderValidationImpl implements OrderValidation {
 
             if (restaurantName == null) {
                 // Pizza not available in any restaurant
-                orderToValidate.setOrderStatus(OrderStatus.INVALID);
-                orderToValidate.setOrderValidationCode(OrderValidationCode.PIZZA_NOT_DEFINED);
-                return orderToValidate;
+                return OrderValidationCode.PIZZA_NOT_DEFINED;
             } else if (orderRestaurantName == null) {
                 // First pizza in order, set the restaurant name
                 orderRestaurantName = restaurantName;
             } else if (!orderRestaurantName.equals(restaurantName)) {
                 // Pizza from a different restaurant
-                orderToValidate.setOrderStatus(OrderStatus.INVALID);
-                orderToValidate.setOrderValidationCode(OrderValidationCode.PIZZA_FROM_MULTIPLE_RESTAURANTS);
-                return orderToValidate;
+                return OrderValidationCode.PIZZA_FROM_MULTIPLE_RESTAURANTS;
             }
 
             pizzaCount++;
             if (pizzaCount > SystemConstants.MAX_PIZZAS_PER_ORDER) {  // checking if the number of pizzas in the order exceeds the maximum
-                orderToValidate.setOrderStatus(OrderStatus.INVALID);
-                orderToValidate.setOrderValidationCode(OrderValidationCode.MAX_PIZZA_COUNT_EXCEEDED);
-                return orderToValidate;
+                return OrderValidationCode.MAX_PIZZA_COUNT_EXCEEDED;
             }
         }
+        return OrderValidationCode.NO_ERROR;
+    }
+
+    // Checks that the restaurant of the order (the one serving its first pizza) is open on the order date
+    private OrderValidationCode checkOpeningDay(Order orderToValidate, Restaurant[] definedRestaurants) {
         //check the order date
-        if (orderToValidate.getOrderDate().getDayOfWeek() == null) { // checking if the order date is valid
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.RESTAURANT_CLOSED);
-            return orderToValidate;
-        }
-        //check the restaurant time match use orderResraurantName
-        for (Restaurant restaurant : definedRestaurants) {
-            if (restaurant.name().equals(orderRestaurantName)) {
-                boolean isOpen = false;
-                for (DayOfWeek dayOfWeek : restaurant.openingDays()) {
-                    if (dayOfWeek.equals(orderToValidate.getOrderDate().getDayOfWeek())) {
-                        isOpen = true;
-                        break;
-                    }
-                }
-                if (!isOpen) {                                    // checking if the restaurant is open on the order date
-                    orderToValidate.setOrderStatus(OrderStatus.INVALID);
-                    orderToValidate.setOrderValidationCode(OrderValidationCode.RESTAURANT_CLOSED);
-                    return orderToValidate;
-                }
-            }
+        DayOfWeek orderDay = orderToValidate.getOrderDate().getDayOfWeek();
+        if (orderDay == null) { // checking if the order date is valid
+            return OrderValidationCode.RESTAURANT_CLOSED;
+        }
+        Pizza[] pizzas = orderToValidate.getPizzasInOrder();
+        if (pizzas.length == 0) {
+            return OrderValidationCode.NO_ERROR;
         }
-        //check the credit card information
 
-        CreditCardInformation ccInfo = orderToValidate.getCreditCardInformation();
+        RestaurantIndex index = indexFor(definedRestaurants);
+        String orderRestaurantName = index.restaurantPerPizza.get(pizzas[0].name());
+        if (orderRestaurantName == null) {
+            return OrderValidationCode.NO_ERROR;
+        }
+        int openingDays = index.openingDays.get(orderRestaurantName);
+        if ((openingDays & (1 << (orderDay.getValue() - 1))) == 0) {   // checking if the restaurant is open on the order date
+            return OrderValidationCode.RESTAURANT_CLOSED;
+        }
+        return OrderValidationCode.NO_ERROR;
+    }
 
-        if (ccInfo.getCreditCardNumber().length() != 16) {  // checking if the credit card number is valid
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.CARD_NUMBER_INVALID);
-            return orderToValidate;
+    // Checks that the credit card number is 16 digits
+    private static OrderValidationCode checkCardNumber(CreditCardInformation ccInfo) {
+        if (!isDigits(ccInfo.getCreditCardNumber(), 16)) {  // checking if the credit card number is valid
+            return OrderValidationCode.CARD_NUMBER_INVALID;
         }
+        return OrderValidationCode.NO_ERROR;
+    }
+
+    // Checks that the CVV is 3 digits
+    private static OrderValidationCode checkCvv(CreditCardInformation ccInfo) {
         //check if the input is a number and is 3 digits
-        if (ccInfo.getCvv().length() != 3) {  // checking if the cvv is valid
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.CVV_INVALID);
-            return orderToValidate;
+        if (!isDigits(ccInfo.getCvv(), 3)) {  // checking if the cvv is valid
+            return OrderValidationCode.CVV_INVALID;
         }
+        return OrderValidationCode.NO_ERROR;
+    }
 
-
-        // Check if the credit card is expired
-        if (isCardExpired(ccInfo.getCreditCardExpiry(), orderToValidate.getOrderDate())) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.EXPIRY_DATE_INVALID);
-            return orderToValidate;
+    // Checks that the credit card has not expired by the order date
+    private static OrderValidationCode checkExpiryDate(CreditCardInformation ccInfo, LocalDate orderDate) {
+        if (isCardExpired(ccInfo.getCreditCardExpiry(), orderDate)) {
+            return OrderValidationCode.EXPIRY_DATE_INVALID;
         }
+        return OrderValidationCode.NO_ERROR;
+    }
 
-        //check the price
+    // Checks the order total against the pizza prices plus the order charge
+    private static OrderValidationCode checkTotal(Order orderToValidate) {
         int totalPrice = 0;
         for (Pizza pizza : orderToValidate.getPizzasInOrder()) {
             totalPrice += pizza.priceInPence();
@@ -113,30 +201,45 @@ public class OrderValidationImpl implements OrderValidation {
         totalPrice += SystemConstants.ORDER_CHARGE_IN_PENCE;  // adding the order charge to the total prices
 
         if (totalPrice != orderToValidate.getPriceTotalInPence()) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.TOTAL_INCORRECT);
-            return orderToValidate;
+            return OrderValidationCode.TOTAL_INCORRECT;
         }
-        //if everything is ok
-        orderToValidate.setOrderStatus(OrderStatus.VALID_BUT_NOT_DELIVERED);
-        orderToValidate.setOrderValidationCode(OrderValidationCode.NO_ERROR);
-        return orderToValidate;
+        return OrderValidationCode.NO_ERROR;
+    }
+
+    // Helper method to check that a string is exactly the given number of ASCII digits
+    private static boolean isDigits(String value, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (!isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    // Helper method to check if the credit card is expired
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Helper method to check if the credit card is expired.
+    // The expiry is read as MM/YY; the card is valid up to the end of that month, so it is expired
+    // from the first day of the next month. Dates are compared as months since year 0 (year * 12 + month - 1).
+    // An expiry that is not two digits, a separator and two digits counts as expired.
     private static boolean isCardExpired(String cardExpiry, LocalDate orderDate) {
-        int month = Integer.parseInt(cardExpiry.substring(0, 2));
-        int year = Integer.parseInt(cardExpiry.substring(3, 5));
-        if (month > 11) {
-            month = 1;
-            year += 1;
-        } else {
-            month += 1;
-        }
-        String reformattedExpiry = String.format("20%02d-%02d-01", year, month);
-        LocalDate expiryDate = LocalDate.parse(reformattedExpiry);
-
-        return !orderDate.isBefore(expiryDate);
+        if (cardExpiry.length() < 5 || !isDigit(cardExpiry.charAt(0)) || !isDigit(cardExpiry.charAt(1))
+                || !isDigit(cardExpiry.charAt(3)) || !isDigit(cardExpiry.charAt(4))) {
+            return true;
+        }
+        int month = (cardExpiry.charAt(0) - '0') * 10 + (cardExpiry.charAt(1) - '0');
+        int year = 2000 + (cardExpiry.charAt(3) - '0') * 10 + (cardExpiry.charAt(4) - '0');
+
+        // First month the card is no longer valid in
+        int expiredFrom = month > 11 ? (year + 1) * 12 : year * 12 + month;
+        int orderMonth = orderDate.getYear() * 12 + orderDate.getMonthValue() - 1;
+
+        return orderMonth >= expiredFrom;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package uk.ac.ed.inf;
+
+/**
+ * The individual checks an order goes through, declared in the order OrderValidationImpl applies them.
+ * When an order breaks several rules, the validation code reported is the one of the first rule in this order.
+ */
+public enum OrderValidationRule {
+    /** Every pizza is on a menu, all from one restaurant, and not too many of them. */
+    PIZZAS,
+    /** The restaurant is open on the order date. */
+    OPENING_DAY,
+    /** The credit card number has 16 characters. */
+    CARD_NUMBER,
+    /** The CVV has 3 characters. */
+    CVV,
+    /** The credit card has not expired by the order date. */
+    EXPIRY_DATE,
+    /** The order total matches the pizza prices plus the order charge. */
+    TOTAL
+}
@@ -0,0 +1,51 @@
+package uk.ac.ed.inf;
+
+import java.util.Locale;
+import java.util.StringJoiner;
+
+/**
+ * The ways DronePathPlanner can search for a path, chosen with the pizzadronz.planner system property.
+ */
+public enum PlannerMode {
+    /** Always takes the valid move that ends closest to the destination (the original planner, the default). */
+    GREEDY,
+    /** A* over the moves, guided by the straight-line distance. */
+    ASTAR,
+    /** A* guided by landmark distances that go round the no-fly zones (see LandmarkHeuristic). */
+    ALT,
+    /** Hierarchical: picks the sectors to cross on a small graph, then A* one sector at a time (see SectorGraph). */
+    HPA,
+    /** A* over a coarse lattice of several moves a step, then over single moves in a corridor round that route. */
+    CORRIDOR,
+    /** A* with a shrinking weight on the heuristic, stopped at a time budget with the best path so far (see AnytimeSearch). */
+    ANYTIME;
+
+    /** System property naming the mode of the planners created without one. */
+    public static final String PROPERTY = "pizzadronz.planner";
+
+    /**
+     * @return The mode named by the system property, or GREEDY.
+     * @throws IllegalArgumentException If the property names no mode.
+     */
+    public static PlannerMode configured() {
+        return parse(System.getProperty(PROPERTY, GREEDY.name()));
+    }
+
+    /**
+     * Parses a mode name, such as "alt".
+     * @param name The name, case insensitive.
+     * @return The mode.
+     * @throws IllegalArgumentException If the name is not one of the modes.
+     */
+    public static PlannerMode parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            StringJoiner names = new StringJoiner(", ");
+            for (PlannerMode mode : values()) {
+                names.add(mode.name().toLowerCase(Locale.ROOT));
+            }
+            throw new IllegalArgumentException("Planner error: unknown planner '" + name.trim() + "', expected one of " + names);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package uk.ac.ed.inf;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST endpoints of the planning service. Each takes a date as YYYY-MM-DD in the path:
+ *  - GET  /deliveries/{date}  the deliveries file content
+ *  - GET  /flightpath/{date}  the flightpath file content
+ *  - GET  /flightpath/{date}/stream  the moves as newline-delimited JSON, sent as each order is planned
+ *  - GET  /drone/{date}       the GeoJSON file content (featurePerOrder=true for one feature per order)
+ *  - POST /results/{date}     writes all three files to the result directory, like the CLI does
+ */
+@RestController
+public class PlanningController {
+    static final String NDJSON = "application/x-ndjson"; // Media type of the streamed flightpath.
+
+    private final PlanningService service;
+    private final File outputDir; // Directory POST /results writes to.
+
+    /**
+     * Constructor for PlanningController.
+     * @param service The service that plans the dates.
+     */
+    @Autowired
+    public PlanningController(PlanningService service) {
+        this(service, new File("resultfiles"));
+    }
+
+    /**
+     * Constructor for PlanningController with a different result directory.
+     * @param service The service that plans the dates.
+     * @param outputDir Directory POST /results writes to.
+     */
+    PlanningController(PlanningService service, File outputDir) {
+        this.service = service;
+        this.outputDir = outputDir;
+    }
+
+    @GetMapping(value = "/deliveries/{date}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public String deliveries(@PathVariable String date) {
+        return plan(date).toDeliveriesJson();
+    }
+
+    @GetMapping(value = "/flightpath/{date}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public String flightpath(@PathVariable String date) {
+        return plan(date).toFlightpathJson();
+    }
+
+    /**
+     * Streams the flightpath of a date as newline-delimited JSON, one move per line, in the same form as the
+     * flightpath file. Each order's moves are flushed as soon as the order is planned. Writes block while the
+     * client is not reading, which pauses the planning, so a slow client is never buffered for.
+     * @param date The date to plan, as YYYY-MM-DD.
+     * @return The streamed response.
+     */
+    @GetMapping(value = "/flightpath/{date}/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamFlightpath(@PathVariable String date) {
+        checkDate(date);
+        StreamingResponseBody body = outputStream -> {
+            Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            try {
+                service.streamPlan(date, (order, route) -> {
+                    for (DroneMovement movement : route) {
+                        out.write(DroneFlightpathJsonWriter.toJson(movement).toString());
+                        out.write('\n');
+                    }
+                    if (!route.isEmpty()) {
+                        out.flush();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while planning " + date);
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    @GetMapping(value = "/drone/{date}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public String drone(@PathVariable String date, @RequestParam(defaultValue = "false") boolean featurePerOrder) {
+        return plan(date).toGeoJson(featurePerOrder);
+    }
+
+    @PostMapping("/results/{date}")
+    public Map<String, Object> writeResults(@PathVariable String date,
+                                            @RequestParam(defaultValue = "false") boolean featurePerOrder) {
+        checkDate(date);
+        try {
+            List<File> files = service.writeResults(date, outputDir, featurePerOrder);
+            return Map.of("date", date, "files", files.stream().map(File::getPath).toList());
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Could not plan " + date + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted", e);
+        }
+    }
+
+    // Plans a date, turning failures into HTTP errors
+    private PlanningService.DailyResult plan(String date) {
+        checkDate(date);
+        try {
+            return service.plan(date);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Could not plan " + date + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted", e);
+        }
+    }
+
+    // Same date check as the CLI
+    private static void checkDate(String date) {
+        if (!date.matches("\\d{4}-\\d{2}-\\d{2}")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Date error: Date must be in YYYY-MM-DD format");
+        }
+    }
+}
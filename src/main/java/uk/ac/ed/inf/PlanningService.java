@@ -0,0 +1,325 @@
+package uk.ac.ed.inf;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Order;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plans whole days of deliveries inside a long-running process.
+ *
+ * Unlike a CLI run, everything that does not depend on the date stays in memory between requests:
+ * the ApiDataRetriever and its HTTP client, the reference data (restaurants, central area, no-fly zones),
+ * the validator's restaurant index, and the RouteOptimizers whose DronePathPlanners cache every path they have
+ * planned. A request for a date therefore only fetches that date's orders, and the routes of any restaurant
+ * planned before come straight from a cache.
+ *
+ * Route planning is CPU-bound, so it runs on a fixed pool with one thread per core rather than on the
+ * (possibly virtual) request threads, which mostly wait on the data API. Each planning thread has its own
+ * RouteOptimizer, so planners are never shared or locked; they all read the same immutable reference data.
+ *
+ * The reference data is fetched again once it is older than the configured time to live. If it has not
+ * changed, the warm planner is kept. If only the no-fly zones have changed, each planner is kept too, and drops
+ * just the cached routes near the zones that changed before planning its next order; otherwise a new one is started.
+ *
+ * streamPlan hands each order's route to the caller as soon as it is planned, instead of after the whole day.
+ */
+@Service
+public class PlanningService implements AutoCloseable {
+    private final String url; // Base URL of the REST API.
+    private final long referenceTtlNanos; // How long fetched reference data is used before it is checked again.
+    private final ApiDataRetriever retriever = ApiDataRetriever.getInstance();
+    private final OrderValidationEngine validationEngine = new OrderValidationEngine();
+    private final ExecutorService planningPool; // Bounded pool the route planning runs on.
+    private ReferenceData reference; // Guarded by this; null until the first request.
+
+    /**
+     * Receives the route of each order as soon as it has been planned.
+     */
+    public interface RouteSink {
+        /**
+         * @param order The order, already validated (and marked delivered if it has a route).
+         * @param route The moves flown for the order; empty for invalid orders.
+         * @throws IOException If passing the route on fails, which stops the planning.
+         */
+        void accept(Order order, List<DroneMovement> route) throws IOException;
+    }
+
+    /**
+     * Reference data together with the planners built for it, one per planning thread.
+     * Nothing in it is modified once built, except each thread's own planner.
+     */
+    private static final class ReferenceData {
+        private final Restaurant[] restaurants;
+        private final NamedRegion[] noFlyZones;
+        private final String fingerprint;
+        private final String fingerprintWithoutZones; // Fingerprint of the restaurants and central area alone.
+        private final ThreadLocal<RouteOptimizer> optimizers; // RouteOptimizer is not thread safe, so one per thread.
+        private final long loadedAt;
+
+        private ReferenceData(Restaurant[] restaurants, NamedRegion centralArea, NamedRegion[] noFlyZones,
+                              String fingerprint, String fingerprintWithoutZones, long loadedAt) {
+            this(restaurants, noFlyZones, fingerprint, fingerprintWithoutZones,
+                    ThreadLocal.withInitial(() -> new RouteOptimizer(noFlyZones, centralArea, restaurants)), loadedAt);
+        }
+
+        private ReferenceData(Restaurant[] restaurants, NamedRegion[] noFlyZones, String fingerprint,
+                              String fingerprintWithoutZones, ThreadLocal<RouteOptimizer> optimizers, long loadedAt) {
+            this.restaurants = restaurants;
+            this.noFlyZones = noFlyZones;
+            this.fingerprint = fingerprint;
+            this.fingerprintWithoutZones = fingerprintWithoutZones;
+            this.optimizers = optimizers;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * The result of planning one date: every order with its final status, and the moves flown.
+     */
+    public static final class DailyResult {
+        private final String date;
+        private final Order[] orders;
+        private final List<DroneMovement> movements;
+
+        private DailyResult(String date, Order[] orders, List<DroneMovement> movements) {
+            this.date = date;
+            this.orders = orders;
+            this.movements = movements;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public Order[] getOrders() {
+            return orders;
+        }
+
+        public List<DroneMovement> getMovements() {
+            return movements;
+        }
+
+        /**
+         * @return The deliveries file content for this date.
+         */
+        public String toDeliveriesJson() {
+            return OrderDeliveryJsonFormatter.formatDeliveriesToJson(orders);
+        }
+
+        /**
+         * @return The flightpath file content for this date.
+         */
+        public String toFlightpathJson() {
+            return DroneFlightpathJsonFormatter.formatFlightpathsToJson(movements);
+        }
+
+        /**
+         * @param featurePerOrder True to write one LineString feature per order, false for a single feature.
+         * @return The GeoJSON file content for this date.
+         */
+        public String toGeoJson(boolean featurePerOrder) {
+            return DronePathGeoJsonFormatter.formatPathToGeoJson(movements, featurePerOrder);
+        }
+    }
+
+    /**
+     * Constructor for PlanningService, planning on one thread per core.
+     * @param url Base URL of the REST API.
+     * @param referenceTtlSeconds How long fetched reference data is used before it is checked for changes.
+     */
+    public PlanningService(String url, long referenceTtlSeconds) {
+        this(url, referenceTtlSeconds, 0);
+    }
+
+    /**
+     * Constructor for PlanningService.
+     * @param url Base URL of the REST API.
+     * @param referenceTtlSeconds How long fetched reference data is used before it is checked for changes.
+     * @param planningThreads Number of threads route planning may use; 0 for one per core.
+     */
+    @Autowired
+    public PlanningService(@Value("${pizzadronz.api.url}") String url,
+                           @Value("${pizzadronz.service.referenceTtlSeconds:60}") long referenceTtlSeconds,
+                           @Value("${pizzadronz.service.planningThreads:0}") int planningThreads) {
+        this.url = url;
+        this.referenceTtlNanos = TimeUnit.SECONDS.toNanos(referenceTtlSeconds);
+        int threads = planningThreads > 0 ? planningThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.planningPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "route-planner-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Validates and plans every order of a date.
+     * @param date The date to plan, as YYYY-MM-DD.
+     * @return The orders and moves of the date.
+     * @throws IOException If fetching data from the API fails.
+     * @throws InterruptedException If the thread is interrupted while waiting for the API.
+     */
+    public DailyResult plan(String date) throws IOException, InterruptedException {
+        ReferenceData data = referenceData();
+        Order[] orders = retriever.fetchOrders(url, date);
+        validationEngine.validateOrders(orders, data.restaurants);
+
+        // Every order is handed to the planning pool at once, so a day is planned on all cores
+        List<Future<List<DroneMovement>>> routes = new ArrayList<>();
+        for (Order order : orders) {
+            routes.add(submitOrder(data, order));
+        }
+        List<DroneMovement> movements = new ArrayList<>();
+        for (Future<List<DroneMovement>> route : routes) {
+            movements.addAll(await(route));
+        }
+        return new DailyResult(date, orders, movements);
+    }
+
+    /**
+     * Validates and plans the orders of a date one at a time, while they are still being fetched,
+     * and hands each route to the sink as soon as it is planned. The sink is called on this thread, so a
+     * sink that blocks (for example on a slow network client) holds back the planning of later orders.
+     * @param date The date to plan, as YYYY-MM-DD.
+     * @param sink Receives every order of the date, in order, with its route.
+     * @throws IOException If fetching data from the API fails, or the sink fails.
+     * @throws InterruptedException If the thread is interrupted while waiting for the API.
+     */
+    public void streamPlan(String date, RouteSink sink) throws IOException, InterruptedException {
+        ReferenceData data = referenceData();
+        try {
+            retriever.streamOrders(url, date, order -> {
+                validationEngine.validateOrder(order, data.restaurants);
+                try {
+                    sink.accept(order, await(submitOrder(data, order)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e); // OrderSink cannot throw IOException
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Plans a date and writes the deliveries, flightpath and GeoJSON files for it, as the CLI does.
+     * @param date The date to plan, as YYYY-MM-DD.
+     * @param outputDir Directory the result files are written to.
+     * @param featurePerOrder True to write one GeoJSON feature per order.
+     * @return The files written.
+     * @throws IOException If fetching data or writing a file fails.
+     * @throws InterruptedException If the thread is interrupted while waiting for the API.
+     */
+    public List<File> writeResults(String date, File outputDir, boolean featurePerOrder) throws IOException, InterruptedException {
+        DailyResult result = plan(date);
+        outputDir.mkdirs();
+        File deliveries = new File(outputDir, "deliveries-" + date + ".json");
+        File flightpath = new File(outputDir, "flightpath-" + date + ".json");
+        File geoJson = new File(outputDir, "drone-" + date + ".geojson");
+        try (Writer out = new BufferedWriter(new FileWriter(deliveries));
+             OrderDeliveryJsonWriter writer = new OrderDeliveryJsonWriter(out)) {
+            for (Order order : result.getOrders()) {
+                writer.write(order);
+            }
+        }
+        try (Writer out = new BufferedWriter(new FileWriter(flightpath));
+             DroneFlightpathJsonWriter writer = new DroneFlightpathJsonWriter(out)) {
+            for (DroneMovement movement : result.getMovements()) {
+                writer.write(movement);
+            }
+        }
+        try (Writer out = new BufferedWriter(new FileWriter(geoJson));
+             DronePathGeoJsonWriter writer = new DronePathGeoJsonWriter(out, featurePerOrder)) {
+            for (DroneMovement movement : result.getMovements()) {
+                writer.write(movement);
+            }
+        }
+        return List.of(deliveries, flightpath, geoJson);
+    }
+
+    /**
+     * Returns the engine that validates the orders, for its per-rule statistics.
+     * @return The validation engine shared by all requests.
+     */
+    public OrderValidationEngine getValidationEngine() {
+        return validationEngine;
+    }
+
+    /**
+     * Stops the planning threads.
+     */
+    @Override
+    public void close() {
+        planningPool.shutdownNow();
+    }
+
+    // Starts planning the route of a validated order on the planning pool; invalid orders have no route.
+    private Future<List<DroneMovement>> submitOrder(ReferenceData data, Order order) {
+        if (order.getOrderStatus() == OrderStatus.INVALID) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return planningPool.submit(() -> {
+            RouteOptimizer optimizer = data.optimizers.get();
+            optimizer.updateNoFlyZones(data.noFlyZones); // Nothing to do unless the zones changed since its last order
+            return optimizer.optimizeRoute(order);
+        });
+    }
+
+    // Waits for a route, passing on a planning failure as it was thrown
+    private static List<DroneMovement> await(Future<List<DroneMovement>> route) throws InterruptedException {
+        try {
+            return route.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Returns the current reference data, fetching it again if it has expired.
+    // The planners and restaurant array are kept when the data and planner settings have not changed, so their
+    // caches stay warm; the planners are also kept when only the no-fly zones have changed.
+    private synchronized ReferenceData referenceData() throws IOException, InterruptedException {
+        long now = System.nanoTime();
+        if (reference != null && now - reference.loadedAt < referenceTtlNanos) {
+            return reference;
+        }
+        Restaurant[] restaurants = retriever.fetchRestaurants(url);
+        NamedRegion centralArea = retriever.fetchCentralArea(url);
+        NamedRegion[] noFlyZones = retriever.fetchNoFlyZones(url);
+        PlannerMode mode = PlannerMode.configured();
+        long budgetMillis = DronePathPlanner.configuredBudgetMillis();
+        int headings = DronePathPlanner.configuredHeadings();
+        String fingerprint = DeliveryStateStore.environmentFingerprint(restaurants, centralArea, noFlyZones,
+                mode, budgetMillis, headings);
+        String fingerprintWithoutZones = DeliveryStateStore.environmentFingerprint(restaurants, centralArea,
+                new NamedRegion[0], mode, budgetMillis, headings);
+
+        if (reference != null && reference.fingerprint.equals(fingerprint)) {
+            reference = new ReferenceData(reference.restaurants, reference.noFlyZones, fingerprint,
+                    fingerprintWithoutZones, reference.optimizers, now);
+        } else if (reference != null && reference.fingerprintWithoutZones.equals(fingerprintWithoutZones)) {
+            reference = new ReferenceData(reference.restaurants, noFlyZones, fingerprint,
+                    fingerprintWithoutZones, reference.optimizers, now);
+        } else {
+            reference = new ReferenceData(restaurants, centralArea, noFlyZones, fingerprint, fingerprintWithoutZones, now);
+        }
+        return reference;
+    }
+}
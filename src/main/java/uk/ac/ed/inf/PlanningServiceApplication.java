@@ -0,0 +1,32 @@
+package uk.ac.ed.inf;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Map;
+
+/**
+ * Spring Boot application for the long-running planning service (App --serve).
+ * It serves PlanningController on the embedded web server; the port can be set with --server.port=...
+ */
+@SpringBootApplication
+public class PlanningServiceApplication {
+
+    /**
+     * Starts the planning service.
+     * @param url Base URL of the REST API the service fetches its data from.
+     * @param args Further Spring Boot arguments, such as --server.port=8080.
+     * @return The running application context.
+     */
+    public static ConfigurableApplicationContext start(String url, String[] args) {
+        SpringApplication application = new SpringApplication(PlanningServiceApplication.class);
+        application.setDefaultProperties(Map.of(
+                "pizzadronz.api.url", url,
+                // The meters in DeliveryMetrics, as JSON and in the Prometheus text format
+                "management.endpoints.web.exposure.include", "health,metrics,prometheus",
+                // Streamed flightpaths last as long as planning the day, which can exceed the container's default
+                "spring.mvc.async.request-timeout", "10m"));
+        return application.run(args);
+    }
+}
@@ -0,0 +1,54 @@
+package uk.ac.ed.inf;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Request threading of the planning service.
+ *
+ * Requests spend most of their time blocked on the data API, so on a JDK with virtual threads every request
+ * (and every streamed response) gets its own virtual thread instead of a slot in Tomcat's bounded pool.
+ * The CPU-heavy planning does not run on these threads: PlanningService hands it to its own pool with one
+ * thread per core. On older JDKs Tomcat's usual platform thread pool is left in place, which includes the
+ * Java 17 this project is built and run with, so there only the planning pool takes effect.
+ */
+@Configuration
+public class PlanningServiceConfiguration implements WebMvcConfigurer, AutoCloseable {
+    private final ExecutorService requestExecutor = VirtualThreads.newPerTaskExecutor(); // Null without virtual threads.
+
+    /**
+     * Runs Tomcat's request processing on virtual threads when they are available.
+     * @return The customizer, which leaves Tomcat unchanged on JDKs without virtual threads.
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> requestThreadCustomizer() {
+        return protocolHandler -> {
+            if (requestExecutor != null) {
+                protocolHandler.setExecutor(requestExecutor);
+            }
+        };
+    }
+
+    /**
+     * Runs streamed responses on virtual threads too, when they are available.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        if (requestExecutor != null) {
+            configurer.setTaskExecutor(new TaskExecutorAdapter(requestExecutor));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package uk.ac.ed.inf;
+
+/**
+ * Tests a batch of points against one prepared polygon, such as the 16 candidate moves of the drone
+ * against a no-fly zone.
+ *
+ * best() returns VectorPolygonKernel, which tests several points at once in SIMD lanes through the
+ * jdk.incubator.vector module, when the JVM was started with "--add-modules jdk.incubator.vector";
+ * otherwise it returns the scalar kernel, which tests the points one by one with PreparedPolygon.contains.
+ * Both give exactly the answers PreparedPolygon.contains gives.
+ */
+public abstract class PolygonBatchKernel {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final PolygonBatchKernel SCALAR = new PolygonBatchKernel() {
+        @Override
+        public void markInside(PreparedPolygon polygon, double[] lng, double[] lat, int count, boolean[] inside) {
+            for (int i = 0; i < count; i++) {
+                if (!inside[i] && polygon.contains(lng[i], lat[i])) {
+                    inside[i] = true;
+                }
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+    };
+
+    private static final PolygonBatchKernel BEST = loadVectorKernel();
+
+    /**
+     * Marks the points that lie inside the polygon (boundary included). Points already marked stay marked,
+     * so calling this once per polygon leaves marked exactly the points inside any of them.
+     * @param polygon The polygon.
+     * @param lng Longitudes of the points.
+     * @param lat Latitudes of the points.
+     * @param count Number of points, from the start of the arrays.
+     * @param inside Set to true for every point inside the polygon.
+     */
+    public abstract void markInside(PreparedPolygon polygon, double[] lng, double[] lat, int count, boolean[] inside);
+
+    /**
+     * @return A short name of the kernel, for logs and benchmarks.
+     */
+    public abstract String getName();
+
+    /**
+     * @return The fastest kernel this JVM supports.
+     */
+    public static PolygonBatchKernel best() {
+        return BEST;
+    }
+
+    /**
+     * @return The kernel that tests the points one by one, available on every JVM.
+     */
+    public static PolygonBatchKernel scalar() {
+        return SCALAR;
+    }
+
+    // The vector kernel is only loaded when its module is there; loading it otherwise would fail
+    private static PolygonBatchKernel loadVectorKernel() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (PolygonBatchKernel) Class.forName("uk.ac.ed.inf.VectorPolygonKernel")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A polygon prepared once for many point-in-polygon tests.
+ *
+ * The vertices are kept in flat double arrays together with each edge's longitude and latitude extent
+ * (the edge's slope, as rise over run) and the bounding box of the whole polygon, so a test allocates nothing.
+ * The test itself is the same ray cast as GeometryHelper.isPointInsidePolygon, a horizontal ray from the point
+ * to longitude 999.99, with the same orientation arithmetic in the same order; only the objects are gone.
+ * That keeps the answers identical, including for points on an edge or a vertex and for rays through a vertex.
+ *
+ * The polygon is also classified when it is prepared. For a point strictly between the latitudes of its vertices,
+ * the ray can only meet the edges whose latitude range contains the point, so
+ *  - an axis-aligned rectangle, such as the central area, needs only the longitude comparisons with its sides;
+ *  - a convex polygon has exactly one rising and one falling edge at that latitude, found by binary search,
+ *    and the ray cast is run over those two edges only;
+ *  - any other polygon, and any point level with a vertex, goes through the full ray cast.
+ */
+public final class PreparedPolygon {
+    static final double RAY_END_LNG = 999.99; // Longitude the ray from the tested point ends at, as in GeometryHelper.
+    private static final double MIN_ULP = 0x1p-500; // Products of two such half ulps are still normal doubles.
+
+    // Package private so that VectorPolygonKernel can run the same test over several points at once
+    final int vertexCount; // Number of vertices, including the closing one if the region repeats it.
+    final double[] lng; // Longitude of each vertex.
+    final double[] lat; // Latitude of each vertex.
+    final double[] edgeRun; // Longitude extent of the edge from vertex i to vertex i + 1 (wrapping round).
+    final double[] edgeRise; // Latitude extent of the same edge.
+    final double[] edgeMinLng; // Bounding box of each edge, for the on-edge checks.
+    final double[] edgeMaxLng;
+    final double[] edgeMinLat;
+    final double[] edgeMaxLat;
+    final double minLat; // Bounding box of the polygon.
+    final double maxLat;
+    final double maxLng;
+    final boolean finite; // Whether every coordinate is finite.
+    private final double minLng;
+
+    private final Shape shape;
+    // For a convex polygon: its rising and falling edges, each sorted by their lowest latitude
+    private final int[] risingEdges;
+    private final double[] risingLowLat;
+    private final int[] fallingEdges;
+    private final double[] fallingLowLat;
+
+    /**
+     * The kinds of polygon that have a faster test than the full ray cast.
+     */
+    enum Shape {
+        RECTANGLE, // Axis-aligned rectangle
+        CONVEX,
+        GENERAL
+    }
+
+    /**
+     * Prepares a polygon.
+     * @param vertices The vertices, in order, as given by NamedRegion.vertices().
+     */
+    public PreparedPolygon(LngLat[] vertices) {
+        this(vertices, vertices.length);
+    }
+
+    /**
+     * Prepares a polygon from the first vertices of an array.
+     * @param vertices The vertices, in order.
+     * @param vertexCount The number of vertices to use.
+     */
+    public PreparedPolygon(LngLat[] vertices, int vertexCount) {
+        this.vertexCount = vertexCount;
+        lng = new double[vertexCount];
+        lat = new double[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            lng[i] = vertices[i].lng();
+            lat[i] = vertices[i].lat();
+        }
+
+        edgeRun = new double[vertexCount];
+        edgeRise = new double[vertexCount];
+        edgeMinLng = new double[vertexCount];
+        edgeMaxLng = new double[vertexCount];
+        edgeMinLat = new double[vertexCount];
+        edgeMaxLat = new double[vertexCount];
+        double lowLat = Double.POSITIVE_INFINITY;
+        double highLat = Double.NEGATIVE_INFINITY;
+        double highLng = Double.NEGATIVE_INFINITY;
+        double lowLng = Double.POSITIVE_INFINITY;
+        boolean allFinite = true;
+        for (int i = 0; i < vertexCount; i++) {
+            int next = (i + 1) % vertexCount;
+            edgeRun[i] = lng[next] - lng[i];
+            edgeRise[i] = lat[next] - lat[i];
+            edgeMinLng[i] = Math.min(lng[i], lng[next]);
+            edgeMaxLng[i] = Math.max(lng[i], lng[next]);
+            edgeMinLat[i] = Math.min(lat[i], lat[next]);
+            edgeMaxLat[i] = Math.max(lat[i], lat[next]);
+            lowLat = Math.min(lowLat, lat[i]);
+            highLat = Math.max(highLat, lat[i]);
+            highLng = Math.max(highLng, lng[i]);
+            lowLng = Math.min(lowLng, lng[i]);
+            allFinite &= Double.isFinite(lng[i]) && Double.isFinite(lat[i]);
+        }
+        minLat = lowLat;
+        maxLat = highLat;
+        maxLng = highLng;
+        minLng = lowLng;
+        finite = allFinite;
+
+        List<Integer> rising = new ArrayList<>();
+        List<Integer> falling = new ArrayList<>();
+        Shape kind = classify(rising, falling);
+        risingEdges = sortByLowLat(rising);
+        fallingEdges = sortByLowLat(falling);
+        risingLowLat = lowLats(risingEdges);
+        fallingLowLat = lowLats(fallingEdges);
+        // The convex test needs exactly one rising and one falling edge at each latitude; rounding in the turn
+        // directions must not let anything else through
+        if (kind == Shape.CONVEX && !(tilesLatRange(risingEdges) && tilesLatRange(fallingEdges))) {
+            kind = Shape.GENERAL;
+        }
+        shape = kind;
+    }
+
+    /**
+     * @return The kind of test this polygon uses.
+     */
+    Shape getShape() {
+        return shape;
+    }
+
+    // Works out the shape, collecting the rising and falling edges of a convex polygon
+    private Shape classify(List<Integer> rising, List<Integer> falling) {
+        // The shortcuts compare with the ray end and rely on finite arithmetic, like VectorPolygonKernel
+        if (vertexCount < 3 || !finite || maxLng >= RAY_END_LNG) return Shape.GENERAL;
+        int corners = vertexCount;
+        if (lng[corners - 1] == lng[0] && lat[corners - 1] == lat[0]) {
+            corners--; // The region repeats its first vertex; that edge has no length and never spans a latitude
+        }
+        if (corners < 3) return Shape.GENERAL;
+
+        boolean axisAligned = true;
+        boolean turnsLeft = false;
+        boolean turnsRight = false;
+        int directionChanges = 0;
+        for (int i = 0; i < corners; i++) {
+            int next = (i + 1) % corners;
+            double run = lng[next] - lng[i];
+            double rise = lat[next] - lat[i];
+            if (run == 0 && rise == 0) return Shape.GENERAL; // Repeated vertex
+            axisAligned &= (run == 0) != (rise == 0);
+
+            double nextRun = lng[(next + 1) % corners] - lng[next];
+            double nextRise = lat[(next + 1) % corners] - lat[next];
+            double turn = run * nextRise - rise * nextRun;
+            turnsLeft |= turn > 0;
+            turnsRight |= turn < 0;
+
+            if (rise > 0) rising.add(i);
+            if (rise < 0) falling.add(i);
+        }
+        // Count the switches between rising and falling round the boundary, skipping horizontal edges
+        int previous = 0;
+        for (int i = 0; i < 2 * corners; i++) {
+            double rise = lat[(i + 1) % corners] - lat[i % corners];
+            int direction = (rise > 0) ? 1 : (rise < 0) ? -1 : 0;
+            if (direction != 0) {
+                if (previous != 0 && direction != previous && i >= corners) directionChanges++;
+                previous = direction;
+            }
+        }
+
+        if (corners == 4 && axisAligned && wellScaled()) return Shape.RECTANGLE;
+        // Turning one way only, and going up once and down once, rules out self-intersecting stars
+        if (turnsLeft != turnsRight && directionChanges == 2) return Shape.CONVEX;
+        rising.clear();
+        falling.clear();
+        return Shape.GENERAL;
+    }
+
+    // Whether no orientation product between a point and the polygon can underflow to zero, which the rectangle
+    // test relies on: a nonzero difference from a coordinate is at least half its ulp
+    private boolean wellScaled() {
+        for (int i = 0; i < vertexCount; i++) {
+            if (Math.ulp(lng[i]) < MIN_ULP || Math.ulp(lat[i]) < MIN_ULP) return false;
+        }
+        return true;
+    }
+
+    private int[] sortByLowLat(List<Integer> edges) {
+        return edges.stream().sorted((a, b) -> Double.compare(edgeMinLat[a], edgeMinLat[b])).mapToInt(Integer::intValue).toArray();
+    }
+
+    private double[] lowLats(int[] edges) {
+        double[] lowLats = new double[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            lowLats[i] = edgeMinLat[edges[i]];
+        }
+        return lowLats;
+    }
+
+    // Whether the edges cover the polygon's latitude range once each, end to end
+    private boolean tilesLatRange(int[] edges) {
+        if (edges.length == 0) return false;
+        double reached = minLat;
+        for (int edge : edges) {
+            if (edgeMinLat[edge] != reached) return false;
+            reached = edgeMaxLat[edge];
+        }
+        return reached == maxLat;
+    }
+
+    /**
+     * Checks if a point lies inside the polygon; points on its boundary count as inside.
+     * @param point The point to check.
+     * @return The same answer as GeometryHelper.isPointInsidePolygon for the original vertices.
+     */
+    public boolean contains(LngLat point) {
+        return contains(point.lng(), point.lat());
+    }
+
+    /**
+     * Checks if a point lies inside the polygon; points on its boundary count as inside.
+     * @param pointLng Longitude of the point.
+     * @param pointLat Latitude of the point.
+     * @return The same answer as GeometryHelper.isPointInsidePolygon for the original vertices.
+     */
+    public boolean contains(double pointLng, double pointLat) {
+        if (vertexCount < 3) return false; // Not a polygon
+        // A ray above, below or entirely to the right of the polygon cannot meet any edge
+        if (pointLat < minLat || pointLat > maxLat || pointLng > maxLng) return false;
+
+        // Strictly between the lowest and highest latitude (which also rules out NaN)
+        if (pointLat > minLat && pointLat < maxLat) {
+            if (shape == Shape.RECTANGLE) {
+                return pointLng >= minLng; // Left of the rectangle the ray meets both sides, otherwise only the right one
+            }
+            if (shape == Shape.CONVEX) {
+                int rising = spanningEdge(risingEdges, risingLowLat, pointLat);
+                int falling = spanningEdge(fallingEdges, fallingLowLat, pointLat);
+                if (rising >= 0 && falling >= 0) {
+                    return rayCast(Math.min(rising, falling), Math.max(rising, falling), pointLng, pointLat);
+                }
+            }
+        }
+        return rayCast(pointLng, pointLat);
+    }
+
+    // The edge whose latitude range strictly contains the latitude, or -1 if the latitude is that of a vertex
+    private int spanningEdge(int[] edges, double[] lowLats, double pointLat) {
+        int found = Arrays.binarySearch(lowLats, pointLat);
+        if (found >= 0) return -1; // Level with the lowest vertex of an edge
+        int edge = edges[-found - 2]; // The last edge starting below the point
+        return (pointLat < edgeMaxLat[edge]) ? edge : -1;
+    }
+
+    // The ray cast over the only two edges that can meet the ray, in the order the full ray cast visits them
+    private boolean rayCast(int first, int second, double pointLng, double pointLat) {
+        int intersectionCount = 0;
+        for (int k = 0, i = first; k < 2; k++, i = second) {
+            int next = (i + 1) % vertexCount;
+            if (rayMeetsEdge(i, next, pointLng, pointLat)) {
+                // Point on polygon edge
+                if (direction(lng[i], lat[i], pointLng, pointLat, lng[next], lat[next]) == 0) {
+                    return isOnEdge(i, pointLng, pointLat);
+                }
+                intersectionCount++;
+            }
+        }
+        return (intersectionCount == 1);
+    }
+
+    // The full ray cast of GeometryHelper.isPointInsidePolygon
+    private boolean rayCast(double pointLng, double pointLat) {
+        int intersectionCount = 0;
+        for (int i = 0; i < vertexCount; i++) {
+            int next = (i + 1) % vertexCount;
+            if (rayMeetsEdge(i, next, pointLng, pointLat)) {
+                // Point on polygon edge
+                if (direction(lng[i], lat[i], pointLng, pointLat, lng[next], lat[next]) == 0) {
+                    return isOnEdge(i, pointLng, pointLat);
+                }
+                intersectionCount++;
+            }
+        }
+        // Odd number of intersections means inside, even means outside
+        return (intersectionCount % 2 == 1);
+    }
+
+    // GeometryHelper.doLinesIntersect for edge i and the ray from the point to RAY_END_LNG
+    private boolean rayMeetsEdge(int i, int next, double pointLng, double pointLat) {
+        int dir1 = edgeDirection(i, next, pointLng, pointLat);
+        int dir2 = edgeDirection(i, next, RAY_END_LNG, pointLat);
+        int dir3 = direction(pointLng, pointLat, RAY_END_LNG, pointLat, lng[i], lat[i]);
+        int dir4 = direction(pointLng, pointLat, RAY_END_LNG, pointLat, lng[next], lat[next]);
+
+        if (dir1 != dir2 && dir3 != dir4) return true; // General case
+        // Special Cases
+        if (dir1 == 0 && isOnEdge(i, pointLng, pointLat)) return true;
+        if (dir2 == 0 && isOnEdge(i, RAY_END_LNG, pointLat)) return true;
+        if (dir3 == 0 && isOnRay(pointLng, pointLat, lng[i], lat[i])) return true;
+        if (dir4 == 0 && isOnRay(pointLng, pointLat, lng[next], lat[next])) return true;
+
+        return false;
+    }
+
+    // GeometryHelper.calculateDirection(vertex i, vertex next, c), with the edge's extents precomputed
+    private int edgeDirection(int i, int next, double cLng, double cLat) {
+        double value = edgeRise[i] * (cLng - lng[next]) - edgeRun[i] * (cLat - lat[next]);
+        if (value == 0) return 0; // Collinear
+        return (value < 0) ? 2 : 1; // Anti-clockwise or Clockwise
+    }
+
+    // GeometryHelper.calculateDirection on coordinates: 0 if collinear, 1 if clockwise, 2 if counterclockwise
+    private static int direction(double aLng, double aLat, double bLng, double bLat, double cLng, double cLat) {
+        double value = (bLat - aLat) * (cLng - bLng) - (bLng - aLng) * (cLat - bLat);
+        if (value == 0) return 0; // Collinear
+        return (value < 0) ? 2 : 1; // Anti-clockwise or Clockwise
+    }
+
+    // GeometryHelper.isOnLine for edge i
+    private boolean isOnEdge(int i, double pointLng, double pointLat) {
+        return pointLng <= edgeMaxLng[i] && pointLng >= edgeMinLng[i]
+                && pointLat <= edgeMaxLat[i] && pointLat >= edgeMinLat[i];
+    }
+
+    // GeometryHelper.isOnLine for the ray from the tested point
+    private static boolean isOnRay(double rayLng, double rayLat, double pointLng, double pointLat) {
+        return pointLng <= Math.max(rayLng, RAY_END_LNG) && pointLng >= Math.min(rayLng, RAY_END_LNG)
+                && pointLat <= rayLat && pointLat >= rayLat;
+    }
+}
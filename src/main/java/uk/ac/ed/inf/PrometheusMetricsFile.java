@@ -0,0 +1,51 @@
+package uk.ac.ed.inf;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Collects the meters of a CLI run in Prometheus form, for the metrics result file.
+ *
+ * Kept apart from DeliveryMetrics so the Prometheus classes are only loaded by runs that ask for the file;
+ * other runs record into the global registry alone, which has no registries and ignores every sample.
+ */
+public final class PrometheusMetricsFile implements AutoCloseable {
+    private final PrometheusMeterRegistry registry;
+
+    private PrometheusMetricsFile(PrometheusMeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Starts collecting the meters of DeliveryMetrics.
+     * @return The collector, which stays part of the global registry until it is closed.
+     */
+    public static PrometheusMetricsFile start() {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        Metrics.addRegistry(registry);
+        return new PrometheusMetricsFile(registry);
+    }
+
+    /**
+     * Writes everything collected so far in the Prometheus text format.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(File file) throws IOException {
+        Files.writeString(file.toPath(), registry.scrape());
+    }
+
+    /**
+     * Stops collecting: later samples no longer reach this registry.
+     */
+    @Override
+    public void close() {
+        Metrics.removeRegistry(registry);
+        registry.close();
+    }
+}
@@ -0,0 +1,61 @@
+package uk.ac.ed.inf;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The result files a run can write. Only the writers (and libraries) of the selected files are loaded.
+ */
+public enum ResultFile {
+    /** deliveries-DATE.json: the status of every order (org.json). */
+    DELIVERIES("deliveries-", ".json"),
+    /** flightpath-DATE.json: every move flown (org.json). Needed to reuse routes in the next run. */
+    FLIGHTPATH("flightpath-", ".json"),
+    /** drone-DATE.geojson: the path flown, for map viewers (Gson). */
+    GEOJSON("drone-", ".geojson"),
+    /** flightpath-DATE.bin: every move flown, in the compact binary format. */
+    BINARY("flightpath-", ".bin"),
+    /** metrics-DATE.prom: the meters of the run, in the Prometheus text format. Written by App, not the pipeline. */
+    METRICS("metrics-", ".prom");
+
+    /** The files written when nothing else is asked for. */
+    public static final Set<ResultFile> DEFAULT = EnumSet.of(DELIVERIES, FLIGHTPATH, GEOJSON);
+
+    private final String prefix;
+    private final String suffix;
+
+    ResultFile(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    /**
+     * @param date The date of the run, as YYYY-MM-DD.
+     * @return The name of this file for the date.
+     */
+    public String fileName(String date) {
+        return prefix + date + suffix;
+    }
+
+    /**
+     * Parses a comma separated list of file kinds, such as "deliveries,flightpath".
+     * @param list The list, case insensitive.
+     * @return The selected files.
+     * @throws IllegalArgumentException If a name is not one of deliveries, flightpath, geojson, binary or metrics.
+     */
+    public static Set<ResultFile> parse(String list) {
+        Set<ResultFile> files = EnumSet.noneOf(ResultFile.class);
+        for (String name : list.split(",")) {
+            if (!name.isBlank()) {
+                try {
+                    files.add(valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Output error: unknown result file '" + name.trim()
+                            + "', expected deliveries, flightpath, geojson, binary or metrics");
+                }
+            }
+        }
+        return files;
+    }
+}
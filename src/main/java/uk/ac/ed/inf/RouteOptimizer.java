@@ -1,8 +1,12 @@
 package uk.ac.ed.inf;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
 import uk.ac.ed.inf.ilp.data.*;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static uk.ac.ed.inf.ilp.constant.OrderStatus.DELIVERED;
 
@@ -10,10 +14,14 @@ import static uk.ac.ed.inf.ilp.constant.OrderStatus.DELIVERED;
  * Optimizes drone routes for delivering orders.
  */
 public class RouteOptimizer {
-    private final NamedRegion[] noFlyZones;
+    private NamedRegion[] noFlyZones;
     private final NamedRegion centralArea;
     private final Restaurant[] restaurants;
     private final List<Order> orders;
+    private final DronePathPlanner planner; // Shared by all orders so cached paths are reused.
+    private final Timer planningTimer = DeliveryMetrics.planningPerOrder(); // Time to plan each order.
+    private final DistributionSummary movesPerOrder = DeliveryMetrics.movesPerOrder(); // Moves flown per order.
+    private final Counter unreachable = DeliveryMetrics.unreachableOrders(); // Orders whose restaurant cannot be reached.
 
     /**
      * Constructor to initialize the RouteOptimizer with necessary data.
@@ -27,14 +35,38 @@ public class RouteOptimizer {
         this.centralArea = centralArea;
         this.restaurants = restaurants;
         this.orders = orders;
+        this.planner = new DronePathPlanner(noFlyZones, centralArea);
     }
 
     /**
-     * Finds the location of the restaurant for a given order.
-     * @param order The order for which to find the restaurant location.
-     * @return The location (LngLat) of the restaurant.
+     * Constructor for planning orders one at a time with optimizeRoute, as they become available.
+     * @param noFlyZones Array of no-fly zones to avoid.
+     * @param centralArea Central area for the drone operations.
+     * @param restaurants Array of available restaurants.
+     */
+    public RouteOptimizer(NamedRegion[] noFlyZones, NamedRegion centralArea, Restaurant[] restaurants) {
+        this(noFlyZones, centralArea, restaurants, List.of());
+    }
+
+    /**
+     * Switches to new no-fly zones, keeping the cached routes they leave flyable (see DronePathPlanner.updateNoFlyZones).
+     * @param updated The new no-fly zones; if they are the array already in use, nothing happens.
+     * @return The number of cached routes dropped.
+     */
+    public int updateNoFlyZones(NamedRegion[] updated) {
+        if (updated == noFlyZones) {
+            return 0;
+        }
+        noFlyZones = updated;
+        return planner.updateNoFlyZones(updated);
+    }
+
+    /**
+     * Finds the restaurant for a given order.
+     * @param order The order for which to find the restaurant.
+     * @return The restaurant that serves all the order's pizzas.
      */
-    private LngLat findRestaurantLocation(Order order) {
+    private Restaurant findRestaurant(Order order) {
         // Collect the order's pizza names (trimmed)
         List<Pizza> orderPizzas = Arrays.asList(order.getPizzasInOrder());
         Set<String> orderPizzaNames = new HashSet<>();
@@ -53,7 +85,7 @@ public class RouteOptimizer {
 
             // Now see if this restaurant covers ALL the pizzas in the order
             if (restaurantPizzaNames.containsAll(orderPizzaNames)) {
-                return restaurant.location();
+                return restaurant;
             }
         }
 
@@ -67,20 +99,40 @@ public class RouteOptimizer {
      * @return A list of DroneMovement objects representing the optimized routes.
      */
     public List<DroneMovement> optimizeRoutes() {
-        DronePathPlanner planner = new DronePathPlanner(noFlyZones, centralArea);
         List<DroneMovement> allRoutes = new ArrayList<>();
-
-        LngLat deliveryPoint = new LngLat(-3.186874, 55.944494); // Appleton Tower coordinates
         for (Order order : orders) {
-            LngLat restaurantLocation = findRestaurantLocation(order);
+            allRoutes.addAll(optimizeRoute(order));
+        }
+        return allRoutes;
+    }
 
-            // Calculate the round trip path for each order
-            List<DroneMovement> roundTripRoute = planner.findTotalPath(deliveryPoint, restaurantLocation, order.getOrderNo());
-            allRoutes.addAll(roundTripRoute);
+    /**
+     * Calculates the round trip route for a single order and marks it as delivered.
+     * If no path can reach the order's restaurant, the order is left valid but not delivered, with no route,
+     * without searching for one.
+     * @param order The (valid) order to deliver.
+     * @return A list of DroneMovement objects representing the route for this order; empty if it cannot be delivered.
+     */
+    public List<DroneMovement> optimizeRoute(Order order) {
+        long start = System.nanoTime();
+        OrderPlanningEvent event = OrderPlanningEvent.start();
+        LngLat deliveryPoint = new LngLat(-3.186874, 55.944494); // Appleton Tower coordinates
+        Restaurant restaurant = findRestaurant(order);
 
-            order.setOrderStatus(DELIVERED); // Mark the order as delivered
+        if (!planner.canReach(deliveryPoint, restaurant.location())) {
+            unreachable.increment();
+            planningTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            OrderPlanningEvent.commit(event, order.getOrderNo(), restaurant.name(), false, 0);
+            return List.of();
         }
 
-        return allRoutes;
+        // Calculate the round trip path for the order
+        List<DroneMovement> roundTripRoute = planner.findTotalPath(deliveryPoint, restaurant.location(), order.getOrderNo());
+
+        order.setOrderStatus(DELIVERED); // Mark the order as delivered
+        planningTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        movesPerOrder.record(roundTripRoute.size());
+        OrderPlanningEvent.commit(event, order.getOrderNo(), restaurant.name(), true, roundTripRoute.size());
+        return roundTripRoute;
     }
 }
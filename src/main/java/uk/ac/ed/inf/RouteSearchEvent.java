@@ -0,0 +1,78 @@
+package uk.ac.ed.inf;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder event for one request to DronePathPlanner.findTotalPath,
+ * whether it was answered from the path cache or searched.
+ */
+@Name("uk.ac.ed.inf.RouteSearch")
+@Label("Route Search")
+@Category({"PizzaDronz", "Planning"})
+@Description("Search for a round trip path, or its lookup in the path cache")
+@StackTrace(false)
+final class RouteSearchEvent extends Event {
+
+    @Label("Order Number")
+    String orderNo;
+
+    @Label("Planner")
+    @Description("The PlannerMode that searched")
+    String planner;
+
+    @Label("Cache Hit")
+    boolean cacheHit;
+
+    @Label("Nodes Expanded")
+    @Description("Positions whose next moves were evaluated; 0 on a cache hit")
+    int nodesExpanded;
+
+    @Label("Suboptimality Bound")
+    @Description("How many times the moves of the shortest path the path may have at most; 0 if the planner gives no bound")
+    double suboptimalityBound;
+
+    @Label("Path Length")
+    @Description("Moves in the round trip, hovers included")
+    int pathLength;
+
+    // Looked up on first use, which only happens once Flight Recorder is running
+    private static final class Type {
+        private static final EventType EVENT_TYPE = EventType.getEventType(RouteSearchEvent.class);
+    }
+
+    /**
+     * Begins an event for a path request.
+     * @return The event; null if no running recording has the event enabled.
+     */
+    static RouteSearchEvent start() {
+        if (!FlightRecorder.isInitialized() || !Type.EVENT_TYPE.isEnabled()) {
+            return null;
+        }
+        RouteSearchEvent event = new RouteSearchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event of a path request and commits it if a recording has the event enabled.
+     * @param event The event from start, or null.
+     * @param orderNo The order the path is for.
+     * @param planner The mode of the planner.
+     * @param cacheHit Whether the path came from the cache.
+     * @param nodesExpanded Positions whose next moves were evaluated.
+     * @param suboptimalityBound How many times the shortest path the path may be; 0 if unknown.
+     * @param pathLength Moves in the round trip.
+     */
+    static void commit(RouteSearchEvent event, String orderNo, PlannerMode planner, boolean cacheHit, int nodesExpanded,
+                       double suboptimalityBound, int pathLength) {
+        if (event != null && event.shouldCommit()) {
+            event.orderNo = orderNo;
+            event.planner = planner.name();
+            event.cacheHit = cacheHit;
+            event.nodesExpanded = nodesExpanded;
+            event.suboptimalityBound = suboptimalityBound;
+            event.pathLength = pathLength;
+            event.commit();
+        }
+    }
+}
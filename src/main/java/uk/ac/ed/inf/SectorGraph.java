@@ -0,0 +1,293 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The abstract graph of hierarchical path-finding (HPA*) over the zones' FreeSpaceGrid.
+ *
+ * The grid is split into square sectors of SECTOR_CELLS cells. Wherever free cells face each other across the
+ * border of two sectors there are entrances: pairs of cells, one on each side, spread along the open stretch
+ * about ENTRANCE_SPACING cells apart. The entrance cells are the nodes of the graph; the two cells of an
+ * entrance are joined by a one-move edge, and the nodes of a sector by the grid distance between them without
+ * leaving the sector. All of it is built once per zone set.
+ *
+ * To plan, the start and the destination are joined to the nodes of their sectors, the small graph is searched,
+ * and the result is the list of cells where the route enters each sector it crosses; DronePathPlanner then
+ * searches the drone's moves one sector at a time. The work grows with the number of sectors crossed, not with
+ * the area.
+ */
+final class SectorGraph {
+    static final int SECTOR_CELLS = 16; // A sector is this many cells, so moves, across.
+    private static final int ENTRANCE_SPACING = 4; // Open border gets an entrance about every this many cells.
+
+    // Graphs already built, by zone set; regions are never changed after they are loaded
+    private static final BoundedCache<List<NamedRegion>, SectorGraph> CACHE = new BoundedCache<>(16);
+
+    private final FreeSpaceGrid grid;
+    private final int sectorColumns;
+    private final int sectorRows;
+    private final HashMap<Integer, Integer> nodeOfCell = new HashMap<>(); // Node of each entrance cell.
+    private final List<Integer> nodeCells = new ArrayList<>(); // Entrance cell of each node.
+    private final List<List<Edge>> edges = new ArrayList<>(); // Edges leaving each node.
+    private final List<List<Integer>> sectorNodes = new ArrayList<>(); // Nodes of each sector.
+    private int nodesExpanded; // Nodes expanded by the last route.
+
+    // An edge of the graph, and its length in moves
+    private static final class Edge {
+        final int target;
+        final float moves;
+
+        Edge(int target, float moves) {
+            this.target = target;
+            this.moves = moves;
+        }
+    }
+
+    /**
+     * Builds the graph.
+     * @param noFlyZones The no-fly zones.
+     * @param centralArea The central area.
+     */
+    SectorGraph(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        grid = FreeSpaceGrid.forRegions(noFlyZones, centralArea);
+        sectorColumns = (grid.getColumns() + SECTOR_CELLS - 1) / SECTOR_CELLS;
+        sectorRows = (grid.getRows() + SECTOR_CELLS - 1) / SECTOR_CELLS;
+        for (int sector = 0; sector < sectorColumns * sectorRows; sector++) {
+            sectorNodes.add(new ArrayList<>());
+        }
+
+        for (int sectorRow = 0; sectorRow < sectorRows; sectorRow++) {
+            for (int sectorColumn = 0; sectorColumn < sectorColumns; sectorColumn++) {
+                if (sectorColumn + 1 < sectorColumns) {
+                    addEntrances((sectorColumn + 1) * SECTOR_CELLS - 1, sectorRow * SECTOR_CELLS, 1, 0, 0, 1);
+                }
+                if (sectorRow + 1 < sectorRows) {
+                    addEntrances(sectorColumn * SECTOR_CELLS, (sectorRow + 1) * SECTOR_CELLS - 1, 0, 1, 1, 0);
+                }
+            }
+        }
+        for (int sector = 0; sector < sectorNodes.size(); sector++) {
+            for (int node : sectorNodes.get(sector)) {
+                linkWithinSector(node, nodeCells.get(node), sector, edges.get(node));
+            }
+        }
+    }
+
+    /**
+     * Returns the graph for a set of no-fly zones, building it on first use.
+     * @param noFlyZones The no-fly zones.
+     * @param centralArea The central area.
+     * @return The graph.
+     */
+    static SectorGraph forRegions(NamedRegion[] noFlyZones, NamedRegion centralArea) {
+        List<NamedRegion> key = FreeSpaceGrid.regions(noFlyZones, centralArea);
+        return CACHE.get(key, zones -> new SectorGraph(noFlyZones, centralArea));
+    }
+
+    /**
+     * Finds the sectors a route crosses.
+     * @param start The starting point.
+     * @param end The destination.
+     * @param headings The headings the drone may take, for the straight line that guides the search.
+     * @return The centres of the cells where the route enters each sector after the first, in order (empty when the
+     *         start and destination share a sector); null if either lies off the grid or in a blocked cell, or the
+     *         graph has no route between them.
+     */
+    List<LngLat> route(LngLat start, LngLat end, HeadingTable headings) {
+        nodesExpanded = 0;
+        int startCell = grid.cell(start.lng(), start.lat());
+        int endCell = grid.cell(end.lng(), end.lat());
+        if (startCell < 0 || endCell < 0 || !grid.isFree(startCell) || !grid.isFree(endCell)) {
+            return null;
+        }
+        int startSector = sectorOf(startCell);
+        int endSector = sectorOf(endCell);
+        if (startSector == endSector) {
+            return List.of();
+        }
+
+        // The start and the destination join the graph as two extra nodes, for this route only
+        int startNode = nodeCells.size();
+        int endNode = startNode + 1;
+        List<Edge> startEdges = new ArrayList<>();
+        linkWithinSector(startNode, startCell, startSector, startEdges);
+        float[] toEnd = new float[endNode];
+        Arrays.fill(toEnd, Float.POSITIVE_INFINITY);
+        List<Edge> endEdges = new ArrayList<>();
+        linkWithinSector(endNode, endCell, endSector, endEdges);
+        for (Edge edge : endEdges) {
+            toEnd[edge.target] = edge.moves; // The grid's steps are symmetric
+        }
+
+        // A* over the graph, guided by the straight line
+        LngLat endCentre = grid.centre(endCell);
+        double scale = HeadingTable.DEFAULT.boundFrom(headings);
+        float[] moves = new float[endNode + 1];
+        Arrays.fill(moves, Float.POSITIVE_INFINITY);
+        int[] parent = new int[endNode + 1];
+        moves[startNode] = 0;
+        FreeSpaceGrid.CellQueue open = new FreeSpaceGrid.CellQueue();
+        open.add(0, startNode);
+        while (!open.isEmpty()) {
+            long entry = open.poll();
+            int node = FreeSpaceGrid.CellQueue.index(entry);
+            if (node == endNode) {
+                return entries(parent, startNode, endNode, startCell, endCell);
+            }
+            float estimate = FreeSpaceGrid.CellQueue.distance(entry);
+            int cell = node == startNode ? startCell : nodeCells.get(node);
+            if (estimate > moves[node] + straightLine(cell, endCentre, headings, scale)) {
+                continue; // Already reached by a shorter way
+            }
+            nodesExpanded++;
+            List<Edge> out = node == startNode ? startEdges : edges.get(node);
+            for (Edge edge : out) {
+                relax(node, edge.target, moves[node] + edge.moves, moves, parent, open, endCentre, headings, scale);
+            }
+            if (node != startNode && toEnd[node] != Float.POSITIVE_INFINITY) {
+                relax(node, endNode, moves[node] + toEnd[node], moves, parent, open, endCentre, headings, scale);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of graph nodes expanded by the last route.
+     */
+    int getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    /**
+     * @return The number of entrance cells in the graph.
+     */
+    int getNodeCount() {
+        return nodeCells.size();
+    }
+
+    /**
+     * @param position A position.
+     * @return The box of the sector containing the position, or of the nearest sector if it is off the grid.
+     */
+    BoundingBox sectorBox(LngLat position) {
+        LngLat origin = grid.centre(0);
+        double half = FreeSpaceGrid.CELL_SIZE / 2;
+        double sectorSize = SECTOR_CELLS * FreeSpaceGrid.CELL_SIZE;
+        int column = (int) Math.floor((position.lng() - origin.lng() + half) / sectorSize);
+        int row = (int) Math.floor((position.lat() - origin.lat() + half) / sectorSize);
+        column = Math.max(0, Math.min(sectorColumns - 1, column));
+        row = Math.max(0, Math.min(sectorRows - 1, row));
+        double minLng = origin.lng() - half + column * sectorSize;
+        double minLat = origin.lat() - half + row * sectorSize;
+        return new BoundingBox(minLng, minLat, minLng + sectorSize, minLat + sectorSize);
+    }
+
+    private void relax(int from, int to, float moves, float[] bestMoves, int[] parent, FreeSpaceGrid.CellQueue open,
+                       LngLat endCentre, HeadingTable headings, double scale) {
+        if (moves < bestMoves[to]) {
+            bestMoves[to] = moves;
+            parent[to] = from;
+            int cell = to < nodeCells.size() ? nodeCells.get(to) : grid.cell(endCentre.lng(), endCentre.lat());
+            open.add(moves + straightLine(cell, endCentre, headings, scale), to);
+        }
+    }
+
+    // Admissible on the grid: grid distances are never below the moves along the straight line on the 16 headings,
+    // which the scale from HeadingTable.boundFrom keeps the drone's own headings' moves under
+    private float straightLine(int cell, LngLat endCentre, HeadingTable headings, double scale) {
+        LngLat centre = grid.centre(cell);
+        return (float) (scale * headings.movesAlong(endCentre.lng() - centre.lng(), endCentre.lat() - centre.lat()));
+    }
+
+    // The centres of the cells where the route from the start node to the end node crosses into a new sector
+    private List<LngLat> entries(int[] parent, int startNode, int endNode, int startCell, int endCell) {
+        List<Integer> cells = new ArrayList<>();
+        cells.add(endCell);
+        for (int node = parent[endNode]; node != startNode; node = parent[node]) {
+            cells.add(nodeCells.get(node));
+        }
+        cells.add(startCell);
+        Collections.reverse(cells);
+        List<LngLat> entries = new ArrayList<>();
+        for (int i = 1; i < cells.size(); i++) {
+            if (sectorOf(cells.get(i)) != sectorOf(cells.get(i - 1))) {
+                entries.add(grid.centre(cells.get(i)));
+            }
+        }
+        return entries;
+    }
+
+    // Finds the entrances along the border between two sectors: the cells from (column, row), stepping by
+    // (alongColumn, alongRow), face the cells one (acrossColumn, acrossRow) further
+    private void addEntrances(int column, int row, int acrossColumn, int acrossRow, int alongColumn, int alongRow) {
+        int columns = grid.getColumns();
+        int length = Math.min(SECTOR_CELLS, alongColumn == 1 ? columns - column : grid.getRows() - row);
+        int openFrom = -1;
+        for (int i = 0; i <= length; i++) {
+            int cell = (row + i * alongRow) * columns + column + i * alongColumn;
+            int facing = cell + acrossRow * columns + acrossColumn;
+            boolean open = i < length && grid.isFree(cell) && grid.isFree(facing);
+            if (open && openFrom < 0) {
+                openFrom = i;
+            } else if (!open && openFrom >= 0) {
+                // Split the stretch into equal parts of at most ENTRANCE_SPACING cells, with an entrance in the middle of each
+                int width = i - openFrom;
+                int parts = (width + ENTRANCE_SPACING - 1) / ENTRANCE_SPACING;
+                for (int part = 0; part < parts; part++) {
+                    int at = openFrom + (2 * part + 1) * width / (2 * parts);
+                    int entrance = (row + at * alongRow) * columns + column + at * alongColumn;
+                    addEntrance(entrance, entrance + acrossRow * columns + acrossColumn);
+                }
+                openFrom = -1;
+            }
+        }
+    }
+
+    private void addEntrance(int cell, int facing) {
+        int node = node(cell);
+        int facingNode = node(facing);
+        edges.get(node).add(new Edge(facingNode, 1));
+        edges.get(facingNode).add(new Edge(node, 1));
+    }
+
+    private int node(int cell) {
+        Integer node = nodeOfCell.get(cell);
+        if (node == null) {
+            node = nodeCells.size();
+            nodeOfCell.put(cell, node);
+            nodeCells.add(cell);
+            edges.add(new ArrayList<>());
+            sectorNodes.get(sectorOf(cell)).add(node);
+        }
+        return node;
+    }
+
+    // Adds an edge from a node to each node of its sector that it reaches without leaving the sector
+    private void linkWithinSector(int node, int cell, int sector, List<Edge> out) {
+        int columns = grid.getColumns();
+        int fromColumn = sector % sectorColumns * SECTOR_CELLS;
+        int fromRow = sector / sectorColumns * SECTOR_CELLS;
+        int toColumn = Math.min(grid.getColumns(), fromColumn + SECTOR_CELLS) - 1;
+        int toRow = Math.min(grid.getRows(), fromRow + SECTOR_CELLS) - 1;
+        float[] distances = grid.distancesWithin(cell, fromColumn, fromRow, toColumn, toRow);
+        for (int other : sectorNodes.get(sector)) {
+            int otherCell = nodeCells.get(other);
+            float moves = distances[(otherCell / columns - fromRow) * (toColumn - fromColumn + 1) + otherCell % columns - fromColumn];
+            if (other != node && moves != Float.POSITIVE_INFINITY) {
+                out.add(new Edge(other, moves));
+            }
+        }
+    }
+
+    private int sectorOf(int cell) {
+        int columns = grid.getColumns();
+        return cell / columns / SECTOR_CELLS * sectorColumns + cell % columns / SECTOR_CELLS;
+    }
+}
@@ -0,0 +1,123 @@
+package uk.ac.ed.inf;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * PolygonBatchKernel that runs PreparedPolygon's ray cast for as many points at once as the CPU has double lanes.
+ * Only loaded through PolygonBatchKernel.best(), when the jdk.incubator.vector module is present.
+ *
+ * The lanes compute the same orientation values as PreparedPolygon.contains, with the same IEEE operations,
+ * so whenever none of them is zero (or NaN) the special cases of the scalar test cannot apply and the answer
+ * is the parity of the general-case crossings, kept in the sign bits. A point with a zero anywhere, that is on
+ * an edge or level with a vertex, is handed to PreparedPolygon.contains, so the answers are always identical.
+ */
+final class VectorPolygonKernel extends PolygonBatchKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> BITS = SPECIES.withLanes(long.class); // The same lanes, as raw bits
+    private static final double RAY_END_LNG = PreparedPolygon.RAY_END_LNG;
+
+    @Override
+    public void markInside(PreparedPolygon polygon, double[] lng, double[] lat, int count, boolean[] inside) {
+        if (polygon.vertexCount < 3) return; // Not a polygon
+        int vectorCount = canVectorize(polygon) ? SPECIES.loopBound(count) : 0;
+        for (int offset = 0; offset < vectorCount; offset += SPECIES.length()) {
+            if (!markLanes(polygon, lng, lat, offset, inside)) {
+                markScalar(polygon, lng, lat, offset, offset + SPECIES.length(), inside);
+            }
+        }
+        markScalar(polygon, lng, lat, vectorCount, count, inside); // The points that do not fill a vector
+    }
+
+    @Override
+    public String getName() {
+        return "vector-" + SPECIES.length() + "x64";
+    }
+
+    // The rearrangements in markLanes are exact only for a finite polygon that the ray ends to the right of
+    private static boolean canVectorize(PreparedPolygon polygon) {
+        return polygon.finite && polygon.maxLng < RAY_END_LNG;
+    }
+
+    private static void markScalar(PreparedPolygon polygon, double[] lng, double[] lat, int from, int to, boolean[] inside) {
+        for (int i = from; i < to; i++) {
+            if (!inside[i] && polygon.contains(lng[i], lat[i])) {
+                inside[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Marks the points of one vector that lie inside the polygon.
+     * @return False if a lane hit a degenerate case, in which case nothing was marked.
+     */
+    private static boolean markLanes(PreparedPolygon polygon, double[] lng, double[] lat, int offset, boolean[] inside) {
+        DoubleVector pointLng = DoubleVector.fromArray(SPECIES, lng, offset);
+        DoubleVector pointLat = DoubleVector.fromArray(SPECIES, lat, offset);
+        // A ray above, below or entirely to the right of the polygon cannot meet any edge
+        VectorMask<Double> candidates = pointLat.compare(VectorOperators.GE, polygon.minLat)
+                .and(pointLat.compare(VectorOperators.LE, polygon.maxLat))
+                .and(pointLng.compare(VectorOperators.LE, polygon.maxLng));
+        if (!candidates.anyTrue()) {
+            return true;
+        }
+
+        // For vertex v: lngOffset = point lng - v lng, latOffset = point lat - v lat, and rayValue = (ray end lng -
+        // point lng) * latOffset. PreparedPolygon's orientation of v against the ray is (point lat - point lat) *
+        // (v lng - ray end lng) - (ray end lng - point lng) * (v lat - point lat), which for a finite latitude is
+        // exactly rayValue, or a zero when rayValue is one.
+        DoubleVector rayRun = DoubleVector.broadcast(SPECIES, RAY_END_LNG).sub(pointLng);
+        DoubleVector lngOffset = pointLng.sub(polygon.lng[0]);
+        DoubleVector latOffset = pointLat.sub(polygon.lat[0]);
+        DoubleVector rayValue = rayRun.mul(latOffset);
+        DoubleVector smallest = rayValue.abs(); // Smallest magnitude of any value the scalar test compares with zero
+        LongVector crossings = LongVector.zero(BITS);
+
+        for (int i = 0; i < polygon.vertexCount; i++) {
+            // A repeated vertex (such as the closing one) gives an edge whose orientations are all zero, but it only
+            // matters to points on the vertex, which rayValue catches; adding infinity keeps its zeros out of smallest.
+            // (A branch here would make C2 box the loop's vectors.)
+            double ignored = (polygon.edgeRun[i] == 0 && polygon.edgeRise[i] == 0) ? Double.POSITIVE_INFINITY : 0;
+            int next = (i + 1) % polygon.vertexCount;
+            DoubleVector nextLngOffset = pointLng.sub(polygon.lng[next]);
+            DoubleVector nextLatOffset = pointLat.sub(polygon.lat[next]);
+            DoubleVector nextRayValue = rayRun.mul(nextLatOffset);
+
+            // The orientations of the point and of the ray end against the edge, as in PreparedPolygon.edgeDirection
+            DoubleVector runTerm = nextLatOffset.mul(polygon.edgeRun[i]);
+            DoubleVector pointSide = nextLngOffset.mul(polygon.edgeRise[i]).sub(runTerm);
+            DoubleVector rayEndSide = DoubleVector.broadcast(SPECIES, polygon.edgeRise[i] * (RAY_END_LNG - polygon.lng[next])).sub(runTerm);
+            // The orientation of the point against the edge, as in PreparedPolygon.contains, rearranged exactly
+            DoubleVector onEdge = lngOffset.mul(nextLatOffset).sub(latOffset.mul(nextLngOffset));
+
+            // With no zeros, the ray crosses the edge when both pairs of orientations have opposite signs
+            LongVector crossing = signsDiffer(pointSide, rayEndSide).and(signsDiffer(rayValue, nextRayValue));
+            crossings = crossings.lanewise(VectorOperators.XOR, crossing);
+            DoubleVector edgeSmallest = pointSide.abs().min(rayEndSide.abs()).min(onEdge.abs()).add(ignored);
+            smallest = smallest.min(edgeSmallest).min(nextRayValue.abs());
+
+            lngOffset = nextLngOffset;
+            latOffset = nextLatOffset;
+            rayValue = nextRayValue;
+        }
+
+        // min() keeps NaN, so a lane that is not strictly positive needs the scalar test
+        if (!smallest.compare(VectorOperators.GT, 0).or(candidates.not()).allTrue()) {
+            return false;
+        }
+        // Odd number of intersections (the sign bit of the parity) means inside, even means outside
+        VectorMask<Double> marked = candidates.and(crossings.compare(VectorOperators.LT, 0).cast(SPECIES));
+        if (marked.anyTrue()) { // Storing a mask boxes it on JDK 17, and most candidate moves are outside every zone
+            marked.or(VectorMask.fromArray(SPECIES, inside, offset)).intoArray(inside, offset);
+        }
+        return true;
+    }
+
+    // Sign bit set where the two values have opposite signs
+    private static LongVector signsDiffer(DoubleVector a, DoubleVector b) {
+        return a.viewAsIntegralLanes().lanewise(VectorOperators.XOR, b.viewAsIntegralLanes());
+    }
+}
@@ -0,0 +1,30 @@
+package uk.ac.ed.inf;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads without requiring the JDK that has them.
+ * The project is built for Java 17, so Executors.newVirtualThreadPerTaskExecutor is looked up at run time;
+ * on an older JDK (or one where they are still a disabled preview) callers fall back to platform threads.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread.
+     * @return The executor, or null if this JDK has no (enabled) virtual threads.
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null; // Before Java 19
+        } catch (InvocationTargetException e) {
+            return null; // Java 19 and 20 without --enable-preview
+        }
+    }
+}
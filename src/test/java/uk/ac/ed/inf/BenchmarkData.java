@@ -0,0 +1,114 @@
+package uk.ac.ed.inf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import uk.ac.ed.inf.ilp.data.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded data sets for the JMH benchmarks, so every run measures exactly the same work.
+ * The real central Edinburgh geometry and restaurants come from SampleApiData; larger polygons,
+ * orders and flight paths come from SyntheticCity.
+ */
+final class BenchmarkData {
+    static final long SEED = 20250128L; // Same data on every run.
+    static final LngLat APPLETON_TOWER = SyntheticCity.APPLETON_TOWER;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private BenchmarkData() {
+    }
+
+    static NamedRegion centralArea() {
+        return parse(SampleApiData.CENTRAL_AREA, NamedRegion.class);
+    }
+
+    static NamedRegion[] noFlyZones() {
+        return parse(SampleApiData.NO_FLY_ZONES, NamedRegion[].class);
+    }
+
+    static Restaurant[] restaurants() {
+        return parse(SampleApiData.RESTAURANTS, Restaurant[].class);
+    }
+
+    /**
+     * A concave star-shaped polygon around Appleton Tower, closed like the API's (last vertex = first).
+     * @param corners Number of distinct vertices, even.
+     * @param random Source of the rotation and the jitter in the radii.
+     * @return The vertices.
+     */
+    static LngLat[] concavePolygon(int corners, Random random) {
+        return SyntheticCity.starPolygon(APPLETON_TOWER, corners / 2, 0.004, 0.0015, random);
+    }
+
+    /**
+     * A regular, so convex, polygon around Appleton Tower, closed like the API's (last vertex = first).
+     * @param corners Number of distinct vertices.
+     * @param random Source of the rotation.
+     * @return The vertices.
+     */
+    static LngLat[] convexPolygon(int corners, Random random) {
+        double rotation = random.nextDouble() * 2 * Math.PI;
+        LngLat[] vertices = new LngLat[corners + 1];
+        for (int i = 0; i < corners; i++) {
+            double angle = rotation + 2 * Math.PI * i / corners;
+            vertices[i] = new LngLat(APPLETON_TOWER.lng() + 0.004 * Math.cos(angle), APPLETON_TOWER.lat() + 0.004 * Math.sin(angle));
+        }
+        vertices[corners] = vertices[0];
+        return vertices;
+    }
+
+    /**
+     * Points spread evenly over a square around Appleton Tower, about half of them inside concavePolygon.
+     * @param count Number of points.
+     * @param random Source of the positions.
+     * @return The points.
+     */
+    static LngLat[] points(int count, Random random) {
+        LngLat[] points = new LngLat[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = new LngLat(APPLETON_TOWER.lng() + (random.nextDouble() - 0.5) * 0.01,
+                    APPLETON_TOWER.lat() + (random.nextDouble() - 0.5) * 0.01);
+        }
+        return points;
+    }
+
+    /**
+     * A synthetic city of 20 restaurants and 10 no-fly zones whose orders are all valid.
+     * @param orderCount Number of orders.
+     * @return The city.
+     */
+    static SyntheticCity city(int orderCount) {
+        return new SyntheticCity(SEED, 20, 10, orderCount, 0, LocalDate.of(2025, 1, 28));
+    }
+
+    /**
+     * Validates and delivers every order of a city, as a full run would.
+     * @param city The city.
+     * @param orders The city's orders; they are validated and delivered in place.
+     * @return The moves of all orders, in order.
+     */
+    static List<DroneMovement> deliver(SyntheticCity city, Order[] orders) {
+        OrderValidationImpl validator = new OrderValidationImpl();
+        RouteOptimizer optimizer = new RouteOptimizer(city.getNoFlyZones(), city.getCentralArea(), city.getRestaurants());
+        List<DroneMovement> moves = new ArrayList<>();
+        for (Order order : orders) {
+            validator.validateOrder(order, city.getRestaurants());
+            moves.addAll(optimizer.optimizeRoute(order));
+        }
+        return moves;
+    }
+
+    private static <T> T parse(String json, Class<T> type) {
+        try {
+            return MAPPER.readValue(json, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
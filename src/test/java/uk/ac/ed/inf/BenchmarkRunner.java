@@ -0,0 +1,39 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the JMH benchmarks (GeometryBenchmark, LngLatBenchmark, PathPlanningBenchmark, OrderValidationBenchmark,
+ * FormatterBenchmark) with the GC profiler, so every result comes with its allocation rate
+ * (gc.alloc.rate.norm, bytes per operation).
+ *
+ * Results are also written as JSON to target/jmh-results.json; keep a copy from before a change and
+ * compare the two (for example with jmh.morethan.io) to measure the change against that baseline.
+ *
+ * Run with "mvn -Pbenchmarks -DskipTests verify", or run this class from the test classpath.
+ * The optional argument is a regular expression selecting benchmarks, e.g. "GeometryBenchmark";
+ * through Maven it is given as -Dbenchmarks.include=GeometryBenchmark.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 && !args[0].isBlank() ? args[0] : "uk\\.ac\\.ed\\.inf\\..*Benchmark";
+        File results = new File("target", "jmh-results.json");
+        results.getParentFile().mkdirs();
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(results.getPath())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,56 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ed.inf.ilp.data.Order;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for the result file formatters, on a day of a synthetic city where every order is delivered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatterBenchmark {
+
+    @Param({"10", "100"})
+    public int orderCount;
+
+    private Order[] orders;
+    private List<DroneMovement> moves;
+
+    @Setup
+    public void setUp() {
+        SyntheticCity city = BenchmarkData.city(orderCount);
+        orders = city.getOrders();
+        moves = BenchmarkData.deliver(city, orders);
+    }
+
+    @Benchmark
+    public String deliveriesJson() {
+        return OrderDeliveryJsonFormatter.formatDeliveriesToJson(orders);
+    }
+
+    @Benchmark
+    public String flightpathJson() {
+        return DroneFlightpathJsonFormatter.formatFlightpathsToJson(moves);
+    }
+
+    @Benchmark
+    public String geoJson() {
+        return DronePathGeoJsonFormatter.formatPathToGeoJson(moves);
+    }
+
+    @Benchmark
+    public int flightpathBinary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DroneFlightpathBinaryFormatter.writeFlightpathsToBinary(moves, out);
+        return out.size();
+    }
+}
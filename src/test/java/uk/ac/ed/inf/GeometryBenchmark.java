@@ -0,0 +1,61 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for GeometryHelper.isPointInsidePolygon and the PreparedPolygon that replaces it on the hot path.
+ * Polygons are the real central area and no-fly zone shapes (4 and 9 corners) and seeded convex and concave
+ * polygons with more corners; each call tests the next of 1024 seeded points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+    @Param({"central", "bristoSquare", "convex32", "concave32", "concave128"})
+    public String polygon;
+
+    private LngLat[] vertices;
+    private PreparedPolygon prepared;
+    private LngLat[] points;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        NamedRegion[] noFlyZones = BenchmarkData.noFlyZones();
+        switch (polygon) {
+            case "central":
+                vertices = BenchmarkData.centralArea().vertices();
+                break;
+            case "bristoSquare":
+                vertices = noFlyZones[noFlyZones.length - 1].vertices();
+                break;
+            case "convex32":
+                vertices = BenchmarkData.convexPolygon(32, random);
+                break;
+            default:
+                vertices = BenchmarkData.concavePolygon(Integer.parseInt(polygon.substring("concave".length())), random);
+        }
+        points = BenchmarkData.points(1024, random);
+        prepared = new PreparedPolygon(vertices);
+    }
+
+    @Benchmark
+    public boolean isPointInsidePolygon() {
+        LngLat point = points[next++ & 1023];
+        return GeometryHelper.isPointInsidePolygon(vertices, vertices.length, point);
+    }
+
+    @Benchmark
+    public boolean preparedContains() {
+        return prepared.contains(points[next++ & 1023]);
+    }
+}
@@ -0,0 +1,36 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for LngLatHandlingImpl.nextPosition, cycling through the 16 compass directions
+ * from 1024 seeded start points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LngLatBenchmark {
+    private static final double[] ANGLES = {0, 22.5, 45, 67.5, 90, 112.5, 135, 157.5, 180, 202.5, 225, 247.5, 270, 292.5, 315, 337.5};
+
+    private final LngLatHandlingImpl handler = new LngLatHandlingImpl();
+    private LngLat[] points;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        points = BenchmarkData.points(1024, new Random(BenchmarkData.SEED));
+    }
+
+    @Benchmark
+    public LngLat nextPosition() {
+        int i = next++;
+        return handler.nextPosition(points[i & 1023], ANGLES[i & 15]);
+    }
+}
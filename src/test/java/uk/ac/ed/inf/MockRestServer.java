@@ -8,6 +8,7 @@ import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
 
 /**
  * Minimal mock REST server so you can serve static JSON at given paths for testing.
@@ -16,7 +17,7 @@ public class MockRestServer {
     private HttpServer httpServer;
 
     /**
-     * Creates an HttpServer listening on the given port, e.g. 8005.
+     * Creates an HttpServer listening on the given port, e.g. 8005, or on any free port if it is 0.
      */
     public MockRestServer(int port) throws IOException {
         httpServer = HttpServer.create(new InetSocketAddress(port), 0);
@@ -41,6 +42,13 @@ public class MockRestServer {
         });
     }
 
+    /**
+     * The port the server listens on; useful when it was created with port 0.
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
     /**
      * If you want to remove a context mid-test, you can.
      */
@@ -48,6 +56,14 @@ public class MockRestServer {
         httpServer.removeContext(context);
     }
 
+    /**
+     * Serve requests on the given executor instead of the single default thread,
+     * e.g. for load tests with many concurrent clients. Must be called before start().
+     */
+    public void setExecutor(Executor executor) {
+        httpServer.setExecutor(executor);
+    }
+
     /**
      * Start the server (non-blocking).
      * Usually called in your @BeforeEach or test setup.
@@ -0,0 +1,80 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.data.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for OrderValidationImpl.validateOrder.
+ * Run the main method (from the test classpath) to get time per call and, through the GC profiler,
+ * the bytes allocated per call (gc.alloc.rate.norm), which should be 0 for every order kind.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderValidationBenchmark {
+
+    private final OrderValidationImpl validator = new OrderValidationImpl();
+    private Restaurant[] restaurants;
+    private Order validOrder;
+    private Order expiredCardOrder;
+    private Order closedRestaurantOrder;
+
+    @Setup
+    public void setUp() {
+        Pizza margarita = new Pizza("R1: Margarita", 1000);
+        Pizza calzone = new Pizza("R1: Calzone", 1400);
+        Pizza meatLover = new Pizza("R2: Meat Lover", 1400);
+        restaurants = new Restaurant[]{
+                new Restaurant("Rest_1", new LngLat(-3.19, 55.94),
+                        new DayOfWeek[]{DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.FRIDAY},
+                        new Pizza[]{margarita, calzone}),
+                new Restaurant("Rest_2", new LngLat(-3.20, 55.94),
+                        new DayOfWeek[]{DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY},
+                        new Pizza[]{meatLover})
+        };
+        LocalDate monday = LocalDate.of(2025, 1, 27);
+        validOrder = new Order("V", monday, OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED, 2500,
+                new Pizza[]{margarita, calzone}, new CreditCardInformation("1234567812345678", "12/30", "123"));
+        expiredCardOrder = new Order("E", monday, OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED, 1100,
+                new Pizza[]{margarita}, new CreditCardInformation("1234567812345678", "12/24", "123"));
+        closedRestaurantOrder = new Order("C", monday, OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED, 1500,
+                new Pizza[]{meatLover}, new CreditCardInformation("1234567812345678", "12/30", "123"));
+    }
+
+    @Benchmark
+    public Order validOrder() {
+        return validator.validateOrder(validOrder, restaurants);
+    }
+
+    @Benchmark
+    public Order expiredCard() {
+        return validator.validateOrder(expiredCardOrder, restaurants);
+    }
+
+    @Benchmark
+    public Order restaurantClosed() {
+        return validator.validateOrder(closedRestaurantOrder, restaurants);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(OrderValidationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,66 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for DronePathPlanner.findTotalPath over the real central Edinburgh geometry.
+ * "cold" plans with an empty path cache every time (a new planner per call), so it measures the search;
+ * "warm" reuses one planner, so after the first call it measures a cache hit and the copy of the path.
+ * Each runs with 8, 16 and 32 headings, in the planner mode set by the pizzadronz.planner system property;
+ * the setup prints the moves of each round trip, to set against the time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathPlanningBenchmark {
+
+    @Param({"Civerinos Slice", "Sora Lella Vegan Restaurant", "Domino's Pizza - Central"})
+    public String restaurant;
+
+    @Param({"8", "16", "32"})
+    public int headings;
+
+    private NamedRegion centralArea;
+    private NamedRegion[] noFlyZones;
+    private LngLat destination;
+    private DronePathPlanner warmPlanner;
+
+    @Setup
+    public void setUp() {
+        centralArea = BenchmarkData.centralArea();
+        noFlyZones = BenchmarkData.noFlyZones();
+        for (Restaurant candidate : BenchmarkData.restaurants()) {
+            if (candidate.name().equals(restaurant)) {
+                destination = candidate.location();
+            }
+        }
+        warmPlanner = newPlanner();
+        int moves = warmPlanner.findTotalPath(BenchmarkData.APPLETON_TOWER, destination, "WARMUP").size();
+        System.out.println(restaurant + " with " + headings + " headings: " + moves + " moves");
+    }
+
+    private DronePathPlanner newPlanner() {
+        return new DronePathPlanner(noFlyZones, centralArea, PlannerMode.configured(),
+                Long.getLong(DronePathPlanner.BUDGET_PROPERTY, 50), headings);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<DroneMovement> findTotalPathCold() {
+        return newPlanner().findTotalPath(BenchmarkData.APPLETON_TOWER, destination, "COLD");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<DroneMovement> findTotalPathWarm() {
+        return warmPlanner.findTotalPath(BenchmarkData.APPLETON_TOWER, destination, "WARM");
+    }
+}
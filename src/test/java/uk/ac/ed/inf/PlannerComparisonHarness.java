@@ -0,0 +1,113 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the planner modes: for every restaurant, plans the round trip from Appleton Tower in each mode and
+ * prints the nodes expanded (outbound search only), the moves flown, the time taken and, for the anytime planner,
+ * the mean suboptimality bound of its paths, once for each number of headings asked for, so the moves saved
+ * by more headings can be set against the time they cost. Three scenes:
+ * the real central Edinburgh data, a synthetic city, and a synthetic city with a wall across the straight line
+ * to every restaurant, where the straight line is a poor guide (the greedy planner is left out there,
+ * since it can circle behind a wall forever).
+ * Not a unit test, so run its main method from the test classpath:
+ *   args: [modes, default all, comma separated] [synthetic restaurants, default 20] [synthetic no-fly zones, default 10]
+ *         [headings, default 16, comma separated, e.g. 8,16,32]
+ */
+public class PlannerComparisonHarness {
+    private static final double WALL_HALF_LENGTH = 25 * SystemConstants.DRONE_MOVE_DISTANCE;
+    private static final double WALL_HALF_WIDTH = SystemConstants.DRONE_MOVE_DISTANCE;
+
+    public static void main(String[] args) {
+        PlannerMode[] modes = args.length > 0 ? parseModes(args[0]) : PlannerMode.values();
+        int restaurants = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int noFlyZones = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int[] headings = args.length > 3 ? Arrays.stream(args[3].split(",")).mapToInt(Integer::parseInt).toArray() : new int[]{16};
+
+        compare("central Edinburgh", BenchmarkData.noFlyZones(), BenchmarkData.centralArea(), BenchmarkData.restaurants(),
+                modes, headings);
+        SyntheticCity city = new SyntheticCity(BenchmarkData.SEED, restaurants, noFlyZones, 0, 0, LocalDate.of(2025, 1, 28));
+        compare("synthetic city", city.getNoFlyZones(), city.getCentralArea(), city.getRestaurants(), modes, headings);
+        PlannerMode[] searches = Arrays.stream(modes).filter(mode -> mode != PlannerMode.GREEDY).toArray(PlannerMode[]::new);
+        compare("walled synthetic city", walls(city), city.getCentralArea(), city.getRestaurants(), searches, headings);
+    }
+
+    private static void compare(String name, NamedRegion[] noFlyZones, NamedRegion centralArea, Restaurant[] restaurants,
+                                PlannerMode[] modes, int[] headings) {
+        System.out.printf("%s: %d restaurants, %d no-fly zones%n", name, restaurants.length, noFlyZones.length);
+        System.out.printf("  %-8s %8s %12s %10s %10s %8s%n", "planner", "headings", "expanded", "moves", "ms", "bound");
+        for (PlannerMode mode : modes) {
+            for (int headingCount : headings) {
+                compare(noFlyZones, centralArea, restaurants, mode, headingCount);
+            }
+        }
+    }
+
+    // One row: every restaurant's round trip in one mode with one number of headings
+    private static void compare(NamedRegion[] noFlyZones, NamedRegion centralArea, Restaurant[] restaurants,
+                                PlannerMode mode, int headings) {
+        // Build the landmarks and sectors first, so the time is the searches' only
+        if (mode == PlannerMode.ALT) {
+            LandmarkHeuristic.forRegions(noFlyZones, centralArea);
+        } else if (mode == PlannerMode.HPA) {
+            SectorGraph.forRegions(noFlyZones, centralArea);
+        }
+        long expanded = 0;
+        long moves = 0;
+        double bounds = 0;
+        long start = System.nanoTime();
+        for (Restaurant restaurant : restaurants) {
+            DronePathPlanner planner = new DronePathPlanner(noFlyZones, centralArea, mode,
+                    Long.getLong(DronePathPlanner.BUDGET_PROPERTY, 50), headings);
+            List<DroneMovement> path = planner.findTotalPath(BenchmarkData.APPLETON_TOWER, restaurant.location(), "COMPARE");
+            moves += path.size();
+            expanded += planner.getLastNodesExpanded();
+            bounds += planner.getLastBound();
+        }
+        double meanBound = bounds / restaurants.length;
+        System.out.printf("  %-8s %8d %12d %10d %10.1f %8s%n", mode.name().toLowerCase(), headings, expanded, moves,
+                (System.nanoTime() - start) / 1e6, meanBound > 0 ? String.format("%.3f", meanBound) : "-");
+    }
+
+    // The city's no-fly zones plus, for every restaurant, a thin wall across the middle of the straight line to it
+    private static NamedRegion[] walls(SyntheticCity city) {
+        NamedRegion[] zones = city.getNoFlyZones();
+        Restaurant[] restaurants = city.getRestaurants();
+        NamedRegion[] walled = Arrays.copyOf(zones, zones.length + restaurants.length);
+        for (int i = 0; i < restaurants.length; i++) {
+            LngLat from = BenchmarkData.APPLETON_TOWER;
+            LngLat to = restaurants[i].location();
+            double length = Math.hypot(to.lng() - from.lng(), to.lat() - from.lat());
+            double alongLng = (to.lng() - from.lng()) / length;
+            double alongLat = (to.lat() - from.lat()) / length;
+            double middleLng = (from.lng() + to.lng()) / 2;
+            double middleLat = (from.lat() + to.lat()) / 2;
+            LngLat[] corners = new LngLat[5];
+            int[][] signs = {{1, 1}, {1, -1}, {-1, -1}, {-1, 1}, {1, 1}};
+            for (int c = 0; c < corners.length; c++) {
+                double across = signs[c][0] * WALL_HALF_LENGTH;
+                double along = signs[c][1] * WALL_HALF_WIDTH;
+                corners[c] = new LngLat(middleLng + along * alongLng - across * alongLat,
+                        middleLat + along * alongLat + across * alongLng);
+            }
+            walled[zones.length + i] = new NamedRegion("wall" + i, corners);
+        }
+        return walled;
+    }
+
+    private static PlannerMode[] parseModes(String list) {
+        String[] names = list.split(",");
+        PlannerMode[] modes = new PlannerMode[names.length];
+        for (int i = 0; i < names.length; i++) {
+            modes[i] = PlannerMode.parse(names[i]);
+        }
+        return modes;
+    }
+}
@@ -0,0 +1,102 @@
+package uk.ac.ed.inf;
+
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test for the planning service: measures throughput and latency against the number of concurrent clients.
+ * Not a unit test (it runs for a while), so run its main method from the test classpath:
+ *   args: [seconds per concurrency level, default 5] [highest concurrency, default 64] [path, default /deliveries/DATE]
+ *
+ * The data API is a MockRestServer with the sample data, served from a thread pool so it is not the bottleneck.
+ * Every request plans the whole sample day, so it exercises both the blocking API call and the planning pool.
+ */
+public class PlanningServiceLoadHarness {
+    private static final int API_PORT = 8009;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int maxConcurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        String path = args.length > 2 ? args[2] : "/deliveries/" + SampleApiData.DATE;
+
+        MockRestServer api = new MockRestServer(API_PORT);
+        ExecutorService apiThreads = Executors.newCachedThreadPool();
+        api.setExecutor(apiThreads);
+        SampleApiData.serveOn(api);
+        api.start();
+
+        ConfigurableApplicationContext context = PlanningServiceApplication.start("http://localhost:" + API_PORT,
+                new String[]{"--server.port=0"});
+        try {
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            URI uri = URI.create("http://localhost:" + port + path);
+            HttpClient client = HttpClient.newBuilder().executor(Executors.newCachedThreadPool()).build();
+
+            runLevel(client, uri, 1, seconds); // Warm-up, not reported
+            System.out.println("clients  requests/s   p50 ms   p99 ms   errors");
+            for (int clients = 1; clients <= maxConcurrency; clients *= 2) {
+                runLevel(client, uri, clients, seconds).print(clients, seconds);
+            }
+        } finally {
+            context.close();
+            api.stop();
+            apiThreads.shutdown();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Latencies and errors collected at one concurrency level.
+     */
+    private static final class LevelResult {
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        private final LongAdder errors = new LongAdder();
+
+        private void print(int clients, int seconds) {
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            double p50 = sorted.isEmpty() ? 0 : sorted.get(sorted.size() / 2) / 1e6;
+            double p99 = sorted.isEmpty() ? 0 : sorted.get(Math.min(sorted.size() - 1, (int) (sorted.size() * 0.99))) / 1e6;
+            System.out.printf("%7d %12.1f %8.2f %8.2f %8d%n", clients, (double) sorted.size() / seconds, p50, p99, errors.sum());
+        }
+    }
+
+    // Runs the given number of clients in a closed loop for the given time
+    private static LevelResult runLevel(HttpClient client, URI uri, int clients, int seconds) throws InterruptedException {
+        LevelResult result = new LevelResult();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService clientThreads = Executors.newFixedThreadPool(clients);
+        for (int i = 0; i < clients; i++) {
+            clientThreads.submit(() -> {
+                HttpRequest request = HttpRequest.newBuilder(uri).build();
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() == 200) {
+                            result.latencies.add(System.nanoTime() - start);
+                        } else {
+                            result.errors.increment();
+                        }
+                    } catch (Exception e) {
+                        result.errors.increment();
+                    }
+                }
+                return null;
+            });
+        }
+        clientThreads.shutdown();
+        clientThreads.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        return result;
+    }
+}
@@ -0,0 +1,105 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for the step DronePathPlanner repeats for every move: testing the 16 candidate positions
+ * against every no-fly zone. Compares GeometryHelper, the scalar PolygonBatchKernel and the vector one.
+ * Each call tests the next of 64 seeded batches of 16 points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PolygonBatchBenchmark {
+    private static final int CANDIDATES = 16;
+    private static final int BATCHES = 64;
+
+    @Param({"sample", "concave32"})
+    public String zones;
+
+    private NamedRegion[] noFlyZones;
+    private PreparedPolygon[] prepared;
+    private LngLat[][] points;
+    private double[][] lng;
+    private double[][] lat;
+    private final boolean[] inside = new boolean[CANDIDATES];
+    private PolygonBatchKernel vector;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        if (zones.equals("sample")) {
+            noFlyZones = BenchmarkData.noFlyZones();
+        } else {
+            noFlyZones = new NamedRegion[4];
+            for (int i = 0; i < noFlyZones.length; i++) {
+                noFlyZones[i] = new NamedRegion("zone" + i, BenchmarkData.concavePolygon(32, random));
+            }
+        }
+        prepared = new PreparedPolygon[noFlyZones.length];
+        for (int i = 0; i < noFlyZones.length; i++) {
+            prepared[i] = new PreparedPolygon(noFlyZones[i].vertices());
+        }
+
+        points = new LngLat[BATCHES][];
+        lng = new double[BATCHES][CANDIDATES];
+        lat = new double[BATCHES][CANDIDATES];
+        for (int b = 0; b < BATCHES; b++) {
+            points[b] = BenchmarkData.points(CANDIDATES, random);
+            for (int i = 0; i < CANDIDATES; i++) {
+                lng[b][i] = points[b][i].lng();
+                lat[b][i] = points[b][i].lat();
+            }
+        }
+        vector = PolygonBatchKernel.best();
+        if (vector == PolygonBatchKernel.scalar()) {
+            throw new IllegalStateException("Run with --add-modules jdk.incubator.vector");
+        }
+    }
+
+    @Benchmark
+    public void geometryHelper(Blackhole blackhole) {
+        LngLat[] batch = points[next++ & (BATCHES - 1)];
+        for (LngLat point : batch) {
+            boolean blocked = false;
+            for (NamedRegion zone : noFlyZones) {
+                LngLat[] vertices = zone.vertices();
+                if (GeometryHelper.isPointInsidePolygon(vertices, vertices.length, point)) {
+                    blocked = true;
+                    break;
+                }
+            }
+            blackhole.consume(blocked);
+        }
+    }
+
+    @Benchmark
+    public boolean[] scalarKernel() {
+        return markAll(PolygonBatchKernel.scalar());
+    }
+
+    @Benchmark
+    public boolean[] vectorKernel() {
+        return markAll(vector);
+    }
+
+    private boolean[] markAll(PolygonBatchKernel kernel) {
+        int batch = next++ & (BATCHES - 1);
+        Arrays.fill(inside, false);
+        for (PreparedPolygon polygon : prepared) {
+            kernel.markInside(polygon, lng[batch], lat[batch], CANDIDATES, inside);
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,99 @@
+package uk.ac.ed.inf;
+
+/**
+ * Small but realistic data set for tests that need the REST API: central Edinburgh restaurants,
+ * no-fly zones and central area, plus a day of orders covering every validation outcome.
+ * Use serveOn(...) to publish it on a MockRestServer.
+ */
+public class SampleApiData {
+
+    public static final String DATE = "2025-01-28";
+
+    public static final String HEALTH = "{\"status\":\"UP\"}";
+
+    public static final String CENTRAL_AREA = "{\"name\":\"central\",\"vertices\":["
+            + "{\"lng\":-3.192473,\"lat\":55.946233},"
+            + "{\"lng\":-3.192473,\"lat\":55.942617},"
+            + "{\"lng\":-3.184319,\"lat\":55.942617},"
+            + "{\"lng\":-3.184319,\"lat\":55.946233}]}";
+
+    public static final String NO_FLY_ZONES = "["
+            + "{\"name\":\"George Square Area\",\"vertices\":["
+            + "{\"lng\":-3.190578818321228,\"lat\":55.94402412577528},"
+            + "{\"lng\":-3.1899887323379517,\"lat\":55.94284650540911},"
+            + "{\"lng\":-3.187097311019897,\"lat\":55.94328811724263},"
+            + "{\"lng\":-3.187682032585144,\"lat\":55.944477740393744},"
+            + "{\"lng\":-3.190578818321228,\"lat\":55.94402412577528}]},"
+            + "{\"name\":\"Dr Elsie Inglis Quadrangle\",\"vertices\":["
+            + "{\"lng\":-3.1907182931900024,\"lat\":55.94519570234043},"
+            + "{\"lng\":-3.1906163692474365,\"lat\":55.94498241796357},"
+            + "{\"lng\":-3.1900262832641597,\"lat\":55.94507554227258},"
+            + "{\"lng\":-3.190133571624756,\"lat\":55.94529783810495},"
+            + "{\"lng\":-3.1907182931900024,\"lat\":55.94519570234043}]},"
+            + "{\"name\":\"Bristo Square Open Area\",\"vertices\":["
+            + "{\"lng\":-3.189543485641479,\"lat\":55.94552313663306},"
+            + "{\"lng\":-3.189382553100586,\"lat\":55.94553214854692},"
+            + "{\"lng\":-3.189259171485901,\"lat\":55.94544803726933},"
+            + "{\"lng\":-3.1892001628875732,\"lat\":55.94533688994374},"
+            + "{\"lng\":-3.189194798469543,\"lat\":55.94519570234043},"
+            + "{\"lng\":-3.189135789871216,\"lat\":55.94511759833873},"
+            + "{\"lng\":-3.188138008117676,\"lat\":55.9452738171349},"
+            + "{\"lng\":-3.1885510683059692,\"lat\":55.946105902745614},"
+            + "{\"lng\":-3.1895381212234497,\"lat\":55.94555918427592},"
+            + "{\"lng\":-3.189543485641479,\"lat\":55.94552313663306}]}]";
+
+    public static final String RESTAURANTS = "["
+            + "{\"name\":\"Civerinos Slice\",\"location\":{\"lng\":-3.1912869215011597,\"lat\":55.945535152517735},"
+            + "\"openingDays\":[\"MONDAY\",\"TUESDAY\",\"FRIDAY\",\"SATURDAY\",\"SUNDAY\"],"
+            + "\"menu\":[{\"name\":\"R1: Margarita\",\"priceInPence\":1000},{\"name\":\"R1: Calzone\",\"priceInPence\":1400}]},"
+            + "{\"name\":\"Sora Lella Vegan Restaurant\",\"location\":{\"lng\":-3.202541470527649,\"lat\":55.943284737579376},"
+            + "\"openingDays\":[\"MONDAY\",\"TUESDAY\",\"WEDNESDAY\",\"THURSDAY\",\"FRIDAY\"],"
+            + "\"menu\":[{\"name\":\"R2: Meat Lover\",\"priceInPence\":1400},{\"name\":\"R2: Vegan Delight\",\"priceInPence\":1100}]},"
+            + "{\"name\":\"Domino's Pizza - Central\",\"location\":{\"lng\":-3.1838572025299072,\"lat\":55.94449876875712},"
+            + "\"openingDays\":[\"WEDNESDAY\",\"THURSDAY\",\"FRIDAY\",\"SATURDAY\",\"SUNDAY\"],"
+            + "\"menu\":[{\"name\":\"R3: Super Cheese\",\"priceInPence\":1400},{\"name\":\"R3: All Shrooms\",\"priceInPence\":900}]}]";
+
+    // 2025-01-28 is a Tuesday: Civerinos and Sora Lella are open, Domino's is closed
+    public static final String ORDERS = "["
+            + order("A0000001", DATE, 2500, "4485959141852684", "10/29", "816", "R1: Margarita", 1000, "R1: Calzone", 1400) + ","
+            + order("A0000002", DATE, 1500, "4485959141852684", "10/29", "816", "R2: Meat Lover", 1400) + ","
+            + order("A0000003", DATE, 1500, "4485959141852684", "10/29", "816", "R3: Super Cheese", 1400) + ","
+            + order("A0000004", DATE, 2500, "448595914185268", "10/29", "816", "R1: Margarita", 1000, "R1: Calzone", 1400) + ","
+            + order("A0000005", DATE, 2500, "4485959141852684", "10/29", "81", "R1: Margarita", 1000, "R1: Calzone", 1400) + ","
+            + order("A0000006", DATE, 2500, "4485959141852684", "10/23", "816", "R1: Margarita", 1000, "R1: Calzone", 1400) + ","
+            + order("A0000007", DATE, 2600, "4485959141852684", "10/29", "816", "R1: Margarita", 1000, "R1: Calzone", 1400) + ","
+            + order("A0000008", DATE, 1500, "4485959141852684", "10/29", "816", "Pizza-Surprise", 1400) + ","
+            + order("A0000009", DATE, 2500, "4485959141852684", "10/29", "816", "R1: Margarita", 1000, "R2: Meat Lover", 1400) + ","
+            + order("A0000010", DATE, 1200, "4485959141852684", "10/29", "816", "R2: Vegan Delight", 1100) + ","
+            + order("A0000011", DATE, 2100, "4485959141852684", "10/29", "816", "R1: Margarita", 1000, "R1: Margarita", 1000) + ","
+            + order("B0000001", "2025-01-29", 1100, "4485959141852684", "10/29", "816", "R1: Margarita", 1000)
+            + "]";
+
+    // Builds the JSON of a single order
+    private static String order(String orderNo, String date, int total, String cardNumber, String expiry, String cvv,
+                                Object... pizzas) {
+        StringBuilder json = new StringBuilder("{\"orderNo\":\"" + orderNo + "\",\"orderDate\":\"" + date + "\","
+                + "\"orderStatus\":\"UNDEFINED\",\"orderValidationCode\":\"UNDEFINED\","
+                + "\"priceTotalInPence\":" + total + ",\"pizzasInOrder\":[");
+        for (int i = 0; i < pizzas.length; i += 2) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":\"").append(pizzas[i]).append("\",\"priceInPence\":").append(pizzas[i + 1]).append('}');
+        }
+        return json.append("],\"creditCardInformation\":{\"creditCardNumber\":\"").append(cardNumber)
+                .append("\",\"creditCardExpiry\":\"").append(expiry)
+                .append("\",\"cvv\":\"").append(cvv).append("\"}}").toString();
+    }
+
+    /**
+     * Publishes the whole data set on the given mock server, at the same paths as the real API.
+     */
+    public static void serveOn(MockRestServer server) {
+        server.getContextToServeDataOnUrl("/actuator/health/livenessState", HEALTH);
+        server.getContextToServeDataOnUrl("/centralArea", CENTRAL_AREA);
+        server.getContextToServeDataOnUrl("/noFlyZones", NO_FLY_ZONES);
+        server.getContextToServeDataOnUrl("/restaurants", RESTAURANTS);
+        server.getContextToServeDataOnUrl("/orders", ORDERS);
+    }
+}
@@ -0,0 +1,379 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Seeded generator of city-scale data sets for scale tests and benchmarks: a central area, concave no-fly zones,
+ * restaurants with menus and opening days, and a day of orders with a chosen share of invalid ones.
+ * The same seed and sizes always give exactly the same city, so results are reproducible.
+ * Use serveOn(...) to publish it on a MockRestServer at the same paths as the real API, like SampleApiData.
+ *
+ * The city is built around Appleton Tower, where every delivery ends. No-fly zones are star shaped
+ * (so they are concave) and never overlap each other. They keep clear of the straight line from Appleton Tower
+ * to every restaurant, so DronePathPlanner, which heads straight for the target, can always reach it.
+ * Each invalid order breaks exactly one rule, so its expected validation code is known (see getExpectedCodes).
+ */
+public class SyntheticCity {
+    static final LngLat APPLETON_TOWER = new LngLat(-3.186874, 55.944494);
+
+    private static final double CITY_RADIUS = 0.03; // Restaurants and no-fly zones lie within this distance of Appleton Tower.
+    private static final double CLEARANCE = 0.0005; // Minimum gap between a no-fly zone and anything else.
+    private static final OrderValidationCode[] FAULTS = {
+            OrderValidationCode.CARD_NUMBER_INVALID, OrderValidationCode.EXPIRY_DATE_INVALID,
+            OrderValidationCode.CVV_INVALID, OrderValidationCode.TOTAL_INCORRECT,
+            OrderValidationCode.PIZZA_NOT_DEFINED, OrderValidationCode.MAX_PIZZA_COUNT_EXCEEDED,
+            OrderValidationCode.PIZZA_FROM_MULTIPLE_RESTAURANTS, OrderValidationCode.RESTAURANT_CLOSED};
+
+    private final LocalDate date;
+    private final NamedRegion centralArea;
+    private final NamedRegion[] noFlyZones;
+    private final Restaurant[] restaurants;
+    private final Order[] orders;
+    private final OrderValidationCode[] expectedCodes;
+
+    /**
+     * Generates a city.
+     * @param seed Seed of all random choices.
+     * @param restaurantCount Number of restaurants, at least 2.
+     * @param noFlyZoneCount Number of no-fly zones.
+     * @param orderCount Number of orders, all on the given date.
+     * @param invalidShare Share of orders (0 to 1) that break one validation rule.
+     * @param date The date of the orders.
+     */
+    public SyntheticCity(long seed, int restaurantCount, int noFlyZoneCount, int orderCount, double invalidShare,
+                         LocalDate date) {
+        if (restaurantCount < 2) {
+            throw new IllegalArgumentException("A city needs at least 2 restaurants");
+        }
+        Random random = new Random(seed);
+        this.date = date;
+        this.centralArea = generateCentralArea(random);
+        this.restaurants = generateRestaurants(random, restaurantCount);
+        this.noFlyZones = generateNoFlyZones(random, noFlyZoneCount);
+        this.orders = new Order[orderCount];
+        this.expectedCodes = new OrderValidationCode[orderCount];
+        generateOrders(random, invalidShare);
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public NamedRegion getCentralArea() {
+        return centralArea;
+    }
+
+    public NamedRegion[] getNoFlyZones() {
+        return noFlyZones.clone();
+    }
+
+    public Restaurant[] getRestaurants() {
+        return restaurants.clone();
+    }
+
+    /**
+     * Returns new, not yet validated copies of the orders, so that each caller can validate its own.
+     * @return The orders of the day.
+     */
+    public Order[] getOrders() {
+        Order[] copies = new Order[orders.length];
+        for (int i = 0; i < orders.length; i++) {
+            Order order = orders[i];
+            CreditCardInformation card = order.getCreditCardInformation();
+            copies[i] = new Order(order.getOrderNo(), order.getOrderDate(), OrderStatus.UNDEFINED,
+                    OrderValidationCode.UNDEFINED, order.getPriceTotalInPence(), order.getPizzasInOrder().clone(),
+                    new CreditCardInformation(card.getCreditCardNumber(), card.getCreditCardExpiry(), card.getCvv()));
+        }
+        return copies;
+    }
+
+    /**
+     * @return The validation code each order should get, in the same order as getOrders.
+     */
+    public OrderValidationCode[] getExpectedCodes() {
+        return expectedCodes.clone();
+    }
+
+    /**
+     * @return The number of orders that are valid and should be delivered.
+     */
+    public int getValidOrderCount() {
+        int valid = 0;
+        for (OrderValidationCode code : expectedCodes) {
+            if (code == OrderValidationCode.NO_ERROR) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Publishes the city on the given mock server, at the same paths as the real API.
+     * @param server The server to publish on; must not have been started yet.
+     */
+    public void serveOn(MockRestServer server) {
+        server.getContextToServeDataOnUrl("/actuator/health/livenessState", SampleApiData.HEALTH);
+        server.getContextToServeDataOnUrl("/centralArea", regionJson(centralArea));
+        server.getContextToServeDataOnUrl("/noFlyZones", noFlyZonesJson());
+        server.getContextToServeDataOnUrl("/restaurants", restaurantsJson());
+        server.getContextToServeDataOnUrl("/orders", ordersJson());
+    }
+
+    /**
+     * A star-shaped, and so concave, polygon closed like the API's (last vertex = first).
+     * @param center The centre of the star.
+     * @param points Number of points of the star; the polygon has twice as many corners.
+     * @param outerRadius Distance from the centre to the tips.
+     * @param innerRadius Distance from the centre to the corners between the tips.
+     * @param random Source of the rotation and of a small jitter in the radii.
+     * @return The vertices.
+     */
+    static LngLat[] starPolygon(LngLat center, int points, double outerRadius, double innerRadius, Random random) {
+        int corners = 2 * points;
+        double rotation = random.nextDouble() * 2 * Math.PI;
+        LngLat[] vertices = new LngLat[corners + 1];
+        for (int i = 0; i < corners; i++) {
+            double angle = rotation + 2 * Math.PI * i / corners;
+            double radius = (i % 2 == 0 ? outerRadius : innerRadius) * (0.9 + 0.1 * random.nextDouble());
+            vertices[i] = new LngLat(center.lng() + radius * Math.cos(angle), center.lat() + radius * Math.sin(angle));
+        }
+        vertices[corners] = vertices[0];
+        return vertices;
+    }
+
+    // A quadrilateral around Appleton Tower, about the size of the real central area
+    private static NamedRegion generateCentralArea(Random random) {
+        double west = 0.004 + 0.002 * random.nextDouble();
+        double east = 0.003 + 0.002 * random.nextDouble();
+        double south = 0.0015 + 0.001 * random.nextDouble();
+        double north = 0.0015 + 0.001 * random.nextDouble();
+        double lng = APPLETON_TOWER.lng();
+        double lat = APPLETON_TOWER.lat();
+        return new NamedRegion(SystemConstants.CENTRAL_REGION_NAME, new LngLat[]{
+                new LngLat(lng - west, lat + north), new LngLat(lng - west, lat - south),
+                new LngLat(lng + east, lat - south), new LngLat(lng + east, lat + north),
+                new LngLat(lng - west, lat + north)});
+    }
+
+    // Restaurants spread over the city; the first is open every day, so some orders can always be valid
+    private static Restaurant[] generateRestaurants(Random random, int count) {
+        Restaurant[] restaurants = new Restaurant[count];
+        for (int r = 0; r < count; r++) {
+            String prefix = String.format("S%03d", r + 1);
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double distance = 0.002 + (CITY_RADIUS - 0.002) * Math.sqrt(random.nextDouble());
+            LngLat location = new LngLat(APPLETON_TOWER.lng() + distance * Math.cos(angle),
+                    APPLETON_TOWER.lat() + distance * Math.sin(angle));
+
+            List<DayOfWeek> openingDays = new ArrayList<>();
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if (r == 0 || random.nextInt(10) < 6) {
+                    openingDays.add(day);
+                }
+            }
+            Pizza[] menu = new Pizza[2 + random.nextInt(5)];
+            for (int p = 0; p < menu.length; p++) {
+                menu[p] = new Pizza(prefix + ": Pizza " + (p + 1), 500 + 50 * random.nextInt(31));
+            }
+            restaurants[r] = new Restaurant(prefix + " Pizzeria", location, openingDays.toArray(new DayOfWeek[0]), menu);
+        }
+        return restaurants;
+    }
+
+    // Star-shaped zones placed by rejection sampling, so that they keep clear of everything else
+    private NamedRegion[] generateNoFlyZones(Random random, int count) {
+        NamedRegion[] zones = new NamedRegion[count];
+        LngLat[] centers = new LngLat[count];
+        double[] radii = new double[count];
+        for (int z = 0; z < count; z++) {
+            for (int attempt = 0; ; attempt++) {
+                if (attempt == 10_000) {
+                    throw new IllegalArgumentException("No room for " + count + " no-fly zones");
+                }
+                double radius = 0.0006 + 0.0009 * random.nextDouble();
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double distance = CITY_RADIUS * Math.sqrt(random.nextDouble());
+                LngLat center = new LngLat(APPLETON_TOWER.lng() + distance * Math.cos(angle),
+                        APPLETON_TOWER.lat() + distance * Math.sin(angle));
+                if (isClear(center, radius, centers, radii, z)) {
+                    centers[z] = center;
+                    radii[z] = radius;
+                    zones[z] = new NamedRegion(String.format("Zone %03d", z + 1),
+                            starPolygon(center, 4 + random.nextInt(4), radius, radius * (0.5 + 0.2 * random.nextDouble()), random));
+                    break;
+                }
+            }
+        }
+        return zones;
+    }
+
+    // Checks that a zone of the given radius at the given centre keeps clear of the straight line from Appleton Tower
+    // to every restaurant, and of the zones placed so far
+    private boolean isClear(LngLat center, double radius, LngLat[] centers, double[] radii, int placed) {
+        for (Restaurant restaurant : restaurants) {
+            if (distanceToSegment(center, APPLETON_TOWER, restaurant.location()) < radius + CLEARANCE) {
+                return false;
+            }
+        }
+        for (int z = 0; z < placed; z++) {
+            if (distance(center, centers[z]) < radius + radii[z] + CLEARANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double distance(LngLat a, LngLat b) {
+        return Math.hypot(a.lng() - b.lng(), a.lat() - b.lat());
+    }
+
+    private static double distanceToSegment(LngLat point, LngLat from, LngLat to) {
+        double dx = to.lng() - from.lng();
+        double dy = to.lat() - from.lat();
+        double t = ((point.lng() - from.lng()) * dx + (point.lat() - from.lat()) * dy) / (dx * dx + dy * dy);
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(point.lng() - from.lng() - t * dx, point.lat() - from.lat() - t * dy);
+    }
+
+    // Valid orders come from restaurants open on the date; an invalid order breaks exactly one rule
+    private void generateOrders(Random random, double invalidShare) {
+        List<Restaurant> open = new ArrayList<>();
+        List<Restaurant> closed = new ArrayList<>();
+        for (Restaurant restaurant : restaurants) {
+            (isOpen(restaurant) ? open : closed).add(restaurant);
+        }
+        String validExpiry = String.format("%02d/%02d", 1 + random.nextInt(12), (date.getYear() + 2) % 100);
+        LocalDate lastMonth = date.minusMonths(1);
+        String expiredExpiry = String.format("%02d/%02d", lastMonth.getMonthValue(), lastMonth.getYear() % 100);
+
+        for (int i = 0; i < orders.length; i++) {
+            OrderValidationCode fault = random.nextDouble() < invalidShare
+                    ? FAULTS[random.nextInt(FAULTS.length)] : OrderValidationCode.NO_ERROR;
+            if (fault == OrderValidationCode.RESTAURANT_CLOSED && closed.isEmpty()) {
+                fault = OrderValidationCode.TOTAL_INCORRECT;
+            }
+            Restaurant restaurant = fault == OrderValidationCode.RESTAURANT_CLOSED
+                    ? closed.get(random.nextInt(closed.size())) : open.get(random.nextInt(open.size()));
+
+            int pizzaCount = fault == OrderValidationCode.MAX_PIZZA_COUNT_EXCEEDED
+                    ? SystemConstants.MAX_PIZZAS_PER_ORDER + 1 : 1 + random.nextInt(SystemConstants.MAX_PIZZAS_PER_ORDER);
+            Pizza[] pizzas = new Pizza[pizzaCount];
+            for (int p = 0; p < pizzaCount; p++) {
+                pizzas[p] = restaurant.menu()[random.nextInt(restaurant.menu().length)];
+            }
+            if (fault == OrderValidationCode.PIZZA_NOT_DEFINED) {
+                pizzas[random.nextInt(pizzaCount)] = new Pizza("Pizza-Surprise " + i, 1200);
+            } else if (fault == OrderValidationCode.PIZZA_FROM_MULTIPLE_RESTAURANTS) {
+                Restaurant other = restaurants[random.nextInt(restaurants.length)];
+                while (other == restaurant) {
+                    other = restaurants[random.nextInt(restaurants.length)];
+                }
+                pizzas = new Pizza[]{pizzas[0], other.menu()[random.nextInt(other.menu().length)]};
+            }
+
+            int total = SystemConstants.ORDER_CHARGE_IN_PENCE;
+            for (Pizza pizza : pizzas) {
+                total += pizza.priceInPence();
+            }
+            if (fault == OrderValidationCode.TOTAL_INCORRECT) {
+                total += 1 + random.nextInt(500);
+            }
+            String cardNumber = fault == OrderValidationCode.CARD_NUMBER_INVALID
+                    ? digits(random, 15) : digits(random, 16);
+            String cvv = fault == OrderValidationCode.CVV_INVALID ? digits(random, 2) : digits(random, 3);
+            String expiry = fault == OrderValidationCode.EXPIRY_DATE_INVALID ? expiredExpiry : validExpiry;
+
+            orders[i] = new Order(String.format("%08X", i), date, OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED,
+                    total, pizzas, new CreditCardInformation(cardNumber, expiry, cvv));
+            expectedCodes[i] = fault;
+        }
+    }
+
+    private boolean isOpen(Restaurant restaurant) {
+        for (DayOfWeek day : restaurant.openingDays()) {
+            if (day == date.getDayOfWeek()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String digits(Random random, int length) {
+        StringBuilder digits = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    // JSON in the same shape as the real API's
+
+    private static String lngLatJson(LngLat point) {
+        return String.format(Locale.ROOT, "{\"lng\":%s,\"lat\":%s}", point.lng(), point.lat());
+    }
+
+    private static String regionJson(NamedRegion region) {
+        StringBuilder json = new StringBuilder("{\"name\":\"").append(region.name()).append("\",\"vertices\":[");
+        for (int i = 0; i < region.vertices().length; i++) {
+            json.append(i > 0 ? "," : "").append(lngLatJson(region.vertices()[i]));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String pizzasJson(Pizza[] pizzas) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < pizzas.length; i++) {
+            json.append(i > 0 ? "," : "").append("{\"name\":\"").append(pizzas[i].name())
+                    .append("\",\"priceInPence\":").append(pizzas[i].priceInPence()).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    String noFlyZonesJson() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < noFlyZones.length; i++) {
+            json.append(i > 0 ? "," : "").append(regionJson(noFlyZones[i]));
+        }
+        return json.append(']').toString();
+    }
+
+    String restaurantsJson() {
+        StringBuilder json = new StringBuilder("[");
+        for (int r = 0; r < restaurants.length; r++) {
+            Restaurant restaurant = restaurants[r];
+            json.append(r > 0 ? "," : "").append("{\"name\":\"").append(restaurant.name())
+                    .append("\",\"location\":").append(lngLatJson(restaurant.location())).append(",\"openingDays\":[");
+            for (int d = 0; d < restaurant.openingDays().length; d++) {
+                json.append(d > 0 ? "," : "").append('"').append(restaurant.openingDays()[d]).append('"');
+            }
+            json.append("],\"menu\":").append(pizzasJson(restaurant.menu())).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    String ordersJson() {
+        StringBuilder json = new StringBuilder(orders.length * 320).append('[');
+        for (int i = 0; i < orders.length; i++) {
+            Order order = orders[i];
+            CreditCardInformation card = order.getCreditCardInformation();
+            json.append(i > 0 ? "," : "").append("{\"orderNo\":\"").append(order.getOrderNo())
+                    .append("\",\"orderDate\":\"").append(order.getOrderDate())
+                    .append("\",\"orderStatus\":\"UNDEFINED\",\"orderValidationCode\":\"UNDEFINED\",\"priceTotalInPence\":")
+                    .append(order.getPriceTotalInPence()).append(",\"pizzasInOrder\":").append(pizzasJson(order.getPizzasInOrder()))
+                    .append(",\"creditCardInformation\":{\"creditCardNumber\":\"").append(card.getCreditCardNumber())
+                    .append("\",\"creditCardExpiry\":\"").append(card.getCreditCardExpiry())
+                    .append("\",\"cvv\":\"").append(card.getCvv()).append("\"}}");
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,53 @@
+package uk.ac.ed.inf;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scale test: runs the whole pipeline offline against a synthetic city served from a local mock API.
+ * Not a unit test (it runs for a while), so run its main method from the test classpath:
+ *   args: [restaurants, default 100] [no-fly zones, default 50] [orders, default 100000]
+ *         [invalid share, default 0.2] [seed, default 1]
+ *
+ * The result files are written to a temporary directory, which is printed and left in place for inspection.
+ */
+public class SyntheticCityHarness {
+    private static final LocalDate DATE = LocalDate.of(2025, 1, 28);
+
+    public static void main(String[] args) throws Exception {
+        int restaurants = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int noFlyZones = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int orders = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        double invalidShare = args.length > 3 ? Double.parseDouble(args[3]) : 0.2;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+        ExecutionTimer timer = new ExecutionTimer();
+        timer.start();
+        SyntheticCity city = new SyntheticCity(seed, restaurants, noFlyZones, orders, invalidShare, DATE);
+        MockRestServer api = new MockRestServer(0);
+        ExecutorService apiThreads = Executors.newCachedThreadPool();
+        api.setExecutor(apiThreads);
+        city.serveOn(api);
+        api.start();
+        timer.stop();
+        System.out.printf("City: %d restaurants, %d no-fly zones, %d orders (%d valid), generated in %d ms%n",
+                restaurants, noFlyZones, orders, city.getValidOrderCount(), timer.getDuration());
+
+        File outputDir = Files.createTempDirectory("pizzadronz-city").toFile();
+        try {
+            DeliveryPipeline pipeline = new DeliveryPipeline("http://localhost:" + api.getPort(), DATE.toString(),
+                    outputDir, false, false);
+            timer.start();
+            pipeline.run();
+            timer.stop();
+            System.out.printf("Pipeline: %d ms, results in %s%n", timer.getDuration(), outputDir);
+            System.out.println(pipeline.getValidationEngine().formatReport());
+        } finally {
+            api.stop();
+            apiThreads.shutdown();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package uk.ac.ed.inf;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the A* planners find paths that keep to the drone's rules, no longer than the greedy planner's,
+ * that the landmark heuristic, the sectors and the corridor save work when a wall stands across the straight line,
+ * that the anytime search improves its first path to the shortest, and that more headings give shorter paths.
+ */
+public class TestAStarSearch {
+
+    private static final double MOVE = SystemConstants.DRONE_MOVE_DISTANCE;
+    private static final LngLat APPLETON_TOWER = new LngLat(-3.186874, 55.944494);
+    private static final LngLat DESTINATION = new LngLat(APPLETON_TOWER.lng() + 80 * MOVE, APPLETON_TOWER.lat() + 5 * MOVE);
+    private static final NamedRegion CENTRAL = new NamedRegion(SystemConstants.CENTRAL_REGION_NAME, new LngLat[]{
+            new LngLat(-3.192473, 55.946233), new LngLat(-3.192473, 55.942617),
+            new LngLat(-3.184319, 55.942617), new LngLat(-3.184319, 55.946233)});
+
+    // A wall two moves thick and forty long, halfway along the way and across it
+    private static final NamedRegion WALL = new NamedRegion("wall", new LngLat[]{
+            new LngLat(APPLETON_TOWER.lng() + 39 * MOVE, APPLETON_TOWER.lat() - 20 * MOVE),
+            new LngLat(APPLETON_TOWER.lng() + 41 * MOVE, APPLETON_TOWER.lat() - 20 * MOVE),
+            new LngLat(APPLETON_TOWER.lng() + 41 * MOVE, APPLETON_TOWER.lat() + 25 * MOVE),
+            new LngLat(APPLETON_TOWER.lng() + 39 * MOVE, APPLETON_TOWER.lat() + 25 * MOVE),
+            new LngLat(APPLETON_TOWER.lng() + 39 * MOVE, APPLETON_TOWER.lat() - 20 * MOVE)});
+
+    @Test
+    void testPathsKeepTheRules() {
+        LngLatHandlingImpl handler = new LngLatHandlingImpl();
+        for (PlannerMode mode : new PlannerMode[]{PlannerMode.ASTAR, PlannerMode.ALT, PlannerMode.HPA, PlannerMode.CORRIDOR,
+                PlannerMode.ANYTIME}) {
+            List<DroneMovement> path = new DronePathPlanner(new NamedRegion[]{WALL}, CENTRAL, mode)
+                    .findTotalPath(APPLETON_TOWER, DESTINATION, "O1");
+            assertEquals(APPLETON_TOWER, path.get(0).getStart());
+            assertTrue(handler.isCloseTo(path.get(path.size() - 1).getEnd(), APPLETON_TOWER), mode.name());
+
+            boolean wasInCentral = true;
+            boolean reached = false;
+            for (int i = 0; i < path.size(); i++) {
+                DroneMovement move = path.get(i);
+                assertFalse(handler.isInRegion(move.getEnd(), WALL), mode + " enters the wall at move " + i);
+                if (i > 0) {
+                    assertEquals(path.get(i - 1).getEnd(), move.getStart());
+                }
+                if (move.getAngle() == 999) {
+                    assertEquals(move.getStart(), move.getEnd());
+                    reached |= handler.isCloseTo(move.getEnd(), DESTINATION);
+                } else {
+                    assertEquals(MOVE, handler.distanceTo(move.getStart(), move.getEnd()), 1e-12);
+                }
+                // Having left the central area on the way out, the drone does not go back in before delivering
+                boolean inCentral = handler.isInCentralArea(move.getEnd(), CENTRAL);
+                assertTrue(reached || wasInCentral || !inCentral, mode + " re-enters the central area at move " + i);
+                wasInCentral = inCentral;
+            }
+            assertTrue(reached, mode.name());
+        }
+    }
+
+    @Test
+    void testNoLongerThanGreedy() {
+        NamedRegion[] noFlyZones = BenchmarkData.noFlyZones();
+        NamedRegion centralArea = BenchmarkData.centralArea();
+        DronePathPlanner greedy = new DronePathPlanner(noFlyZones, centralArea, PlannerMode.GREEDY);
+        DronePathPlanner aStar = new DronePathPlanner(noFlyZones, centralArea, PlannerMode.ASTAR);
+        for (Restaurant restaurant : BenchmarkData.restaurants()) {
+            int greedyMoves = greedy.findTotalPath(APPLETON_TOWER, restaurant.location(), "O1").size();
+            int aStarMoves = aStar.findTotalPath(APPLETON_TOWER, restaurant.location(), "O1").size();
+            assertTrue(aStarMoves <= greedyMoves, restaurant.name() + ": " + aStarMoves + " moves against greedy's " + greedyMoves);
+        }
+    }
+
+    @Test
+    void testLandmarksExpandFewerNodesBehindAWall() {
+        DronePathPlanner aStar = new DronePathPlanner(new NamedRegion[]{WALL}, CENTRAL, PlannerMode.ASTAR);
+        DronePathPlanner alt = new DronePathPlanner(new NamedRegion[]{WALL}, CENTRAL, PlannerMode.ALT);
+        int aStarMoves = aStar.findTotalPath(APPLETON_TOWER, DESTINATION, "O1").size();
+        int altMoves = alt.findTotalPath(APPLETON_TOWER, DESTINATION, "O1").size();
+
+        assertTrue(alt.getLastNodesExpanded() < aStar.getLastNodesExpanded(),
+                alt.getLastNodesExpanded() + " nodes against " + aStar.getLastNodesExpanded());
+        assertTrue(altMoves <= aStarMoves + 4); // Not guaranteed shortest, but close
+    }
+
+    @Test
+    void testSectorsExpandFewerNodesBehindAWall() {
+        DronePathPlanner aStar = new DronePathPlanner(new NamedRegion[]{WALL}, CENTRAL, PlannerMode.ASTAR);
+        DronePathPlanner hpa = new DronePathPlanner(new NamedRegion[]{WALL}, CENTRAL, PlannerMode.HPA);
+        int aStarMoves = aStar.findTotalPath(APPLETON_TOWER, DESTINATION, "O1").size();
+        int hpaMoves = hpa.findTotalPath(APPLETON_TOWER, DESTINATION, "O1").size();
+
+        assertTrue(hpa.getLastNodesExpanded() * 10 < aStar.getLastNodesExpanded(),
+                hpa.getLastNodesExpanded() + " nodes against " + aStar.getLastNodesExpanded());
+        assertTrue(hpaMoves <= aStarMoves * 1.1, hpaMoves + " moves against " + aStarMoves);
+    }
+
+    @Test
+    void testSectorRouteCrossesNeighbouringSectors() {
+        SectorGraph graph = new SectorGraph(new NamedRegion[]{WALL}, CENTRAL);
+        assertTrue(graph.getNodeCount() > 0);
+        assertEquals(List.of(), graph.route(APPLETON_TOWER, new LngLat(APPLETON_TOWER.lng() + MOVE, APPLETON_TOWER.lat()), HeadingTable.DEFAULT));
+
+        List<LngLat> entries = graph.route(APPLETON_TOWER, DESTINATION, HeadingTable.DEFAULT);
+        assertNotNull(entries);
+        assertTrue(entries.size() >= 80 / SectorGraph.SECTOR_CELLS, entries.toString());
+        LngLat previous = APPLETON_TOWER;
+        for (LngLat entry : entries) {
+            // Each entry is into a sector next to the last one, so within a sector and a cell of it
+            double reach = (SectorGraph.SECTOR_CELLS + 1) * FreeSpaceGrid.CELL_SIZE * Math.sqrt(2);
+            assertTrue(new LngLatHandlingImpl().distanceTo(previous, entry) <= reach, previous + " to " + entry);
+            previous = entry;
+        }
+        assertNull(graph.route(APPLETON_TOWER, new LngLat(APPLETON_TOWER.lng() + 40 * MOVE, APPLETON_TOWER.lat()), HeadingTable.DEFAULT));
+    }
+
+    @Test
+    void testCorridorExpandsFewerNodesBehindAWall() {
+        DronePathPlanner aStar = new DronePathPlanner(new NamedRegion[]{WALL}, CENTRAL, PlannerMode.ASTAR);
+        DronePathPlanner corridor = new DronePathPlanner(new NamedRegion[]{WALL}, CENTRAL, PlannerMode.CORRIDOR);
+        int aStarMoves = aStar.findTotalPath(APPLETON_TOWER, DESTINATION, "O1").size();
+        int corridorMoves = corridor.findTotalPath(APPLETON_TOWER, DESTINATION, "O1").size();
+
+        assertTrue(corridor.getLastNodesExpanded() * 3 < aStar.getLastNodesExpanded(),
+                corridor.getLastNodesExpanded() + " nodes against " + aStar.getLastNodesExpanded());
+        assertTrue(corridorMoves <= aStarMoves * 1.1, corridorMoves + " moves against " + aStarMoves);
+    }
+
+    @Test
+    void testAnytimeImprovesItsFirstPath() {
+        AnytimeSearch anytime = new AnytimeSearch(new NamedRegion[]{WALL}, CENTRAL, APPLETON_TOWER, DESTINATION);
+        assertFalse(anytime.improve(System.nanoTime())); // Past its deadline, it still finds a path
+        int firstMoves = anytime.getBestMoves();
+        double firstBound = anytime.getBound();
+        assertTrue(firstBound >= 1 && firstBound < Double.POSITIVE_INFINITY, "bound " + firstBound);
+        assertEquals(firstMoves + 1, anytime.path("O1").size());
+
+        assertTrue(anytime.improve(Long.MAX_VALUE));
+        assertEquals(1, anytime.getBound());
+        int aStarMoves = new AStarSearch(new NamedRegion[]{WALL}, CENTRAL, new LngLatHandlingImpl())
+                .search(APPLETON_TOWER, DESTINATION, "O1", AStarSearch.straightLine(DESTINATION)).size() - 1;
+        assertTrue(anytime.getBestMoves() <= firstMoves);
+        assertTrue(anytime.getBestMoves() <= firstBound * aStarMoves);
+        assertEquals(aStarMoves, anytime.getBestMoves(), 1);
+
+        DronePathPlanner planner = new DronePathPlanner(new NamedRegion[]{WALL}, CENTRAL, PlannerMode.ANYTIME, 0);
+        assertFalse(planner.findTotalPath(APPLETON_TOWER, DESTINATION, "O1").isEmpty());
+        assertTrue(planner.getLastBound() >= 1);
+        assertThrows(IllegalArgumentException.class, () -> new DronePathPlanner(new NamedRegion[0], CENTRAL, PlannerMode.ANYTIME, -1));
+    }
+
+    @Test
+    void testStridesAreReplayedMoveByMove() {
+        LngLatHandlingImpl handler = new LngLatHandlingImpl();
+        AStarSearch coarse = new AStarSearch(new NamedRegion[]{WALL}, CENTRAL, handler, 4);
+        double reach = 4 * SystemConstants.DRONE_IS_CLOSE_DISTANCE;
+        List<DroneMovement> path = coarse.search(APPLETON_TOWER, DESTINATION, "O1", AStarSearch.straightLine(DESTINATION, reach));
+
+        assertEquals(0, (path.size() - 1) % 4); // Whole steps, then the hover
+        for (int i = 0; i < path.size() - 1; i++) {
+            assertEquals(MOVE, handler.distanceTo(path.get(i).getStart(), path.get(i).getEnd()), 1e-12);
+            assertEquals(path.get(i).getEnd(), path.get(i + 1).getStart());
+            assertFalse(handler.isInRegion(path.get(i).getEnd(), WALL), "move " + i);
+        }
+        assertTrue(handler.distanceTo(path.get(path.size() - 1).getEnd(), DESTINATION) <= reach);
+        assertThrows(IllegalArgumentException.class, () -> new AStarSearch(new NamedRegion[0], CENTRAL, handler, 0));
+    }
+
+    @Test
+    void testMoreHeadingsGiveShorterPaths() {
+        int[] moves = new int[3];
+        int[] headings = {8, 16, 32};
+        for (int h = 0; h < headings.length; h++) {
+            DronePathPlanner planner = new DronePathPlanner(new NamedRegion[]{WALL}, CENTRAL, PlannerMode.ASTAR, 0, headings[h]);
+            List<DroneMovement> path = planner.findTotalPath(APPLETON_TOWER, DESTINATION, "O1");
+            moves[h] = path.size();
+            for (DroneMovement move : path) {
+                assertTrue(move.getAngle() == 999 || move.getAngle() % (360.0 / headings[h]) == 0, move.getAngle() + "");
+                assertFalse(new LngLatHandlingImpl().isInRegion(move.getEnd(), WALL));
+            }
+        }
+        assertTrue(moves[0] > moves[1] && moves[1] >= moves[2], 8 + ": " + moves[0] + ", 16: " + moves[1] + ", 32: " + moves[2]);
+        assertThrows(IllegalArgumentException.class, () -> new DronePathPlanner(new NamedRegion[0], CENTRAL, PlannerMode.ASTAR, 0, 10));
+    }
+
+    @Test
+    void testPlannerModeIsParsed() {
+        assertEquals(PlannerMode.ALT, PlannerMode.parse("alt"));
+        assertEquals(PlannerMode.ASTAR, PlannerMode.parse(" AStar "));
+        assertThrows(IllegalArgumentException.class, () -> PlannerMode.parse("dijkstra"));
+    }
+}
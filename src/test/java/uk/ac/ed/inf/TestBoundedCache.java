@@ -0,0 +1,71 @@
+package uk.ac.ed.inf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that BoundedCache builds each value once, also under contention, and stays within its size.
+ */
+public class TestBoundedCache {
+
+    @Test
+    void testBuildsOncePerKey() {
+        BoundedCache<String, Object> cache = new BoundedCache<>(4);
+        AtomicInteger builds = new AtomicInteger();
+        Object first = cache.get("a", key -> {
+            builds.incrementAndGet();
+            return new Object();
+        });
+        assertSame(first, cache.get("a", key -> {
+            builds.incrementAndGet();
+            return new Object();
+        }));
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    void testEmptiedWhenFull() {
+        BoundedCache<Integer, Object> cache = new BoundedCache<>(2);
+        Object zero = cache.get(0, key -> new Object());
+        cache.get(1, key -> new Object());
+        cache.get(2, key -> new Object()); // Full, so 0 and 1 are dropped
+        assertNotSame(zero, cache.get(0, key -> new Object()));
+    }
+
+    @Test
+    void testConcurrentCallersShareOneBuild() throws Exception {
+        BoundedCache<String, Object> cache = new BoundedCache<>(16);
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(threads.submit(() -> {
+                    start.await();
+                    return cache.get("zones", key -> {
+                        builds.incrementAndGet();
+                        return new Object();
+                    });
+                }));
+            }
+            start.countDown();
+            Object built = results.get(0).get();
+            for (Future<Object> result : results) {
+                assertSame(built, result.get());
+            }
+            assertEquals(1, builds.get());
+        } finally {
+            threads.shutdown();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package uk.ac.ed.inf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Order;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the pipelined run writes exactly what the phased run (validate all, plan all, write all) produces.
+ */
+public class TestDeliveryPipeline {
+
+    private static final int PORT = 8006;
+    private static final String URL = "http://localhost:" + PORT;
+
+    private MockRestServer mockServer;
+
+    @TempDir
+    File outputDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockServer = new MockRestServer(PORT);
+        SampleApiData.serveOn(mockServer);
+        mockServer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        mockServer.stop();
+    }
+
+    private String read(String fileName) throws IOException {
+        return Files.readString(new File(outputDir, fileName).toPath());
+    }
+
+    @Test
+    void testPipelineMatchesPhasedRun() throws Exception {
+        new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false).run();
+
+        // Phased reference run on a fresh copy of the same data
+        ApiDataRetriever retriever = ApiDataRetriever.getInstance();
+        Restaurant[] restaurants = retriever.fetchRestaurants(URL);
+        Order[] orders = retriever.fetchOrders(URL, SampleApiData.DATE);
+        NamedRegion centralArea = retriever.fetchCentralArea(URL);
+        NamedRegion[] noFlyZones = retriever.fetchNoFlyZones(URL);
+
+        OrderValidationImpl validator = new OrderValidationImpl();
+        List<Order> validOrders = new ArrayList<>();
+        for (Order order : orders) {
+            if (validator.validateOrder(order, restaurants).getOrderStatus() != OrderStatus.INVALID) {
+                validOrders.add(order);
+            }
+        }
+        List<DroneMovement> paths = new RouteOptimizer(noFlyZones, centralArea, restaurants, validOrders).optimizeRoutes();
+
+        assertEquals(OrderDeliveryJsonFormatter.formatDeliveriesToJson(orders), read("deliveries-" + SampleApiData.DATE + ".json"));
+        assertEquals(DroneFlightpathJsonFormatter.formatFlightpathsToJson(paths), read("flightpath-" + SampleApiData.DATE + ".json"));
+        assertEquals(DronePathGeoJsonFormatter.formatPathToGeoJson(paths), read("drone-" + SampleApiData.DATE + ".geojson"));
+        assertFalse(new File(outputDir, "flightpath-" + SampleApiData.DATE + ".bin").exists());
+    }
+
+    @Test
+    void testOnlyTheRequestedDateIsProcessed() throws Exception {
+        new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, true).run();
+
+        String deliveries = read("deliveries-" + SampleApiData.DATE + ".json");
+        assertTrue(deliveries.contains("A0000001"));
+        assertFalse(deliveries.contains("B0000001"));
+        assertTrue(new File(outputDir, "flightpath-" + SampleApiData.DATE + ".bin").exists());
+    }
+
+    // Reads every result file of the sample date
+    private List<String> readOutputs() throws IOException {
+        return List.of(read("deliveries-" + SampleApiData.DATE + ".json"),
+                read("flightpath-" + SampleApiData.DATE + ".json"),
+                read("drone-" + SampleApiData.DATE + ".geojson"));
+    }
+
+    // Applies a change to the saved state of the sample date
+    private void editState(java.util.function.Consumer<ObjectNode> edit) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        File stateFile = new File(outputDir, "state-" + SampleApiData.DATE + ".json");
+        ObjectNode state = (ObjectNode) mapper.readTree(stateFile);
+        edit.accept(state);
+        mapper.writeValue(stateFile, state);
+    }
+
+    @Test
+    void testRerunReusesUnchangedOrders() throws Exception {
+        DeliveryPipeline first = new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false);
+        first.run();
+        assertEquals(0, first.getReusedOrderCount());
+        List<String> outputs = readOutputs();
+
+        DeliveryPipeline second = new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false);
+        second.run();
+        assertEquals(11, second.getReusedOrderCount());
+        assertEquals(outputs, readOutputs());
+    }
+
+    @Test
+    void testChangedOrdersAreProcessedAgain() throws Exception {
+        new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false).run();
+        List<String> outputs = readOutputs();
+
+        // As if A0000001 had been different in the previous run
+        editState(state -> ((ObjectNode) state.get("orders").get(0)).put("fingerprint", "changed"));
+        DeliveryPipeline rerun = new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false);
+        rerun.run();
+        assertEquals(10, rerun.getReusedOrderCount());
+        assertEquals(outputs, readOutputs());
+
+        // As if the restaurants or regions had been different in the previous run
+        editState(state -> state.put("environment", "changed"));
+        rerun = new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false);
+        rerun.run();
+        assertEquals(0, rerun.getReusedOrderCount());
+        assertEquals(outputs, readOutputs());
+
+        // A full run ignores the state altogether
+        rerun = new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false, false);
+        rerun.run();
+        assertEquals(0, rerun.getReusedOrderCount());
+        assertEquals(outputs, readOutputs());
+    }
+
+    @Test
+    void testPlannerChangeInvalidatesPreviousRun() throws Exception {
+        System.setProperty(PlannerMode.PROPERTY, "greedy");
+        try {
+            new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false).run();
+
+            // Routes planned greedily are not what the A* planner would fly
+            System.setProperty(PlannerMode.PROPERTY, "astar");
+            DeliveryPipeline rerun = new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false);
+            rerun.run();
+            assertEquals(0, rerun.getReusedOrderCount());
+        } finally {
+            System.clearProperty(PlannerMode.PROPERTY);
+        }
+    }
+
+    @Test
+    void testAnytimeBudgetChangeInvalidatesPreviousRun() throws Exception {
+        System.setProperty(PlannerMode.PROPERTY, "anytime");
+        System.setProperty(DronePathPlanner.BUDGET_PROPERTY, "50");
+        try {
+            new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false).run();
+
+            // A smaller budget can stop the search at other paths
+            System.setProperty(DronePathPlanner.BUDGET_PROPERTY, "5");
+            DeliveryPipeline rerun = new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false);
+            rerun.run();
+            assertEquals(0, rerun.getReusedOrderCount());
+        } finally {
+            System.clearProperty(PlannerMode.PROPERTY);
+            System.clearProperty(DronePathPlanner.BUDGET_PROPERTY);
+        }
+    }
+
+    @Test
+    void testHeadingsChangeInvalidatesPreviousRun() throws Exception {
+        new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false).run();
+
+        // Routes on the 16 heading grid would be spliced among moves at 11.25 degrees
+        System.setProperty(DronePathPlanner.HEADINGS_PROPERTY, "32");
+        try {
+            DeliveryPipeline rerun = new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false);
+            rerun.run();
+            assertEquals(0, rerun.getReusedOrderCount());
+        } finally {
+            System.clearProperty(DronePathPlanner.HEADINGS_PROPERTY);
+        }
+    }
+
+    @Test
+    void testOnlySelectedFilesAreWritten() throws Exception {
+        new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, ResultFile.parse("deliveries, BINARY"), false, true).run();
+
+        assertTrue(new File(outputDir, ResultFile.DELIVERIES.fileName(SampleApiData.DATE)).exists());
+        assertTrue(new File(outputDir, ResultFile.BINARY.fileName(SampleApiData.DATE)).exists());
+        assertFalse(new File(outputDir, ResultFile.FLIGHTPATH.fileName(SampleApiData.DATE)).exists());
+        assertFalse(new File(outputDir, ResultFile.GEOJSON.fileName(SampleApiData.DATE)).exists());
+        // Without a flightpath file there is nothing for the next run to take routes from
+        assertFalse(new File(outputDir, "state-" + SampleApiData.DATE + ".json").exists());
+
+        assertThrows(IllegalArgumentException.class, () -> ResultFile.parse("deliveries,kml"));
+    }
+
+    @Test
+    void testMetricsAreRecorded() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, false, false, false).run();
+
+            assertEquals(1, registry.get("pizzadronz.fetch").tag("endpoint", "orders").timer().count());
+            assertEquals(1, registry.get("pizzadronz.fetch").tag("endpoint", "restaurants").timer().count());
+            assertEquals(11, registry.get("pizzadronz.validation.rule").tag("rule", "PIZZAS").timer().count());
+
+            // One planning time, one move count and one cache lookup per delivered order
+            long delivered = read("deliveries-" + SampleApiData.DATE + ".json").split("\"DELIVERED\"", -1).length - 1;
+            assertTrue(delivered > 0);
+            assertEquals(delivered, registry.get("pizzadronz.planning.order").timer().count());
+            assertEquals(delivered, registry.get("pizzadronz.route.moves").summary().count());
+            assertEquals(delivered, registry.get("pizzadronz.planner.cache").tag("result", "miss").counter().count()
+                    + registry.get("pizzadronz.planner.cache").tag("result", "hit").counter().count());
+
+            File flightpath = new File(outputDir, ResultFile.FLIGHTPATH.fileName(SampleApiData.DATE));
+            assertEquals(flightpath.length(), registry.get("pizzadronz.output.bytes").tag("file", "flightpath").summary().totalAmount());
+            assertEquals(1, registry.get("pizzadronz.output.write").tag("file", "geojson").timer().count());
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+
+    @Test
+    void testMetricsFileIsWrittenOnlyWhenCollecting() throws Exception {
+        File metricsFile = new File(outputDir, ResultFile.METRICS.fileName(SampleApiData.DATE));
+        try (PrometheusMetricsFile metrics = PrometheusMetricsFile.start()) {
+            new DeliveryPipeline(URL, SampleApiData.DATE, outputDir, ResultFile.parse("deliveries,metrics"), false, false).run();
+            metrics.write(metricsFile);
+        }
+        String text = read(metricsFile.getName());
+        assertTrue(text.contains("pizzadronz_fetch_seconds_count{endpoint=\"orders\""));
+        assertTrue(text.contains("pizzadronz_output_bytes_count{file=\"deliveries\""));
+        assertFalse(text.contains("file=\"metrics\"")); // The pipeline leaves the metrics file to App
+    }
+
+    @Test
+    void testFetchFailureStopsThePipeline() throws IOException {
+        // A server that knows everything except the restaurants
+        MockRestServer incompleteServer = new MockRestServer(PORT + 1);
+        incompleteServer.getContextToServeDataOnUrl("/centralArea", SampleApiData.CENTRAL_AREA);
+        incompleteServer.getContextToServeDataOnUrl("/noFlyZones", SampleApiData.NO_FLY_ZONES);
+        incompleteServer.getContextToServeDataOnUrl("/orders", SampleApiData.ORDERS);
+        incompleteServer.start();
+        try {
+            assertThrows(IOException.class, () -> new DeliveryPipeline("http://localhost:" + (PORT + 1),
+                    SampleApiData.DATE, outputDir, false, false).run());
+        } finally {
+            incompleteServer.stop();
+        }
+    }
+}
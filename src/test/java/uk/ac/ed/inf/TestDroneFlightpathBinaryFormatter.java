@@ -0,0 +1,130 @@
+package uk.ac.ed.inf;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round-trip and size tests for the binary flightpath format.
+ */
+public class TestDroneFlightpathBinaryFormatter {
+
+    private final LngLat appleton = new LngLat(-3.186874, 55.944494);
+    private final NamedRegion centralArea = new NamedRegion("central", new LngLat[]{
+            new LngLat(-3.192473, 55.946233),
+            new LngLat(-3.192473, 55.942617),
+            new LngLat(-3.184319, 55.942617),
+            new LngLat(-3.184319, 55.946233)
+    });
+
+    // Three round trips from Appleton Tower, the last one reusing a cached path
+    private List<DroneMovement> plannedDay() {
+        DronePathPlanner planner = new DronePathPlanner(new NamedRegion[0], centralArea);
+        List<DroneMovement> day = new ArrayList<>();
+        day.addAll(planner.findTotalPath(appleton, new LngLat(-3.1912869215011597, 55.945535152517735), "ORDER1"));
+        day.addAll(planner.findTotalPath(appleton, new LngLat(-3.202541470527649, 55.943284737579376), "ORDER2"));
+        day.addAll(planner.findTotalPath(appleton, new LngLat(-3.1912869215011597, 55.945535152517735), "ORDER3"));
+        return day;
+    }
+
+    private static byte[] write(List<DroneMovement> movements) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DroneFlightpathBinaryFormatter.writeFlightpathsToBinary(movements, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        List<DroneMovement> original = plannedDay();
+        byte[] binary = write(original);
+        assertEquals(DroneFlightpathBinaryFormatter.HEADINGS, binary[5]);
+        assertRoundTrips(original, binary);
+    }
+
+    @Test
+    void testRoundTripWith32Headings() throws IOException {
+        DronePathPlanner planner = new DronePathPlanner(new NamedRegion[0], centralArea, PlannerMode.ASTAR, 0, 32);
+        List<DroneMovement> original = planner.findTotalPath(appleton, new LngLat(-3.202541470527649, 55.943284737579376), "ORDER1");
+        assertTrue(original.stream().anyMatch(movement -> movement.getAngle() % 22.5 != 0 && movement.getAngle() != 999));
+        byte[] binary = write(original);
+        assertEquals(DroneFlightpathBinaryFormatter.FINE_HEADINGS, binary[5]); // After the magic and the version
+        assertRoundTrips(original, binary);
+    }
+
+    private static void assertRoundTrips(List<DroneMovement> original, byte[] binary) throws IOException {
+        List<DroneMovement> decoded = DroneFlightpathBinaryFormatter.readFlightpathsFromBinary(new ByteArrayInputStream(binary));
+
+        assertEquals(original.size(), decoded.size());
+        for (int i = 0; i < original.size(); i++) {
+            DroneMovement expected = original.get(i);
+            DroneMovement actual = decoded.get(i);
+            assertEquals(expected.getOrderNo(), actual.getOrderNo());
+            assertEquals(expected.getAngle(), actual.getAngle());
+            assertEquals(expected.getStart().lng(), actual.getStart().lng(), DroneFlightpathBinaryFormatter.POSITION_TOLERANCE);
+            assertEquals(expected.getStart().lat(), actual.getStart().lat(), DroneFlightpathBinaryFormatter.POSITION_TOLERANCE);
+            assertEquals(expected.getEnd().lng(), actual.getEnd().lng(), DroneFlightpathBinaryFormatter.POSITION_TOLERANCE);
+            assertEquals(expected.getEnd().lat(), actual.getEnd().lat(), DroneFlightpathBinaryFormatter.POSITION_TOLERANCE);
+        }
+    }
+
+    @Test
+    void testMuchSmallerThanJson() throws IOException {
+        List<DroneMovement> day = plannedDay();
+        int binarySize = write(day).length;
+        int jsonSize = DroneFlightpathJsonFormatter.formatFlightpathsToJson(day).getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(binarySize * 50 < jsonSize, "binary " + binarySize + " bytes vs JSON " + jsonSize + " bytes");
+    }
+
+    @Test
+    void testEmptyFlightpath() throws IOException {
+        assertTrue(DroneFlightpathBinaryFormatter.readFlightpathsFromBinary(
+                new ByteArrayInputStream(write(List.of()))).isEmpty());
+    }
+
+    @Test
+    void testMissingOrderNumberIsNotAnEmptyOne() throws IOException {
+        LngLat east = new LngLat(appleton.lng() + 1.5e-4, appleton.lat());
+        List<DroneMovement> original = List.of(
+                new DroneMovement(appleton, 0, east, null),
+                new DroneMovement(east, 999, east, ""),
+                new DroneMovement(east, 999, east, null));
+        List<DroneMovement> decoded = DroneFlightpathBinaryFormatter.readFlightpathsFromBinary(
+                new ByteArrayInputStream(write(original)));
+
+        assertEquals(3, decoded.size());
+        assertNull(decoded.get(0).getOrderNo());
+        assertEquals("", decoded.get(1).getOrderNo());
+        assertNull(decoded.get(2).getOrderNo());
+    }
+
+    @Test
+    void testRejectsTruncatedFile() throws IOException {
+        byte[] binary = write(plannedDay());
+        byte[] truncated = Arrays.copyOf(binary, binary.length / 2);
+        assertThrows(IOException.class,
+                () -> DroneFlightpathBinaryFormatter.readFlightpathsFromBinary(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    void testRejectsAngleThatIsNotAHeading() {
+        List<DroneMovement> movements = List.of(new DroneMovement(appleton, 10, appleton, "ORDER1"));
+        assertThrows(IllegalArgumentException.class, () -> write(movements));
+    }
+
+    @Test
+    void testRejectsOtherFiles() {
+        byte[] notBinary = "[{\"orderNo\":\"ORDER1\"}]".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class,
+                () -> DroneFlightpathBinaryFormatter.readFlightpathsFromBinary(new ByteArrayInputStream(notBinary)));
+    }
+}
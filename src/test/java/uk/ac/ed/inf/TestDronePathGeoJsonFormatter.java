@@ -0,0 +1,80 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the GeoJSON output, in both the single-feature and the per-order layout.
+ */
+public class TestDronePathGeoJsonFormatter {
+
+    private final LngLat appleton = new LngLat(-3.186874, 55.944494);
+    private final LngLat a = new LngLat(-3.18672, 55.944494);
+    private final LngLat b = new LngLat(-3.18657, 55.944494);
+
+    // Two orders, each flying one step out, hovering, and flying back
+    private final List<DroneMovement> path = List.of(
+            new DroneMovement(appleton, 0, a, "O1"),
+            new DroneMovement(a, 999, a, "O1"),
+            new DroneMovement(a, 180, appleton, "O1"),
+            new DroneMovement(appleton, 0, a, "O2"),
+            new DroneMovement(a, 0, b, "O2"),
+            new DroneMovement(b, 999, b, "O2"),
+            new DroneMovement(b, 180, a, "O2"),
+            new DroneMovement(a, 180, appleton, "O2")
+    );
+
+    @Test
+    void testSingleFeatureHasOnePointPerMove() {
+        JsonObject collection = JsonParser.parseString(DronePathGeoJsonFormatter.formatPathToGeoJson(path)).getAsJsonObject();
+        assertEquals("FeatureCollection", collection.get("type").getAsString());
+
+        JsonArray features = collection.getAsJsonArray("features");
+        assertEquals(1, features.size());
+        JsonObject feature = features.get(0).getAsJsonObject();
+        assertEquals(0, feature.getAsJsonObject("properties").size());
+
+        JsonArray coordinates = feature.getAsJsonObject("geometry").getAsJsonArray("coordinates");
+        assertEquals(path.size(), coordinates.size());
+        assertEquals(appleton.lng(), coordinates.get(0).getAsJsonArray().get(0).getAsDouble());
+        assertEquals(appleton.lat(), coordinates.get(0).getAsJsonArray().get(1).getAsDouble());
+    }
+
+    @Test
+    void testEmptyPathStillHasOneFeature() {
+        assertEquals("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",\"properties\":{},"
+                        + "\"geometry\":{\"type\":\"LineString\",\"coordinates\":[]}}]}",
+                DronePathGeoJsonFormatter.formatPathToGeoJson(List.of()));
+    }
+
+    @Test
+    void testFeaturePerOrder() {
+        JsonObject collection = JsonParser.parseString(DronePathGeoJsonFormatter.formatPathToGeoJson(path, true)).getAsJsonObject();
+        JsonArray features = collection.getAsJsonArray("features");
+        assertEquals(2, features.size());
+
+        JsonObject first = features.get(0).getAsJsonObject();
+        assertEquals("O1", first.getAsJsonObject("properties").get("orderNo").getAsString());
+        // Three moves plus the point where the order finished
+        JsonArray firstCoordinates = first.getAsJsonObject("geometry").getAsJsonArray("coordinates");
+        assertEquals(4, firstCoordinates.size());
+        assertEquals(appleton.lng(), firstCoordinates.get(3).getAsJsonArray().get(0).getAsDouble());
+
+        JsonObject second = features.get(1).getAsJsonObject();
+        assertEquals("O2", second.getAsJsonObject("properties").get("orderNo").getAsString());
+        assertEquals(6, second.getAsJsonObject("geometry").getAsJsonArray("coordinates").size());
+    }
+
+    @Test
+    void testEmptyPathPerOrderHasNoFeatures() {
+        assertEquals("{\"type\":\"FeatureCollection\",\"features\":[]}",
+                DronePathGeoJsonFormatter.formatPathToGeoJson(List.of(), true));
+    }
+}
@@ -0,0 +1,93 @@
+package uk.ac.ed.inf;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.data.Order;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that validation and planning emit their Flight Recorder events with the right contents.
+ */
+public class TestFlightRecorderEvents {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testEventsAreRecordedPerOrder() throws Exception {
+        SyntheticCity city = new SyntheticCity(9, 4, 3, 40, 0.3, LocalDate.of(2025, 1, 28));
+        Order[] orders = city.getOrders();
+        Path file = new File(tempDir, "run.jfr").toPath();
+
+        try (Recording recording = new Recording()) {
+            recording.enable("uk.ac.ed.inf.OrderValidation");
+            recording.enable("uk.ac.ed.inf.OrderPlanning");
+            recording.enable("uk.ac.ed.inf.RouteSearch");
+            recording.start();
+
+            OrderValidationImpl validator = new OrderValidationImpl();
+            RouteOptimizer optimizer = new RouteOptimizer(city.getNoFlyZones(), city.getCentralArea(), city.getRestaurants());
+            for (Order order : orders) {
+                if (validator.validateOrder(order, city.getRestaurants()).getOrderStatus() == OrderStatus.VALID_BUT_NOT_DELIVERED) {
+                    optimizer.optimizeRoute(order);
+                }
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+
+        Map<String, String> validationCodes = new HashMap<>();
+        List<RecordedEvent> planning = new ArrayList<>();
+        List<RecordedEvent> searches = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            switch (event.getEventType().getName()) {
+                case "uk.ac.ed.inf.OrderValidation":
+                    validationCodes.put(event.getString("orderNo"), event.getString("validationCode"));
+                    break;
+                case "uk.ac.ed.inf.OrderPlanning":
+                    planning.add(event);
+                    break;
+                case "uk.ac.ed.inf.RouteSearch":
+                    searches.add(event);
+                    break;
+                default:
+            }
+        }
+
+        // One validation event per order, with the code the order ended with
+        assertEquals(orders.length, validationCodes.size());
+        for (Order order : orders) {
+            assertEquals(order.getOrderValidationCode().toString(), validationCodes.get(order.getOrderNo()));
+        }
+
+        // One planning event and one path request per delivered order; only the first path to a restaurant is searched
+        int delivered = city.getValidOrderCount();
+        assertEquals(delivered, planning.size());
+        assertEquals(delivered, searches.size());
+        long misses = searches.stream().filter(event -> !event.getBoolean("cacheHit")).count();
+        assertTrue(misses >= 1 && misses < delivered);
+        for (RecordedEvent search : searches) {
+            assertTrue(search.getInt("pathLength") > 0);
+            assertEquals(search.getBoolean("cacheHit"), search.getInt("nodesExpanded") == 0);
+        }
+        for (RecordedEvent event : planning) {
+            assertTrue(event.getString("restaurant").startsWith("S0"));
+            assertTrue(event.getInt("moves") > 0);
+        }
+        assertTrue(validationCodes.containsValue(OrderValidationCode.NO_ERROR.toString()));
+    }
+}
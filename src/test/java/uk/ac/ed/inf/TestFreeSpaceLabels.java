@@ -0,0 +1,101 @@
+package uk.ac.ed.inf;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that FreeSpaceLabels finds restaurants walled off by no-fly zones or by the central area rule,
+ * without ever calling a reachable one unreachable, and that such orders are left undelivered instead of searched for.
+ */
+public class TestFreeSpaceLabels {
+
+    private static final double MOVE = SystemConstants.DRONE_MOVE_DISTANCE;
+    private static final LngLat APPLETON_TOWER = new LngLat(-3.186874, 55.944494);
+    private static final LngLat RESTAURANT = new LngLat(APPLETON_TOWER.lng() + 80 * MOVE, APPLETON_TOWER.lat());
+    private static final NamedRegion CENTRAL = new NamedRegion(SystemConstants.CENTRAL_REGION_NAME, new LngLat[]{
+            new LngLat(-3.192473, 55.946233), new LngLat(-3.192473, 55.942617),
+            new LngLat(-3.184319, 55.942617), new LngLat(-3.184319, 55.946233)});
+
+    // A rectangle, in moves from the restaurant
+    private static NamedRegion block(String name, double west, double south, double east, double north) {
+        return new NamedRegion(name, new LngLat[]{
+                new LngLat(RESTAURANT.lng() + west * MOVE, RESTAURANT.lat() + south * MOVE),
+                new LngLat(RESTAURANT.lng() + east * MOVE, RESTAURANT.lat() + south * MOVE),
+                new LngLat(RESTAURANT.lng() + east * MOVE, RESTAURANT.lat() + north * MOVE),
+                new LngLat(RESTAURANT.lng() + west * MOVE, RESTAURANT.lat() + north * MOVE)});
+    }
+
+    // Four walls round the restaurant, each the given number of moves thick, with room inside
+    private static NamedRegion[] ring(double thickness) {
+        double inner = 6;
+        double outer = inner + thickness;
+        return new NamedRegion[]{
+                block("west", -outer, -outer, -inner, outer), block("east", inner, -outer, outer, outer),
+                block("south", -inner, -outer, inner, -inner), block("north", -inner, inner, inner, outer)};
+    }
+
+    @Test
+    void testWalledOffRestaurantIsUnreachable() {
+        FreeSpaceLabels labels = new FreeSpaceLabels(ring(3), CENTRAL);
+        assertFalse(labels.canReach(APPLETON_TOWER, RESTAURANT));
+        assertTrue(labels.canReach(APPLETON_TOWER, new LngLat(RESTAURANT.lng(), RESTAURANT.lat() + 20 * MOVE)));
+        assertEquals(2, labels.getOutsideCount()); // Outside the ring, and inside it
+
+        assertThrows(IllegalStateException.class, () -> new DronePathPlanner(ring(3), CENTRAL, PlannerMode.ASTAR)
+                .findTotalPath(APPLETON_TOWER, RESTAURANT, "O1"));
+    }
+
+    @Test
+    void testThinWallsCanBeFlownOver() {
+        // A move ends beyond a wall thinner than itself, so the ring does not shut the restaurant in
+        NamedRegion[] thin = ring(0.4);
+        assertTrue(new FreeSpaceLabels(thin, CENTRAL).canReach(APPLETON_TOWER, RESTAURANT));
+        assertFalse(new DronePathPlanner(thin, CENTRAL, PlannerMode.ASTAR).findTotalPath(APPLETON_TOWER, RESTAURANT, "O1").isEmpty());
+    }
+
+    @Test
+    void testCentralAreaIsOneWay() {
+        FreeSpaceLabels labels = new FreeSpaceLabels(new NamedRegion[0], CENTRAL);
+        LngLat east = new LngLat(-3.180, 55.944494);
+        assertTrue(labels.canReach(APPLETON_TOWER, east));
+        assertFalse(labels.canReach(east, APPLETON_TOWER)); // Once out, the drone may not go back in
+        assertTrue(labels.canReach(east, new LngLat(-3.1842, 55.944494))); // Close enough from the edge
+    }
+
+    @Test
+    void testEveryRealRestaurantIsReachable() {
+        NamedRegion[] noFlyZones = BenchmarkData.noFlyZones();
+        NamedRegion centralArea = BenchmarkData.centralArea();
+        FreeSpaceLabels labels = FreeSpaceLabels.forRegions(noFlyZones, centralArea);
+        assertSame(labels, FreeSpaceLabels.forRegions(noFlyZones, centralArea));
+        for (Restaurant restaurant : BenchmarkData.restaurants()) {
+            assertTrue(labels.canReach(BenchmarkData.APPLETON_TOWER, restaurant.location()), restaurant.name());
+        }
+    }
+
+    @Test
+    void testUnreachableOrderIsNotDelivered() {
+        // The greedy planner would circle inside the walls forever; the order is turned away before it starts
+        System.setProperty(PlannerMode.PROPERTY, "greedy");
+        try {
+            Pizza pizza = new Pizza("R1: Margarita", 1000);
+            Restaurant restaurant = new Restaurant("Walled", RESTAURANT, DayOfWeek.values(), new Pizza[]{pizza});
+            Order order = new Order("O1", LocalDate.of(2025, 1, 27), OrderStatus.VALID_BUT_NOT_DELIVERED,
+                    OrderValidationCode.NO_ERROR, 1100, new Pizza[]{pizza},
+                    new CreditCardInformation("1234567812345678", "12/30", "123"));
+            RouteOptimizer optimizer = new RouteOptimizer(ring(3), CENTRAL, new Restaurant[]{restaurant});
+            assertTrue(optimizer.optimizeRoute(order).isEmpty());
+            assertEquals(OrderStatus.VALID_BUT_NOT_DELIVERED, order.getOrderStatus());
+        } finally {
+            System.clearProperty(PlannerMode.PROPERTY);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package uk.ac.ed.inf;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the GeometryStore addresses structures by their geometry alone, and that the grid, labels and
+ * landmarks read back from it answer exactly as the ones built.
+ */
+public class TestGeometryStore {
+
+    @TempDir
+    File storeDirectory;
+
+    @Test
+    void testKeyDependsOnlyOnTheGeometry() {
+        NamedRegion[] zones = BenchmarkData.noFlyZones();
+        NamedRegion central = BenchmarkData.centralArea();
+        String key = GeometryStore.key(zones, central);
+
+        // Reordered, renamed and with the first zone's ring closed, the zones are still the same
+        NamedRegion[] same = new NamedRegion[zones.length];
+        for (int i = 0; i < zones.length; i++) {
+            same[i] = new NamedRegion("zone " + i, zones[zones.length - 1 - i].vertices());
+        }
+        LngLat[] ring = same[0].vertices();
+        LngLat[] closed = Arrays.copyOf(ring, ring.length + 1);
+        closed[ring.length] = ring[0];
+        same[0] = new NamedRegion(same[0].name(), closed);
+        assertEquals(key, GeometryStore.key(same, central));
+
+        LngLat[] moved = zones[0].vertices().clone();
+        moved[0] = new LngLat(moved[0].lng() + 1e-9, moved[0].lat());
+        NamedRegion[] changed = zones.clone();
+        changed[0] = new NamedRegion(zones[0].name(), moved);
+        assertNotEquals(key, GeometryStore.key(changed, central));
+    }
+
+    @Test
+    void testStoredStructuresAnswerAsBuilt() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        NamedRegion central = BenchmarkData.centralArea();
+        System.setProperty(GeometryStore.PROPERTY, storeDirectory.getPath());
+        try {
+            // New arrays for each "run", so the in-memory caches miss and the store is asked
+            NamedRegion[] firstRun = BenchmarkData.noFlyZones();
+            FreeSpaceLabels built = FreeSpaceLabels.forRegions(firstRun, central);
+            LandmarkHeuristic builtLandmarks = LandmarkHeuristic.forRegions(firstRun, central);
+            assertEquals(3, count(registry, "miss")); // The grid, the labels and the landmarks
+            String key = GeometryStore.key(BenchmarkData.noFlyZones(), central);
+            for (String kind : new String[]{"grid", "labels", "landmarks"}) {
+                assertTrue(new File(storeDirectory, key + "." + kind).isFile(), kind);
+            }
+
+            NamedRegion[] secondRun = BenchmarkData.noFlyZones();
+            FreeSpaceLabels read = FreeSpaceLabels.forRegions(secondRun, central);
+            LandmarkHeuristic readLandmarks = LandmarkHeuristic.forRegions(secondRun, central);
+            assertEquals(3, count(registry, "hit"));
+            assertNotSame(built, read);
+            assertAnswersEqual(built, read, builtLandmarks, readLandmarks);
+
+            // A file cut short is built and written again
+            try (RandomAccessFile file = new RandomAccessFile(new File(storeDirectory, key + ".labels"), "rw")) {
+                file.setLength(file.length() / 2);
+            }
+            FreeSpaceLabels rebuilt = FreeSpaceLabels.forRegions(BenchmarkData.noFlyZones(), central);
+            assertEquals(4, count(registry, "miss"));
+            assertAnswersEqual(built, rebuilt, builtLandmarks, readLandmarks);
+        } finally {
+            System.clearProperty(GeometryStore.PROPERTY);
+            Metrics.removeRegistry(registry);
+        }
+    }
+
+    private static double count(SimpleMeterRegistry registry, String result) {
+        return registry.get("pizzadronz.geometry.store").tag("result", result).counter().count();
+    }
+
+    private static void assertAnswersEqual(FreeSpaceLabels built, FreeSpaceLabels read,
+                                           LandmarkHeuristic builtLandmarks, LandmarkHeuristic readLandmarks) {
+        assertEquals(built.getOutsideCount(), read.getOutsideCount());
+        assertArrayEquals(builtLandmarks.getLandmarks(), readLandmarks.getLandmarks());
+        for (Restaurant restaurant : BenchmarkData.restaurants()) {
+            LngLat end = restaurant.location();
+            AStarSearch.Heuristic builtEstimate = builtLandmarks.towards(end, HeadingTable.DEFAULT);
+            AStarSearch.Heuristic readEstimate = readLandmarks.towards(end, HeadingTable.DEFAULT);
+            for (int i = -20; i <= 20; i++) {
+                for (int j = -20; j <= 20; j++) {
+                    LngLat from = new LngLat(BenchmarkData.APPLETON_TOWER.lng() + i * 2e-4, BenchmarkData.APPLETON_TOWER.lat() + j * 2e-4);
+                    assertEquals(built.canReach(from, end), read.canReach(from, end), from.toString());
+                    assertEquals(builtEstimate.movesToGoal(from.lng(), from.lat()), readEstimate.movesToGoal(from.lng(), from.lat()));
+                }
+            }
+        }
+    }
+}
@@ -56,6 +56,30 @@ public class TestLngLatHandlingImpl extends TestCase {
         }
     }
 
+    public void testNextPositionWithOtherHeadings() {
+        LngLat start = new LngLat(0.0, 0.0);
+        LngLatHandlingImpl fine = new LngLatHandlingImpl(HeadingTable.of(32));
+        LngLat next = fine.nextPosition(start, 11.25);
+        assertEquals(SystemConstants.DRONE_MOVE_DISTANCE, fine.distanceTo(start, next), 1e-12);
+        // The precomputed offsets are exactly what the trigonometry gives
+        assertEquals(SystemConstants.DRONE_MOVE_DISTANCE * Math.cos(Math.toRadians(67.5)), handler.nextPosition(start, 67.5).lng());
+        assertEquals(SystemConstants.DRONE_MOVE_DISTANCE * Math.sin(Math.toRadians(67.5)), handler.nextPosition(start, 67.5).lat());
+
+        LngLatHandlingImpl coarse = new LngLatHandlingImpl(HeadingTable.of(8));
+        try {
+            coarse.nextPosition(start, 22.5); // Not one of the 8 headings
+            fail("Expected an IllegalArgumentException for angle not multiple of 45");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            HeadingTable.of(12);
+            fail("Expected an IllegalArgumentException for 12 headings");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
     public void testIsInRegion() {
         // Suppose we define a simple rectangular region from (0,0)->(2,0)->(2,2)->(0,2)
         NamedRegion region = new NamedRegion(
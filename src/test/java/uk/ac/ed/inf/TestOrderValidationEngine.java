@@ -0,0 +1,127 @@
+package uk.ac.ed.inf;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.data.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the parallel, self-reordering validation engine gives exactly the same results as OrderValidationImpl.
+ */
+public class TestOrderValidationEngine {
+
+    private final Pizza margarita = new Pizza("R1: Margarita", 1000);
+    private final Pizza calzone = new Pizza("R1: Calzone", 1400);
+    private final Pizza meatLover = new Pizza("R2: Meat Lover", 1400);
+
+    private Restaurant[] restaurants;
+
+    @BeforeEach
+    void setUp() {
+        restaurants = new Restaurant[]{
+                new Restaurant("Rest_1", new LngLat(-3.19, 55.94),
+                        new DayOfWeek[]{DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.FRIDAY},
+                        new Pizza[]{margarita, calzone}),
+                new Restaurant("Rest_2", new LngLat(-3.20, 55.94),
+                        new DayOfWeek[]{DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY},
+                        new Pizza[]{meatLover})
+        };
+    }
+
+    // Random orders that often break several rules at once
+    private Order randomOrder(Random random, int i) {
+        Pizza[] menu = {margarita, calzone, meatLover, new Pizza("Unknown", 500)};
+        Pizza[] pizzas = new Pizza[1 + random.nextInt(5)];
+        for (int p = 0; p < pizzas.length; p++) {
+            pizzas[p] = menu[random.nextInt(random.nextInt(10) == 0 ? 4 : 2)];
+        }
+        int total = correctTotal(pizzas) + (random.nextInt(8) == 0 ? 1 : 0);
+        String cardNumber = random.nextInt(6) == 0 ? "123456781234567" : "1234567812345678";
+        String cvv = random.nextInt(6) == 0 ? "12" : "123";
+        String expiry = random.nextBoolean() ? "12/30" : String.format("%02d/%02d", 1 + random.nextInt(12), 24 + random.nextInt(3));
+        LocalDate date = LocalDate.of(2025, 1, 1).plusDays(random.nextInt(60));
+        return new Order("O" + i, date, OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED, total, pizzas,
+                new CreditCardInformation(cardNumber, expiry, cvv));
+    }
+
+    private static int correctTotal(Pizza[] pizzas) {
+        int total = 100;
+        for (Pizza pizza : pizzas) {
+            total += pizza.priceInPence();
+        }
+        return total;
+    }
+
+    private static Order copy(Order order) {
+        CreditCardInformation card = order.getCreditCardInformation();
+        return new Order(order.getOrderNo(), order.getOrderDate(), OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED,
+                order.getPriceTotalInPence(), order.getPizzasInOrder().clone(),
+                new CreditCardInformation(card.getCreditCardNumber(), card.getCreditCardExpiry(), card.getCvv()));
+    }
+
+    @Test
+    void testSameCodesAsSequentialValidation() {
+        Random random = new Random(42);
+        Order[] orders = new Order[5000];
+        Order[] expected = new Order[orders.length];
+        OrderValidationImpl validator = new OrderValidationImpl();
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = randomOrder(random, i);
+            expected[i] = validator.validateOrder(copy(orders[i]), restaurants);
+        }
+
+        OrderValidationEngine engine = new OrderValidationEngine();
+        engine.validateOrders(orders, restaurants);
+
+        for (int i = 0; i < orders.length; i++) {
+            assertEquals(expected[i].getOrderValidationCode(), orders[i].getOrderValidationCode(), "order " + i);
+            assertEquals(expected[i].getOrderStatus(), orders[i].getOrderStatus(), "order " + i);
+        }
+    }
+
+    @Test
+    void testRulesThatRejectMostMoveToTheFront() {
+        // Every order has a short CVV, the last rule but two in the fixed order
+        OrderValidationEngine engine = new OrderValidationEngine();
+        for (int i = 0; i < OrderValidationEngine.REORDER_INTERVAL; i++) {
+            Order order = new Order("O" + i, LocalDate.of(2025, 1, 27), OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED,
+                    1100, new Pizza[]{margarita}, new CreditCardInformation("1234567812345678", "12/30", "12"));
+            assertEquals(OrderValidationCode.CVV_INVALID, engine.validateOrder(order, restaurants).getOrderValidationCode());
+        }
+
+        List<OrderValidationEngine.RuleStatistics> statistics = engine.getRuleStatistics();
+        assertEquals(OrderValidationRule.CVV, statistics.get(0).getRule());
+        assertEquals(OrderValidationEngine.REORDER_INTERVAL, statistics.get(0).getRejections());
+        assertTrue(engine.formatReport().contains("CVV"));
+    }
+
+    @Test
+    void testEarlierRulesStillWinAfterReordering() {
+        // Train the engine on expired cards so that the expiry check moves to the front
+        OrderValidationEngine engine = new OrderValidationEngine();
+        for (int i = 0; i < OrderValidationEngine.REORDER_INTERVAL; i++) {
+            Order order = new Order("O" + i, LocalDate.of(2025, 1, 27), OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED,
+                    1100, new Pizza[]{margarita}, new CreditCardInformation("1234567812345678", "12/24", "123"));
+            engine.validateOrder(order, restaurants);
+        }
+        assertEquals(OrderValidationRule.EXPIRY_DATE, engine.getRuleStatistics().get(0).getRule());
+
+        // Expired card and undefined pizza: the pizza comes first in the fixed order, so it is reported
+        Order undefinedPizza = new Order("P1", LocalDate.of(2025, 1, 27), OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED,
+                1100, new Pizza[]{new Pizza("Unknown", 1000)}, new CreditCardInformation("1234567812345678", "12/24", "123"));
+        assertEquals(OrderValidationCode.PIZZA_NOT_DEFINED, engine.validateOrder(undefinedPizza, restaurants).getOrderValidationCode());
+
+        // Unparsable expiry date and undefined pizza: still reported as the pizza, like validateOrder does
+        Order unparsableExpiry = new Order("P2", LocalDate.of(2025, 1, 27), OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED,
+                1100, new Pizza[]{new Pizza("Unknown", 1000)}, new CreditCardInformation("1234567812345678", "xx/yy", "123"));
+        assertEquals(OrderValidationCode.PIZZA_NOT_DEFINED, engine.validateOrder(unparsableExpiry, restaurants).getOrderValidationCode());
+    }
+}
@@ -341,12 +341,65 @@ public class TestOrderValidationImpl {
         assertEquals(OrderValidationCode.PIZZA_FROM_MULTIPLE_RESTAURANTS, result.getOrderValidationCode());
     }
 
+    @Test
+    void testNonDigitCardDetailsInvalid() {
+        Pizza[] pizzas = {pizza_1};
+        Order badNumber = new Order("ORDER11", LocalDate.of(2025, 1, 23), OrderStatus.UNDEFINED,
+                OrderValidationCode.UNDEFINED, 300, pizzas, makeCreditCard("1234-5678-1234-5", "12/30", "123"));
+        assertEquals(OrderValidationCode.CARD_NUMBER_INVALID,
+                validator.validateOrder(badNumber, mockRestaurants).getOrderValidationCode());
+
+        Order badCvv = new Order("ORDER12", LocalDate.of(2025, 1, 23), OrderStatus.UNDEFINED,
+                OrderValidationCode.UNDEFINED, 300, pizzas, makeCreditCard("1234567812345678", "12/30", "1a3"));
+        assertEquals(OrderValidationCode.CVV_INVALID,
+                validator.validateOrder(badCvv, mockRestaurants).getOrderValidationCode());
+    }
 
+    @Test
+    void testExpiryBoundaries() {
+        Pizza[] pizzas = {pizza_1};
+        // A card is valid up to the last day of its expiry month
+        String[][] cases = {
+                {"01/25", "2025-01-31", "NO_ERROR"},
+                {"01/25", "2025-02-01", "EXPIRY_DATE_INVALID"},
+                {"12/24", "2024-12-31", "NO_ERROR"},
+                {"12/24", "2025-01-01", "EXPIRY_DATE_INVALID"},
+                {"1/25", "2025-01-01", "EXPIRY_DATE_INVALID"},  // malformed expiry dates count as expired
+                {"ab/cd", "2025-01-01", "EXPIRY_DATE_INVALID"}
+        };
+        for (String[] c : cases) {
+            Order order = new Order("ORDER13", LocalDate.parse(c[1]), OrderStatus.UNDEFINED,
+                    OrderValidationCode.UNDEFINED, 300, pizzas, makeCreditCard("1234567812345678", c[0], "123"));
+            assertEquals(OrderValidationCode.valueOf(c[2]),
+                    validator.validateOrder(order, mockRestaurants).getOrderValidationCode(), c[0] + " on " + c[1]);
+        }
+    }
 
+    @Test
+    void testValidateOrderDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        Order valid = new Order("ORDER14", LocalDate.of(2025, 1, 23), OrderStatus.UNDEFINED,
+                OrderValidationCode.UNDEFINED, 300, new Pizza[]{pizza_1}, makeCreditCard("1234567812345678", "12/30", "123"));
+        Order invalid = new Order("ORDER15", LocalDate.of(2025, 1, 23), OrderStatus.UNDEFINED,
+                OrderValidationCode.UNDEFINED, 300, new Pizza[]{pizza_1}, makeCreditCard("1234567812345678", "12/24", "123"));
+
+        // Warm up so the restaurant index is built and every class is loaded
+        for (int i = 0; i < 10_000; i++) {
+            validator.validateOrder(valid, mockRestaurants);
+            validator.validateOrder(invalid, mockRestaurants);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            validator.validateOrder(valid, mockRestaurants);
+            validator.validateOrder(invalid, mockRestaurants);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // Allow a little for the measurement itself; one allocation per call would be megabytes
+        assertTrue(allocated < 4096, "validateOrder allocated " + allocated + " bytes over 200000 calls");
+        assertEquals(OrderValidationCode.NO_ERROR, valid.getOrderValidationCode());
+        assertEquals(OrderValidationCode.EXPIRY_DATE_INVALID, invalid.getOrderValidationCode());
+    }
 }
-
-
-
-
-
-
@@ -0,0 +1,153 @@
+package uk.ac.ed.inf;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the planning service gives the same results as a CLI run, request after request.
+ */
+public class TestPlanningService {
+
+    private static final int PORT = 8008;
+    private static final String URL = "http://localhost:" + PORT;
+
+    private MockRestServer mockServer;
+
+    @TempDir
+    File outputDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockServer = new MockRestServer(PORT);
+        SampleApiData.serveOn(mockServer);
+        mockServer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        mockServer.stop();
+    }
+
+    private String read(File dir, String fileName) throws IOException {
+        return Files.readString(new File(dir, fileName).toPath());
+    }
+
+    @Test
+    void testRepeatedRequestsMatchCliRun() throws Exception {
+        File cliDir = new File(outputDir, "cli");
+        new DeliveryPipeline(URL, SampleApiData.DATE, cliDir, false, false, false).run();
+
+        PlanningService service = new PlanningService(URL, 60);
+        for (int request = 0; request < 3; request++) {
+            PlanningService.DailyResult result = service.plan(SampleApiData.DATE);
+            assertEquals(read(cliDir, "deliveries-" + SampleApiData.DATE + ".json"), result.toDeliveriesJson());
+            assertEquals(read(cliDir, "flightpath-" + SampleApiData.DATE + ".json"), result.toFlightpathJson());
+            assertEquals(read(cliDir, "drone-" + SampleApiData.DATE + ".geojson"), result.toGeoJson(false));
+        }
+
+        File serviceDir = new File(outputDir, "service");
+        new PlanningController(service, serviceDir).writeResults(SampleApiData.DATE, false);
+        for (String fileName : new String[]{"deliveries-" + SampleApiData.DATE + ".json",
+                "flightpath-" + SampleApiData.DATE + ".json", "drone-" + SampleApiData.DATE + ".geojson"}) {
+            assertEquals(read(cliDir, fileName), read(serviceDir, fileName));
+        }
+    }
+
+    @Test
+    void testStreamHandsOverEachOrderAsItIsPlanned() throws Exception {
+        PlanningService service = new PlanningService(URL, 60);
+        PlanningService.DailyResult result = service.plan(SampleApiData.DATE);
+
+        List<String> orderNos = new ArrayList<>();
+        List<DroneMovement> streamed = new ArrayList<>();
+        service.streamPlan(SampleApiData.DATE, (order, route) -> {
+            orderNos.add(order.getOrderNo());
+            for (DroneMovement movement : route) {
+                assertEquals(order.getOrderNo(), movement.getOrderNo());
+            }
+            streamed.addAll(route);
+        });
+
+        assertEquals(result.getOrders().length, orderNos.size());
+        assertEquals(result.toFlightpathJson(), DroneFlightpathJsonFormatter.formatFlightpathsToJson(streamed));
+    }
+
+    @Test
+    void testConcurrentRequestsGetTheSameResults() throws Exception {
+        PlanningService service = new PlanningService(URL, 60, 2);
+        String expected = service.plan(SampleApiData.DATE).toFlightpathJson();
+
+        ExecutorService requests = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(requests.submit(() -> service.plan(SampleApiData.DATE).toFlightpathJson()));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            requests.shutdown();
+            service.close();
+        }
+    }
+
+    @Test
+    void testBadDateIsRejected() {
+        PlanningController controller = new PlanningController(new PlanningService(URL, 60), outputDir);
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> controller.deliveries("28-01-2025"));
+        assertEquals(400, e.getStatusCode().value());
+    }
+
+    @Test
+    void testServesOverHttp() throws Exception {
+        ConfigurableApplicationContext context = PlanningServiceApplication.start(URL, new String[]{"--server.port=0"});
+        try {
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/deliveries/" + SampleApiData.DATE)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals(context.getBean(PlanningService.class).plan(SampleApiData.DATE).toDeliveriesJson(), response.body());
+
+            // The streamed lines are the elements of the flightpath array
+            HttpResponse<String> stream = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/flightpath/" + SampleApiData.DATE + "/stream")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, stream.statusCode());
+            assertEquals(PlanningController.NDJSON, stream.headers().firstValue("Content-Type").orElse(""));
+            assertTrue(stream.body().endsWith("\n"));
+            String flightpath = context.getBean(PlanningService.class).plan(SampleApiData.DATE).toFlightpathJson();
+            assertEquals(flightpath, "[" + String.join(",", stream.body().strip().split("\n")) + "]");
+
+            HttpResponse<String> metrics = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/prometheus")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, metrics.statusCode());
+            assertTrue(metrics.body().contains("pizzadronz_fetch_seconds_count{endpoint=\"orders\""));
+            assertTrue(metrics.body().contains("pizzadronz_planning_order_seconds"));
+        } finally {
+            context.close();
+        }
+    }
+}
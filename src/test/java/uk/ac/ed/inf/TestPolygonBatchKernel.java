@@ -0,0 +1,72 @@
+package uk.ac.ed.inf;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that both batch kernels mark exactly the points PreparedPolygon.contains accepts,
+ * whatever the batch length, and that the tests run with the vector kernel.
+ */
+public class TestPolygonBatchKernel {
+
+    @Test
+    void testTestsRunWithTheVectorKernel() {
+        // Surefire adds the jdk.incubator.vector module, so the comparisons below cover the vector kernel
+        assertTrue(PolygonBatchKernel.best().getName().startsWith("vector"), PolygonBatchKernel.best().getName());
+        assertEquals("scalar", PolygonBatchKernel.scalar().getName());
+    }
+
+    @Test
+    void testBestKernelMatchesPreparedPolygon() {
+        assertSameAnswers(PolygonBatchKernel.best());
+    }
+
+    @Test
+    void testScalarKernelMatchesPreparedPolygon() {
+        assertSameAnswers(PolygonBatchKernel.scalar());
+    }
+
+    @Test
+    void testMarkedPointsStayMarked() {
+        PreparedPolygon square = new PreparedPolygon(new LngLat[]{new LngLat(0, 0), new LngLat(1, 0), new LngLat(1, 1), new LngLat(0, 1)});
+        double[] lng = {0.5, 2, 2, 1};
+        double[] lat = {0.5, 2, 2, 0.5};
+        boolean[] inside = {false, true, false, false};
+        PolygonBatchKernel.best().markInside(square, lng, lat, 3, inside);
+        // The last point is inside but beyond the count
+        assertArrayEquals(new boolean[]{true, true, false, false}, inside);
+    }
+
+    private static void assertSameAnswers(PolygonBatchKernel kernel) {
+        Random random = new Random(41);
+        int batches = 0;
+        for (LngLat[] vertices : TestPreparedPolygon.polygons(random)) {
+            PreparedPolygon polygon = new PreparedPolygon(vertices);
+            List<LngLat> probes = TestPreparedPolygon.probes(vertices, random);
+            // Batches of every length up to 17, so the vector tail is covered too
+            for (int start = 0; start < probes.size(); batches++) {
+                int count = Math.min(1 + batches % 17, probes.size() - start);
+                double[] lng = new double[count];
+                double[] lat = new double[count];
+                for (int i = 0; i < count; i++) {
+                    lng[i] = probes.get(start + i).lng();
+                    lat[i] = probes.get(start + i).lat();
+                }
+                boolean[] inside = new boolean[count];
+                kernel.markInside(polygon, lng, lat, count, inside);
+                for (int i = 0; i < count; i++) {
+                    LngLat point = probes.get(start + i);
+                    assertEquals(polygon.contains(point), inside[i], () -> point + " in " + Arrays.toString(vertices));
+                }
+                start += count;
+            }
+        }
+        assertTrue(batches > 1000);
+    }
+}
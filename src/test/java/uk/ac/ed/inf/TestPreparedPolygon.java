@@ -0,0 +1,162 @@
+package uk.ac.ed.inf;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that PreparedPolygon answers exactly like GeometryHelper.isPointInsidePolygon,
+ * including the points on edges and vertices where ray casting is delicate.
+ */
+public class TestPreparedPolygon {
+
+    private static final LngLat CENTER = new LngLat(-3.186874, 55.944494);
+
+    // The polygons to compare on: rectangles (with horizontal edges), stars, random shapes, and degenerate ones
+    static List<LngLat[]> polygons(Random random) {
+        List<LngLat[]> polygons = new ArrayList<>();
+        polygons.add(new LngLat[]{
+                new LngLat(-3.192473, 55.946233), new LngLat(-3.192473, 55.942617),
+                new LngLat(-3.184319, 55.942617), new LngLat(-3.184319, 55.946233),
+                new LngLat(-3.192473, 55.946233)});
+        polygons.add(new LngLat[]{new LngLat(0, 0), new LngLat(2, 0), new LngLat(2, 1), new LngLat(0, 1)});
+        polygons.add(new LngLat[]{new LngLat(0, 0), new LngLat(1, 1)});
+        polygons.add(new LngLat[]{new LngLat(0, 0), new LngLat(1, 1), new LngLat(2, 2), new LngLat(0, 0)});
+        polygons.add(new LngLat[]{new LngLat(1, 1), new LngLat(1, 2), new LngLat(3, 2), new LngLat(3, 1), new LngLat(1, 1)});
+        // Convex polygons, on a coarse grid so that vertices share latitudes, and round ones on the map
+        polygons.add(new LngLat[]{new LngLat(0.5, 0.5), new LngLat(2, 0.5), new LngLat(2.5, 1.5), new LngLat(1.5, 2.5),
+                new LngLat(0.5, 2)});
+        polygons.add(new LngLat[]{new LngLat(1, 0.5), new LngLat(2, 0.5), new LngLat(2.5, 1.5), new LngLat(2, 2.5),
+                new LngLat(1, 2.5), new LngLat(0.5, 1.5), new LngLat(1, 0.5)});
+        for (int i = 0; i < 10; i++) {
+            polygons.add(convexPolygon(3 + random.nextInt(30), random));
+        }
+        for (int i = 0; i < 20; i++) {
+            polygons.add(SyntheticCity.starPolygon(CENTER, 3 + random.nextInt(6), 0.002, 0.0008, random));
+        }
+        for (int i = 0; i < 20; i++) {
+            // Arbitrary, often self-intersecting, vertex lists on a coarse grid so that many coordinates coincide
+            LngLat[] vertices = new LngLat[3 + random.nextInt(8)];
+            for (int v = 0; v < vertices.length; v++) {
+                vertices[v] = new LngLat(random.nextInt(6) * 0.5, random.nextInt(6) * 0.5);
+            }
+            polygons.add(vertices);
+        }
+        return polygons;
+    }
+
+    // Points on a circle round the centre, at sorted random angles, in either direction
+    private static LngLat[] convexPolygon(int corners, Random random) {
+        double[] angles = new double[corners];
+        for (int i = 0; i < corners; i++) {
+            angles[i] = 2 * Math.PI * random.nextDouble();
+        }
+        Arrays.sort(angles);
+        double radius = 0.001 + 0.002 * random.nextDouble();
+        double turn = random.nextBoolean() ? 1 : -1;
+        LngLat[] vertices = new LngLat[corners + 1];
+        for (int i = 0; i < corners; i++) {
+            vertices[i] = new LngLat(CENTER.lng() + radius * Math.cos(turn * angles[i]), CENTER.lat() + radius * Math.sin(turn * angles[i]));
+        }
+        vertices[corners] = vertices[0];
+        return vertices;
+    }
+
+    // Random points plus every vertex, edge midpoint, and points level with a vertex
+    static List<LngLat> probes(LngLat[] vertices, Random random) {
+        double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE, minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        for (LngLat vertex : vertices) {
+            minLng = Math.min(minLng, vertex.lng());
+            maxLng = Math.max(maxLng, vertex.lng());
+            minLat = Math.min(minLat, vertex.lat());
+            maxLat = Math.max(maxLat, vertex.lat());
+        }
+        double width = Math.max(maxLng - minLng, 1e-3);
+        double height = Math.max(maxLat - minLat, 1e-3);
+
+        List<LngLat> probes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            probes.add(new LngLat(minLng - width / 2 + 2 * width * random.nextDouble(),
+                    minLat - height / 2 + 2 * height * random.nextDouble()));
+        }
+        for (int i = 0; i < vertices.length; i++) {
+            LngLat vertex = vertices[i];
+            LngLat next = vertices[(i + 1) % vertices.length];
+            probes.add(vertex);
+            probes.add(new LngLat((vertex.lng() + next.lng()) / 2, (vertex.lat() + next.lat()) / 2));
+            probes.add(new LngLat(minLng - width, vertex.lat()));
+            probes.add(new LngLat(vertex.lng() - width / 3, vertex.lat()));
+            probes.add(new LngLat(Math.nextUp(vertex.lng()), vertex.lat()));
+            probes.add(new LngLat(Math.nextDown(vertex.lng()), vertex.lat()));
+            probes.add(new LngLat(vertex.lng(), Math.nextUp(vertex.lat())));
+        }
+        probes.add(new LngLat(Math.nextUp(maxLng), (minLat + maxLat) / 2));
+        probes.add(new LngLat(maxLng, maxLat));
+        probes.add(new LngLat(minLng, minLat));
+        return probes;
+    }
+
+    @Test
+    void testSameAnswersAsGeometryHelper() {
+        Random random = new Random(40);
+        int inside = 0;
+        for (LngLat[] vertices : polygons(random)) {
+            PreparedPolygon polygon = new PreparedPolygon(vertices);
+            for (LngLat point : probes(vertices, random)) {
+                boolean expected = GeometryHelper.isPointInsidePolygon(vertices, vertices.length, point);
+                assertEquals(expected, polygon.contains(point), () -> point + " in " + List.of(vertices));
+                inside += expected ? 1 : 0;
+            }
+        }
+        assertTrue(inside > 1000); // The probes test both answers
+    }
+
+    @Test
+    void testBoundaryCountsAsInside() {
+        LngLat[] square = {new LngLat(0, 0), new LngLat(1, 0), new LngLat(1, 1), new LngLat(0, 1)};
+        PreparedPolygon polygon = new PreparedPolygon(square);
+        assertTrue(polygon.contains(new LngLat(0.5, 0.5)));
+        assertTrue(polygon.contains(new LngLat(1, 0.5)));
+        assertTrue(polygon.contains(new LngLat(0.5, 0)));
+        assertTrue(polygon.contains(new LngLat(1, 1)));
+        assertFalse(polygon.contains(new LngLat(1.5, 0.5)));
+        assertFalse(polygon.contains(new LngLat(0.5, -0.5)));
+        assertFalse(new PreparedPolygon(square, 2).contains(new LngLat(0.5, 0)));
+    }
+
+    @Test
+    void testRegionsAreClassified() {
+        LngLat[] central = {new LngLat(-3.192473, 55.946233), new LngLat(-3.192473, 55.942617),
+                new LngLat(-3.184319, 55.942617), new LngLat(-3.184319, 55.946233)};
+        assertEquals(PreparedPolygon.Shape.RECTANGLE, new PreparedPolygon(central).getShape());
+        assertEquals(PreparedPolygon.Shape.CONVEX, new PreparedPolygon(convexPolygon(9, new Random(42))).getShape());
+        assertEquals(PreparedPolygon.Shape.GENERAL,
+                new PreparedPolygon(SyntheticCity.starPolygon(CENTER, 6, 0.002, 0.0008, new Random(42))).getShape());
+        // A pentagram turns one way only, but winds round twice
+        LngLat[] pentagram = new LngLat[5];
+        for (int i = 0; i < 5; i++) {
+            double angle = 4 * Math.PI * i / 5;
+            pentagram[i] = new LngLat(Math.cos(angle), 2 + Math.sin(angle));
+        }
+        assertEquals(PreparedPolygon.Shape.GENERAL, new PreparedPolygon(pentagram).getShape());
+        // On a rectangle touching zero an orientation could underflow, so it only gets the convex test
+        LngLat[] square = {new LngLat(0, 0), new LngLat(1, 0), new LngLat(1, 1), new LngLat(0, 1)};
+        assertEquals(PreparedPolygon.Shape.CONVEX, new PreparedPolygon(square).getShape());
+    }
+
+    @Test
+    void testHandlerPreparesEachRegionOnce() {
+        LngLatHandlingImpl handler = new LngLatHandlingImpl();
+        NamedRegion region = new NamedRegion("zone", new LngLat[]{new LngLat(0, 0), new LngLat(1, 0), new LngLat(0, 1)});
+        assertSame(handler.prepared(region), handler.prepared(region));
+        assertTrue(handler.isInRegion(new LngLat(0.2, 0.2), region));
+        assertFalse(handler.isInRegion(new LngLat(0.8, 0.8), region));
+    }
+}
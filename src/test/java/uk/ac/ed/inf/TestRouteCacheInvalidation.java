@@ -0,0 +1,84 @@
+package uk.ac.ed.inf;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a no-fly zone update drops only the cached routes the changed zones could affect.
+ */
+public class TestRouteCacheInvalidation {
+
+    private static final double MOVE = SystemConstants.DRONE_MOVE_DISTANCE;
+    private static final LngLat APPLETON_TOWER = new LngLat(-3.186874, 55.944494);
+    private static final LngLat EAST = new LngLat(APPLETON_TOWER.lng() + 80 * MOVE, APPLETON_TOWER.lat() + 5 * MOVE);
+    private static final LngLat NORTH = new LngLat(APPLETON_TOWER.lng(), APPLETON_TOWER.lat() + 60 * MOVE);
+    private static final LngLat SOUTH = new LngLat(APPLETON_TOWER.lng(), APPLETON_TOWER.lat() - 60 * MOVE);
+    private static final NamedRegion CENTRAL = new NamedRegion(SystemConstants.CENTRAL_REGION_NAME, new LngLat[]{
+            new LngLat(-3.192473, 55.946233), new LngLat(-3.192473, 55.942617),
+            new LngLat(-3.184319, 55.942617), new LngLat(-3.184319, 55.946233)});
+
+    // A rectangle, in moves from Appleton Tower
+    private static NamedRegion block(String name, double west, double south, double east, double north) {
+        return new NamedRegion(name, new LngLat[]{
+                new LngLat(APPLETON_TOWER.lng() + west * MOVE, APPLETON_TOWER.lat() + south * MOVE),
+                new LngLat(APPLETON_TOWER.lng() + east * MOVE, APPLETON_TOWER.lat() + south * MOVE),
+                new LngLat(APPLETON_TOWER.lng() + east * MOVE, APPLETON_TOWER.lat() + north * MOVE),
+                new LngLat(APPLETON_TOWER.lng() + west * MOVE, APPLETON_TOWER.lat() + north * MOVE)});
+    }
+
+    private static DronePathPlanner plannedPlanner(NamedRegion[] noFlyZones) {
+        DronePathPlanner planner = new DronePathPlanner(noFlyZones, CENTRAL, PlannerMode.ASTAR);
+        for (LngLat destination : new LngLat[]{EAST, NORTH, SOUTH}) {
+            planner.findTotalPath(APPLETON_TOWER, destination, "O1");
+        }
+        return planner;
+    }
+
+    @Test
+    void testOnlyRoutesThroughANewZoneAreDropped() {
+        DronePathPlanner planner = plannedPlanner(new NamedRegion[0]);
+        assertEquals(3, planner.getCachedRouteCount());
+
+        NamedRegion wall = block("wall", 39, -20, 41, 25); // Across the way east only
+        assertEquals(1, planner.updateNoFlyZones(new NamedRegion[]{wall}));
+        assertEquals(2, planner.getCachedRouteCount());
+
+        // The route east is searched again, round the wall; the others still come from the cache
+        List<DroneMovement> east = planner.findTotalPath(APPLETON_TOWER, EAST, "O2");
+        assertTrue(planner.getLastNodesExpanded() > 0);
+        for (DroneMovement move : east) {
+            assertFalse(new LngLatHandlingImpl().isInRegion(move.getEnd(), wall));
+        }
+        assertEquals(3, planner.getCachedRouteCount());
+    }
+
+    @Test
+    void testRoutesMerelyNearANewZoneAreKept() {
+        DronePathPlanner planner = plannedPlanner(new NamedRegion[0]);
+        // Inside the box of the route east, but clear of its moves
+        assertEquals(0, planner.updateNoFlyZones(new NamedRegion[]{block("kiosk", 2, 3, 4, 4.5)}));
+        assertEquals(3, planner.getCachedRouteCount());
+    }
+
+    @Test
+    void testRemovedZoneDropsRoutesRoundIt() {
+        NamedRegion wall = block("wall", 39, -20, 41, 25);
+        NamedRegion far = block("far", -200, -200, -190, -190);
+        DronePathPlanner planner = plannedPlanner(new NamedRegion[]{wall, far});
+
+        // The same zones fetched again, in new arrays, change nothing
+        NamedRegion[] again = {block("far", -200, -200, -190, -190), block("wall", 39, -20, 41, 25)};
+        assertEquals(0, planner.updateNoFlyZones(again));
+        assertEquals(3, planner.getCachedRouteCount());
+
+        // Without the wall the route east, which went round it, may be shorter
+        assertEquals(1, planner.updateNoFlyZones(new NamedRegion[]{far}));
+        assertEquals(2, planner.getCachedRouteCount());
+    }
+}
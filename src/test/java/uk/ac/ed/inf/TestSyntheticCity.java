@@ -0,0 +1,132 @@
+package uk.ac.ed.inf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Order;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the synthetic city generator is reproducible, gives the orders the validation codes it promises,
+ * and can be planned end to end through the local API.
+ */
+public class TestSyntheticCity {
+
+    private static final LocalDate DATE = LocalDate.of(2025, 1, 28);
+
+    @TempDir
+    File outputDir;
+
+    @Test
+    void testSameSeedGivesSameCity() {
+        SyntheticCity city = new SyntheticCity(7, 20, 10, 500, 0.3, DATE);
+        SyntheticCity same = new SyntheticCity(7, 20, 10, 500, 0.3, DATE);
+        SyntheticCity other = new SyntheticCity(8, 20, 10, 500, 0.3, DATE);
+
+        assertEquals(city.restaurantsJson(), same.restaurantsJson());
+        assertEquals(city.noFlyZonesJson(), same.noFlyZonesJson());
+        assertEquals(city.ordersJson(), same.ordersJson());
+        assertNotEquals(city.ordersJson(), other.ordersJson());
+    }
+
+    @Test
+    void testOrdersGetTheExpectedCodes() {
+        SyntheticCity city = new SyntheticCity(11, 30, 0, 5000, 0.4, DATE);
+        Order[] orders = city.getOrders();
+        OrderValidationCode[] expected = city.getExpectedCodes();
+        Restaurant[] restaurants = city.getRestaurants();
+
+        OrderValidationImpl validator = new OrderValidationImpl();
+        Map<OrderValidationCode, Integer> counts = new HashMap<>();
+        for (int i = 0; i < orders.length; i++) {
+            assertEquals(expected[i], validator.validateOrder(orders[i], restaurants).getOrderValidationCode(), orders[i].getOrderNo());
+            counts.merge(expected[i], 1, Integer::sum);
+        }
+        // About 40% invalid, spread over every kind of fault
+        assertEquals(1 + 8, counts.size());
+        assertEquals(0.6, counts.get(OrderValidationCode.NO_ERROR) / 5000.0, 0.03);
+        assertEquals(city.getValidOrderCount(), (int) counts.get(OrderValidationCode.NO_ERROR));
+    }
+
+    @Test
+    void testNoFlyZonesAreConcaveAndKeepClear() {
+        SyntheticCity city = new SyntheticCity(3, 100, 50, 0, 0, DATE);
+        LngLatHandlingImpl handler = new LngLatHandlingImpl();
+
+        assertEquals(50, city.getNoFlyZones().length);
+        assertTrue(handler.isInCentralArea(SyntheticCity.APPLETON_TOWER, city.getCentralArea()));
+        for (NamedRegion zone : city.getNoFlyZones()) {
+            assertTrue(isConcave(zone.vertices()), zone.name());
+            assertFalse(handler.isInRegion(SyntheticCity.APPLETON_TOWER, zone), zone.name());
+            for (Restaurant restaurant : city.getRestaurants()) {
+                assertFalse(handler.isInRegion(restaurant.location(), zone), zone.name() + " " + restaurant.name());
+            }
+        }
+    }
+
+    @Test
+    void testCityIsPlannedThroughTheLocalApi() throws Exception {
+        SyntheticCity city = new SyntheticCity(5, 25, 15, 400, 0.25, DATE);
+        MockRestServer server = new MockRestServer(0);
+        city.serveOn(server);
+        server.start();
+        try {
+            new DeliveryPipeline("http://localhost:" + server.getPort(), DATE.toString(), outputDir, false, false).run();
+        } finally {
+            server.stop();
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode deliveries = mapper.readTree(new File(outputDir, "deliveries-" + DATE + ".json"));
+        OrderValidationCode[] expected = city.getExpectedCodes();
+        assertEquals(expected.length, deliveries.size());
+        Map<String, OrderValidationCode> expectedByOrder = new HashMap<>();
+        Order[] orders = city.getOrders();
+        for (int i = 0; i < orders.length; i++) {
+            expectedByOrder.put(orders[i].getOrderNo(), expected[i]);
+        }
+        for (JsonNode delivery : deliveries) {
+            OrderValidationCode code = expectedByOrder.get(delivery.path("orderNo").asText());
+            assertEquals(code.toString(), delivery.path("orderValidationCode").asText());
+            assertEquals(code == OrderValidationCode.NO_ERROR ? "DELIVERED" : "INVALID", delivery.path("orderStatus").asText());
+        }
+
+        // Every move stays out of every no-fly zone
+        LngLatHandlingImpl handler = new LngLatHandlingImpl();
+        JsonNode moves = mapper.readTree(new File(outputDir, "flightpath-" + DATE + ".json"));
+        assertFalse(moves.isEmpty());
+        for (JsonNode move : moves) {
+            LngLat to = new LngLat(move.path("toLongitude").asDouble(), move.path("toLatitude").asDouble());
+            for (NamedRegion zone : city.getNoFlyZones()) {
+                assertFalse(handler.isInRegion(to, zone), move.path("orderNo").asText() + " enters " + zone.name());
+            }
+        }
+    }
+
+    // A polygon is concave if the turn direction changes somewhere along its boundary
+    private static boolean isConcave(LngLat[] vertices) {
+        int n = vertices.length - 1; // The last vertex repeats the first
+        boolean left = false;
+        boolean right = false;
+        for (int i = 0; i < n; i++) {
+            LngLat a = vertices[i];
+            LngLat b = vertices[(i + 1) % n];
+            LngLat c = vertices[(i + 2) % n];
+            double cross = (b.lng() - a.lng()) * (c.lat() - b.lat()) - (b.lat() - a.lat()) * (c.lng() - b.lng());
+            left |= cross > 0;
+            right |= cross < 0;
+        }
+        return left && right;
+    }
+}